@@ -29,6 +29,30 @@ public class CacheClient extends ModuleClient implements CacheMBean{
         );
     }
 
+    public long getHits() throws Exception {
+        return (Long)getAttribute("Hits");
+    }
+
+    public long getMisses() throws Exception {
+        return (Long)getAttribute("Misses");
+    }
+
+    public long getEvictions() throws Exception {
+        return (Long)getAttribute("Evictions");
+    }
+
+    public long getInvalidations() throws Exception {
+        return (Long)getAttribute("Invalidations");
+    }
+
+    public int getCount() throws Exception {
+        return (Integer)getAttribute("Count");
+    }
+
+    public long getSize() throws Exception {
+        return (Long)getAttribute("Size");
+    }
+
     public static void clearCache(PenroseClient client, String partitionName) throws Exception {
 
         CacheClient cacheClient = new CacheClient(client, partitionName, "CacheModule");
@@ -27,6 +27,7 @@ import org.safehaus.penrose.service.ServiceManagerClient;
 import org.safehaus.penrose.user.UserConfig;
 import org.safehaus.penrose.management.PenroseServiceMBean;
 import org.safehaus.penrose.session.SessionManagerClient;
+import org.safehaus.penrose.statistic.StatisticManagerClient;
 
 import javax.management.Attribute;
 import javax.management.MBeanServerConnection;
@@ -307,6 +308,14 @@ public class PenroseClient implements PenroseServiceMBean {
         return new LogManagerClient(this);
     }
 
+    ////////////////////////////////////////////////////////////////////////////////
+    // Statistics
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public StatisticManagerClient getStatisticManagerClient() throws Exception {
+        return new StatisticManagerClient(this);
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
     // Files
     ////////////////////////////////////////////////////////////////////////////////
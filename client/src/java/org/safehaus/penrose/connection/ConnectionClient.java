@@ -59,4 +59,20 @@ public class ConnectionClient extends BaseClient implements ConnectionServiceMBe
     public String getAdapterName() throws Exception {
         return (String)getAttribute("AdapterName");
     }
+
+    public int getActiveCount() throws Exception {
+        return (Integer)getAttribute("ActiveCount");
+    }
+
+    public int getIdleCount() throws Exception {
+        return (Integer)getAttribute("IdleCount");
+    }
+
+    public long getLeaseCount() throws Exception {
+        return (Long)getAttribute("LeaseCount");
+    }
+
+    public long getLeaseWaitTime() throws Exception {
+        return (Long)getAttribute("LeaseWaitTime");
+    }
 }
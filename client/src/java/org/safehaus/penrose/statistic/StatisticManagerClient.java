@@ -0,0 +1,49 @@
+package org.safehaus.penrose.statistic;
+
+import org.safehaus.penrose.client.BaseClient;
+import org.safehaus.penrose.client.PenroseClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @author Endi Sukma Dewata
+ */
+public class StatisticManagerClient extends BaseClient implements StatisticManagerServiceMBean {
+
+    public static Logger log = LoggerFactory.getLogger(StatisticManagerClient.class);
+
+    public StatisticManagerClient(PenroseClient client) throws Exception {
+        super(client, "StatisticManager", getStringObjectName());
+    }
+
+    public static String getStringObjectName() {
+        return "Penrose:name=StatisticManager";
+    }
+
+    public Collection<String> getStatisticNames() throws Exception {
+        return (Collection<String>)getAttribute("StatisticNames");
+    }
+
+    public Long getCounter(String name) throws Exception {
+        return (Long)invoke("getCounter", new Object[] { name }, new String[] { String.class.getName() });
+    }
+
+    public Collection<String> getHistogramNames() throws Exception {
+        return (Collection<String>)getAttribute("HistogramNames");
+    }
+
+    public Map<String,Long> getHistogram(String name) throws Exception {
+        return (Map<String,Long>)invoke("getHistogram", new Object[] { name }, new String[] { String.class.getName() });
+    }
+
+    public Long getStartTime() throws Exception {
+        return (Long)getAttribute("StartTime");
+    }
+
+    public void reset() throws Exception {
+        invoke("reset", new Object[] {}, new String[] {});
+    }
+}
@@ -6,4 +6,12 @@ package org.safehaus.penrose.cache;
 public interface CacheMBean {
 
     public void clear() throws Exception;
+
+    public long getHits() throws Exception;
+    public long getMisses() throws Exception;
+    public long getEvictions() throws Exception;
+    public long getInvalidations() throws Exception;
+
+    public int getCount() throws Exception;
+    public long getSize() throws Exception;
 }
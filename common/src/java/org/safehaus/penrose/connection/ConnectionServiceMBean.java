@@ -17,4 +17,9 @@ public interface ConnectionServiceMBean {
     public ConnectionConfig getConnectionConfig() throws Exception;
     public void setConnectionConfig(ConnectionConfig connectionConfig) throws Exception;
     public String getAdapterName() throws Exception;
+
+    public int getActiveCount() throws Exception;
+    public int getIdleCount() throws Exception;
+    public long getLeaseCount() throws Exception;
+    public long getLeaseWaitTime() throws Exception;
 }
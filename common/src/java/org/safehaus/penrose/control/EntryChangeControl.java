@@ -0,0 +1,56 @@
+package org.safehaus.penrose.control;
+
+import com.novell.ldap.asn1.*;
+
+/**
+ * Returned with the entries of a persistent search.
+ *
+ * @author Endi S. Dewata
+ */
+public class EntryChangeControl extends Control {
+
+    public final static String OID = "2.16.840.1.113730.3.4.7";
+
+    protected int changeType;
+    protected String previousDn;
+    protected Long changeNumber;
+
+    public EntryChangeControl(Control control) throws Exception {
+        super(control);
+
+        decodeValue();
+    }
+
+    public void decodeValue() throws Exception {
+
+        LBERDecoder decoder = new LBERDecoder();
+
+        ASN1Sequence sequence = (ASN1Sequence)decoder.decode(value);
+
+        ASN1Enumerated changeType = (ASN1Enumerated)sequence.get(0);
+        this.changeType = changeType.intValue();
+
+        for (int i=1; i<sequence.size(); i++) {
+            ASN1Object object = sequence.get(i);
+
+            if (object instanceof ASN1OctetString) {
+                previousDn = ((ASN1OctetString)object).stringValue();
+
+            } else if (object instanceof ASN1Integer) {
+                changeNumber = ((ASN1Integer)object).longValue();
+            }
+        }
+    }
+
+    public int getChangeType() {
+        return changeType;
+    }
+
+    public String getPreviousDn() {
+        return previousDn;
+    }
+
+    public Long getChangeNumber() {
+        return changeNumber;
+    }
+}
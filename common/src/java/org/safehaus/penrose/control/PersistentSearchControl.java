@@ -0,0 +1,76 @@
+package org.safehaus.penrose.control;
+
+import com.novell.ldap.asn1.*;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class PersistentSearchControl extends Control {
+
+    public final static String OID = "2.16.840.1.113730.3.4.3";
+
+    public final static int ADD    = 1;
+    public final static int DELETE = 2;
+    public final static int MODIFY = 4;
+    public final static int MODDN  = 8;
+    public final static int ANY    = ADD | DELETE | MODIFY | MODDN;
+
+    protected int changeTypes;
+    protected boolean changesOnly;
+    protected boolean returnEntryChangeControls;
+
+    public PersistentSearchControl() throws Exception {
+        this(ANY, true, true, true);
+    }
+
+    public PersistentSearchControl(
+            int changeTypes,
+            boolean changesOnly,
+            boolean returnEntryChangeControls,
+            boolean critical
+    ) throws Exception {
+        super(OID, null, critical);
+
+        this.changeTypes = changeTypes;
+        this.changesOnly = changesOnly;
+        this.returnEntryChangeControls = returnEntryChangeControls;
+
+        encodeValue();
+    }
+
+    public void encodeValue() throws Exception {
+
+        ASN1Sequence sequence = new ASN1Sequence();
+
+        sequence.add(new ASN1Integer(changeTypes));
+        sequence.add(new ASN1Boolean(changesOnly));
+        sequence.add(new ASN1Boolean(returnEntryChangeControls));
+
+        LBEREncoder encoder = new LBEREncoder();
+        value = sequence.getEncoding(encoder);
+    }
+
+    public int getChangeTypes() {
+        return changeTypes;
+    }
+
+    public void setChangeTypes(int changeTypes) {
+        this.changeTypes = changeTypes;
+    }
+
+    public boolean isChangesOnly() {
+        return changesOnly;
+    }
+
+    public void setChangesOnly(boolean changesOnly) {
+        this.changesOnly = changesOnly;
+    }
+
+    public boolean isReturnEntryChangeControls() {
+        return returnEntryChangeControls;
+    }
+
+    public void setReturnEntryChangeControls(boolean returnEntryChangeControls) {
+        this.returnEntryChangeControls = returnEntryChangeControls;
+    }
+}
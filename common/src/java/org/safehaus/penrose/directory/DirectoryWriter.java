@@ -217,6 +217,10 @@ public class DirectoryWriter {
             element.add(new DefaultAttribute("modrdn", sourceConfig.getModrdn()));
         }
 
+        if (sourceConfig.getBatchSize() != null) {
+            element.add(new DefaultAttribute("batchSize", sourceConfig.getBatchSize().toString()));
+        }
+
         String partitionName = sourceConfig.getPartitionName();
         if (partitionName != null) {
             Element partitionNameElement = new DefaultElement("partition-name");
@@ -63,6 +63,8 @@ public class EntrySourceConfig implements Serializable, Cloneable {
     public Integer modifyOrder;
     public Integer modrdnOrder;
 
+    public Integer batchSize;
+
     public EntrySourceConfig() {
 	}
 
@@ -230,6 +232,8 @@ public class EntrySourceConfig implements Serializable, Cloneable {
         if (!equals(modifyOrder, sourceConfig.modifyOrder)) return false;
         if (!equals(modrdnOrder, sourceConfig.modrdnOrder)) return false;
 
+        if (!equals(batchSize, sourceConfig.batchSize)) return false;
+
         return true;
     }
 
@@ -264,6 +268,8 @@ public class EntrySourceConfig implements Serializable, Cloneable {
         deleteOrder = sourceConfig.deleteOrder;
         modifyOrder = sourceConfig.modifyOrder;
         modrdnOrder = sourceConfig.modrdnOrder;
+
+        batchSize = sourceConfig.batchSize;
     }
 
     public Object clone() throws CloneNotSupportedException {
@@ -391,4 +397,16 @@ public class EntrySourceConfig implements Serializable, Cloneable {
     public void setModrdnOrder(String modrdnOrder) {
         this.modrdnOrder = Integer.parseInt(modrdnOrder);
     }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setBatchSize(String batchSize) {
+        this.batchSize = Integer.parseInt(batchSize);
+    }
 }
\ No newline at end of file
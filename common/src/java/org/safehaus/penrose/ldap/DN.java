@@ -2,26 +2,73 @@ package org.safehaus.penrose.ldap;
 
 import java.util.*;
 import java.text.MessageFormat;
-import java.io.Serializable;
+import java.io.*;
 
 /**
+ * Immutable distinguished name. The string is parsed once on first use, after that the
+ * RDNs and their normalized forms are kept in arrays so comparisons do not need locking
+ * or allocation. Parsing twice concurrently is harmless since both threads produce the
+ * same values.
+ *
+ * The serialized form is the same as the form of the earlier mutable DN, so DNs can be
+ * exchanged with older clients.
+ *
  * @author Endi S. Dewata
  */
 public class DN implements Serializable, Comparable {
 
     public final static long serialVersionUID = 1L;
 
-    public List<RDN> rdns;
+    public final static int MAX_POOL_SIZE = 10000;
+    public final static int POOL_SEGMENTS = 16;
 
-    public String originalDn;
-    public String normalizedDn;
-    public DN parentDn;
+    public final static RDN[] EMPTY_RDNS = new RDN[0];
+
+    private final static ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("rdns", List.class),
+            new ObjectStreamField("originalDn", String.class),
+            new ObjectStreamField("normalizedDn", String.class),
+            new ObjectStreamField("parentDn", DN.class),
+            new ObjectStreamField("pattern", String.class)
+    };
+
+    /**
+     * Segment of the intern pool which keeps the most recently used DNs.
+     */
+    static class PoolSegment extends LinkedHashMap<String,DN> {
+
+        public PoolSegment() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<String,DN> eldest) {
+            return size() > MAX_POOL_SIZE / POOL_SEGMENTS;
+        }
+    }
+
+    // parent and suffix DNs shared by many entries
+    private final static PoolSegment[] pool = new PoolSegment[POOL_SEGMENTS];
+
+    static {
+        for (int i=0; i<POOL_SEGMENTS; i++) {
+            pool[i] = new PoolSegment();
+        }
+    }
+
+    private volatile String originalDn;
+    private volatile RDN[] rdns;
+
+    // normalized RDNs, null if the RDN contains a wildcard value
+    private transient volatile String[] normalizedRdns;
+
+    private transient volatile String normalizedDn;
+    private transient volatile DN parentDn;
+
+    private transient volatile String pattern;
+    private transient volatile MessageFormat formatter;
 
-    public String pattern;
-    public transient MessageFormat formatter;
-    
     public DN() {
-        rdns = new ArrayList<RDN>();
+        rdns = EMPTY_RDNS;
     }
 
     public DN(String dn) {
@@ -29,99 +76,143 @@ public class DN implements Serializable, Comparable {
     }
 
     public DN(RDN rdn) {
-        rdns = new ArrayList<RDN>();
-        rdns.add(rdn);
+        rdns = new RDN[] { rdn };
     }
 
-    public synchronized void parse() throws Exception {
-        if (rdns != null) return;
-        rdns = new ArrayList<RDN>();
-        Collection<RDN> list = DNBuilder.parse(originalDn);
-        for (RDN rdn : list) {
-            rdns.add(rdn);
+    DN(RDN[] rdns) {
+        this.rdns = rdns;
+    }
+
+    /**
+     * Returns a shared instance of an equal DN if available.
+     */
+    public static DN intern(DN dn) throws Exception {
+        if (dn == null) return null;
+
+        String key = dn.getOriginalDn();
+        PoolSegment segment = pool[(key.hashCode() & 0x7fffffff) % POOL_SEGMENTS];
+
+        synchronized (segment) {
+            DN result = segment.get(key);
+            if (result != null) return result;
+
+            segment.put(key, dn);
+            return dn;
         }
     }
 
-    public synchronized DN getDn(int start, int end) throws Exception {
-        parse();
+    public void parse() throws Exception {
+        getRdnArray();
+    }
+
+    RDN[] getRdnArray() throws Exception {
+        RDN[] array = rdns;
+        if (array != null) return array;
+
+        Collection<RDN> list = DNBuilder.parse(originalDn);
+        array = list.toArray(new RDN[list.size()]);
+
+        rdns = array;
+        return array;
+    }
+
+    String[] getNormalizedRdns() throws Exception {
+        String[] array = normalizedRdns;
+        if (array != null) return array;
 
-        DNBuilder db = new DNBuilder();
-        for (int i=start; i<end; i++) {
-            db.append(rdns.get(i));
+        RDN[] list = getRdnArray();
+        array = new String[list.length];
+
+        for (int i=0; i<list.length; i++) {
+            RDN rdn = list[i];
+            array[i] = rdn.isWildcard() ? null : rdn.getNormalized();
         }
 
-        return db.toDn();
+        normalizedRdns = array;
+        return array;
+    }
+
+    public DN getDn(int start, int end) throws Exception {
+        RDN[] list = getRdnArray();
+
+        RDN[] array = new RDN[end - start];
+        System.arraycopy(list, start, array, 0, array.length);
+
+        return new DN(array);
     }
 
-    public synchronized DN append(String dn) throws Exception {
+    public DN append(String dn) throws Exception {
         return append(new DN(dn));
     }
 
-    public synchronized DN append(RDN rdn) throws Exception {
+    public DN append(RDN rdn) throws Exception {
         return append(new DN(rdn));
     }
 
-    public synchronized DN append(DN dn) throws Exception {
-        DNBuilder db = new DNBuilder();
-        db.append(this);
-        db.append(dn);
-        return db.toDn();
+    public DN append(DN dn) throws Exception {
+        if (dn == null) return new DN(getRdnArray());
+        return new DN(concat(getRdnArray(), dn.getRdnArray()));
     }
 
-    public synchronized DN prepend(String dn) throws Exception {
+    public DN prepend(String dn) throws Exception {
         return prepend(new DN(dn));
     }
-    
-    public synchronized DN prepend(RDN rdn) throws Exception {
+
+    public DN prepend(RDN rdn) throws Exception {
         return prepend(new DN(rdn));
     }
 
-    public synchronized DN prepend(DN dn) throws Exception {
-        DNBuilder db = new DNBuilder();
-        db.append(dn);
-        db.append(this);
-        return db.toDn();
+    public DN prepend(DN dn) throws Exception {
+        if (dn == null) return new DN(getRdnArray());
+        return new DN(concat(dn.getRdnArray(), getRdnArray()));
+    }
+
+    static RDN[] concat(RDN[] prefix, RDN[] suffix) {
+        RDN[] array = new RDN[prefix.length + suffix.length];
+        System.arraycopy(prefix, 0, array, 0, prefix.length);
+        System.arraycopy(suffix, 0, array, prefix.length, suffix.length);
+        return array;
     }
 
-    public synchronized DN getSuffix(int i) throws Exception {
-        return getDn(i, getLength());
+    public DN getSuffix(int i) throws Exception {
+        return intern(getDn(i, getLength()));
     }
 
-    public synchronized DN getPrefix(int i) throws Exception {
+    public DN getPrefix(int i) throws Exception {
         return getDn(0, i);
     }
 
-    public synchronized DN getPrefix(String suffix) throws Exception {
+    public DN getPrefix(String suffix) throws Exception {
         return getPrefix(new DN(suffix));
     }
 
-    public synchronized DN getPrefix(DN suffix) throws Exception {
+    public DN getPrefix(DN suffix) throws Exception {
         return getPrefix(getLength() - suffix.getLength());
     }
 
-    public synchronized String getPattern() throws Exception {
-        if (pattern != null) return pattern;
+    public String getPattern() throws Exception {
+        String s = pattern;
+        if (s != null) return s;
 
-        parse();
         StringBuilder sb = new StringBuilder();
         int counter = 0;
 
-        for (RDN rdn : rdns) {
-
-            counter = rdn.createPattern(counter);
-
+        for (RDN rdn : getRdnArray()) {
             if (sb.length() > 0) sb.append(',');
-            sb.append(rdn.getPattern());
+            counter = rdn.appendPattern(sb, counter);
         }
 
-        pattern = sb.toString();
-        
-        return pattern;
+        s = sb.toString();
+        pattern = s;
+
+        return s;
     }
 
-    public synchronized String format(Collection<Object> args) throws Exception {
-        if (formatter == null) {
-            formatter = new MessageFormat(getPattern());
+    public String format(Collection<Object> args) throws Exception {
+        MessageFormat f = formatter;
+        if (f == null) {
+            f = new MessageFormat(getPattern());
+            formatter = f;
         }
 
         Collection<String> values = new ArrayList<String>();
@@ -129,137 +220,144 @@ public class DN implements Serializable, Comparable {
             String value = arg.toString();
             values.add(LDAP.escape(value));
         }
-        
-        return formatter.format(values.toArray());
-    }
 
-    public synchronized boolean isEmpty() {
-        if (originalDn == null) {
-            return rdns == null || rdns.isEmpty();
-        } else {
-            return "".equals(originalDn);
+        // MessageFormat is not thread-safe
+        synchronized (f) {
+            return f.format(values.toArray());
         }
     }
 
-    public synchronized int getLength() throws Exception {
-        parse();
-        return rdns.size();
+    public boolean isEmpty() {
+        String s = originalDn;
+        if (s != null) return "".equals(s);
+
+        RDN[] array = rdns;
+        return array == null || array.length == 0;
+    }
+
+    public int getLength() throws Exception {
+        return getRdnArray().length;
     }
 
-    public synchronized RDN getRdn() throws Exception {
-        parse();
-        if (rdns.size() == 0) return null;
-        return rdns.get(0);
+    public RDN getRdn() throws Exception {
+        RDN[] array = getRdnArray();
+        if (array.length == 0) return null;
+        return array[0];
     }
 
-    public synchronized RDN getRdn(int i) throws Exception {
-        parse();
-        return rdns.get(i);
+    public RDN getRdn(int i) throws Exception {
+        return getRdnArray()[i];
     }
 
-    public synchronized Collection<RDN> getRdns() throws Exception {
-        parse();
-        return rdns;
+    public Collection<RDN> getRdns() throws Exception {
+        return Collections.unmodifiableList(Arrays.asList(getRdnArray()));
     }
 
-    public synchronized String getOriginalDn() throws Exception {
-        if (originalDn != null) return originalDn;
+    public String getOriginalDn() throws Exception {
+        String s = originalDn;
+        if (s != null) return s;
 
         StringBuilder sb = new StringBuilder();
 
-        if (rdns != null) {
-            for (RDN rdn : rdns) {
+        RDN[] array = rdns;
+        if (array != null) {
+            for (RDN rdn : array) {
                 if (sb.length() > 0) sb.append(",");
                 sb.append(rdn.getOriginal());
             }
         }
 
-        originalDn = sb.toString();
+        s = sb.toString();
+        originalDn = s;
 
-        return originalDn;
+        return s;
     }
 
-    public synchronized String getNormalizedDn() throws Exception {
-        if (normalizedDn != null) return normalizedDn;
+    public String getNormalizedDn() throws Exception {
+        String s = normalizedDn;
+        if (s != null) return s;
 
-        parse();
         StringBuilder sb = new StringBuilder();
-        for (RDN rdn : rdns) {
-
+        for (RDN rdn : getRdnArray()) {
             if (sb.length() > 0) sb.append(",");
             sb.append(rdn.getNormalized());
         }
 
-        normalizedDn = sb.toString();
-        return normalizedDn;
+        s = sb.toString();
+        normalizedDn = s;
+
+        return s;
     }
 
-    public synchronized DN getParentDn() throws Exception {
-        if (parentDn != null) return parentDn;
+    public DN getParentDn() throws Exception {
+        DN dn = parentDn;
+        if (dn != null) return dn;
 
-        parse();
-        DNBuilder db = new DNBuilder();
-        for (int i=1; i<rdns.size(); i++) {
-            RDN rdn = rdns.get(i);
-            db.append(rdn);
-        }
+        RDN[] array = getRdnArray();
+        dn = array.length <= 1 ? new DN() : getDn(1, array.length);
 
-        parentDn = db.toDn();
-        return parentDn;
+        dn = intern(dn);
+        parentDn = dn;
+
+        return dn;
     }
 
-    public synchronized boolean endsWith(String suffix) throws Exception {
+    public boolean endsWith(String suffix) throws Exception {
         return endsWith(new DN(suffix));
     }
-    
-    public synchronized boolean endsWith(DN suffix) throws Exception {
-        parse();
-        suffix.parse();
-        int i1 = rdns.size();
-        int i2 = suffix.rdns.size();
 
-        if (i1 < i2) return false;
+    public boolean endsWith(DN suffix) throws Exception {
+        RDN[] rdns1 = getRdnArray();
+        RDN[] rdns2 = suffix.getRdnArray();
 
-        while (i1 > 0 && i2 > 0) {
-            RDN rdn1 = rdns.get(i1-1);
-            RDN rdn2 = suffix.rdns.get(i2-1);
+        int i1 = rdns1.length;
+        int i2 = rdns2.length;
 
-            if (!rdn1.matches(rdn2)) return false;
+        if (i1 < i2) return false;
+
+        String[] normalized1 = getNormalizedRdns();
+        String[] normalized2 = suffix.getNormalizedRdns();
 
+        while (i2 > 0) {
             i1--;
             i2--;
+
+            if (!matches(rdns1[i1], normalized1[i1], rdns2[i2], normalized2[i2])) return false;
         }
 
         return true;
     }
 
-    public synchronized boolean matches(String dn) throws Exception {
+    public boolean matches(String dn) throws Exception {
         return matches(new DN(dn));
     }
-    
-    public synchronized boolean matches(DN dn) throws Exception {
+
+    public boolean matches(DN dn) throws Exception {
 
         if (dn == null) return false;
-        if (getNormalizedDn().equals(dn.getNormalizedDn())) return true;
+        if (this == dn) return true;
 
-        parse();
-        dn.parse();
-        if (rdns.size() != dn.rdns.size()) return false;
+        RDN[] rdns1 = getRdnArray();
+        RDN[] rdns2 = dn.getRdnArray();
 
-        Iterator i = rdns.iterator();
-        Iterator j = dn.rdns.iterator();
+        if (rdns1.length != rdns2.length) return false;
 
-        while (i.hasNext() && j.hasNext()) {
-            RDN rdn1 = (RDN)i.next();
-            RDN rdn2 = (RDN)j.next();
+        String[] normalized1 = getNormalizedRdns();
+        String[] normalized2 = dn.getNormalizedRdns();
 
-            if (!rdn1.matches(rdn2)) return false;
+        for (int i=rdns1.length-1; i>=0; i--) {
+            if (!matches(rdns1[i], normalized1[i], rdns2[i], normalized2[i])) return false;
         }
 
         return true;
     }
 
-    public synchronized int hashCode() {
+    static boolean matches(RDN rdn1, String normalized1, RDN rdn2, String normalized2) throws Exception {
+        if (normalized1 != null && normalized2 != null) return normalized1.equals(normalized2);
+        return rdn1.matches(rdn2);
+    }
+
+    public int hashCode() {
         try {
             return getOriginalDn().hashCode();
         } catch (Exception e) {
@@ -267,13 +365,13 @@ public class DN implements Serializable, Comparable {
         }
     }
 
-    synchronized boolean equals(Object o1, Object o2) {
+    boolean equals(Object o1, Object o2) {
         if (o1 == null && o2 == null) return true;
         if (o1 != null) return o1.equals(o2);
         return o2.equals(o1);
     }
 
-    public synchronized boolean equals(Object object) {
+    public boolean equals(Object object) {
         if (this == object) return true;
         if (object == null) return false;
 
@@ -295,39 +393,57 @@ public class DN implements Serializable, Comparable {
         return false;
     }
 
-    public synchronized int compareTo(Object object) {
+    public int compareTo(Object object) {
 
         if (object == null) return 0;
         if (!(object instanceof DN)) return 0;
 
         DN dn = (DN)object;
 
+        RDN[] rdns1;
+        RDN[] rdns2;
+
         try {
-            parse();
-            dn.parse();
+            rdns1 = getRdnArray();
+            rdns2 = dn.getRdnArray();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        
-        if (rdns.size() < dn.rdns.size()) return -1;
-        if (rdns.size() > dn.rdns.size()) return 1;
-
-        int i = rdns.size();
 
-        while (i > 0) {
-            RDN rdn1 = rdns.get(i-1);
-            RDN rdn2 = dn.rdns.get(i-1);
+        if (rdns1.length < rdns2.length) return -1;
+        if (rdns1.length > rdns2.length) return 1;
 
-            int c = rdn1.compareTo(rdn2);
+        for (int i=rdns1.length-1; i>=0; i--) {
+            int c = rdns1[i].compareTo(rdns2[i]);
             if (c != 0) return c;
-
-            i--;
         }
 
         return 0;
     }
 
-    public synchronized String toString() {
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        RDN[] array = rdns;
+
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("rdns", array == null ? null : new ArrayList<RDN>(Arrays.asList(array)));
+        fields.put("originalDn", originalDn);
+        fields.put("normalizedDn", normalizedDn);
+        fields.put("pattern", pattern);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+
+        List list = (List)fields.get("rdns", null);
+        if (list != null) rdns = (RDN[])list.toArray(new RDN[list.size()]);
+
+        originalDn = (String)fields.get("originalDn", null);
+        normalizedDn = (String)fields.get("normalizedDn", null);
+        pattern = (String)fields.get("pattern", null);
+    }
+
+    public String toString() {
         try {
             return getOriginalDn();
         } catch (Exception e) {
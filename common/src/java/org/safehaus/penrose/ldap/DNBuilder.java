@@ -287,9 +287,7 @@ public class DNBuilder {
     }
 
     public DN toDn() {
-        DN dn = new DN();
-        dn.rdns.addAll(rdns);
-        return dn;
+        return new DN(rdns.toArray(new RDN[rdns.size()]));
     }
 
     public String toString() {
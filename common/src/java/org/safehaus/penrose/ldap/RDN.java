@@ -34,9 +34,9 @@ public class RDN implements Serializable, Comparable {
 
     public Map<String,Object> values = new TreeMap<String,Object>();
 
-    protected String original;
-    protected String normalized;
-    public String pattern;
+    protected volatile String original;
+    protected volatile String normalized;
+    public volatile String pattern;
 
     public RDN() {
     }
@@ -82,15 +82,29 @@ public class RDN implements Serializable, Comparable {
     }
 
     public String getOriginal() throws Exception {
-        if (original != null) return original;
-        original = buildString(false);
-        return original;
+        String s = original;
+        if (s != null) return s;
+        s = buildString(false);
+        original = s;
+        return s;
     }
 
     public String getNormalized() throws Exception {
-        if (normalized != null) return normalized;
-        normalized = buildString(true);
-        return normalized;
+        String s = normalized;
+        if (s != null) return s;
+        s = buildString(true);
+        normalized = s;
+        return s;
+    }
+
+    /**
+     * Returns true if any value is a "..." wildcard used in mapping patterns.
+     */
+    public boolean isWildcard() {
+        for (Object value : values.values()) {
+            if ("...".equals(value)) return true;
+        }
+        return false;
     }
 
     private String buildString(boolean normalize) throws Exception {
@@ -106,7 +120,7 @@ public class RDN implements Serializable, Comparable {
                 sb.append('#');
                 byte[] bytes = (byte[]) value;
                 for (byte b : bytes) {
-                    sb.append(hex((char)b));
+                    sb.append(hex(b & 0xff));
                 }
             } else {
                 sb.append(LDAP.escape(normalize ? value.toString().toLowerCase() : value.toString()));
@@ -116,7 +130,7 @@ public class RDN implements Serializable, Comparable {
         return sb.toString();
     }
 
-    private static String hex(char b) {
+    private static String hex(int b) {
         String hex = Integer.toHexString(b);
         if (hex.length() % 2 == 1) {
             hex = "0" + hex;
@@ -207,10 +221,20 @@ public class RDN implements Serializable, Comparable {
     public int createPattern(int counter) {
 
         StringBuilder sb = new StringBuilder();
+        counter = appendPattern(sb, counter);
+        pattern = sb.toString();
+
+        return counter;
+    }
+
+    public int appendPattern(StringBuilder sb, int counter) {
+
+        boolean first = true;
         for (String name : values.keySet()) {
             String value = (String) values.get(name);
 
-            if (sb.length() > 0) sb.append('+');
+            if (!first) sb.append('+');
+            first = false;
 
             sb.append(name);
             sb.append('=');
@@ -225,8 +249,6 @@ public class RDN implements Serializable, Comparable {
             }
         }
 
-        pattern = sb.toString();
-
         return counter;
     }
 
@@ -265,7 +287,7 @@ public class RDN implements Serializable, Comparable {
         return true;
     }
 
-    public synchronized DN append(DN dn) throws Exception {
+    public DN append(DN dn) throws Exception {
         DNBuilder db = new DNBuilder();
         db.append(this);
         db.append(dn);
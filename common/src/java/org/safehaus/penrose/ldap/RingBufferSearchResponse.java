@@ -0,0 +1,388 @@
+/**
+ * Copyright 2009 Red Hat, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.safehaus.penrose.ldap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Search response without a shared monitor between the producer and the consumer.
+ *
+ * If the buffer size is set the results are stored in a bounded ring buffer and
+ * the producer is blocked while the buffer is full. Otherwise the results are
+ * stored in an unbounded lock-free queue. The consumer (hasNext()/next()) never
+ * takes a lock, it must be a single thread. Producers are serialized by their own
+ * lock so parallel searches can still add results into the same response.
+ *
+ * A waiting consumer is woken up as soon as a result is available. A producer
+ * waiting on a full buffer is woken up once a batch of slots has been freed. Both
+ * sides also wake up periodically so a missed signal is never stuck. Once the
+ * response is closed, e.g. after an abandon, a producer blocked on a full buffer
+ * is released and the remaining results are dropped.
+ *
+ * @author Endi S. Dewata
+ */
+public class RingBufferSearchResponse extends SearchResponse {
+
+    public final static int  DEFAULT_WAKEUP_BATCH = 32;
+    public final static long DEFAULT_PARK_TIME    = 1000000L; // nanoseconds
+
+    protected int wakeupBatch = DEFAULT_WAKEUP_BATCH;
+    protected long parkTime = DEFAULT_PARK_TIME;
+
+    protected Object[] buffer;
+    protected int mask;
+
+    protected Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+
+    // written by the producer only
+    protected volatile long tail;
+
+    // written by the consumer only
+    protected volatile long head;
+
+    protected volatile boolean finished;
+
+    // copy of totalCount which can be read without the producer lock
+    protected volatile long count;
+
+    protected volatile Thread waitingConsumer;
+    protected volatile Thread waitingProducer;
+
+    protected Object producerLock = new Object();
+
+    public RingBufferSearchResponse() {
+    }
+
+    public RingBufferSearchResponse(long bufferSize) {
+        setBufferSize(bufferSize);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Producer
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void add(SearchResult result) throws Exception {
+
+        synchronized (producerLock) {
+
+            if (sizeLimit > 0 && totalCount >= sizeLimit) {
+                exception = LDAP.createException(LDAP.SIZE_LIMIT_EXCEEDED);
+                throw exception;
+            }
+
+            if (listeners != null && !listeners.isEmpty()) {
+                for (SearchListener listener : listeners) {
+                    listener.add(result);
+                }
+            } else {
+                offer(result);
+            }
+
+            totalCount++;
+            count = totalCount;
+        }
+    }
+
+    public void add(SearchReference reference) throws Exception {
+
+        synchronized (producerLock) {
+
+            if (listeners != null && !listeners.isEmpty()) {
+                for (SearchListener listener : listeners) {
+                    listener.add(reference);
+                }
+            } else {
+                offer(reference);
+            }
+        }
+    }
+
+    protected void offer(Object object) {
+
+        if (buffer == null) {
+            queue.offer(object);
+
+        } else {
+            while (!finished && tail - head >= bufferSize) {
+                waitingProducer = Thread.currentThread();
+                if (!finished && tail - head >= bufferSize) {
+                    Logger log = LoggerFactory.getLogger(getClass());
+                    if (log.isDebugEnabled()) log.debug("Buffer full (size: "+bufferSize+").");
+                    LockSupport.parkNanos(parkTime);
+                }
+                waitingProducer = null;
+            }
+
+            // the slots might still hold unconsumed results
+            if (finished) {
+                Logger log = LoggerFactory.getLogger(getClass());
+                if (log.isDebugEnabled()) log.debug("Search response has been closed, dropping result.");
+                return;
+            }
+
+            buffer[(int)tail & mask] = object;
+        }
+
+        tail = tail + 1;
+
+        Thread thread = waitingConsumer;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    protected long getBatchSize() {
+        if (buffer == null) return wakeupBatch;
+        return Math.min(wakeupBatch, Math.max(1, bufferSize / 2));
+    }
+
+    public void close() throws Exception {
+
+        // release a producer blocked on a full buffer before taking its lock
+        finished = true;
+
+        Thread thread = waitingProducer;
+        if (thread != null) LockSupport.unpark(thread);
+
+        synchronized (producerLock) {
+            if (listeners != null && !listeners.isEmpty()) {
+                for (SearchListener listener : listeners) {
+                    listener.close();
+                }
+            }
+
+            closed = true;
+        }
+
+        thread = waitingConsumer;
+        if (thread != null) LockSupport.unpark(thread);
+
+        Logger log = LoggerFactory.getLogger(getClass());
+        log.debug("Search response has been closed.");
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Consumer
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    protected Object poll() {
+
+        long h = head;
+        if (h == tail) return null;
+
+        Object object;
+
+        if (buffer == null) {
+            object = queue.poll();
+
+        } else {
+            int i = (int)h & mask;
+            object = buffer[i];
+            buffer[i] = null;
+        }
+
+        head = h + 1;
+
+        Thread thread = waitingProducer;
+        if (thread != null && bufferSize - (tail - head) >= getBatchSize()) {
+            LockSupport.unpark(thread);
+        }
+
+        return object;
+    }
+
+    protected void await() {
+        waitingConsumer = Thread.currentThread();
+        if (!finished && head == tail) LockSupport.parkNanos(parkTime);
+        waitingConsumer = null;
+    }
+
+    public boolean hasNext() throws Exception {
+
+        while (head == tail) {
+
+            if (finished) {
+                if (head != tail) break;
+                if (exception.getResultCode() != LDAP.SUCCESS) throw exception;
+                return false;
+            }
+
+            await();
+        }
+
+        return true;
+    }
+
+    public SearchResult next() throws Exception {
+
+        Object object;
+
+        while ((object = poll()) == null) {
+
+            if (finished) {
+                object = poll();
+                if (object != null) break;
+                return null;
+            }
+
+            await();
+
+            if (head == tail && exception.getResultCode() != LDAP.SUCCESS) throw exception;
+        }
+
+        if (object instanceof SearchReference) {
+            throw new SearchReferenceException((SearchReference)object);
+        }
+
+        return (SearchResult)object;
+    }
+
+    protected void drain() {
+        Object object;
+        while ((object = poll()) != null) {
+            if (object instanceof SearchReference) {
+                references.add((SearchReference)object);
+            } else {
+                results.add((SearchResult)object);
+            }
+        }
+    }
+
+    public Collection<SearchResult> getResults() {
+        while (!finished) await();
+        drain();
+        return results;
+    }
+
+    public Collection<SearchReference> getReferences() {
+        if (finished) drain();
+        return references;
+    }
+
+    public int waitFor() {
+        while (!finished) await();
+        return exception.getResultCode();
+    }
+
+    public boolean isClosed() {
+        return finished;
+    }
+
+    public long getTotalCount() {
+        return count;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Configuration
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The buffer size has to be set before the first result is added.
+     */
+    public void setBufferSize(long bufferSize) {
+
+        if (head != tail) {
+            Logger log = LoggerFactory.getLogger(getClass());
+            log.warn("Buffer size cannot be changed while the buffer is not empty.");
+            return;
+        }
+
+        super.setBufferSize(bufferSize);
+
+        if (bufferSize <= 0) {
+            buffer = null;
+            mask = 0;
+            return;
+        }
+
+        int capacity = 1;
+        while (capacity < bufferSize) capacity <<= 1;
+
+        buffer = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getWakeupBatch() {
+        return wakeupBatch;
+    }
+
+    public void setWakeupBatch(int wakeupBatch) {
+        this.wakeupBatch = wakeupBatch;
+    }
+
+    public long getParkTime() {
+        return parkTime;
+    }
+
+    public void setParkTime(long parkTime) {
+        this.parkTime = parkTime;
+    }
+
+    public void copy(SearchResponse response) {
+        super.copy(response);
+
+        producerLock = new Object();
+        queue = new ConcurrentLinkedQueue<Object>();
+        head = 0;
+        tail = 0;
+        count = totalCount;
+
+        waitingConsumer = null;
+        waitingProducer = null;
+
+        wakeupBatch = DEFAULT_WAKEUP_BATCH;
+        parkTime = DEFAULT_PARK_TIME;
+
+        setBufferSize(response.bufferSize);
+
+        if (!(response instanceof RingBufferSearchResponse)) {
+            finished = response.closed;
+            return;
+        }
+
+        RingBufferSearchResponse rb = (RingBufferSearchResponse)response;
+
+        synchronized (rb.producerLock) {
+            wakeupBatch = rb.wakeupBatch;
+            parkTime = rb.parkTime;
+            finished = rb.finished;
+
+            if (rb.buffer == null) {
+                for (Object object : rb.queue) {
+                    queue.offer(object);
+                    tail = tail + 1;
+                }
+
+            } else {
+                for (long i = rb.head; i < rb.tail; i++) {
+                    Object object = rb.buffer[(int)i & rb.mask];
+                    if (object == null) continue;
+                    if (buffer == null) {
+                        queue.offer(object);
+                    } else {
+                        buffer[(int)tail & mask] = object;
+                    }
+                    tail = tail + 1;
+                }
+            }
+        }
+    }
+}
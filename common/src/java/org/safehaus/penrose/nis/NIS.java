@@ -20,4 +20,7 @@ public class NIS {
     public final static String FILTER         = "filter";
     public final static String OBJECT_CLASSES = "objectClasses";
     public final static String PAM            = "pam";
+
+    public final static String SNAPSHOT         = "snapshot";
+    public final static String REFRESH_INTERVAL = "refreshInterval";
 }
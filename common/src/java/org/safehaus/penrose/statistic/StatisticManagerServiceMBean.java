@@ -0,0 +1,19 @@
+package org.safehaus.penrose.statistic;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @author Endi Sukma Dewata
+ */
+public interface StatisticManagerServiceMBean {
+
+    public Collection<String> getStatisticNames() throws Exception;
+    public Long getCounter(String name) throws Exception;
+
+    public Collection<String> getHistogramNames() throws Exception;
+    public Map<String,Long> getHistogram(String name) throws Exception;
+
+    public Long getStartTime() throws Exception;
+    public void reset() throws Exception;
+}
@@ -21,6 +21,18 @@ public class ThreadManagerConfig implements Serializable, Cloneable {
     public final static String KEEP_ALIVE_TIME        = "keepAliveTime";
     public final static int DEFAULT_KEEP_ALIVE_TIME   = 60;
 
+    // 0 means unbounded, forked tasks which don't fit are run by the joining thread
+    public final static String QUEUE_SIZE             = "queueSize";
+    public final static int DEFAULT_QUEUE_SIZE        = 0;
+
+    // maximum number of forked search tasks, 0 means maximumPoolSize
+    public final static String PARALLELISM            = "parallelism";
+    public final static int DEFAULT_PARALLELISM       = 0;
+
+    // forked tasks keep the results of their subtree until they are joined
+    public final static String ORDERED_RESULTS        = "orderedResults";
+    public final static boolean DEFAULT_ORDERED_RESULTS = false;
+
     private boolean enabled = true;
 
     private String threadManagerClass;
@@ -192,7 +192,7 @@ public class Penrose {
 
         sessionContext.load();
 
-        statisticManager = new StatisticManager();
+        statisticManager = penroseContext.getStatisticManager();
     }
 
     public void clear() throws Exception {
@@ -0,0 +1,95 @@
+package org.safehaus.penrose.acl;
+
+import org.safehaus.penrose.directory.Entry;
+import org.safehaus.penrose.ldap.DN;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ACL decisions of a session. The decisions are valid as long as the session is bound
+ * with the same DN and the compiled ACLs have not been invalidated.
+ *
+ * A decision is stored per entry and permission. If the rules contain a self subject
+ * the decision also depends on the target DN, so it's stored per target DN and the
+ * entry is marked with TARGET_DEPENDENT.
+ *
+ * @author Endi S. Dewata
+ */
+public class ACLCache {
+
+    public final static int MAX_SIZE = 10000;
+
+    public final static Object TARGET_DEPENDENT = new Object();
+
+    // permission of the read rules
+    public final static int READ_ATTRIBUTES = -1;
+
+    public static class Key {
+
+        Entry entry;
+        int permission;
+        String target;
+
+        public Key(Entry entry, int permission, String target) {
+            this.entry = entry;
+            this.permission = permission;
+            this.target = target;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(entry) * 31 + permission + (target == null ? 0 : target.hashCode());
+        }
+
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Key)) return false;
+
+            Key key = (Key)object;
+            if (entry != key.entry) return false;
+            if (permission != key.permission) return false;
+            if (target == null) return key.target == null;
+            return target.equals(key.target);
+        }
+    }
+
+    private DN bindDn;
+    private String bindKey;
+    private long version;
+
+    private Map<Key,Object> decisions = new HashMap<Key,Object>();
+
+    public ACLCache(DN bindDn, long version) throws Exception {
+        this.bindDn = bindDn;
+        this.bindKey = CompiledACI.getKey(bindDn);
+        this.version = version;
+    }
+
+    public boolean isValid(DN bindDn, long version) throws Exception {
+        if (this.version != version) return false;
+        if (this.bindDn == bindDn) return true;
+        if (this.bindDn == null || bindDn == null) return false;
+        return this.bindDn.getNormalizedDn().equals(bindDn.getNormalizedDn());
+    }
+
+    public synchronized Object get(Key key) {
+        return decisions.get(key);
+    }
+
+    public synchronized void put(Key key, Object value) {
+        if (decisions.size() >= MAX_SIZE) decisions.clear();
+        decisions.put(key, value);
+    }
+
+    public DN getBindDn() {
+        return bindDn;
+    }
+
+    public String getBindKey() {
+        return bindKey;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
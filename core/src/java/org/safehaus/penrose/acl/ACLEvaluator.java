@@ -30,6 +30,11 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 
 /**
+ * Evaluates the ACL of the entries. The ACIs are compiled into a CompiledACL the first
+ * time an entry is checked and kept until the directory changes. The decisions are kept
+ * in an ACLCache in the session, so repeated checks of the same entry and permission by
+ * the same bind DN don't evaluate the rules again.
+ *
  * @author Endi S. Dewata
  */
 public class ACLEvaluator {
@@ -38,11 +43,63 @@ public class ACLEvaluator {
 
     Partition partition;
 
+    // name of the session attribute holding the ACLCache
+    String cacheName = "acl";
+
+    private Map<Entry,CompiledACL> compiledAcls = new IdentityHashMap<Entry,CompiledACL>();
+    private volatile long version;
+
     public ACLEvaluator() {
     }
 
     public void init(Partition partition) throws Exception {
         this.partition = partition;
+        if (partition != null) cacheName = partition.getName()+".acl";
+    }
+
+    /**
+     * Discards the compiled ACLs and the cached decisions after the directory has changed.
+     */
+    public synchronized void invalidate() {
+        compiledAcls.clear();
+        version++;
+    }
+
+    public synchronized CompiledACL getCompiledACL(Entry entry) throws Exception {
+
+        CompiledACL acl = compiledAcls.get(entry);
+        if (acl != null) return acl;
+
+        Entry parent = entry.getParent();
+        CompiledACL parentAcl = parent == null ? null : getCompiledACL(parent);
+
+        if (log.isDebugEnabled()) log.debug("Compiling ACL of \""+entry.getDn()+"\".");
+
+        acl = new CompiledACL(entry, parentAcl);
+        compiledAcls.put(entry, acl);
+
+        return acl;
+    }
+
+    String getTarget(DN targetDn) throws Exception {
+        return targetDn == null ? "" : targetDn.getNormalizedDn();
+    }
+
+    public ACLCache getCache(Session session) throws Exception {
+
+        DN bindDn = session.getBindDn();
+        long v = version;
+
+        synchronized (session) {
+            ACLCache cache = (ACLCache)session.getAttribute(cacheName);
+
+            if (cache == null || !cache.isValid(bindDn, v)) {
+                cache = new ACLCache(bindDn, v);
+                session.setAttribute(cacheName, cache);
+            }
+
+            return cache;
+        }
     }
 
     public void addPermission(Set<String> set, String permission) {
@@ -69,82 +126,80 @@ public class ACLEvaluator {
 
         if (entry == null) return true;
 
+        CompiledACL acl = getCompiledACL(entry);
+        int mask = CompiledACI.getPermissions(permission);
+        boolean subtree = ACI.SCOPE_SUBTREE.equals(scope);
+
+        return evaluate(acl.getObjectRules(mask, subtree), mask, bindDn, CompiledACI.getKey(bindDn), targetDn);
+    }
+
+    public boolean evaluate(
+            CompiledACI[] rules,
+            int mask,
+            DN bindDn,
+            String bindKey,
+            DN targetDn
+    ) throws Exception {
+
         boolean debug = log.isDebugEnabled();
-        if (debug) {
-            log.debug("Checking ACL on \""+entry.getDn()+"\".");
-            //log.debug("Bind DN: "+bindDn);
-            //log.debug("Target DN: "+targetDn);
-        }
 
-        for (ACI aci : entry.getACL()) {
-            //log.debug(" - "+aci);
+        for (CompiledACI aci : rules) {
+            if (!aci.hasPermissions(mask)) continue;
+            if (!aci.matches(bindDn, bindKey, targetDn)) continue;
 
-            if (!aci.getTarget().equals(ACI.TARGET_OBJECT)) {
-                //log.debug("   ==> not checking target");
-                continue;
-            }
+            if (debug) log.debug("ACI: "+aci);
+            return aci.isGrant();
+        }
 
-            if (scope != null && !scope.equals(aci.getScope()) && !aci.getScope().equals(ACI.SCOPE_SUBTREE)) {
-                //log.debug("   ==> scope "+scope+" doesn't match");
-                continue;
-            }
+        if (debug) log.debug("No matching ACI.");
+        return false;
+    }
 
-            if (aci.getPermission().indexOf(permission) < 0) {
-                //log.debug("   ==> permission "+permission+" not defined");
-                continue;
-            }
+    /**
+     * Returns the object permission from the decisions of the session.
+     */
+    public boolean getObjectPermission(
+            Session session,
+            Entry entry,
+            DN targetDn,
+            String permission
+    ) throws Exception {
 
-            String subject = aci.getSubject();
-            //log.debug("   ==> checking subject "+subject);
+        if (entry == null) return true;
 
-            if (subject.equals(ACI.SUBJECT_USER)) {
-                DN dn = aci.getDn();
-                if (dn == null) throw new Exception("Missing dn in ACI");
-                boolean match = dn.matches(bindDn);
-                log.debug("ACI: "+aci);
-                if (match) {
-                    return aci.getAction().equals(ACI.ACTION_GRANT);
-                }
-            }
+        boolean debug = log.isDebugEnabled();
+        if (debug) log.debug("Checking ACL on \""+entry.getDn()+"\".");
 
-            if (subject.equals(ACI.SUBJECT_SELF)) {
-                boolean match = targetDn.matches(bindDn);
-                log.debug("ACI: "+aci);
-                if (match) {
-                    return aci.getAction().equals(ACI.ACTION_GRANT);
-                }
-            }
+        ACLCache cache = getCache(session);
+        int mask = CompiledACI.getPermissions(permission);
 
-            if (subject.equals(ACI.SUBJECT_ANONYMOUS)) {
-                boolean anonymous = bindDn == null;
-                log.debug("ACI: "+aci);
-                if (anonymous) {
-                    return aci.getAction().equals(ACI.ACTION_GRANT);
-                }
-            }
+        ACLCache.Key key = new ACLCache.Key(entry, mask, null);
+        Object value = cache.get(key);
 
-            if (subject.equals(ACI.SUBJECT_AUTHENTICATED)) {
-                boolean authenticated = bindDn != null;
-                log.debug("ACI: "+aci);
-                if (authenticated) {
-                    return aci.getAction().equals(ACI.ACTION_GRANT);
-                }
-            }
+        if (value == ACLCache.TARGET_DEPENDENT) {
+            key = new ACLCache.Key(entry, mask, getTarget(targetDn));
+            value = cache.get(key);
+        }
 
-            if (subject.equals(ACI.SUBJECT_ANYBODY)) {
-                return aci.getAction().equals(ACI.ACTION_GRANT);
-            }
+        if (value != null) {
+            if (debug) log.debug("Cached ACL decision: "+value);
+            return (Boolean)value;
         }
 
-        Entry parent = entry.getParent();
-        if (parent == null) {
-        	if (debug) {
-        		log.debug("Parent entry for "+ entry.getDn()+" not found.");
-        	}
-            return false;
+        CompiledACL acl = getCompiledACL(entry);
+        CompiledACI[] rules = acl.getObjectRules(mask, false);
+
+        boolean result = evaluate(rules, mask, cache.getBindDn(), cache.getBindKey(), targetDn);
+
+        if (CompiledACL.containsSelf(rules)) {
+            cache.put(new ACLCache.Key(entry, mask, null), ACLCache.TARGET_DEPENDENT);
+            cache.put(new ACLCache.Key(entry, mask, getTarget(targetDn)), result);
+
+        } else {
+            cache.put(key, result);
         }
 
-        return getObjectPermission(bindDn, parent, targetDn, ACI.SCOPE_SUBTREE, permission);
+        return result;
     }
 
     public int checkPermission(
@@ -168,8 +223,7 @@ public class ACLEvaluator {
             return rc;
         }
 
-        DN bindDn = session.getBindDn();
-        boolean result = getObjectPermission(bindDn, entry, dn, ACI.SCOPE_OBJECT, permission);
+        boolean result = getObjectPermission(session, entry, dn, permission);
 
         if (result) {
             log.debug("ACL evaluation => SUCCESS");
@@ -369,6 +423,56 @@ public class ACLEvaluator {
         }
     }
 
+    /**
+     * Returns the attributes of the entry which are readable by the bind DN of the
+     * session. The result is kept in the session.
+     */
+    public ReadableAttributes getReadableAttributes(
+            Session session,
+            Entry entry,
+            DN targetDn
+    ) throws Exception {
+
+        if (entry == null) return ReadableAttributes.NONE;
+
+        ACLCache cache = getCache(session);
+
+        ACLCache.Key key = new ACLCache.Key(entry, ACLCache.READ_ATTRIBUTES, null);
+        Object value = cache.get(key);
+
+        if (value == ACLCache.TARGET_DEPENDENT) {
+            key = new ACLCache.Key(entry, ACLCache.READ_ATTRIBUTES, getTarget(targetDn));
+            value = cache.get(key);
+        }
+
+        if (value != null) return (ReadableAttributes)value;
+
+        boolean debug = log.isDebugEnabled();
+        if (debug) log.debug("Checking read ACL in "+entry.getDn()+":");
+
+        CompiledACL acl = getCompiledACL(entry);
+        CompiledACI[] rules = acl.getReadRules();
+
+        ReadableAttributes readableAttributes = new ReadableAttributes();
+
+        for (CompiledACI aci : rules) {
+            if (!aci.matches(cache.getBindDn(), cache.getBindKey(), targetDn)) continue;
+
+            if (debug) log.debug(" - "+aci);
+            readableAttributes.apply(aci);
+        }
+
+        if (CompiledACL.containsSelf(rules)) {
+            cache.put(new ACLCache.Key(entry, ACLCache.READ_ATTRIBUTES, null), ACLCache.TARGET_DEPENDENT);
+            cache.put(new ACLCache.Key(entry, ACLCache.READ_ATTRIBUTES, getTarget(targetDn)), readableAttributes);
+
+        } else {
+            cache.put(key, readableAttributes);
+        }
+
+        return readableAttributes;
+    }
+
     public void filterAttributes(
             Session session,
             SearchResult result
@@ -383,29 +487,16 @@ public class ACLEvaluator {
         DN dn = result.getDn();
         Attributes attributes = result.getAttributes();
 
-        Collection<String> attributeNames = attributes.getNormalizedNames();
-
-        Set<String> grants = new HashSet<String>();
-        Set<String> denies = new HashSet<String>();
-        denies.addAll(attributeNames);
-
-        DN bindDn = session.getBindDn();
-
         String entryId = result.getEntryName();
         Entry entry = partition.getDirectory().getEntry(entryId);
 
-        getReadableAttributes(bindDn, entry, dn, null, attributeNames, grants, denies);
-
-        if (debug) {
-            log.debug("Returned: "+attributeNames);
-            log.debug("Granted: "+grants);
-            log.debug("Denied: "+denies);
-        }
+        ReadableAttributes readableAttributes = getReadableAttributes(session, entry, dn);
+        if (debug) log.debug("Readable attributes: "+readableAttributes);
 
         for (String attributeName : attributes.getNames()) {
             String normalizedName = attributeName.toLowerCase();
 
-            if (!denies.contains(normalizedName)) {
+            if (readableAttributes.isReadable(normalizedName)) {
                 //log.debug("Keep undenied attribute "+normalizedName);
                 continue;
             }
@@ -0,0 +1,194 @@
+package org.safehaus.penrose.acl;
+
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.ldap.RDN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.StringTokenizer;
+
+/**
+ * ACI prepared for evaluation. The strings of the ACI are resolved into flags and the
+ * permissions into a bit mask. The DN of a user subject is kept in normalized form, so
+ * it's matched against the bind DN by comparing the hash codes and the strings instead
+ * of the RDNs.
+ *
+ * @author Endi S. Dewata
+ */
+public class CompiledACI {
+
+    public final static int SUBJECT_UNKNOWN       = 0;
+    public final static int SUBJECT_USER          = 1;
+    public final static int SUBJECT_SELF          = 2;
+    public final static int SUBJECT_ANYBODY       = 3;
+    public final static int SUBJECT_ANONYMOUS     = 4;
+    public final static int SUBJECT_AUTHENTICATED = 5;
+
+    // one bit for each letter
+    public final static int PERMISSIONS = 26;
+
+    private ACI aci;
+
+    private int subject;
+    private DN dn;
+    private String normalizedDn;
+    private int hash;
+
+    private boolean objectTarget;
+    private boolean attributesTarget;
+    private Collection<String> attributes = new ArrayList<String>();
+
+    private boolean subtree;
+    private boolean grant;
+    private boolean deny;
+    private int permissions;
+
+    public CompiledACI(ACI aci) throws Exception {
+        this.aci = aci;
+
+        String s = aci.getSubject();
+        if (ACI.SUBJECT_USER.equals(s)) {
+            subject = SUBJECT_USER;
+            dn = aci.getDn();
+            normalizedDn = getKey(dn);
+            if (normalizedDn != null) hash = normalizedDn.hashCode();
+
+        } else if (ACI.SUBJECT_SELF.equals(s)) {
+            subject = SUBJECT_SELF;
+
+        } else if (ACI.SUBJECT_ANYBODY.equals(s)) {
+            subject = SUBJECT_ANYBODY;
+
+        } else if (ACI.SUBJECT_ANONYMOUS.equals(s)) {
+            subject = SUBJECT_ANONYMOUS;
+
+        } else if (ACI.SUBJECT_AUTHENTICATED.equals(s)) {
+            subject = SUBJECT_AUTHENTICATED;
+
+        } else {
+            // group subjects are not supported by the evaluator
+            subject = SUBJECT_UNKNOWN;
+        }
+
+        objectTarget = ACI.TARGET_OBJECT.equals(aci.getTarget());
+        attributesTarget = ACI.TARGET_ATTRIBUTES.equals(aci.getTarget());
+
+        if (attributesTarget && aci.getAttributes() != null) {
+            StringTokenizer st = new StringTokenizer(aci.getAttributes(), ",");
+            while (st.hasMoreTokens()) {
+                attributes.add(st.nextToken().trim().toLowerCase());
+            }
+        }
+
+        subtree = ACI.SCOPE_SUBTREE.equals(aci.getScope());
+        grant = ACI.ACTION_GRANT.equals(aci.getAction());
+        deny = ACI.ACTION_DENY.equals(aci.getAction());
+        permissions = getPermissions(aci.getPermission());
+    }
+
+    /**
+     * Returns the bit mask of the permission letters.
+     */
+    public static int getPermissions(String permission) {
+        int mask = 0;
+        if (permission == null) return mask;
+
+        for (int i=0; i<permission.length(); i++) {
+            int bit = Character.toLowerCase(permission.charAt(i)) - 'a';
+            if (bit >= 0 && bit < PERMISSIONS) mask |= 1 << bit;
+        }
+
+        return mask;
+    }
+
+    /**
+     * Returns the normalized DN used to match user subjects, or null if the DN can only
+     * be matched RDN by RDN because it contains a wildcard.
+     */
+    public static String getKey(DN dn) throws Exception {
+        if (dn == null) return null;
+
+        for (RDN rdn : dn.getRdns()) {
+            if (rdn.isWildcard()) return null;
+        }
+
+        return dn.getNormalizedDn();
+    }
+
+    /**
+     * Returns true if the subject of the ACI matches the bind DN. The bind key is the
+     * result of getKey() for the bind DN.
+     */
+    public boolean matches(DN bindDn, String bindKey, DN targetDn) throws Exception {
+
+        switch (subject) {
+            case SUBJECT_USER:
+                if (dn == null) throw new Exception("Missing dn in ACI");
+                if (bindDn == null) return false;
+
+                if (normalizedDn != null && bindKey != null) {
+                    return hash == bindKey.hashCode() && normalizedDn.equals(bindKey);
+                }
+
+                return dn.matches(bindDn);
+
+            case SUBJECT_SELF:
+                return targetDn.matches(bindDn);
+
+            case SUBJECT_ANONYMOUS:
+                return bindDn == null;
+
+            case SUBJECT_AUTHENTICATED:
+                return bindDn != null;
+
+            case SUBJECT_ANYBODY:
+                return true;
+        }
+
+        return false;
+    }
+
+    public boolean hasPermissions(int mask) {
+        return (permissions & mask) == mask;
+    }
+
+    public ACI getAci() {
+        return aci;
+    }
+
+    public int getSubject() {
+        return subject;
+    }
+
+    public boolean isObjectTarget() {
+        return objectTarget;
+    }
+
+    public boolean isAttributesTarget() {
+        return attributesTarget;
+    }
+
+    public Collection<String> getAttributes() {
+        return attributes;
+    }
+
+    public boolean isSubtree() {
+        return subtree;
+    }
+
+    public boolean isGrant() {
+        return grant;
+    }
+
+    public boolean isDeny() {
+        return deny;
+    }
+
+    public int getPermissions() {
+        return permissions;
+    }
+
+    public String toString() {
+        return aci.toString();
+    }
+}
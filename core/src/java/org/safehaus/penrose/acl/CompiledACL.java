@@ -0,0 +1,130 @@
+package org.safehaus.penrose.acl;
+
+import org.safehaus.penrose.directory.Entry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ACL of an entry compiled together with the ACIs inherited from its parents, so a
+ * check doesn't have to walk the parent entries.
+ *
+ * The object permission rules are kept in tables indexed by permission bit in the order
+ * they are evaluated: the ACIs of the entry followed by the subtree ACIs of the parents.
+ * The first rule whose subject matches decides. The object table is used for the entry
+ * itself, the subtree table is inherited by the children.
+ *
+ * The read rules are kept in the order they are applied to the returned attributes:
+ * the subtree ACIs of the root entry first, and the ACIs of each entry in reverse order.
+ *
+ * @author Endi S. Dewata
+ */
+public class CompiledACL {
+
+    public final static CompiledACI[] EMPTY = new CompiledACI[0];
+
+    public final static int READ = CompiledACI.getPermissions(ACI.PERMISSION_READ);
+
+    private Entry entry;
+
+    private CompiledACI[][] objectRules = new CompiledACI[CompiledACI.PERMISSIONS][];
+    private CompiledACI[][] subtreeRules = new CompiledACI[CompiledACI.PERMISSIONS][];
+
+    private CompiledACI[] readRules;
+    private CompiledACI[] subtreeReadRules;
+
+    public CompiledACL(Entry entry, CompiledACL parent) throws Exception {
+        this.entry = entry;
+
+        List<CompiledACI> acis = new ArrayList<CompiledACI>();
+        for (ACI aci : entry.getACL()) {
+            acis.add(new CompiledACI(aci));
+        }
+
+        for (int i=0; i<CompiledACI.PERMISSIONS; i++) {
+            CompiledACI[] inherited = parent == null ? EMPTY : parent.subtreeRules[i];
+            objectRules[i] = createRules(acis, 1 << i, false, inherited);
+            subtreeRules[i] = createRules(acis, 1 << i, true, inherited);
+        }
+
+        CompiledACI[] inherited = parent == null ? EMPTY : parent.subtreeReadRules;
+        readRules = createReadRules(acis, false, inherited);
+        subtreeReadRules = createReadRules(acis, true, inherited);
+    }
+
+    CompiledACI[] createRules(List<CompiledACI> acis, int mask, boolean subtree, CompiledACI[] inherited) {
+
+        List<CompiledACI> list = new ArrayList<CompiledACI>();
+
+        for (CompiledACI aci : acis) {
+            if (!aci.isObjectTarget()) continue;
+            if (subtree && !aci.isSubtree()) continue;
+            if (!aci.hasPermissions(mask)) continue;
+
+            list.add(aci);
+
+            // the following rules would never be reached
+            if (aci.getSubject() == CompiledACI.SUBJECT_ANYBODY) return toArray(list);
+        }
+
+        list.addAll(Arrays.asList(inherited));
+
+        return toArray(list);
+    }
+
+    CompiledACI[] createReadRules(List<CompiledACI> acis, boolean subtree, CompiledACI[] inherited) {
+
+        List<CompiledACI> list = new ArrayList<CompiledACI>(Arrays.asList(inherited));
+
+        for (int i=acis.size()-1; i>=0; i--) {
+            CompiledACI aci = acis.get(i);
+
+            if (!aci.isObjectTarget() && !aci.isAttributesTarget()) continue;
+            if (subtree && !aci.isSubtree()) continue;
+            if (!aci.hasPermissions(READ)) continue;
+            if (!aci.isGrant() && !aci.isDeny()) continue;
+
+            // the rules before would be overridden
+            if (aci.isObjectTarget() && aci.getSubject() == CompiledACI.SUBJECT_ANYBODY) list.clear();
+
+            list.add(aci);
+        }
+
+        return toArray(list);
+    }
+
+    CompiledACI[] toArray(List<CompiledACI> list) {
+        if (list.isEmpty()) return EMPTY;
+        return list.toArray(new CompiledACI[list.size()]);
+    }
+
+    /**
+     * Returns the rules for the permissions in the given bit mask in evaluation order.
+     * The rules must still be checked with hasPermissions() if the mask has more than
+     * one bit.
+     */
+    public CompiledACI[] getObjectRules(int mask, boolean subtree) {
+        if (mask == 0) return EMPTY;
+        int bit = Integer.numberOfTrailingZeros(mask);
+        return subtree ? subtreeRules[bit] : objectRules[bit];
+    }
+
+    public CompiledACI[] getReadRules() {
+        return readRules;
+    }
+
+    /**
+     * Returns true if the result of the rules depends on the target DN.
+     */
+    public static boolean containsSelf(CompiledACI[] rules) {
+        for (CompiledACI aci : rules) {
+            if (aci.getSubject() == CompiledACI.SUBJECT_SELF) return true;
+        }
+        return false;
+    }
+
+    public Entry getEntry() {
+        return entry;
+    }
+}
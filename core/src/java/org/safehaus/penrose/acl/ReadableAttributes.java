@@ -0,0 +1,49 @@
+package org.safehaus.penrose.acl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Result of the read rules of an entry for a bind DN. An object rule grants or denies
+ * all attributes and overrides the previous rules, an attribute rule grants or denies
+ * the listed attributes. Attributes which are not covered by any rule are denied.
+ *
+ * @author Endi S. Dewata
+ */
+public class ReadableAttributes {
+
+    public final static ReadableAttributes NONE = new ReadableAttributes();
+
+    private boolean readable;
+
+    // normalized attribute names
+    private Map<String,Boolean> attributes = new HashMap<String,Boolean>();
+
+    public void apply(CompiledACI aci) {
+
+        if (aci.isObjectTarget()) {
+            readable = aci.isGrant();
+            attributes.clear();
+            return;
+        }
+
+        Boolean value = aci.isGrant();
+        for (String name : aci.getAttributes()) {
+            attributes.put(name, value);
+        }
+    }
+
+    public boolean isReadable(String normalizedName) {
+        Boolean value = attributes.get(normalizedName);
+        return value == null ? readable : value;
+    }
+
+    public Collection<String> getAttributes() {
+        return attributes.keySet();
+    }
+
+    public String toString() {
+        return (readable ? "grant" : "deny")+" except "+attributes;
+    }
+}
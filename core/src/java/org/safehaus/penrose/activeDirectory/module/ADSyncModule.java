@@ -2,6 +2,9 @@ package org.safehaus.penrose.activeDirectory.module;
 
 import org.safehaus.penrose.activeDirectory.thread.ADSyncRunnable;
 import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.ldap.connection.LDAPConnection;
+import org.safehaus.penrose.ldap.feed.ADNotificationFeed;
+import org.safehaus.penrose.ldap.feed.ChangeListener;
 import org.safehaus.penrose.ldap.source.LDAPSource;
 import org.safehaus.penrose.module.Module;
 import org.safehaus.penrose.schema.SchemaManager;
@@ -21,13 +24,19 @@ import java.util.TreeSet;
  */
 public class ADSyncModule extends Module {
 
+    public final static String MODE         = "mode";
+    public final static String NOTIFICATION = "notification";
+    public final static String DIRSYNC      = "dirsync";
+
     LDAPSource source;
     LDAPSource target;
 
     DN baseDn;
     int interval = 30;
+    String mode = DIRSYNC;
 
     ADSyncRunnable runnable;
+    ADNotificationFeed feed;
 
     public void init() throws Exception {
 
@@ -51,8 +60,50 @@ public class ADSyncModule extends Module {
         log.debug("Interval: "+s);
         if (s != null) interval = Integer.parseInt(s);
 
-        runnable = new ADSyncRunnable(this);
-        new Thread(runnable).start();
+        s = getParameter(MODE);
+        log.debug("Mode: "+s);
+        if (s != null) mode = s;
+
+        if (NOTIFICATION.equals(mode)) {
+            feed = createFeed();
+            feed.start();
+
+        } else {
+            runnable = new ADSyncRunnable(this);
+            new Thread(runnable).start();
+        }
+    }
+
+    public ADNotificationFeed createFeed() throws Exception {
+
+        LDAPConnection connection = (LDAPConnection)source.getConnection();
+
+        ADNotificationFeed feed = new ADNotificationFeed(
+                partition.getName()+"."+getName(),
+                connection.connectionFactory,
+                new ChangeListener() {
+                    public void resume() throws Exception {
+                    }
+                    public void process(Attributes change) throws Exception {
+                        Session session = createAdminSession();
+                        try {
+                            ADSyncModule.this.process(session, change);
+                        } finally {
+                            session.close();
+                        }
+                    }
+                }
+        );
+
+        feed.setBaseDn(baseDn);
+        feed.setFilter(source.getFilter());
+        feed.setAttributes(source.getFieldOriginalNames());
+
+        return feed;
+    }
+
+    public void destroy() throws Exception {
+        stop();
     }
 
     public LDAPSource getSource() {
@@ -72,7 +123,8 @@ public class ADSyncModule extends Module {
     }
 
     public void stop() {
-        runnable.stop();
+        if (runnable != null) runnable.stop();
+        if (feed != null) feed.stop();
     }
     
     public void process(Session session, Attributes attributes) throws Exception {
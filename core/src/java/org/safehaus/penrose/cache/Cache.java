@@ -1,13 +1,20 @@
 package org.safehaus.penrose.cache;
 
-import org.safehaus.penrose.ldap.SearchResponse;
+import org.ietf.ldap.LDAPException;
+import org.safehaus.penrose.ldap.*;
 import org.safehaus.penrose.Penrose;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
 
 /**
+ * Cached search results. While the search is running the cache is in loading
+ * state and other identical searches wait for it to finish instead of calling
+ * the backend again.
+ *
  * @author Endi Sukma Dewata
  */
 public class Cache {
@@ -17,7 +24,14 @@ public class Cache {
     private Date creationDate;
     private Date expirationDate;
 
-    private SearchResponse response;
+    private List<Object> results = new ArrayList<Object>();
+    private LDAPException exception = LDAP.createException(LDAP.SUCCESS);
+    private long size;
+
+    // false if the results are incomplete or out of date
+    private volatile boolean valid = true;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
 
     public Cache() {
     }
@@ -30,21 +44,75 @@ public class Cache {
         this.creationDate = creationDate;
     }
 
-    public synchronized SearchResponse getResponse() {
-        Logger log = LoggerFactory.getLogger(getClass());
-        while (response == null) {
+    public void add(SearchResult result) {
+        if (!valid) return;
+        results.add(result);
+        size += CacheManager.estimateSize(result);
+    }
+
+    public void add(SearchReference reference) {
+        if (!valid) return;
+        results.add(reference);
+        size += CacheManager.estimateSize(reference);
+    }
+
+    public long getCount() {
+        return results.size();
+    }
+
+    /**
+     * Returns the estimated size of the results in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public LDAPException getException() {
+        return exception;
+    }
+
+    public void setException(LDAPException exception) {
+        this.exception = exception;
+    }
+
+    /**
+     * Marks the loading finished and releases the waiting searches.
+     */
+    public void finish() {
+        if (!valid) results = null;
+        latch.countDown();
+    }
+
+    public boolean isFinished() {
+        return latch.getCount() == 0;
+    }
+
+    /**
+     * Waits until the loading is finished, then returns the results,
+     * or null if the results cannot be used.
+     */
+    public Collection<Object> getResults() {
+        while (true) {
             try {
-                wait();
+                latch.await();
+                break;
             } catch (InterruptedException e) {
                 Penrose.errorLog.error(e.getMessage(), e);
             }
         }
-        return response;
+        return valid ? results : null;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public void invalidate() {
+        valid = false;
     }
 
-    public synchronized void setResponse(SearchResponse response) {
-        this.response = response;
-        notifyAll();
+    public boolean isExpired(long now) {
+        return expirationDate != null && expirationDate.getTime() <= now;
     }
 
     public CacheKey getKey() {
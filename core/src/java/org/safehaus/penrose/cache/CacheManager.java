@@ -2,25 +2,166 @@ package org.safehaus.penrose.cache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.safehaus.penrose.ldap.SearchResponse;
+import org.safehaus.penrose.ldap.*;
 
-import java.util.LinkedHashMap;
-import java.util.Date;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Search result cache. The caches are distributed over several segments,
+ * each segment is an LRU list with its own lock bounded by the number of
+ * queries and by the estimated size of the results. Caches that are still
+ * being loaded are kept in a separate map so identical searches can wait
+ * for the same backend call.
+ *
  * @author Endi Sukma Dewata
  */
 public class CacheManager {
 
     public Logger log = LoggerFactory.getLogger(getClass());
 
+    public final static int DEFAULT_SEGMENTS = 16;
+
     private int querySize  = 10;
     private int resultSize = 100;
     private int expiration = 5; // minutes
+    private long memorySize = 16 * 1024 * 1024; // bytes
+
+    private Segment[] segments;
+
+    private ConcurrentMap<CacheKey,Cache> loading = new ConcurrentHashMap<CacheKey,Cache>();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+    private AtomicLong invalidations = new AtomicLong();
+
+    class Segment {
+
+        int index;
+
+        LinkedHashMap<CacheKey,Cache> caches = new LinkedHashMap<CacheKey,Cache>(16, 0.75f, true);
+        long size;
+
+        synchronized Cache get(CacheKey key, long now) {
+            Cache cache = caches.get(key);
+            if (cache == null) return null;
+
+            if (cache.isExpired(now) || !cache.isValid()) {
+                remove(key);
+                return null;
+            }
+
+            return cache;
+        }
+
+        synchronized void put(Cache cache) {
+            Cache oldCache = caches.put(cache.getKey(), cache);
+            if (oldCache != null) size -= oldCache.getSize();
+            size += cache.getSize();
+            purge();
+        }
+
+        synchronized Cache remove(CacheKey key) {
+            Cache cache = caches.remove(key);
+            if (cache != null) size -= cache.getSize();
+            return cache;
+        }
+
+        Segment(int index) {
+            this.index = index;
+        }
+
+        synchronized void purge() {
+            int maxQueries = querySize == 0 ? -1 : getMaxQueries(index);
+            long maxSize = memorySize == 0 ? 0 : memorySize / getSegmentCount();
+
+            Iterator<Cache> i = caches.values().iterator();
+            while (i.hasNext()) {
+                if ((maxQueries < 0 || caches.size() <= maxQueries) && (maxSize == 0 || size <= maxSize)) break;
+
+                Cache cache = i.next();
+                i.remove();
+                size -= cache.getSize();
+
+                evictions.incrementAndGet();
+                if (log.isDebugEnabled()) log.debug("Removing cache key "+cache.getKey().getEntryId()+".");
+            }
+        }
+
+        synchronized Collection<Cache> invalidate(Filter filter) throws Exception {
+            Collection<Cache> results = new ArrayList<Cache>();
+
+            Iterator<Cache> i = caches.values().iterator();
+            while (i.hasNext()) {
+                Cache cache = i.next();
+                if (!filter.matches(cache)) continue;
+
+                i.remove();
+                size -= cache.getSize();
+                cache.invalidate();
+
+                results.add(cache);
+            }
 
-    private LinkedHashMap<CacheKey,Cache> caches = new LinkedHashMap<CacheKey,Cache>();
+            return results;
+        }
+
+        synchronized void clear() {
+            for (Cache cache : caches.values()) cache.invalidate();
+            caches.clear();
+            size = 0;
+        }
+
+        synchronized int getCount() {
+            return caches.size();
+        }
+
+        synchronized long getSize() {
+            return size;
+        }
+    }
+
+    interface Filter {
+        public boolean matches(Cache cache) throws Exception;
+    }
 
     public CacheManager() {
+        this(DEFAULT_SEGMENTS);
+    }
+
+    public CacheManager(int segmentCount) {
+        segments = new Segment[segmentCount];
+        for (int i=0; i<segmentCount; i++) {
+            segments[i] = new Segment(i);
+        }
+    }
+
+    /**
+     * Returns the number of segments in use. A query size smaller than the number of
+     * segments only uses one segment per query.
+     */
+    int getSegmentCount() {
+        if (querySize <= 0) return segments.length;
+        return Math.min(segments.length, querySize);
+    }
+
+    /**
+     * Returns the number of queries a segment may hold. The remainder of the query size
+     * is distributed over the first segments, so the total is the configured query size.
+     */
+    int getMaxQueries(int index) {
+        int count = getSegmentCount();
+        if (index >= count) return 0;
+        return querySize / count + (index < querySize % count ? 1 : 0);
+    }
+
+    Segment getSegment(CacheKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % getSegmentCount()];
     }
 
     public int getQuerySize() {
@@ -29,6 +170,7 @@ public class CacheManager {
 
     public void setQuerySize(int querySize) {
         this.querySize = querySize;
+        purge();
     }
 
     public Cache create(CacheKey key) {
@@ -40,58 +182,167 @@ public class CacheManager {
         cache.setKey(key);
         cache.setCreationDate(creationDate);
         cache.setExpirationDate(expirationDate);
-        
+
         return cache;
     }
 
+    /**
+     * Registers a cache that is about to be loaded. If another identical search
+     * is already loading, the existing cache is returned instead.
+     */
+    public Cache load(Cache cache) {
+        return loading.putIfAbsent(cache.getKey(), cache);
+    }
+
+    /**
+     * Stores the loaded cache and releases the searches waiting for it.
+     */
     public void add(Cache cache) {
 
         boolean debug = log.isDebugEnabled();
         CacheKey key = cache.getKey();
-        if (debug) log.debug("Adding cache key "+key.getEntryId()+".");
 
-        SearchResponse response = cache.getResponse();
-        long totalCount = response.getTotalCount();
+        try {
+            if (!cache.isValid()) {
+                if (debug) log.debug("Cache key "+key.getEntryId()+" is no longer valid.");
+                return;
+            }
+
+            long totalCount = cache.getCount();
+
+            if (resultSize > 0 && totalCount > resultSize) {
+                if (debug) log.debug("Result size ("+totalCount+") is too big.");
+                cache.invalidate();
+                return;
+            }
+
+            if (debug) log.debug("Adding cache key "+key.getEntryId()+" ("+cache.getSize()+" bytes).");
+            getSegment(key).put(cache);
 
-        if (resultSize > 0 && totalCount > resultSize) {
-            if (debug) log.debug("Result size ("+totalCount+") is too big.");
-            return;
+        } finally {
+            loading.remove(key, cache);
+            cache.finish();
         }
+    }
 
-        caches.put(key, cache);
-        purge();
+    /**
+     * Discards a cache which could not be loaded and releases the searches waiting for it.
+     */
+    public void remove(Cache cache) {
+        cache.invalidate();
+        loading.remove(cache.getKey(), cache);
+        cache.finish();
     }
 
-    public synchronized Cache get(CacheKey key) {
+    /**
+     * Returns a loaded cache or a cache which is being loaded.
+     */
+    public Cache get(CacheKey key) {
         boolean debug = log.isDebugEnabled();
         if (debug) log.debug("Getting cache key "+key.getEntryId()+".");
-        Cache cache = caches.get(key);
-        if (cache == null) return null;
 
-        Date expirationDate = cache.getExpirationDate();
-        if (expirationDate != null && expirationDate.getTime() <= System.currentTimeMillis()) return null;
+        Cache cache = getSegment(key).get(key, System.currentTimeMillis());
+        if (cache == null) cache = loading.get(key);
 
-        caches.put(key, cache);
-
-        purge();
+        if (cache == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
 
         return cache;
     }
 
-    public synchronized void purge() {
+    public void purge() {
+        for (Segment segment : segments) {
+            segment.purge();
+        }
+    }
+
+    /**
+     * Invalidates the caches that might contain the entry or its subtree.
+     */
+    public void invalidate(final String entryId, final DN dn) throws Exception {
+
         boolean debug = log.isDebugEnabled();
-        if (querySize == 0) return;
 
-        int counter = caches.size() - querySize;
-        for (int i=0; i<counter; i++) {
-            CacheKey key = caches.keySet().iterator().next();
-            if (debug) log.debug("Removing cache key "+key.getEntryId()+".");
-            caches.remove(key);
+        Filter filter = new Filter() {
+            public boolean matches(Cache cache) throws Exception {
+                return isAffected(cache.getKey(), entryId, dn);
+            }
+        };
+
+        int counter = 0;
+
+        for (Segment segment : segments) {
+            counter += segment.invalidate(filter).size();
+        }
+
+        for (Cache cache : loading.values()) {
+            if (!filter.matches(cache)) continue;
+            cache.invalidate();
+            counter++;
+        }
+
+        invalidations.addAndGet(counter);
+        if (debug) log.debug("Invalidated "+counter+" cache(s) for "+dn+".");
+    }
+
+    public boolean isAffected(CacheKey key, String entryId, DN dn) throws Exception {
+
+        if (entryId != null && entryId.equals(key.getEntryId())) return true;
+        if (dn == null) return true;
+
+        SearchRequest request = key.getRequest();
+
+        DN baseDn = request.getDn();
+        if (baseDn == null || baseDn.isEmpty()) return true;
+
+        // the search is under the modified subtree
+        if (baseDn.endsWith(dn)) return true;
+
+        // the modified entry is under the search base
+        if (!dn.endsWith(baseDn)) return false;
+
+        int scope = request.getScope();
+
+        if (scope == SearchRequest.SCOPE_BASE) return baseDn.equals(dn);
+        if (scope == SearchRequest.SCOPE_ONE) return baseDn.equals(dn.getParentDn());
+
+        return true;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        for (Cache cache : loading.values()) {
+            cache.invalidate();
         }
     }
 
-    public synchronized void clear() {
-        caches.clear();
+    public static long estimateSize(SearchResult result) {
+        long size = 64 + 2 * result.getDn().toString().length();
+        for (Attribute attribute : result.getAttributes().getAll()) {
+            size += 48 + 2 * attribute.getName().length();
+            for (Object value : attribute.getValues()) {
+                size += estimateSize(value);
+            }
+        }
+        return size;
+    }
+
+    public static long estimateSize(SearchReference reference) {
+        long size = 64 + 2 * reference.getDn().toString().length();
+        for (String url : reference.getUrls()) {
+            size += estimateSize(url);
+        }
+        return size;
+    }
+
+    public static long estimateSize(Object value) {
+        if (value instanceof byte[]) return 16 + ((byte[])value).length;
+        return 40 + 2 * value.toString().length();
     }
 
     public int getExpiration() {
@@ -109,4 +360,44 @@ public class CacheManager {
     public void setResultSize(int resultSize) {
         this.resultSize = resultSize;
     }
+
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    public void setMemorySize(long memorySize) {
+        this.memorySize = memorySize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public int getCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.getCount();
+        }
+        return count;
+    }
+
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
 }
@@ -12,6 +12,8 @@ import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.operation.SearchOperation;
 import org.safehaus.penrose.operation.PipelineSearchOperation;
 
+import java.util.Collection;
+
 /**
  * @author Endi Sukma Dewata
  */
@@ -20,6 +22,7 @@ public class CacheModule extends Module implements CacheMBean {
     public final static String QUERY_SIZE  = "querySize";
     public final static String RESULT_SIZE = "resultSize";
     public final static String EXPIRATION  = "expiration"; // minutes
+    public final static String MEMORY_SIZE = "memorySize"; // bytes
 
     protected CacheManager cacheManager;
 
@@ -46,6 +49,12 @@ public class CacheModule extends Module implements CacheMBean {
             if (debug) log.debug("Expiration: "+s);
             cacheManager.setExpiration(Integer.parseInt(s));
         }
+
+        s = getParameter(MEMORY_SIZE);
+        if (s != null) {
+            if (debug) log.debug("Memory size: "+s);
+            cacheManager.setMemorySize(Long.parseLong(s));
+        }
     }
 
     public void add(
@@ -55,8 +64,11 @@ public class CacheModule extends Module implements CacheMBean {
             ModuleChain chain
     ) throws Exception {
 
-        clear();
-        chain.add(session, request, response);
+        try {
+            chain.add(session, request, response);
+        } finally {
+            invalidate(chain.getEntry().getName(), request.getDn());
+        }
     }
 
     public void bind(
@@ -130,8 +142,11 @@ public class CacheModule extends Module implements CacheMBean {
             ModuleChain chain
     ) throws Exception {
 
-        clear();
-        chain.delete(session, request, response);
+        try {
+            chain.delete(session, request, response);
+        } finally {
+            invalidate(chain.getEntry().getName(), request.getDn());
+        }
     }
 
     public void modify(
@@ -141,8 +156,11 @@ public class CacheModule extends Module implements CacheMBean {
             ModuleChain chain
     ) throws Exception {
 
-        clear();
-        chain.modify(session, request, response);
+        try {
+            chain.modify(session, request, response);
+        } finally {
+            invalidate(chain.getEntry().getName(), request.getDn());
+        }
     }
 
     public void modrdn(
@@ -152,8 +170,20 @@ public class CacheModule extends Module implements CacheMBean {
             ModuleChain chain
     ) throws Exception {
 
-        clear();
-        chain.modrdn(session, request, response);
+        try {
+            chain.modrdn(session, request, response);
+
+        } finally {
+            String entryId = chain.getEntry().getName();
+            DN dn = request.getDn();
+            invalidate(entryId, dn);
+
+            RDN newRdn = request.getNewRdn();
+            if (newRdn != null) {
+                DN parentDn = dn.getParentDn();
+                invalidate(entryId, parentDn == null ? new DN(newRdn) : new DN(newRdn).append(parentDn));
+            }
+        }
     }
 
     public void search(
@@ -173,56 +203,84 @@ public class CacheModule extends Module implements CacheMBean {
 
         Cache c = cacheManager.get(key);
 
-        if (c != null) {
-            if (warn) log.warn("Cache found for "+entryId+" "+operation.getDn()+" "+operation.getFilter()+".");
-
-            SearchResponse sr = (SearchResponse)c.getResponse().clone();
-            if (debug) log.debug("Cache contains "+sr.getTotalCount()+" entries.");
+        if (c == null) {
+            if (warn) log.warn("Cache not found for "+entryId+" "+operation.getDn()+" "+operation.getFilter()+".");
 
-            while (sr.hasNext()) {
-                try {
-                    SearchResult result = sr.next();
-                    operation.add(result);
+            Cache cache = cacheManager.create(key);
+            c = cacheManager.load(cache);
 
-                } catch (SearchReferenceException e) {
-                    SearchReference reference = e.getReference();
-                    operation.add(reference);
-                }
+            if (c == null) {
+                load(cache, operation, chain);
+                return;
             }
+        }
+
+        if (warn) log.warn("Cache found for "+entryId+" "+operation.getDn()+" "+operation.getFilter()+".");
 
-            operation.setException(sr.getException());
+        Collection<Object> results = c.getResults();
 
+        if (results == null) {
+            if (debug) log.debug("Cache is not valid.");
+            chain.search(operation);
             return;
         }
 
-        if (warn) log.warn("Cache not found for "+entryId+" "+operation.getDn()+" "+operation.getFilter()+".");
+        if (debug) log.debug("Cache contains "+c.getCount()+" entries.");
 
-        final Cache cache = cacheManager.create(key);
-        final SearchResponse cacheResponse = new SearchResponse();
+        for (Object object : results) {
+            if (object instanceof SearchReference) {
+                operation.add((SearchReference)object);
+            } else {
+                operation.add((SearchResult)object);
+            }
+        }
+
+        operation.setException(c.getException());
+        operation.close();
+    }
+
+    public void load(
+            final Cache cache,
+            SearchOperation operation,
+            ModuleChain chain
+    ) throws Exception {
+
+        final boolean debug = log.isDebugEnabled();
+        final int resultSize = cacheManager.getResultSize();
 
         SearchOperation op = new PipelineSearchOperation(operation) {
             public void add(SearchResult result) throws Exception {
                 try {
                     super.add(result);
-                    cacheResponse.add(result);
                 } catch (LDAPException e) {
-                    cacheResponse.setException(e);
+                    cache.setException(e);
+                    return;
                 }
+                cache.add(result);
+                if (resultSize > 0 && cache.getCount() > resultSize) cache.invalidate();
             }
             public void add(SearchReference reference) throws Exception {
                 super.add(reference);
-                cacheResponse.add(reference);
+                cache.add(reference);
             }
             public void close() throws Exception {
                 if (debug) log.debug("Closing search response.");
-                cacheResponse.close();
-                cache.setResponse(cacheResponse);
+                if (isAbandoned()) cache.invalidate();
                 cacheManager.add(cache);
                 super.close();
             }
         };
 
-        chain.search(op);
+        try {
+            chain.search(op);
+
+        } catch (Exception e) {
+            cacheManager.remove(cache);
+            throw e;
+        }
+
+        // the entry did not close the operation
+        if (!cache.isFinished()) cacheManager.add(cache);
     }
 
     public void unbind(
@@ -235,9 +293,37 @@ public class CacheModule extends Module implements CacheMBean {
         chain.unbind(session, request, response);
     }
 
+    public void invalidate(String entryId, DN dn) throws Exception {
+        cacheManager.invalidate(entryId, dn);
+    }
+
     public void clear() {
         boolean warn = log.isWarnEnabled();
         cacheManager.clear();
         if (warn) log.warn("Cache cleared.");
     }
+
+    public long getHits() {
+        return cacheManager.getHits();
+    }
+
+    public long getMisses() {
+        return cacheManager.getMisses();
+    }
+
+    public long getEvictions() {
+        return cacheManager.getEvictions();
+    }
+
+    public long getInvalidations() {
+        return cacheManager.getInvalidations();
+    }
+
+    public int getCount() {
+        return cacheManager.getCount();
+    }
+
+    public long getSize() {
+        return cacheManager.getSize();
+    }
 }
@@ -0,0 +1,608 @@
+package org.safehaus.penrose.changelog;
+
+import org.safehaus.penrose.ldap.Attributes;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.ldap.LDAP;
+import org.safehaus.penrose.ldap.SearchResult;
+import org.safehaus.penrose.session.Session;
+import org.safehaus.penrose.statistic.StatisticManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Applies change log entries in parallel. The changes are added in change number order
+ * by the thread reading the change log and dispatched into ordered lanes, each of them
+ * executed by its own thread. A change is dispatched into the lane of a pending change
+ * on the same entry, on its parent, or on its subtree, so these changes are applied in
+ * the original order. A rename is tracked under the old and the new DN. If a change
+ * depends on pending changes in several lanes, the reader waits until they have been
+ * applied. Other changes are distributed by the hash of the target DN.
+ *
+ * The lanes are bounded, so the reader is only ahead of the slowest lane by the queue
+ * size. The highest change number up to which all changes have been applied is passed
+ * to addTracker() every commit size changes or commit interval milliseconds.
+ *
+ * If a change fails the changes after it are discarded and close() throws the error.
+ * Changes after the failed one which have already been applied by other lanes will be
+ * applied again by the next synchronization. The last change number read by the failed
+ * run is returned by getReplayNumber() and should be passed to setReplayNumber() of the
+ * next run, which then treats an existing entry on add or a missing entry on delete as
+ * already applied for the changes up to that number.
+ *
+ * Each lane applies its changes with its own session created by openSession().
+ *
+ * @author Endi S. Dewata
+ */
+public abstract class ChangeLogApplier {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int DEFAULT_THREADS          = 4;
+    public final static int DEFAULT_QUEUE_SIZE       = 1000;
+    public final static int DEFAULT_COMMIT_SIZE      = 1000;
+    public final static long DEFAULT_COMMIT_INTERVAL = 1000; // ms
+
+    public final static String APPLY = "apply";
+    public final static String LAG   = "lag";
+
+    class Change {
+
+        long sequence;
+        Number changeNumber;
+        SearchResult result;
+
+        // normalized DNs of the entry before and after the change
+        Collection<String> keys = new ArrayList<String>(2);
+
+        // normalized DNs of the parents of the entry
+        Collection<String> parents = new ArrayList<String>();
+
+        Lane lane;
+        boolean done;
+    }
+
+    class Pending {
+        Lane lane;
+        boolean mixed;
+        int count;
+    }
+
+    class Lane extends Thread {
+
+        BlockingQueue<Change> queue;
+        Session session;
+
+        Lane(String name, int size) {
+            super(name);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<Change>(size);
+        }
+
+        public void run() {
+            try {
+                session = openSession();
+
+            } catch (Throwable e) {
+                log.error("Unable to open session: "+e.getMessage(), e);
+                fail(-1, e);
+            }
+
+            try {
+                // after a failure keep draining the queue so the reader does not block
+                while (true) {
+                    Change change = queue.take();
+                    if (change == END) return;
+                    execute(session, change);
+                }
+
+            } catch (InterruptedException e) {
+                log.debug(e.getMessage());
+
+            } finally {
+                try {
+                    closeSession(session);
+                } catch (Throwable e) {
+                    log.error("Unable to close session: "+e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private final Change END = new Change();
+
+    private String name;
+    private int threads          = DEFAULT_THREADS;
+    private int queueSize        = DEFAULT_QUEUE_SIZE;
+    private int commitSize       = DEFAULT_COMMIT_SIZE;
+    private long commitInterval  = DEFAULT_COMMIT_INTERVAL;
+
+    private StatisticManager statisticManager;
+    private String statisticName;
+
+    private Lane[] lanes;
+
+    // pending changes by entry and by subtree
+    private Map<String,Pending> entries = new HashMap<String,Pending>();
+    private Map<String,Pending> subtrees = new HashMap<String,Pending>();
+
+    // pending changes in change number order
+    private LinkedList<Change> changes = new LinkedList<Change>();
+
+    private volatile Throwable failure;
+    private long failedSequence = Long.MAX_VALUE;
+
+    // changes up to this number might have been applied by a failed run
+    private Number replayNumber;
+
+    private final Object commitLock = new Object();
+
+    private long startTime;
+    private long readCount;
+    private long appliedCount;
+    private long uncommittedCount;
+    private long lastCommitTime;
+
+    private Number lastReadNumber;
+    private Number lastAppliedNumber;
+    private volatile Number lastCommittedNumber;
+
+    public ChangeLogApplier(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Applies the change log entry to the target using the session of the lane.
+     */
+    public abstract void apply(Session session, SearchResult result) throws Exception;
+
+    /**
+     * Records that all changes up to the change number have been applied.
+     */
+    public abstract void addTracker(Number changeNumber) throws Exception;
+
+    /**
+     * Creates the session of a lane.
+     */
+    public Session openSession() throws Exception {
+        return null;
+    }
+
+    public void closeSession(Session session) throws Exception {
+        if (session != null) session.close();
+    }
+
+    public Number getChangeNumber(Attributes attributes) throws Exception {
+        return Long.parseLong(attributes.getValue("changeNumber").toString());
+    }
+
+    public DN getTargetDn(Attributes attributes) throws Exception {
+        return new DN((String)attributes.getValue("targetDN"));
+    }
+
+    /**
+     * Returns the DN of a renamed entry or null for other changes.
+     */
+    public DN getNewDn(DN dn, Attributes attributes) throws Exception {
+
+        String changeType = (String)attributes.getValue("changeType");
+        if (!"modrdn".equalsIgnoreCase(changeType)) return null;
+
+        Object newRdn = attributes.getValue("newRDN");
+        if (newRdn == null) return null;
+
+        Object newSuperior = attributes.getValue("newSuperior");
+        DN parentDn = newSuperior == null ? dn.getParentDn() : new DN(newSuperior.toString());
+
+        return new DN(newRdn.toString()).append(parentDn);
+    }
+
+    public void setStatisticManager(StatisticManager statisticManager, String statisticName) {
+        this.statisticManager = statisticManager;
+        this.statisticName = statisticName;
+    }
+
+    public void start() {
+
+        startTime = System.currentTimeMillis();
+        lastCommitTime = startTime;
+
+        lanes = new Lane[threads];
+        for (int i=0; i<threads; i++) {
+            lanes[i] = new Lane(name+"-"+i, queueSize);
+            lanes[i].start();
+        }
+    }
+
+    /**
+     * Dispatches the next change log entry. Waits if the lane is full or if the change
+     * depends on changes in several lanes.
+     */
+    public void add(SearchResult result) throws Exception {
+
+        checkFailure();
+
+        Attributes attributes = result.getAttributes();
+
+        Change change = new Change();
+        change.changeNumber = getChangeNumber(attributes);
+        change.result = result;
+
+        DN dn = getTargetDn(attributes);
+        addKeys(change, dn);
+
+        DN newDn = getNewDn(dn, attributes);
+        if (newDn != null) addKeys(change, newDn);
+
+        Lane lane;
+
+        synchronized (this) {
+            while ((lane = getLane(change)) == null) {
+                wait();
+                checkFailure();
+            }
+
+            register(change, lane);
+
+            change.sequence = readCount++;
+            changes.add(change);
+            lastReadNumber = change.changeNumber;
+        }
+
+        lane.queue.put(change);
+    }
+
+    void addKeys(Change change, DN dn) throws Exception {
+        change.keys.add(dn.getNormalizedDn());
+        for (DN parentDn = dn.getParentDn(); !parentDn.isEmpty(); parentDn = parentDn.getParentDn()) {
+            change.parents.add(parentDn.getNormalizedDn());
+        }
+    }
+
+    /**
+     * Returns the lane for the change or null if it depends on more than one lane.
+     */
+    Lane getLane(Change change) {
+
+        Lane lane = null;
+
+        for (String key : change.keys) {
+            Pending pending = entries.get(key);
+            if (pending != null) {
+                if (lane != null && lane != pending.lane) return null;
+                lane = pending.lane;
+            }
+
+            pending = subtrees.get(key);
+            if (pending != null) {
+                if (pending.mixed) return null;
+                if (lane != null && lane != pending.lane) return null;
+                lane = pending.lane;
+            }
+        }
+
+        for (String key : change.parents) {
+            Pending pending = entries.get(key);
+            if (pending == null) continue;
+
+            if (lane != null && lane != pending.lane) return null;
+            lane = pending.lane;
+        }
+
+        if (lane != null) return lane;
+
+        int hash = change.keys.iterator().next().hashCode();
+        return lanes[(hash & 0x7fffffff) % lanes.length];
+    }
+
+    void register(Change change, Lane lane) {
+
+        change.lane = lane;
+
+        for (String key : change.keys) {
+            register(entries, key, lane);
+        }
+
+        for (String key : change.parents) {
+            register(subtrees, key, lane);
+        }
+    }
+
+    void register(Map<String,Pending> map, String key, Lane lane) {
+
+        Pending pending = map.get(key);
+        if (pending == null) {
+            pending = new Pending();
+            pending.lane = lane;
+            map.put(key, pending);
+
+        } else if (pending.lane != lane) {
+            pending.mixed = true;
+        }
+
+        pending.count++;
+    }
+
+    void unregister(Change change) {
+
+        for (String key : change.keys) {
+            unregister(entries, key);
+        }
+
+        for (String key : change.parents) {
+            unregister(subtrees, key);
+        }
+    }
+
+    void unregister(Map<String,Pending> map, String key) {
+        Pending pending = map.get(key);
+        if (pending == null) return;
+        if (--pending.count == 0) map.remove(key);
+    }
+
+    void execute(Session session, Change change) {
+
+        if (isApplicable(change)) {
+
+            long t = System.nanoTime();
+
+            try {
+                apply(session, change.result);
+                change.done = true;
+
+            } catch (Throwable e) {
+                if (isReplayed(change.changeNumber, e)) {
+                    log.debug("Change "+change.changeNumber+" has already been applied: "+e.getMessage());
+                    change.done = true;
+
+                } else {
+                    log.error("Unable to apply change "+change.changeNumber+": "+e.getMessage(), e);
+                    fail(change.sequence, e);
+                }
+            }
+
+            record(APPLY, (System.nanoTime() - t) / 1000);
+        }
+
+        boolean commit;
+
+        synchronized (this) {
+            unregister(change);
+
+            while (!changes.isEmpty() && changes.getFirst().done) {
+                Change c = changes.removeFirst();
+                lastAppliedNumber = c.changeNumber;
+                appliedCount++;
+                uncommittedCount++;
+            }
+
+            commit = uncommittedCount >= commitSize
+                    || uncommittedCount > 0 && System.currentTimeMillis() - lastCommitTime >= commitInterval;
+
+            notifyAll();
+        }
+
+        if (!commit) return;
+
+        try {
+            commit();
+
+        } catch (Throwable e) {
+            log.error("Unable to update tracker: "+e.getMessage(), e);
+            fail(-1, e);
+        }
+    }
+
+    /**
+     * Returns true if no change before this one has failed.
+     */
+    synchronized boolean isApplicable(Change change) {
+        return change.sequence < failedSequence;
+    }
+
+    /**
+     * Returns true if the change might have been applied by a failed run and the error
+     * shows that the entry has already been added or deleted.
+     */
+    public boolean isReplayed(Number changeNumber, Throwable e) {
+
+        Number replayNumber;
+
+        synchronized (this) {
+            replayNumber = this.replayNumber;
+        }
+
+        if (replayNumber == null || changeNumber.longValue() > replayNumber.longValue()) return false;
+
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            int rc = LDAP.getReturnCode(t);
+            if (rc == LDAP.ENTRY_ALREADY_EXISTS || rc == LDAP.NO_SUCH_OBJECT) return true;
+            if (t.getCause() == t) break;
+        }
+
+        return false;
+    }
+
+    synchronized void fail(long sequence, Throwable e) {
+        if (sequence >= failedSequence) return;
+        failedSequence = sequence;
+        failure = e;
+    }
+
+    /**
+     * Passes the change number up to which all changes have been applied to addTracker().
+     */
+    public void commit() throws Exception {
+
+        synchronized (commitLock) {
+
+            Number changeNumber;
+            long lag;
+
+            synchronized (this) {
+                if (uncommittedCount == 0) return;
+
+                changeNumber = lastAppliedNumber;
+                lag = readCount - appliedCount;
+
+                uncommittedCount = 0;
+                lastCommitTime = System.currentTimeMillis();
+            }
+
+            if (log.isDebugEnabled()) log.debug("Committing change "+changeNumber+".");
+
+            addTracker(changeNumber);
+            lastCommittedNumber = changeNumber;
+
+            record(LAG, lag);
+        }
+    }
+
+    /**
+     * Waits until the dispatched changes have been applied and commits the tracker.
+     */
+    public void close() throws Exception {
+
+        if (lanes != null) {
+            for (Lane lane : lanes) {
+                lane.queue.put(END);
+            }
+
+            for (Lane lane : lanes) {
+                lane.join();
+            }
+
+            lanes = null;
+        }
+
+        commit();
+
+        synchronized (this) {
+            changes.clear();
+            entries.clear();
+            subtrees.clear();
+
+            if (failure != null) {
+                if (lastReadNumber != null
+                        && (replayNumber == null || lastReadNumber.longValue() > replayNumber.longValue())) {
+                    replayNumber = lastReadNumber;
+                }
+
+            } else if (replayNumber != null && lastCommittedNumber != null
+                    && lastCommittedNumber.longValue() >= replayNumber.longValue()) {
+                replayNumber = null;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Applied "+appliedCount+" of "+readCount+" changes ("+(long)getThroughput()+" changes/s).");
+        }
+
+        checkFailure();
+    }
+
+    void checkFailure() throws Exception {
+        Throwable t = failure;
+        if (t == null) return;
+        if (t instanceof Exception) throw (Exception)t;
+        throw new Exception(t);
+    }
+
+    void record(String metric, long value) {
+        if (statisticManager == null) return;
+        statisticManager.record(statisticName+"/"+metric, value);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Metrics
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized long getReadCount() {
+        return readCount;
+    }
+
+    public synchronized long getAppliedCount() {
+        return appliedCount;
+    }
+
+    /**
+     * Returns the number of changes which have been read but not applied yet.
+     */
+    public synchronized long getLag() {
+        return readCount - appliedCount;
+    }
+
+    /**
+     * Returns the number of changes applied per second.
+     */
+    public synchronized double getThroughput() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed == 0 ? 0 : appliedCount * 1000.0 / elapsed;
+    }
+
+    public synchronized Number getLastReadNumber() {
+        return lastReadNumber;
+    }
+
+    public synchronized Number getLastAppliedNumber() {
+        return lastAppliedNumber;
+    }
+
+    public Number getLastCommittedNumber() {
+        return lastCommittedNumber;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Parameters
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the last change number which might have been applied by a failed run.
+     */
+    public synchronized Number getReplayNumber() {
+        return replayNumber;
+    }
+
+    public synchronized void setReplayNumber(Number replayNumber) {
+        this.replayNumber = replayNumber;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads <= 0 ? DEFAULT_THREADS : threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize <= 0 ? DEFAULT_QUEUE_SIZE : queueSize;
+    }
+
+    public int getCommitSize() {
+        return commitSize;
+    }
+
+    public void setCommitSize(int commitSize) {
+        this.commitSize = commitSize <= 0 ? DEFAULT_COMMIT_SIZE : commitSize;
+    }
+
+    public long getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(long commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+}
@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Endi S. Dewata
@@ -38,6 +39,10 @@ public class Connection {
     protected ConnectionConfig connectionConfig;
     protected ConnectionContext connectionContext;
 
+    // clients borrowed for a single operation
+    protected AtomicLong leaseCount = new AtomicLong();
+    protected AtomicLong leaseWaitTime = new AtomicLong();
+
     public Connection() {
     }
 
@@ -115,6 +120,43 @@ public class Connection {
         return connectionContext.getPartition();
     }
 
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Statistics
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void addLease(long waitTime) {
+        leaseCount.incrementAndGet();
+        leaseWaitTime.addAndGet(waitTime);
+    }
+
+    /**
+     * Returns the number of clients borrowed for a single operation.
+     */
+    public long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * Returns the total time in milliseconds spent waiting for the connection pool.
+     */
+    public long getLeaseWaitTime() {
+        return leaseWaitTime.get();
+    }
+
+    /**
+     * Returns the number of pooled connections in use.
+     */
+    public int getActiveCount() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of pooled connections available.
+     */
+    public int getIdleCount() {
+        return 0;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // Add
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -1,5 +1,6 @@
 package org.safehaus.penrose.directory;
 
+import org.safehaus.penrose.acl.ACLEvaluator;
 import org.safehaus.penrose.ldap.DN;
 import org.safehaus.penrose.partition.Partition;
 import org.safehaus.penrose.partition.PartitionConfig;
@@ -29,6 +30,9 @@ public class Directory implements Cloneable {
     protected Collection<Entry> rootEntries = new ArrayList<Entry>();
     protected Map<String,Entry> entries = new LinkedHashMap<String,Entry>();
 
+    // rebuilt after the entries are changed
+    protected volatile EntryTrie trie;
+
     Collection<DirectoryListener> listeners = new LinkedHashSet<DirectoryListener>();
 
     public Directory(Partition partition) throws Exception {
@@ -177,6 +181,8 @@ public class Directory implements Cloneable {
             parent.addChild(entry);
         }
 
+        invalidate();
+
         return entry;
     }
 
@@ -221,6 +227,8 @@ public class Directory implements Cloneable {
 
         entries.remove(entry.getName());
 
+        invalidate();
+
         if (debug) log.debug("Entry "+entry.getName()+" removed.");
     }
 
@@ -327,17 +335,48 @@ public class Directory implements Cloneable {
 
         List<Entry> results = new ArrayList<Entry>();
 
+        for (Entry e : getTrie().find(dn)) {
+            if (debug) log.debug(" - Found "+e.getName()+": "+e.getDn());
+            results.add(e);
+        }
+
+        return results;
+    }
+
+    public EntryTrie getTrie() throws Exception {
+        EntryTrie t = trie;
+        if (t != null) return t;
+        return buildTrie();
+    }
+
+    synchronized EntryTrie buildTrie() throws Exception {
+        if (trie != null) return trie;
+
+        EntryTrie t = new EntryTrie();
         for (Entry entry : rootEntries) {
-            if (debug) log.debug(" - Suffix: "+entry.getDn());
+            t.addTree(entry);
+        }
 
-            List<Entry> list = entry.findEntries(dn);
-            for (Entry e : list) {
-                if (debug) log.debug("   - Found "+e.getName()+": "+e.getDn());
-                results.add(e);
-            }
+        trie = t;
+        return t;
+    }
+
+    /**
+     * Discards the routing trie of this directory and of the partition manager.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            trie = null;
         }
 
-        return results;
+        ACLEvaluator aclEvaluator = partition.getAclEvaluator();
+        if (aclEvaluator != null) aclEvaluator.invalidate();
+
+        PartitionContext partitionContext = partition.getPartitionContext();
+        if (partitionContext == null) return;
+
+        PartitionManager partitionManager = partitionContext.getPartitionManager();
+        if (partitionManager != null) partitionManager.invalidate();
     }
 
     public DirectoryConfig getDirectoryConfig() {
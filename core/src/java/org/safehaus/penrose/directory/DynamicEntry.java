@@ -1201,38 +1201,13 @@ public class DynamicEntry extends Entry implements Cloneable {
 
         EntrySource source = getSource(alias);
 
-        String linkedAttribute = null;
-        String prevAlias = null;
-        String prevLinkingAttribute = null;
-
-        boolean firstSource;
-
-        for (EntryField field : source.getFields()) {
-
-            String variable = field.getVariable();
-            if (variable == null) continue;
-            
-            int i = variable.indexOf(".");
-
-            if (i < 0) continue;
-
-            String s = variable.substring(0, i);
-            if ("rdn".equals(s)) continue;
-
-            linkedAttribute = field.getName();
-            prevAlias = s;
-            prevLinkingAttribute = variable.substring(i+1);
-
-            break; // TODO need to support multiple link attributes
-        }
-
-        firstSource = prevAlias == null;
-
         try {
             SearchResponse searchResponse = new SearchResponse();
 
             source.search(session, searchRequest, searchResponse);
 
+            Collection<SourceAttributes> list = new ArrayList<SourceAttributes>();
+
             while (searchResponse.hasNext()) {
 
                 SearchResult result = searchResponse.next();
@@ -1245,14 +1220,57 @@ public class DynamicEntry extends Entry implements Cloneable {
                     sa.print();
                 }
 
-                if (firstSource) {
-                    DN dn = createDn(sa);
-                    if (debug) log.debug("Found "+dn+".");
+                list.add(sa);
+            }
 
-                    results.put(dn, sa);
+            linkSource(session, alias, list, results);
 
-                    continue;
-                }
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    public void linkSource(
+            Session session,
+            String alias,
+            Collection<SourceAttributes> list,
+            Map<DN,SourceAttributes> results
+    ) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        EntrySource source = getSource(alias);
+
+        String linkedAttribute = null;
+        String prevAlias = null;
+        String prevLinkingAttribute = null;
+
+        EntryField linkingField = getLinkingField(source);
+
+        if (linkingField != null) {
+            String variable = linkingField.getVariable();
+            int i = variable.indexOf(".");
+
+            linkedAttribute = linkingField.getName();
+            prevAlias = variable.substring(0, i);
+            prevLinkingAttribute = variable.substring(i+1);
+        }
+
+        if (prevAlias == null) {
+            for (SourceAttributes sa : list) {
+                DN dn = createDn(sa);
+                if (debug) log.debug("Found "+dn+".");
+
+                results.put(dn, sa);
+            }
+            return;
+        }
+
+        EntrySource prevSource = getSource(prevAlias);
+        int batchSize = "dn".equals(prevLinkingAttribute) ? 1 : prevSource.getBatchSize();
+
+        if (batchSize <= 1) {
+            for (SourceAttributes sa : list) {
 
                 Collection<Object> prevLinks = sa.getValues(alias, linkedAttribute);
 
@@ -1273,10 +1291,148 @@ public class DynamicEntry extends Entry implements Cloneable {
                     searchSource(session, sa, prevAlias, prevSearchRequest, results);
                 }
             }
+            return;
+        }
 
-        } catch (Exception e) {
-            // ignore
+        List<SourceAttributes> window = new ArrayList<SourceAttributes>();
+
+        for (SourceAttributes sa : list) {
+            window.add(sa);
+            if (window.size() < batchSize) continue;
+
+            linkSource(session, alias, linkedAttribute, prevAlias, prevLinkingAttribute, window, results);
+            window.clear();
+        }
+
+        if (!window.isEmpty()) {
+            linkSource(session, alias, linkedAttribute, prevAlias, prevLinkingAttribute, window, results);
+        }
+    }
+
+    public void linkSource(
+            Session session,
+            String alias,
+            String linkedAttribute,
+            String prevAlias,
+            String prevLinkingAttribute,
+            Collection<SourceAttributes> window,
+            Map<DN,SourceAttributes> results
+    ) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        Collection<Object> links = new ArrayList<Object>();
+        for (SourceAttributes sa : window) {
+            links.addAll(sa.getValues(alias, linkedAttribute));
+        }
+
+        if (debug) log.debug("Following "+links.size()+" links from "+window.size()+" entries.");
+
+        EntrySource prevSource = getSource(prevAlias);
+
+        Map<String,Collection<SearchResult>> linkedResults = searchLinks(
+                session, prevSource, prevLinkingAttribute, links
+        );
+
+        Field prevLinkingField = getField(prevSource, prevLinkingAttribute);
+        Collection<SourceAttributes> list = new ArrayList<SourceAttributes>();
+
+        for (SourceAttributes sa : window) {
+            for (Object link : sa.getValues(alias, linkedAttribute)) {
+
+                Collection<SearchResult> linkedList = linkedResults.get(normalizeLink(prevLinkingField, link));
+                if (linkedList == null) continue;
+
+                for (SearchResult result : linkedList) {
+                    SourceAttributes newSourceAttributes = (SourceAttributes)sa.clone();
+                    newSourceAttributes.set(prevAlias, result);
+                    list.add(newSourceAttributes);
+                }
+            }
+        }
+
+        linkSource(session, prevAlias, list, results);
+    }
+
+    /**
+     * Searches the source once for all link values using an OR filter,
+     * then groups the results by normalized link value (see normalizeLink()).
+     */
+    public Map<String,Collection<SearchResult>> searchLinks(
+            Session session,
+            EntrySource source,
+            String attributeName,
+            Collection<Object> links
+    ) throws Exception {
+
+        Map<String,Collection<SearchResult>> results = new HashMap<String,Collection<SearchResult>>();
+
+        Field field = getField(source, attributeName);
+
+        Collection<String> keys = new HashSet<String>();
+        Collection<Filter> filters = new ArrayList<Filter>();
+
+        for (Object link : links) {
+            if (!keys.add(normalizeLink(field, link))) continue;
+            filters.add(new SimpleFilter(attributeName, "=", link));
         }
+
+        if (filters.isEmpty()) return results;
+
+        Filter filter;
+        if (filters.size() == 1) {
+            filter = filters.iterator().next();
+
+        } else {
+            OrFilter orFilter = new OrFilter();
+            for (Filter f : filters) orFilter.addFilter(f);
+            filter = orFilter;
+        }
+
+        SearchRequest searchRequest = new SearchRequest();
+        searchRequest.setFilter(filter);
+
+        SearchResponse searchResponse = new SearchResponse();
+
+        source.search(session, searchRequest, searchResponse);
+
+        while (searchResponse.hasNext()) {
+            SearchResult result = searchResponse.next();
+
+            for (Object value : result.getAttributes().getValues(attributeName)) {
+                String key = normalizeLink(field, value);
+
+                Collection<SearchResult> list = results.get(key);
+                if (list == null) {
+                    list = new ArrayList<SearchResult>();
+                    results.put(key, list);
+                }
+
+                list.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    public Field getField(EntrySource source, String fieldName) {
+        Source s = source.getSource();
+        return s == null ? null : s.getField(fieldName);
+    }
+
+    /**
+     * Returns the key of a link value. Text fields which are not case-sensitive are
+     * compared in lower case like in JDBCFilterBuilder, other values are compared
+     * exactly.
+     */
+    public String normalizeLink(Field field, Object value) {
+
+        if (value instanceof byte[]) return new String((byte[])value);
+
+        String s = value.toString();
+        if (field != null && (!field.getFieldConfig().isText() || field.isCaseSensitive())) return s;
+
+        return s.toLowerCase();
     }
 
     public void expandSource(
@@ -1304,35 +1460,28 @@ public class DynamicEntry extends Entry implements Cloneable {
         int nextIndex = index+1;
         boolean lastSource = nextIndex == getSources().size();
 
-        String nextAlias;
-
         String nla = null;
         String pa = null;
         String pla = null;
 
-        if (!lastSource) {
-            nextAlias = getSearchOrder(nextIndex);
-            EntrySource nextSource = getSource(nextAlias);
-
-            for (EntryField field : nextSource.getFields()) {
-
-                String variable = field.getVariable();
-                int i = variable.indexOf(".");
-
-                if (i < 0) continue;
+        EntryField linkingField = lastSource ? null : getLinkingField(nextIndex);
 
-                nla = field.getName();
-                pa = variable.substring(0, i);
-                pla = variable.substring(i+1);
+        if (linkingField != null) {
+            String variable = linkingField.getVariable();
+            int i = variable.indexOf(".");
 
-                break; // TODO need to support multiple link attributes
-            }
+            nla = linkingField.getName();
+            pa = variable.substring(0, i);
+            pla = variable.substring(i+1);
         }
 
         final String nextLinkedAttribute = nla;
         final String prevAlias = pa;
         final String prevLinkingAttribute = pla;
 
+        final int batchSize = getBatchSize(nextIndex, nextLinkedAttribute);
+        final List<SourceAttributes> window = new ArrayList<SourceAttributes>();
+
         if (sourceAttributes.contains(alias)) {
 
             if (debug) log.debug("Source "+alias+" has been fetched.");
@@ -1353,6 +1502,19 @@ public class DynamicEntry extends Entry implements Cloneable {
                     SourceAttributes sa  = (SourceAttributes)sourceAttributes.clone();
                     sa.set(alias, searchResult);
 
+                    if (batchSize > 1) {
+                        window.add(sa);
+                        if (window.size() < batchSize) return;
+
+                        expandSearchResults(
+                                session, request, response, index, window, requestedSources,
+                                nextLinkedAttribute, prevAlias, prevLinkingAttribute
+                        );
+
+                        window.clear();
+                        return;
+                    }
+
                     expandSearchResult(
                             session, request, response, index, sa, requestedSources,
                             nextLinkedAttribute, prevAlias, prevLinkingAttribute
@@ -1363,6 +1525,13 @@ public class DynamicEntry extends Entry implements Cloneable {
             try {
                 source.search(session, request, searchResponse);
 
+                if (!window.isEmpty()) {
+                    expandSearchResults(
+                            session, request, response, index, window, requestedSources,
+                            nextLinkedAttribute, prevAlias, prevLinkingAttribute
+                    );
+                }
+
             } catch (LDAPException e) {
 
                 log.debug(e.getMessage());
@@ -1404,6 +1573,165 @@ public class DynamicEntry extends Entry implements Cloneable {
         }
     }
 
+    public EntryField getLinkingField(int index) {
+        return getLinkingField(getSource(getSearchOrder(index)));
+    }
+
+    /**
+     * Returns the field which links the source to another source.
+     */
+    public EntryField getLinkingField(EntrySource source) {
+
+        for (EntryField field : source.getFields()) {
+
+            String variable = field.getVariable();
+            if (variable == null) continue;
+            
+            int i = variable.indexOf(".");
+
+            if (i < 0) continue;
+
+            String s = variable.substring(0, i);
+            if ("rdn".equals(s)) continue;
+
+            return field; // TODO need to support multiple link attributes
+        }
+
+        return null;
+    }
+
+    public int getBatchSize(int index, String linkedAttribute) {
+
+        if (index >= getSources().size()) return 1;
+        if (linkedAttribute == null || "dn".equals(linkedAttribute)) return 1;
+
+        EntrySource source = getSource(getSearchOrder(index));
+        return source.getBatchSize();
+    }
+
+    public void expandSearchResults(
+            Session session,
+            SearchRequest request,
+            SearchResponse response,
+            int index,
+            Collection<SourceAttributes> list,
+            Map<String,Boolean> requestedSources,
+            String nextLinkedAttribute,
+            String prevAlias,
+            String prevLinkingAttribute
+    ) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        int nextIndex = index+1;
+        String nextAlias = getSearchOrder(nextIndex);
+
+        EntrySource nextSource = getSource(nextAlias);
+        String nextSearch = nextSource.getSearch();
+        boolean nextRequested = requestedSources.get(nextAlias);
+
+        Collection<SourceAttributes> pending = new ArrayList<SourceAttributes>();
+        Collection<Object> links = new ArrayList<Object>();
+
+        boolean linked = !EntrySourceConfig.IGNORE.equals(nextSearch)
+                && !(EntrySourceConfig.OPTIONAL.equals(nextSearch) && !nextRequested)
+                && prevAlias != null && prevLinkingAttribute != null;
+
+        for (SourceAttributes sa : list) {
+
+            Collection<Object> values = linked ? sa.getValues(prevAlias, prevLinkingAttribute) : null;
+
+            if (values == null || values.isEmpty() || sa.contains(nextAlias)) {
+                expandSearchResult(
+                        session, request, response, index, sa, requestedSources,
+                        nextLinkedAttribute, prevAlias, prevLinkingAttribute
+                );
+                continue;
+            }
+
+            pending.add(sa);
+            links.addAll(values);
+        }
+
+        if (pending.isEmpty()) return;
+
+        if (debug) log.debug("Following "+links.size()+" links to "+nextAlias+" from "+pending.size()+" entries.");
+
+        Map<String,Collection<SearchResult>> linkedResults;
+
+        try {
+            linkedResults = searchLinks(session, nextSource, nextLinkedAttribute, links);
+
+        } catch (LDAPException e) {
+
+            log.debug(e.getMessage());
+
+            if (EntrySourceConfig.REQUIRED.equals(nextSearch)) {
+                if (debug) log.debug("Source "+nextAlias+" is required and error occured.");
+
+            } else {
+                if (debug) log.debug("Source "+nextAlias+" is optional and error occured.");
+                for (SourceAttributes sa : pending) {
+                    response.add(createSearchResult(sa));
+                }
+            }
+            return;
+        }
+
+        Field nextLinkedField = getField(nextSource, nextLinkedAttribute);
+        List<SourceAttributes> results = new ArrayList<SourceAttributes>();
+
+        for (SourceAttributes sa : pending) {
+
+            boolean found = false;
+
+            for (Object link : sa.getValues(prevAlias, prevLinkingAttribute)) {
+
+                Collection<SearchResult> linkedList = linkedResults.get(normalizeLink(nextLinkedField, link));
+                if (linkedList == null) continue;
+
+                for (SearchResult result : linkedList) {
+                    SourceAttributes newSourceAttributes = (SourceAttributes)sa.clone();
+                    newSourceAttributes.set(nextAlias, result);
+                    results.add(newSourceAttributes);
+                }
+
+                found = true;
+            }
+
+            if (found) continue;
+
+            if (EntrySourceConfig.REQUIRED.equals(nextSearch)) {
+                if (debug) log.debug("Source "+nextAlias+" is required and no results found.");
+
+            } else {
+                if (debug) log.debug("Source "+nextAlias+" is optional and no results found.");
+                response.add(createSearchResult(sa));
+            }
+        }
+
+        EntryField linkingField = nextIndex+1 < getSources().size() ? getLinkingField(nextIndex+1) : null;
+        int batchSize = linkingField == null ? 1 : getBatchSize(nextIndex+1, linkingField.getName());
+
+        if (batchSize <= 1) {
+            for (SourceAttributes sa : results) {
+                expandSource(session, request, response, nextIndex, sa, requestedSources);
+            }
+            return;
+        }
+
+        String variable = linkingField.getVariable();
+        int i = variable.indexOf(".");
+
+        for (int start = 0; start < results.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, results.size());
+            expandSearchResults(
+                    session, request, response, nextIndex, results.subList(start, end), requestedSources,
+                    linkingField.getName(), variable.substring(0, i), variable.substring(i+1)
+            );
+        }
+    }
+
     public void expandSearchResult(
             Session session,
             SearchRequest request,
@@ -21,8 +21,10 @@ import org.safehaus.penrose.acl.ACI;
 import org.safehaus.penrose.filter.Filter;
 import org.safehaus.penrose.filter.FilterEvaluator;
 import org.safehaus.penrose.interpreter.Interpreter;
+import org.safehaus.penrose.interpreter.CompiledScript;
 import org.safehaus.penrose.ldap.*;
 import org.safehaus.penrose.mapping.Mapping;
+import org.safehaus.penrose.mapping.Expression;
 import org.safehaus.penrose.naming.PenroseContext;
 import org.safehaus.penrose.partition.Partition;
 import org.safehaus.penrose.partition.PartitionContext;
@@ -170,9 +172,26 @@ public class Entry implements Cloneable {
         modifyOrders = Arrays.asList(modifyOrdersArray);
         modrdnOrders = Arrays.asList(modrdnOrdersArray);
 
+        compileScripts();
+
         init();
     }
 
+    public void compileScripts() throws Exception {
+
+        for (EntryAttributeConfig attributeConfig : entryConfig.getAttributeConfigs()) {
+            Expression expression = attributeConfig.getExpression();
+            if (expression != null) CompiledScript.compile(expression.getScript());
+        }
+
+        for (EntrySourceConfig sourceConfig : entryConfig.getSourceConfigs()) {
+            for (EntryFieldConfig fieldConfig : sourceConfig.getFieldConfigs()) {
+                Expression expression = fieldConfig.getExpression();
+                if (expression != null) CompiledScript.compile(expression.getScript());
+            }
+        }
+    }
+
     public void init() throws Exception {
 
         String initScript = entryConfig.getInitScript();
@@ -325,6 +344,7 @@ public class Entry implements Cloneable {
     public void addChild(Entry child) throws Exception {
         children.add(child);
         child.setParent(this);
+        if (directory != null) directory.invalidate();
     }
 
     public void addChildren(Collection<Entry> children) throws Exception {
@@ -336,10 +356,12 @@ public class Entry implements Cloneable {
     public void removeChild(Entry child) throws Exception {
         children.remove(child);
         child.setParent(null);
+        if (directory != null) directory.invalidate();
     }
 
     public void removeChildren() {
         children.clear();
+        if (directory != null) directory.invalidate();
     }
 
     public Entry getParent() {
@@ -38,6 +38,8 @@ public class EntrySource implements Cloneable {
     protected String modrdn;
     protected String search;
 
+    protected int batchSize = 1;
+
     public EntrySource(Source source) throws Exception {
         this.source = source;
         this.alias = source.getName();
@@ -86,6 +88,9 @@ public class EntrySource implements Cloneable {
         modify = sourceConfig.getModify();
         modrdn = sourceConfig.getModrdn();
         search = sourceConfig.getSearch();
+
+        Integer batchSize = sourceConfig.getBatchSize();
+        if (batchSize != null) this.batchSize = batchSize;
     }
 
     public void addField(EntryField field) {
@@ -163,6 +168,14 @@ public class EntrySource implements Cloneable {
         this.search = search;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public Collection<String> getParameterNames() {
         return source.getParameterNames();
     }
@@ -241,6 +254,7 @@ public class EntrySource implements Cloneable {
         entrySource.modify = modify;
         entrySource.modrdn = modrdn;
         entrySource.search = search;
+        entrySource.batchSize = batchSize;
 
         return entrySource;
     }
@@ -0,0 +1,163 @@
+package org.safehaus.penrose.directory;
+
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.ldap.RDN;
+
+import java.util.*;
+
+/**
+ * Routing table that finds the entries which can hold a DN. The entries are stored in a
+ * trie keyed by the normalized RDNs starting from the suffix, so a lookup only visits
+ * the nodes along the DN. Dynamic RDNs (e.g. uid=...) are stored as wildcard nodes.
+ *
+ * Entries that override findEntries(DN) (e.g. proxy entries) are stored as delegates:
+ * the lookup calls them for any DN under them and does not index their children.
+ *
+ * The trie is not modified after it is built. A new trie is built whenever the entries
+ * change, so lookups can run without locking.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class EntryTrie {
+
+    public final static List<Entry> EMPTY_ENTRIES = Collections.unmodifiableList(new ArrayList<Entry>());
+
+    class Item {
+        Entry entry;
+        int order;
+
+        Item(Entry entry, int order) {
+            this.entry = entry;
+            this.order = order;
+        }
+    }
+
+    class Node {
+        RDN rdn;
+        Map<String,Node> children = new HashMap<String,Node>();
+        List<Node> wildcards = new ArrayList<Node>();
+        List<Item> entries = new ArrayList<Item>();
+        List<Item> delegates = new ArrayList<Item>();
+
+        Node(RDN rdn) {
+            this.rdn = rdn;
+        }
+    }
+
+    private Node root = new Node(null);
+    private int counter;
+
+    public EntryTrie() {
+    }
+
+    /**
+     * Adds the entry and its descendants in the same order Entry.findEntries() visits them.
+     */
+    public void addTree(Entry entry) throws Exception {
+
+        if (isDelegate(entry)) {
+            getNode(entry.getDn()).delegates.add(new Item(entry, counter++));
+            return;
+        }
+
+        getNode(entry.getDn()).entries.add(new Item(entry, counter++));
+
+        for (Entry child : entry.getChildren()) {
+            addTree(child);
+        }
+    }
+
+    public static boolean isDelegate(Entry entry) throws Exception {
+        Class clazz = entry.getClass().getMethod("findEntries", DN.class).getDeclaringClass();
+        return clazz != Entry.class;
+    }
+
+    Node getNode(DN dn) throws Exception {
+        Node node = root;
+
+        for (int i=dn.getLength()-1; i>=0; i--) {
+            RDN rdn = dn.getRdn(i);
+
+            if (rdn.isWildcard()) {
+                Node child = null;
+                for (Node n : node.wildcards) {
+                    if (n.rdn.getNormalized().equals(rdn.getNormalized())) {
+                        child = n;
+                        break;
+                    }
+                }
+                if (child == null) {
+                    child = new Node(rdn);
+                    node.wildcards.add(child);
+                }
+                node = child;
+
+            } else {
+                String key = rdn.getNormalized();
+                Node child = node.children.get(key);
+                if (child == null) {
+                    child = new Node(rdn);
+                    node.children.put(key, child);
+                }
+                node = child;
+            }
+        }
+
+        return node;
+    }
+
+    public List<Entry> find(DN dn) throws Exception {
+
+        if (dn == null) return EMPTY_ENTRIES;
+
+        List<Item> items = new ArrayList<Item>();
+        find(root, dn, dn.getLength(), items);
+
+        if (items.isEmpty()) return EMPTY_ENTRIES;
+
+        if (items.size() > 1) {
+            Collections.sort(items, new Comparator<Item>() {
+                public int compare(Item item1, Item item2) {
+                    return item1.order - item2.order;
+                }
+            });
+        }
+
+        List<Entry> results = new ArrayList<Entry>(items.size());
+        for (Item item : items) {
+            results.add(item.entry);
+        }
+
+        return results;
+    }
+
+    void find(Node node, DN dn, int remaining, List<Item> results) throws Exception {
+
+        for (Item item : node.delegates) {
+            for (Entry entry : item.entry.findEntries(dn)) {
+                results.add(new Item(entry, item.order));
+            }
+        }
+
+        if (remaining == 0) {
+            results.addAll(node.entries);
+            return;
+        }
+
+        RDN rdn = dn.getRdn(remaining - 1);
+
+        if (rdn.isWildcard()) {
+            for (Node child : node.children.values()) {
+                if (rdn.matches(child.rdn)) find(child, dn, remaining - 1, results);
+            }
+
+        } else {
+            Node child = node.children.get(rdn.getNormalized());
+            if (child != null) find(child, dn, remaining - 1, results);
+        }
+
+        for (Node child : node.wildcards) {
+            if (child.rdn.matches(rdn)) find(child, dn, remaining - 1, results);
+        }
+    }
+}
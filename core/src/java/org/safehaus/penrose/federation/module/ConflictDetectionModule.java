@@ -1,9 +1,341 @@
 package org.safehaus.penrose.federation.module;
 
 import org.safehaus.penrose.module.Module;
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.filter.Filter;
+import org.safehaus.penrose.filter.FilterTool;
+import org.safehaus.penrose.filter.SimpleFilter;
+import org.safehaus.penrose.partition.Partition;
+import org.safehaus.penrose.session.Session;
+import org.safehaus.penrose.source.Source;
+import org.safehaus.penrose.ldap.source.LDAPSource;
+import org.safehaus.penrose.jdbc.source.JDBCSource;
+import org.safehaus.penrose.Penrose;
+
+import java.io.*;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.*;
 
 /**
+ * Detects entries in the repository sources which share the same value of the key
+ * attributes (e.g. uidNumber). Each source is scanned once and the keys are partitioned
+ * into bucket files by ConflictDetector. The conflicts are written into a report file.
+ *
+ * In incremental mode only the entries modified since the previous run are scanned.
+ * Deleted entries are only removed from the buckets by a full scan. A full scan is also
+ * run if there are more than MAX_CHANGES changes. The timestamp attribute defaults to
+ * modifyTimestamp for LDAP sources, JDBC sources need a field with the name of the
+ * timestampAttribute parameter. The time of the previous run is compared as generalized
+ * time in LDAP sources and as a SQL timestamp in JDBC sources, other sources can only
+ * be scanned fully.
+ *
  * @author Endi Sukma Dewata
  */
 public class ConflictDetectionModule extends Module {
-}
\ No newline at end of file
+
+    public final static String OBJECT_CLASS        = "objectClass";
+    public final static String ATTRIBUTE           = "attribute";
+    public final static String SOURCES             = "sources";
+    public final static String DIR                 = "dir";
+    public final static String BUCKETS             = "buckets";
+    public final static String MAX_BUCKET_SIZE     = "maxBucketSize";
+    public final static String THREADS             = "threads";
+    public final static String INCREMENTAL         = "incremental";
+    public final static String TIMESTAMP_ATTRIBUTE = "timestampAttribute";
+
+    public final static String DEFAULT_TIMESTAMP_ATTRIBUTE = "modifyTimestamp";
+    public final static int DEFAULT_THREADS = 4;
+
+    public final static int MAX_CONFLICTS = 1000;
+    public final static int MAX_CHANGES   = 1000000;
+
+    public final static String STATE    = "state.properties";
+    public final static String REPORT   = "conflicts.txt";
+    public final static String LAST_RUN = "lastRun";
+
+    protected String objectClass;
+    protected Collection<String> attributes = new ArrayList<String>();
+    protected Collection<String> sourceNames = new ArrayList<String>();
+
+    protected File dir;
+    protected int buckets;
+    protected long maxBucketSize;
+    protected int threads;
+
+    protected boolean incremental;
+    protected String timestampAttribute;
+
+    protected Collection<ConflictDetector.Conflict> conflicts = new ArrayList<ConflictDetector.Conflict>();
+    protected long conflictCount;
+
+    public void init() throws Exception {
+
+        objectClass = getParameter(OBJECT_CLASS);
+        log.debug("Object class: "+objectClass);
+
+        String s = getParameter(ATTRIBUTE);
+        for (String name : s.split(",")) {
+            attributes.add(name.trim());
+        }
+        log.debug("Attributes: "+attributes);
+
+        s = getParameter(SOURCES);
+        if (s == null) {
+            sourceNames.addAll(partition.getSourceManager().getSourceNames());
+        } else {
+            for (String name : s.split(",")) {
+                sourceNames.add(name.trim());
+            }
+        }
+        log.debug("Sources: "+sourceNames);
+
+        s = getParameter(DIR);
+        dir = new File(s == null ? "var"+File.separator+getName() : s);
+
+        File path = partition.getPartitionContext().getPath();
+        if (!dir.isAbsolute() && path != null) dir = new File(path, dir.getPath());
+
+        log.debug("Directory: "+dir);
+
+        s = getParameter(BUCKETS);
+        buckets = s == null ? ConflictDetector.DEFAULT_BUCKET_COUNT : Integer.parseInt(s);
+
+        s = getParameter(MAX_BUCKET_SIZE);
+        maxBucketSize = s == null ? ConflictDetector.DEFAULT_MAX_BUCKET_SIZE : Long.parseLong(s) * 1024 * 1024;
+
+        s = getParameter(THREADS);
+        threads = s == null ? DEFAULT_THREADS : Integer.parseInt(s);
+
+        incremental = Boolean.valueOf(getParameter(INCREMENTAL));
+
+        s = getParameter(TIMESTAMP_ATTRIBUTE);
+        timestampAttribute = s == null ? DEFAULT_TIMESTAMP_ATTRIBUTE : s;
+
+        if (!incremental) return;
+
+        for (String sourceName : sourceNames) {
+            Source source = getSource(sourceName);
+            if (source == null || hasTimestamp(source)) continue;
+
+            if (source instanceof JDBCSource) {
+                throw new Exception("Source "+sourceName+" has no "+timestampAttribute+" field, set the "+TIMESTAMP_ATTRIBUTE+" parameter.");
+            }
+
+            throw new Exception("Source "+sourceName+" cannot be scanned incrementally.");
+        }
+    }
+
+    /**
+     * Returns true if the source can be searched for the entries modified since a time.
+     */
+    public boolean hasTimestamp(Source source) {
+        if (source instanceof LDAPSource) return true;
+        if (source instanceof JDBCSource) return source.getField(timestampAttribute) != null;
+        return false;
+    }
+
+    /**
+     * Returns the filter for the entries modified since the time in the timestamp format
+     * of the source.
+     */
+    public Filter createTimestampFilter(Source source, Date time) throws Exception {
+
+        if (source instanceof JDBCSource) {
+            return new SimpleFilter(timestampAttribute, ">=", new Timestamp(time.getTime()));
+        }
+
+        return new SimpleFilter(timestampAttribute, ">=", createDateFormat().format(time));
+    }
+
+    public SimpleDateFormat createDateFormat() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat;
+    }
+
+    /**
+     * Runs an incremental detection if enabled and a previous run exists, otherwise a full
+     * detection. Returns the first conflicts found.
+     */
+    public Collection<ConflictDetector.Conflict> detect() throws Exception {
+        return detect(incremental);
+    }
+
+    public synchronized Collection<ConflictDetector.Conflict> detect(boolean incremental) throws Exception {
+
+        dir.mkdirs();
+
+        ConflictDetector detector = new ConflictDetector(dir, buckets, maxBucketSize);
+        detector.setMaxConflicts(MAX_CONFLICTS);
+
+        Properties state = loadState();
+        String lastRun = state.getProperty(LAST_RUN);
+
+        if (incremental && (lastRun == null || !detector.exists())) {
+            log.debug("No previous run, running full detection.");
+            incremental = false;
+        }
+
+        if (incremental) {
+            for (String sourceName : sourceNames) {
+                Source source = getSource(sourceName);
+                if (source == null || hasTimestamp(source)) continue;
+
+                log.debug("Source "+sourceName+" has no "+timestampAttribute+" field, running full detection.");
+                incremental = false;
+                break;
+            }
+        }
+
+        SimpleDateFormat dateFormat = createDateFormat();
+        String startTime = dateFormat.format(new Date());
+
+        Session session = createAdminSession();
+
+        try {
+            if (incremental) {
+                detector.beginChanges();
+                detector.setMaxChanges(MAX_CHANGES);
+
+                try {
+                    scan(session, detector, dateFormat.parse(lastRun));
+
+                } catch (Exception e) {
+                    // the exception might have been wrapped by the source
+                    if (!detector.isFull()) throw e;
+
+                    log.debug("Too many changes, running full detection.");
+                    return detect(false);
+                }
+
+            } else {
+                detector.begin();
+                try {
+                    scan(session, detector, null);
+                } finally {
+                    detector.end();
+                }
+            }
+
+        } finally {
+            session.close();
+        }
+
+        File reportFile = new File(dir, REPORT);
+        Writer report = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8"));
+
+        try {
+            detector.setReport(report);
+            detector.detect(threads);
+
+        } finally {
+            report.close();
+        }
+
+        conflicts = new ArrayList<ConflictDetector.Conflict>(detector.getConflicts());
+        conflictCount = detector.getConflictCount();
+
+        log.debug("Found "+conflictCount+" conflict(s), see "+reportFile+".");
+
+        state.setProperty(LAST_RUN, startTime);
+        storeState(state);
+
+        return conflicts;
+    }
+
+    public void scan(Session session, final ConflictDetector detector, Date lastRun) throws Exception {
+
+        for (final String sourceName : sourceNames) {
+
+            Source source = getSource(sourceName);
+            if (source == null) {
+                Penrose.errorLog.error("Source "+sourceName+" not found.");
+                continue;
+            }
+
+            log.debug("Scanning "+sourceName+".");
+
+            Filter filter = objectClass == null ? null : new SimpleFilter("objectClass", "=", objectClass);
+            if (lastRun != null) filter = FilterTool.appendAndFilter(filter, createTimestampFilter(source, lastRun));
+
+            SearchRequest request = new SearchRequest();
+            request.setFilter(filter);
+            request.setAttributes(attributes);
+
+            final boolean changes = lastRun != null;
+
+            SearchResponse response = new SearchResponse() {
+                public void add(SearchResult result) throws Exception {
+                    String dn = result.getDn().toString();
+                    Attributes attrs = result.getAttributes();
+
+                    if (changes) detector.addChangedEntry(sourceName, dn);
+
+                    for (String name : attributes) {
+                        for (Object value : attrs.getValues(name)) {
+                            String key = ConflictDetector.normalize(name, value);
+                            if (changes) {
+                                detector.addChange(key, sourceName, dn);
+                            } else {
+                                detector.add(key, sourceName, dn);
+                            }
+                        }
+                    }
+                }
+            };
+
+            source.search(session, request, response);
+        }
+    }
+
+    public Source getSource(String name) throws Exception {
+
+        int i = name.indexOf('.');
+        if (i < 0) return partition.getSourceManager().getSource(name);
+
+        Partition p = moduleContext.getPartition(name.substring(0, i));
+        if (p == null) return null;
+
+        return p.getSourceManager().getSource(name.substring(i+1));
+    }
+
+    public Properties loadState() throws Exception {
+
+        Properties state = new Properties();
+
+        File file = new File(dir, STATE);
+        if (!file.exists()) return state;
+
+        InputStream in = new FileInputStream(file);
+        try {
+            state.load(in);
+        } finally {
+            in.close();
+        }
+
+        return state;
+    }
+
+    public void storeState(Properties state) throws Exception {
+
+        OutputStream out = new FileOutputStream(new File(dir, STATE));
+        try {
+            state.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    public Collection<ConflictDetector.Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    public long getConflictCount() {
+        return conflictCount;
+    }
+
+    public File getReportFile() {
+        return new File(dir, REPORT);
+    }
+}
@@ -0,0 +1,598 @@
+package org.safehaus.penrose.federation.module;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streaming conflict detector. The key values of the entries are hash-partitioned into
+ * bucket files on disk, then each bucket is loaded and checked for keys shared by more
+ * than one entry. Buckets are checked in parallel. Buckets larger than the maximum size
+ * are split again into smaller files, so memory usage is bounded by the bucket size and
+ * not by the number of entries.
+ *
+ * In incremental mode only the changed entries are kept in memory. They replace the
+ * old records of the same entries in the buckets. The number of changes kept in memory
+ * is limited, addChange() throws an exception when the limit is exceeded. Buckets
+ * without old records of the changed entries are appended to instead of rewritten,
+ * buckets without any changes are not written at all.
+ *
+ * The conflicts of each bucket are stored next to the bucket. Only the buckets which
+ * have been written are checked again, the stored conflicts of the other buckets are
+ * reported as they are.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class ConflictDetector {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int DEFAULT_BUCKET_COUNT   = 64;
+    public final static long DEFAULT_MAX_BUCKET_SIZE = 64 * 1024 * 1024;
+
+    public final static int SPLIT_COUNT = 16;
+    public final static int MAX_LEVEL   = 4;
+    public final static int BUFFER_SIZE = 64 * 1024;
+
+    public final static String BUCKETS = "buckets";
+    public final static String CONFLICTS = "conflicts";
+
+    public static class Record {
+
+        String key;
+        String source;
+        String dn;
+
+        public Record(String key, String source, String dn) {
+            this.key = key;
+            this.source = source;
+            this.dn = dn;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getDn() {
+            return dn;
+        }
+
+        String getEntry() {
+            return source+"\t"+dn.toLowerCase();
+        }
+
+        void write(DataOutputStream out) throws Exception {
+            out.writeUTF(key);
+            out.writeUTF(source);
+            out.writeUTF(dn);
+        }
+
+        static Record read(DataInputStream in) throws Exception {
+            String key;
+            try {
+                key = in.readUTF();
+            } catch (EOFException e) {
+                return null;
+            }
+            return new Record(key, in.readUTF(), in.readUTF());
+        }
+    }
+
+    public static class TooManyChangesException extends Exception {
+
+        public TooManyChangesException(int maxChanges) {
+            super("More than "+maxChanges+" changes.");
+        }
+    }
+
+    public static class Conflict {
+
+        String key;
+        Collection<Record> records;
+
+        public Conflict(String key, Collection<Record> records) {
+            this.key = key;
+            this.records = records;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Collection<Record> getRecords() {
+            return records;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(key);
+            for (Record record : records) {
+                sb.append("\n - ");
+                sb.append(record.source);
+                sb.append(": ");
+                sb.append(record.dn);
+            }
+            return sb.toString();
+        }
+    }
+
+    private File dir;
+    private int bucketCount;
+    private long maxBucketSize;
+
+    // full scan
+    private DataOutputStream[] writers;
+
+    // incremental scan
+    private Map<Integer,Collection<Record>> changes;
+    private Set<String> changedEntries;
+    private int changeCount;
+    private int maxChanges = Integer.MAX_VALUE;
+    private boolean full;
+
+    private Collection<Conflict> conflicts = new ArrayList<Conflict>();
+    private int maxConflicts = Integer.MAX_VALUE;
+    private long conflictCount;
+
+    private Writer report;
+
+    public ConflictDetector(File dir, int bucketCount, long maxBucketSize) {
+        this.dir = dir;
+        this.bucketCount = bucketCount;
+        this.maxBucketSize = maxBucketSize;
+    }
+
+    public static String normalize(String attributeName, Object value) {
+        return attributeName.toLowerCase()+"="+value.toString().trim().toLowerCase();
+    }
+
+    static int getBucket(String key, int level, int count) {
+        int h = level == 0 ? key.hashCode() : (level+"#"+key).hashCode();
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % count;
+    }
+
+    public File getBucketsDir() {
+        return new File(dir, BUCKETS);
+    }
+
+    public File getBucketFile(File bucketsDir, int bucket) {
+        return new File(bucketsDir, "bucket-"+bucket);
+    }
+
+    public File getConflictsFile(File bucketsDir, int bucket) {
+        return new File(bucketsDir, CONFLICTS+"-"+bucket);
+    }
+
+    /**
+     * Returns true if the buckets of a previous scan exist.
+     */
+    public boolean exists() {
+        return getBucketsDir().exists();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Full Scan
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void begin() throws Exception {
+
+        File tmpDir = new File(dir, BUCKETS+".tmp");
+        delete(tmpDir);
+        tmpDir.mkdirs();
+
+        writers = new DataOutputStream[bucketCount];
+        for (int i=0; i<bucketCount; i++) {
+            writers[i] = createWriter(getBucketFile(tmpDir, i));
+        }
+    }
+
+    public synchronized void add(String key, String source, String dn) throws Exception {
+        Record record = new Record(key, source, dn);
+        record.write(writers[getBucket(key, 0, bucketCount)]);
+    }
+
+    public void end() throws Exception {
+
+        for (DataOutputStream out : writers) out.close();
+        writers = null;
+
+        File bucketsDir = getBucketsDir();
+        delete(bucketsDir);
+
+        File tmpDir = new File(dir, BUCKETS+".tmp");
+        if (!tmpDir.renameTo(bucketsDir)) throw new IOException("Unable to rename "+tmpDir+".");
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Incremental Scan
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginChanges() {
+        changes = new HashMap<Integer,Collection<Record>>();
+        changedEntries = new HashSet<String>();
+        changeCount = 0;
+        full = false;
+    }
+
+    /**
+     * Marks the entry as changed. Its old records will be removed from the buckets.
+     */
+    public synchronized void addChangedEntry(String source, String dn) throws Exception {
+        changedEntries.add(source+"\t"+dn.toLowerCase());
+        checkChanges();
+    }
+
+    public synchronized void addChange(String key, String source, String dn) throws Exception {
+
+        addChangedEntry(source, dn);
+
+        int bucket = getBucket(key, 0, bucketCount);
+
+        Collection<Record> list = changes.get(bucket);
+        if (list == null) {
+            list = new ArrayList<Record>();
+            changes.put(bucket, list);
+        }
+        list.add(new Record(key, source, dn));
+
+        changeCount++;
+    }
+
+    /**
+     * Drops the changes collected so far if there are too many to keep in memory.
+     */
+    void checkChanges() throws Exception {
+
+        if (!full && changeCount < maxChanges && changedEntries.size() <= maxChanges) return;
+
+        if (!full) {
+            changes.clear();
+            changedEntries.clear();
+            full = true;
+        }
+
+        throw new TooManyChangesException(maxChanges);
+    }
+
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    public int getMaxChanges() {
+        return maxChanges;
+    }
+
+    public void setMaxChanges(int maxChanges) {
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * Returns true if the changes exceeded the limit, so a full scan is needed.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Detection
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Checks the buckets for conflicts. After an incremental scan only the buckets with
+     * changes are checked, the conflicts of the other buckets are kept.
+     */
+    public Collection<Conflict> detect(int threads) throws Exception {
+
+        conflicts.clear();
+        conflictCount = 0;
+
+        final File bucketsDir = getBucketsDir();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            Collection<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+            for (int i=0; i<bucketCount; i++) {
+                final int bucket = i;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        detect(bucketsDir, bucket);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Object> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof Exception) throw (Exception)t;
+                    if (t instanceof Error) throw (Error)t;
+                    throw new Exception(t);
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+            changes = null;
+            changedEntries = null;
+        }
+
+        for (int i=0; i<bucketCount; i++) {
+            readConflicts(getConflictsFile(bucketsDir, i));
+        }
+
+        return conflicts;
+    }
+
+    void detect(File bucketsDir, int bucket) throws Exception {
+
+        File file = getBucketFile(bucketsDir, bucket);
+        File conflictsFile = getConflictsFile(bucketsDir, bucket);
+
+        if (changes != null && !update(file, bucket) && conflictsFile.exists()) return;
+
+        // the whole bucket is checked so the resolved conflicts are removed too
+        File tmp = new File(conflictsFile.getPath()+".tmp");
+        DataOutputStream out = createWriter(tmp);
+
+        try {
+            detect(file, 0, out);
+        } finally {
+            out.close();
+        }
+
+        if (conflictsFile.exists() && !conflictsFile.delete()) throw new IOException("Unable to replace "+conflictsFile+".");
+        if (!tmp.renameTo(conflictsFile)) throw new IOException("Unable to rename "+tmp+".");
+    }
+
+    /**
+     * Writes the changes of the bucket. Returns false if the bucket was not modified.
+     */
+    boolean update(File file, int bucket) throws Exception {
+
+        Collection<Record> list = changes.get(bucket);
+        if (list == null) list = new ArrayList<Record>();
+
+        if (!containsChangedEntries(file)) {
+            if (list.isEmpty()) return false;
+
+            // nothing to remove, the new records are appended
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+
+            try {
+                for (Record record : list) {
+                    record.write(out);
+                }
+
+            } finally {
+                out.close();
+            }
+
+            return true;
+        }
+
+        // replace the records of the changed entries
+        File tmp = new File(file.getPath()+".tmp");
+
+        DataInputStream in = file.exists() ? createReader(file) : null;
+        DataOutputStream out = createWriter(tmp);
+
+        try {
+            if (in != null) {
+                Record record;
+                while ((record = Record.read(in)) != null) {
+                    if (changedEntries.contains(record.getEntry())) continue;
+                    record.write(out);
+                }
+            }
+
+            for (Record record : list) {
+                record.write(out);
+            }
+
+        } finally {
+            if (in != null) in.close();
+            out.close();
+        }
+
+        if (file.exists() && !file.delete()) throw new IOException("Unable to replace "+file+".");
+        if (!tmp.renameTo(file)) throw new IOException("Unable to rename "+tmp+".");
+
+        return true;
+    }
+
+    boolean containsChangedEntries(File file) throws Exception {
+
+        if (!file.exists() || changedEntries.isEmpty()) return false;
+
+        DataInputStream in = createReader(file);
+
+        try {
+            Record record;
+            while ((record = Record.read(in)) != null) {
+                if (changedEntries.contains(record.getEntry())) return true;
+            }
+
+        } finally {
+            in.close();
+        }
+
+        return false;
+    }
+
+    void detect(File file, int level, DataOutputStream out) throws Exception {
+
+        if (!file.exists()) return;
+
+        if (file.length() > maxBucketSize && level < MAX_LEVEL) {
+            split(file, level, out);
+            return;
+        }
+
+        Map<String,Map<String,Record>> map = new HashMap<String,Map<String,Record>>();
+
+        DataInputStream in = createReader(file);
+
+        try {
+            Record record;
+            while ((record = Record.read(in)) != null) {
+                Map<String,Record> entries = map.get(record.key);
+                if (entries == null) {
+                    entries = new LinkedHashMap<String,Record>();
+                    map.put(record.key, entries);
+                }
+                entries.put(record.getEntry(), record);
+            }
+
+        } finally {
+            in.close();
+        }
+
+        for (Map.Entry<String,Map<String,Record>> entry : map.entrySet()) {
+            Map<String,Record> entries = entry.getValue();
+            if (entries.size() < 2) continue;
+
+            writeConflict(out, new Conflict(entry.getKey(), new ArrayList<Record>(entries.values())));
+        }
+    }
+
+    /**
+     * Splits a bucket which is too big into smaller files using a different hash.
+     */
+    void split(File file, int level, DataOutputStream out) throws Exception {
+
+        log.debug("Splitting "+file+" ("+file.length()+" bytes).");
+
+        File[] files = new File[SPLIT_COUNT];
+        DataOutputStream[] outs = new DataOutputStream[SPLIT_COUNT];
+
+        for (int i=0; i<SPLIT_COUNT; i++) {
+            files[i] = new File(file.getPath()+"."+i);
+            outs[i] = createWriter(files[i]);
+        }
+
+        DataInputStream in = createReader(file);
+
+        try {
+            Record record;
+            while ((record = Record.read(in)) != null) {
+                record.write(outs[getBucket(record.key, level+1, SPLIT_COUNT)]);
+            }
+
+        } finally {
+            in.close();
+            for (DataOutputStream o : outs) o.close();
+        }
+
+        try {
+            for (File f : files) {
+                detect(f, level+1, out);
+            }
+
+        } finally {
+            for (File f : files) f.delete();
+        }
+    }
+
+    void writeConflict(DataOutputStream out, Conflict conflict) throws Exception {
+        out.writeUTF(conflict.key);
+        out.writeInt(conflict.records.size());
+        for (Record record : conflict.records) {
+            record.write(out);
+        }
+    }
+
+    /**
+     * Reports the stored conflicts of a bucket.
+     */
+    void readConflicts(File file) throws Exception {
+
+        if (!file.exists()) return;
+
+        DataInputStream in = createReader(file);
+
+        try {
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int count = in.readInt();
+                Collection<Record> records = new ArrayList<Record>(count);
+                for (int i=0; i<count; i++) {
+                    records.add(Record.read(in));
+                }
+
+                addConflict(new Conflict(key, records));
+            }
+
+        } finally {
+            in.close();
+        }
+    }
+
+    synchronized void addConflict(Conflict conflict) throws Exception {
+
+        conflictCount++;
+
+        if (conflicts.size() < maxConflicts) conflicts.add(conflict);
+
+        if (report != null) {
+            report.write(conflict.toString());
+            report.write("\n\n");
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Utilities
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    DataOutputStream createWriter(File file) throws Exception {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    DataInputStream createReader(File file) throws Exception {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    void delete(File file) {
+        if (!file.exists()) return;
+
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) delete(f);
+        }
+
+        file.delete();
+    }
+
+    public long getConflictCount() {
+        return conflictCount;
+    }
+
+    public Collection<Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    public void setMaxConflicts(int maxConflicts) {
+        this.maxConflicts = maxConflicts;
+    }
+
+    public void setReport(Writer report) {
+        this.report = report;
+    }
+}
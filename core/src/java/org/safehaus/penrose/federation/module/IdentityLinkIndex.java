@@ -0,0 +1,393 @@
+package org.safehaus.penrose.federation.module;
+
+import org.safehaus.penrose.ldap.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Index of the global entries by the values of the target key attribute and the target
+ * link attribute, so the global entries linked to a local entry can be found without
+ * searching the target. Values are compared case-insensitively.
+ *
+ * The index is only marked as dirty if a record actually changes. An index loaded from
+ * a file is not complete until the entries modified in the target since the timestamp
+ * of the last scan have been added again.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class IdentityLinkIndex {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int VERSION = 2;
+
+    public final static Collection<DN> EMPTY = Collections.unmodifiableList(new ArrayList<DN>());
+
+    class Record {
+        DN dn;
+        String normalizedDn;
+        Collection<String> keys = new LinkedHashSet<String>();
+        Collection<String> links = new LinkedHashSet<String>();
+
+        Record(DN dn) throws Exception {
+            this.dn = dn;
+            this.normalizedDn = dn.getNormalizedDn();
+        }
+    }
+
+    private String keyAttribute;
+    private String linkAttribute;
+
+    // normalized DN => record
+    private Map<String,Record> records = new HashMap<String,Record>();
+
+    // normalized value => normalized DNs
+    private Map<String,Collection<String>> keyIndex = new HashMap<String,Collection<String>>();
+    private Map<String,Collection<String>> linkIndex = new HashMap<String,Collection<String>>();
+
+    private boolean complete;
+    private boolean dirty;
+
+    // start time of the last scan of the target
+    private long timestamp;
+
+    /**
+     * @param keyAttribute target key attribute, or null if the entries are linked by DN
+     * @param linkAttribute target attribute containing the links to the local entries, or null
+     */
+    public IdentityLinkIndex(String keyAttribute, String linkAttribute) {
+        this.keyAttribute = keyAttribute;
+        this.linkAttribute = linkAttribute;
+    }
+
+    public static String normalize(Object value) {
+        return value.toString().trim().toLowerCase();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Updates
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Adds or replaces the global entry.
+     */
+    public synchronized void add(DN dn, Attributes attributes) throws Exception {
+
+        Record record = new Record(dn);
+
+        if (keyAttribute != null) {
+            for (Object value : attributes.getValues(keyAttribute)) {
+                record.keys.add(normalize(value));
+            }
+        }
+
+        if (linkAttribute != null) {
+            for (Object value : attributes.getValues(linkAttribute)) {
+                record.links.add(normalize(value));
+            }
+        }
+
+        Record oldRecord = records.get(record.normalizedDn);
+
+        if (oldRecord != null
+                && oldRecord.dn.toString().equals(dn.toString())
+                && oldRecord.keys.equals(record.keys)
+                && oldRecord.links.equals(record.links)) {
+            return;
+        }
+
+        remove(dn);
+
+        records.put(record.normalizedDn, record);
+
+        for (String value : record.keys) {
+            addValue(keyIndex, record, record.keys, value);
+        }
+
+        for (String value : record.links) {
+            addValue(linkIndex, record, record.links, value);
+        }
+
+        dirty = true;
+    }
+
+    public synchronized void remove(DN dn) throws Exception {
+
+        Record record = records.remove(dn.getNormalizedDn());
+        if (record == null) return;
+
+        for (String value : record.keys) {
+            removeValue(keyIndex, record, value);
+        }
+
+        for (String value : record.links) {
+            removeValue(linkIndex, record, value);
+        }
+
+        dirty = true;
+    }
+
+    public synchronized void rename(DN oldDn, DN newDn) throws Exception {
+
+        Record record = records.get(oldDn.getNormalizedDn());
+        if (record == null) return;
+
+        Attributes attributes = new Attributes();
+        if (keyAttribute != null) attributes.addValues(keyAttribute, new ArrayList<Object>(record.keys));
+        if (linkAttribute != null) attributes.addValues(linkAttribute, new ArrayList<Object>(record.links));
+
+        remove(oldDn);
+        add(newDn, attributes);
+    }
+
+    /**
+     * Applies the modifications of the key and link attributes.
+     */
+    public synchronized void modify(DN dn, Collection<Modification> modifications) throws Exception {
+
+        Record record = records.get(dn.getNormalizedDn());
+        if (record == null) return;
+
+        Collection<String> keys = new ArrayList<String>(record.keys);
+        Collection<String> links = new ArrayList<String>(record.links);
+
+        for (Modification modification : modifications) {
+            Attribute attribute = modification.getAttribute();
+            String name = attribute.getName();
+
+            if (keyAttribute != null && keyAttribute.equalsIgnoreCase(name)) {
+                modify(keyIndex, record, record.keys, modification.getType(), attribute.getValues());
+
+            } else if (linkAttribute != null && linkAttribute.equalsIgnoreCase(name)) {
+                modify(linkIndex, record, record.links, modification.getType(), attribute.getValues());
+            }
+        }
+
+        if (!record.keys.equals(new LinkedHashSet<String>(keys))) dirty = true;
+        if (!record.links.equals(new LinkedHashSet<String>(links))) dirty = true;
+    }
+
+    void modify(
+            Map<String,Collection<String>> index,
+            Record record,
+            Collection<String> values,
+            int type,
+            Collection<Object> newValues
+    ) {
+        if (type == Modification.REPLACE || type == Modification.DELETE && newValues.isEmpty()) {
+            for (String value : values) {
+                removeValue(index, record, value);
+            }
+            values.clear();
+        }
+
+        for (Object value : newValues) {
+            if (type == Modification.DELETE) {
+                String s = normalize(value);
+                values.remove(s);
+                removeValue(index, record, s);
+            } else {
+                addValue(index, record, values, value);
+            }
+        }
+    }
+
+    public synchronized void addLink(DN dn, Object value) throws Exception {
+
+        Record record = records.get(dn.getNormalizedDn());
+        if (record == null) return;
+        if (record.links.contains(normalize(value))) return;
+
+        addValue(linkIndex, record, record.links, value);
+        dirty = true;
+    }
+
+    public synchronized void removeLink(DN dn, Object value) throws Exception {
+
+        Record record = records.get(dn.getNormalizedDn());
+        if (record == null) return;
+
+        String s = normalize(value);
+        if (!record.links.remove(s)) return;
+
+        removeValue(linkIndex, record, s);
+        dirty = true;
+    }
+
+    void addValue(Map<String,Collection<String>> index, Record record, Collection<String> values, Object value) {
+
+        String s = normalize(value);
+        values.add(s);
+
+        Collection<String> dns = index.get(s);
+        if (dns == null) {
+            dns = new LinkedHashSet<String>();
+            index.put(s, dns);
+        }
+        dns.add(record.normalizedDn);
+    }
+
+    void removeValue(Map<String,Collection<String>> index, Record record, String value) {
+
+        Collection<String> dns = index.get(value);
+        if (dns == null) return;
+
+        dns.remove(record.normalizedDn);
+        if (dns.isEmpty()) index.remove(value);
+    }
+
+    public synchronized void clear() {
+        records.clear();
+        keyIndex.clear();
+        linkIndex.clear();
+        complete = false;
+        dirty = true;
+        timestamp = 0;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Lookups
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the global entries whose key attribute has the value.
+     */
+    public synchronized Collection<DN> findByKey(Object value) {
+        return find(keyIndex, value);
+    }
+
+    /**
+     * Returns the global entries whose link attribute has the value.
+     */
+    public synchronized Collection<DN> findByLink(Object value) {
+        return find(linkIndex, value);
+    }
+
+    Collection<DN> find(Map<String,Collection<String>> index, Object value) {
+
+        Collection<String> dns = index.get(normalize(value));
+        if (dns == null) return EMPTY;
+
+        Collection<DN> list = new ArrayList<DN>(dns.size());
+        for (String dn : dns) {
+            list.add(records.get(dn).dn);
+        }
+
+        return list;
+    }
+
+    public synchronized boolean contains(DN dn) throws Exception {
+        return records.containsKey(dn.getNormalizedDn());
+    }
+
+    public synchronized int getSize() {
+        return records.size();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Persistence
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Loads the index from a file. The index is not complete until the entries modified
+     * in the target since the timestamp have been added again.
+     */
+    public synchronized void load(File file) throws Exception {
+
+        records.clear();
+        keyIndex.clear();
+        linkIndex.clear();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported link index version: "+version);
+
+            timestamp = in.readLong();
+
+            int count = in.readInt();
+            for (int i=0; i<count; i++) {
+                Record record = new Record(new DN(in.readUTF()));
+                records.put(record.normalizedDn, record);
+
+                int keys = in.readInt();
+                for (int j=0; j<keys; j++) addValue(keyIndex, record, record.keys, in.readUTF());
+
+                int links = in.readInt();
+                for (int j=0; j<links; j++) addValue(linkIndex, record, record.links, in.readUTF());
+            }
+
+        } finally {
+            in.close();
+        }
+
+        complete = false;
+        dirty = false;
+
+        log.debug("Loaded "+records.size()+" entries from "+file+".");
+    }
+
+    public synchronized void save(File file) throws Exception {
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+
+        File tmp = new File(file.getPath()+".tmp");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+        try {
+            out.writeInt(VERSION);
+            out.writeLong(timestamp);
+            out.writeInt(records.size());
+
+            for (Record record : records.values()) {
+                out.writeUTF(record.dn.toString());
+
+                out.writeInt(record.keys.size());
+                for (String value : record.keys) out.writeUTF(value);
+
+                out.writeInt(record.links.size());
+                for (String value : record.links) out.writeUTF(value);
+            }
+
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete()) throw new IOException("Unable to replace "+file+".");
+        if (!tmp.renameTo(file)) throw new IOException("Unable to rename "+tmp+".");
+
+        dirty = false;
+
+        log.debug("Saved "+records.size()+" entries into "+file+".");
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    public synchronized long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The timestamp doesn't make the index dirty, an older timestamp in the file only
+     * makes the next validation search more entries.
+     */
+    public synchronized void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -28,16 +28,16 @@ import org.safehaus.penrose.mapping.MappingManager;
 import org.safehaus.penrose.module.Module;
 import org.safehaus.penrose.partition.Partition;
 import org.safehaus.penrose.session.Session;
+import org.safehaus.penrose.module.ModuleChain;
 import org.safehaus.penrose.federation.IdentityLinkingResult;
 import org.safehaus.penrose.federation.IdentityLinkingMBean;
 import org.safehaus.penrose.federation.IdentityLinkingException;
 import org.safehaus.penrose.source.Source;
 import org.safehaus.penrose.Penrose;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.*;
+import java.io.File;
+import java.text.SimpleDateFormat;
 
 /**
  * @author Endi Sukma Dewata
@@ -48,6 +48,17 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
     public final static String TARGET = "target";
     public final static String BOTH   = "both";
 
+    public final static String LINK_INDEX          = "linkIndex";
+    public final static String LINK_INDEX_FILE     = "linkIndexFile";
+    public final static String LINK_INDEX_INTERVAL = "linkIndexInterval";
+
+    public final static int DEFAULT_LINK_INDEX_INTERVAL = 60; // seconds
+
+    // margin for the clocks of the target server
+    public final static long CLOCK_SKEW = 10 * 60 * 1000;
+
+    public final static int MAX_BATCH_SIZE = 100;
+
     protected String sourcePartitionName;
     protected String sourceName;
 
@@ -63,6 +74,12 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
     protected String mappingName;
     protected String mappingPrefix;
 
+    protected IdentityLinkIndex linkIndex;
+    protected File linkIndexFile;
+    protected int linkIndexInterval;
+    protected final Object linkIndexLock = new Object();
+    protected volatile Thread linkIndexThread;
+
     public void init() throws Exception {
 
         String s = getParameter("source");
@@ -112,6 +129,57 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
 
         mappingPrefix = getParameter("mappingPrefix");
         log.debug("Mapping prefix: "+mappingPrefix);
+
+        if (Boolean.valueOf(getParameter(LINK_INDEX))) {
+
+            s = getParameter(LINK_INDEX_FILE);
+            linkIndexFile = new File(s == null ? "var"+File.separator+getName()+".links" : s);
+
+            File path = getPartition().getPartitionContext().getPath();
+            if (!linkIndexFile.isAbsolute() && path != null) linkIndexFile = new File(path, linkIndexFile.getPath());
+
+            log.debug("Link index: "+linkIndexFile);
+
+            linkIndex = new IdentityLinkIndex("dn".equals(targetKey) ? null : targetKey, targetAttribute);
+
+            if (linkIndexFile.exists()) {
+                try {
+                    linkIndex.load(linkIndexFile);
+                } catch (Exception e) {
+                    Penrose.errorLog.error("Unable to load "+linkIndexFile+": "+e.getMessage());
+                    linkIndex.clear();
+                }
+            }
+
+            s = getParameter(LINK_INDEX_INTERVAL);
+            linkIndexInterval = s == null ? DEFAULT_LINK_INDEX_INTERVAL : Integer.parseInt(s);
+
+            log.debug("Link index interval: "+linkIndexInterval);
+
+            if (linkIndexInterval > 0) {
+                linkIndexThread = new Thread(new Runnable() {
+                    public void run() {
+                        runLinkIndex();
+                    }
+                }, getName()+"-linkIndex");
+
+                linkIndexThread.setDaemon(true);
+                linkIndexThread.start();
+            }
+        }
+    }
+
+    public void destroy() throws Exception {
+
+        Thread thread = linkIndexThread;
+        linkIndexThread = null;
+
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+
+        if (linkIndex != null && linkIndex.isDirty()) linkIndex.save(linkIndexFile);
     }
 
     public void linkEntry(DN sourceDn, DN targetDn) throws Exception {
@@ -169,6 +237,7 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
 
         try {
             target.modify(session, request, response);
+            if (linkIndex != null && target == getTarget()) linkIndex.addLink(targetDn, value);
 
         } catch (Exception e) {
             Penrose.errorLog.error(e.getMessage(), e);
@@ -230,7 +299,8 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
 
         try {
             target.modify(session, request, response);
-            
+            if (linkIndex != null && target == getTarget()) linkIndex.removeLink(targetDn, value);
+
         } catch (Exception e) {
             Penrose.errorLog.error(e.getMessage(), e);
         }
@@ -246,6 +316,8 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
 
             DN targetSuffix = getTargetSuffix();
 
+            IdentityLinkIndex index = getLinkIndex(session);
+
             log.debug("##################################################################################################");
             log.debug("Search "+request.getDn()+".");
 
@@ -262,74 +334,114 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
 
                 if (sourceAttribute != null) {
                     data.setLocalAttribute(sourceAttribute);
-
-                    Attributes sourceAttributes = localEntry.getAttributes();
-                    Collection<Object> links = sourceAttributes.getValues(sourceAttribute);
-
-                    for (Object link : links) {
-                        SearchRequest globalRequest = new SearchRequest();
-
-                        if (targetKey == null || targetKey.equals("dn")) {
-                            globalRequest.setDn(link.toString());
-                            globalRequest.setScope(SearchRequest.SCOPE_BASE);
-                        } else {
-                            globalRequest.setDn(targetSuffix);
-                            globalRequest.setFilter(new SimpleFilter(targetKey, "=", link));
-                        }
-
-                        SearchResponse globalResponse = new SearchResponse();
-
-                        try {
-                            target.search(session, globalRequest, globalResponse);
-
-                            while (globalResponse.hasNext()) {
-                                SearchResult globalEntry = globalResponse.next();
-                                data.addLinkedEntry(globalEntry);
-                            }
-                        } catch (Exception e) {
-                            Penrose.errorLog.error("Unable to find "+targetKey+"="+link);
-                        }
-                    }
                 }
 
                 if (targetAttribute != null) {
                     data.setGlobalAttribute(targetAttribute);
+                }
 
-                    Collection<Object> targetLinks;
+                if (index == null) {
+                    searchLinkedEntries(session, localEntry, data, target, targetSuffix);
+                }
 
-                    if (sourceKey == null || sourceKey.equals("dn")) {
-                        targetLinks = new ArrayList<Object>();
-                        targetLinks.add(localEntry.getDn().toString());
+                results.add(data);
+            }
 
-                    } else {
-                        Attributes sourceAttributes = localEntry.getAttributes();
-                        targetLinks = sourceAttributes.getValues(sourceKey);
+            if (index != null) {
+                List<SearchResult> localEntries = new ArrayList<SearchResult>();
+                for (IdentityLinkingResult data : results) {
+                    localEntries.add(data.getEntry());
+                }
+
+                List<Collection<SearchResult>> list = findLinkedEntries(session, index, localEntries);
+
+                Iterator<Collection<SearchResult>> iterator = list.iterator();
+                for (IdentityLinkingResult data : results) {
+                    for (SearchResult globalEntry : iterator.next()) {
+                        data.addLinkedEntry(globalEntry);
                     }
+                }
+            }
+
+            return results;
+
+        } finally {
+            session.close();
+        }
+    }
 
-                    for (Object link : targetLinks) {
-                        SearchRequest globalRequest = new SearchRequest();
-                        globalRequest.setDn(targetSuffix);
-                        globalRequest.setFilter(new SimpleFilter(targetAttribute, "=", link));
+    public void searchLinkedEntries(
+            Session session,
+            SearchResult localEntry,
+            IdentityLinkingResult data,
+            Source target,
+            DN targetSuffix
+    ) throws Exception {
 
-                        SearchResponse globalResponse = new SearchResponse();
+        if (sourceAttribute != null) {
 
-                        target.search(session, globalRequest, globalResponse);
+            Attributes sourceAttributes = localEntry.getAttributes();
+            Collection<Object> links = sourceAttributes.getValues(sourceAttribute);
 
-                        while (globalResponse.hasNext()) {
-                            SearchResult globalEntry = globalResponse.next();
-                            data.addLinkedEntry(globalEntry);
-                        }
+            for (Object link : links) {
+                SearchRequest globalRequest = new SearchRequest();
+
+                if (targetKey == null || targetKey.equals("dn")) {
+                    globalRequest.setDn(link.toString());
+                    globalRequest.setScope(SearchRequest.SCOPE_BASE);
+                } else {
+                    globalRequest.setDn(targetSuffix);
+                    globalRequest.setFilter(new SimpleFilter(targetKey, "=", link));
+                }
+
+                SearchResponse globalResponse = new SearchResponse();
+
+                try {
+                    target.search(session, globalRequest, globalResponse);
+
+                    while (globalResponse.hasNext()) {
+                        SearchResult globalEntry = globalResponse.next();
+                        data.addLinkedEntry(globalEntry);
                     }
+                } catch (Exception e) {
+                    Penrose.errorLog.error("Unable to find "+targetKey+"="+link);
                 }
+            }
+        }
 
-                results.add(data);
+        if (targetAttribute != null) {
+
+            for (Object link : getLocalKeys(localEntry)) {
+                SearchRequest globalRequest = new SearchRequest();
+                globalRequest.setDn(targetSuffix);
+                globalRequest.setFilter(new SimpleFilter(targetAttribute, "=", link));
+
+                SearchResponse globalResponse = new SearchResponse();
+
+                target.search(session, globalRequest, globalResponse);
+
+                while (globalResponse.hasNext()) {
+                    SearchResult globalEntry = globalResponse.next();
+                    data.addLinkedEntry(globalEntry);
+                }
             }
+        }
+    }
 
-            return results;
+    /**
+     * Returns the values stored in the target attribute of the global entries linked
+     * to the local entry.
+     */
+    public Collection<Object> getLocalKeys(SearchResult localEntry) throws Exception {
 
-        } finally {
-            session.close();
+        if (sourceKey == null || sourceKey.equals("dn")) {
+            Collection<Object> list = new ArrayList<Object>();
+            list.add(localEntry.getDn().toString());
+            return list;
         }
+
+        Attributes sourceAttributes = localEntry.getAttributes();
+        return sourceAttributes.getValues(sourceKey);
     }
 
     public Collection<SearchResult> searchLinks(SearchResult sourceEntry) throws Exception {
@@ -344,6 +456,15 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
             log.debug("##################################################################################################");
             log.debug("Search links for "+sourceDn);
 
+            IdentityLinkIndex index = getLinkIndex(adminSession);
+
+            if (index != null) {
+                List<SearchResult> localEntries = new ArrayList<SearchResult>();
+                localEntries.add(sourceEntry);
+
+                return findLinkedEntries(adminSession, index, localEntries).get(0);
+            }
+
             Map<DN,SearchResult> map = new HashMap<DN,SearchResult>();
 
             if (sourceAttribute != null) {
@@ -477,6 +598,7 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
             AddResponse response = new AddResponse();
 
             target.add(adminSession, request, response);
+            if (linkIndex != null) linkIndex.add(targetDn, targetAttributes);
 
             if (sourceAttribute != null) {
                 try {
@@ -569,6 +691,7 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
             AddResponse response = new AddResponse();
 
             target.add(adminSession, request, response);
+            if (linkIndex != null) linkIndex.add(targetDn, targetAttributes);
 
             if (sourceAttribute != null) {
                 try {
@@ -633,6 +756,7 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
 
             Source target = getTarget();
             target.add(adminSession, request, response);
+            if (linkIndex != null) linkIndex.add(targetDn, targetAttributes);
 
         } finally {
             adminSession.close();
@@ -660,12 +784,387 @@ public class IdentityLinkingModule extends Module implements IdentityLinkingMBea
             DeleteResponse response = new DeleteResponse();
 
             target.delete(session, request, response);
+            if (linkIndex != null) linkIndex.remove(targetDn);
 
         } finally {
             session.close();
         }
     }
 
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Operations
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void add(
+            Session session,
+            AddRequest request,
+            AddResponse response,
+            ModuleChain chain
+    ) throws Exception {
+
+        chain.add(session, request, response);
+
+        if (linkIndex != null && isTargetEntry(request.getDn())) {
+            linkIndex.add(request.getDn(), request.getAttributes());
+        }
+    }
+
+    public void delete(
+            Session session,
+            DeleteRequest request,
+            DeleteResponse response,
+            ModuleChain chain
+    ) throws Exception {
+
+        chain.delete(session, request, response);
+
+        if (linkIndex != null && isTargetEntry(request.getDn())) {
+            linkIndex.remove(request.getDn());
+        }
+    }
+
+    public void modify(
+            Session session,
+            ModifyRequest request,
+            ModifyResponse response,
+            ModuleChain chain
+    ) throws Exception {
+
+        chain.modify(session, request, response);
+
+        if (linkIndex != null && isTargetEntry(request.getDn())) {
+            linkIndex.modify(request.getDn(), request.getModifications());
+        }
+    }
+
+    public void modrdn(
+            Session session,
+            ModRdnRequest request,
+            ModRdnResponse response,
+            ModuleChain chain
+    ) throws Exception {
+
+        chain.modrdn(session, request, response);
+
+        if (linkIndex != null && isTargetEntry(request.getDn())) {
+            DN dn = request.getDn();
+            DN newDn = new DN(request.getNewRdn()).append(dn.getParentDn());
+            linkIndex.rename(dn, newDn);
+        }
+    }
+
+    public boolean isTargetEntry(DN dn) throws Exception {
+        DN targetSuffix = getTargetSuffix();
+        return dn != null && targetSuffix != null && dn.endsWith(targetSuffix);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Link Index
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the link index, or null if it is disabled. The index is built with a scan
+     * of the target the first time it is used. An index loaded from a file is validated
+     * by adding the entries modified in the target since it was saved.
+     */
+    public IdentityLinkIndex getLinkIndex(Session session) throws Exception {
+
+        if (linkIndex == null) return null;
+
+        synchronized (linkIndexLock) {
+            if (linkIndex.isComplete()) return linkIndex;
+
+            if (linkIndex.getTimestamp() > 0) {
+                try {
+                    refreshLinkIndex(session);
+                    return linkIndex;
+
+                } catch (Exception e) {
+                    Penrose.errorLog.error("Unable to validate link index: "+e.getMessage());
+                }
+            }
+
+            buildLinkIndex(session);
+        }
+
+        return linkIndex;
+    }
+
+    public void buildLinkIndex(Session session) throws Exception {
+
+        log.debug("Building link index.");
+
+        long timestamp = System.currentTimeMillis();
+
+        final IdentityLinkIndex index = linkIndex;
+        index.clear();
+
+        searchLinkIndex(session, null);
+
+        index.setTimestamp(timestamp);
+        index.setComplete(true);
+
+        log.debug("Link index contains "+index.getSize()+" entries.");
+    }
+
+    /**
+     * Adds the entries modified in the target since the last scan into the index. Links
+     * changed directly in the target are not seen by the index otherwise. Deleted entries
+     * are removed when they are not found by findLinkedEntries().
+     */
+    public void refreshLinkIndex(Session session) throws Exception {
+
+        long timestamp = System.currentTimeMillis();
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String lastRun = dateFormat.format(new Date(linkIndex.getTimestamp() - CLOCK_SKEW));
+
+        log.debug("Validating link index since "+lastRun+".");
+
+        searchLinkIndex(session, new SimpleFilter("modifyTimestamp", ">=", lastRun));
+
+        linkIndex.setTimestamp(timestamp);
+        linkIndex.setComplete(true);
+    }
+
+    public void searchLinkIndex(Session session, Filter filter) throws Exception {
+
+        LDAPSource target = getTarget();
+
+        SearchRequest request = new SearchRequest();
+        request.setDn(getTargetSuffix());
+        request.setFilter(filter);
+
+        Collection<String> attributeNames = new ArrayList<String>();
+        if (!"dn".equals(targetKey)) attributeNames.add(targetKey);
+        if (targetAttribute != null) attributeNames.add(targetAttribute);
+        if (attributeNames.isEmpty()) attributeNames.add("1.1");
+        request.setAttributes(attributeNames);
+
+        final IdentityLinkIndex index = linkIndex;
+
+        SearchResponse response = new SearchResponse() {
+            public void add(SearchResult result) throws Exception {
+                index.add(result.getDn(), result.getAttributes());
+            }
+        };
+
+        target.search(session, request, response);
+    }
+
+    /**
+     * Validates the index against the target and saves it periodically, so the file is not
+     * rewritten by every search.
+     */
+    public void runLinkIndex() {
+
+        while (linkIndexThread == Thread.currentThread()) {
+
+            try {
+                Thread.sleep(linkIndexInterval * 1000L);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                if (linkIndex.isComplete()) {
+                    Session session = createAdminSession();
+                    try {
+                        refreshLinkIndex(session);
+                    } finally {
+                        session.close();
+                    }
+                }
+
+            } catch (Exception e) {
+                Penrose.errorLog.error("Unable to validate link index: "+e.getMessage());
+            }
+
+            saveLinkIndex();
+        }
+    }
+
+    public void saveLinkIndex() {
+        if (linkIndex == null || !linkIndex.isDirty()) return;
+
+        try {
+            linkIndex.save(linkIndexFile);
+        } catch (Exception e) {
+            Penrose.errorLog.error("Unable to save "+linkIndexFile+": "+e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the global entries linked to each local entry. The links are resolved with
+     * the index, then the global entries are retrieved with bulk searches. Links which are
+     * not in the index are searched with bulk searches too.
+     */
+    public List<Collection<SearchResult>> findLinkedEntries(
+            Session session,
+            IdentityLinkIndex index,
+            List<SearchResult> localEntries
+    ) throws Exception {
+
+        LDAPSource target = getTarget();
+
+        boolean linkedByDn = targetKey == null || targetKey.equals("dn");
+
+        // normalized DN => global entry
+        Map<String,SearchResult> globalEntries = new HashMap<String,SearchResult>();
+
+        if (sourceAttribute != null && !linkedByDn) {
+
+            Collection<Object> missingKeys = new LinkedHashSet<Object>();
+
+            for (SearchResult localEntry : localEntries) {
+                for (Object link : localEntry.getAttributes().getValues(sourceAttribute)) {
+                    if (index.findByKey(link).isEmpty()) missingKeys.add(link);
+                }
+            }
+
+            if (!missingKeys.isEmpty()) {
+                log.debug("Searching "+missingKeys.size()+" links not found in the index.");
+                searchEntries(session, target, index, targetKey, missingKeys, null, globalEntries);
+            }
+        }
+
+        List<Collection<DN>> linkedDns = new ArrayList<Collection<DN>>();
+        Map<String,DN> dns = new LinkedHashMap<String,DN>();
+
+        for (SearchResult localEntry : localEntries) {
+
+            Collection<DN> list = new ArrayList<DN>();
+
+            if (sourceAttribute != null) {
+                for (Object link : localEntry.getAttributes().getValues(sourceAttribute)) {
+                    if (linkedByDn) {
+                        list.add(new DN(link.toString()));
+                    } else {
+                        list.addAll(index.findByKey(link));
+                    }
+                }
+            }
+
+            if (targetAttribute != null) {
+                for (Object link : getLocalKeys(localEntry)) {
+                    list.addAll(index.findByLink(link));
+                }
+            }
+
+            for (DN dn : list) {
+                String normalizedDn = dn.getNormalizedDn();
+                if (!globalEntries.containsKey(normalizedDn)) dns.put(normalizedDn, dn);
+            }
+
+            linkedDns.add(list);
+        }
+
+        if (!dns.isEmpty()) {
+
+            // search the entries by their RDNs, then keep the requested entries
+            Map<String,Collection<Object>> rdnValues = new LinkedHashMap<String,Collection<Object>>();
+
+            for (DN dn : dns.values()) {
+                RDN rdn = dn.getRdn();
+                String name = rdn.getName();
+
+                Collection<Object> values = rdnValues.get(name);
+                if (values == null) {
+                    values = new ArrayList<Object>();
+                    rdnValues.put(name, values);
+                }
+                values.add(rdn.get(name));
+            }
+
+            boolean complete = true;
+            for (String name : rdnValues.keySet()) {
+                complete &= searchEntries(session, target, index, name, rdnValues.get(name), dns.keySet(), globalEntries);
+            }
+
+            // entries which no longer exist
+            for (String normalizedDn : dns.keySet()) {
+                if (!complete) break;
+                if (globalEntries.containsKey(normalizedDn)) continue;
+                index.remove(dns.get(normalizedDn));
+            }
+        }
+
+        List<Collection<SearchResult>> results = new ArrayList<Collection<SearchResult>>();
+
+        for (Collection<DN> list : linkedDns) {
+
+            Map<String,SearchResult> map = new LinkedHashMap<String,SearchResult>();
+
+            for (DN dn : list) {
+                String normalizedDn = dn.getNormalizedDn();
+                SearchResult globalEntry = globalEntries.get(normalizedDn);
+                if (globalEntry != null) map.put(normalizedDn, globalEntry);
+            }
+
+            results.add(map.values());
+        }
+
+        return results;
+    }
+
+    /**
+     * Searches the target with OR filters on the attribute values in batches and updates
+     * the index with the entries found.
+     *
+     * @param normalizedDns if not null, only entries with these DNs are returned
+     * @return false if a search failed
+     */
+    public boolean searchEntries(
+            Session session,
+            LDAPSource target,
+            IdentityLinkIndex index,
+            String attributeName,
+            Collection<Object> values,
+            Collection<String> normalizedDns,
+            Map<String,SearchResult> globalEntries
+    ) throws Exception {
+
+        boolean complete = true;
+
+        List<Object> list = new ArrayList<Object>(values);
+
+        for (int i=0; i<list.size(); i+=MAX_BATCH_SIZE) {
+
+            Filter filter = null;
+            for (Object value : list.subList(i, Math.min(i+MAX_BATCH_SIZE, list.size()))) {
+                SimpleFilter sf = new SimpleFilter(attributeName, "=", value);
+                filter = FilterTool.appendOrFilter(filter, sf);
+            }
+
+            SearchRequest request = new SearchRequest();
+            request.setDn(getTargetSuffix());
+            request.setFilter(filter);
+
+            SearchResponse response = new SearchResponse();
+
+            try {
+                target.search(session, request, response);
+
+                while (response.hasNext()) {
+                    SearchResult result = response.next();
+                    String normalizedDn = result.getDn().getNormalizedDn();
+
+                    index.add(result.getDn(), result.getAttributes());
+
+                    if (normalizedDns != null && !normalizedDns.contains(normalizedDn)) continue;
+                    globalEntries.put(normalizedDn, result);
+                }
+
+            } catch (Exception e) {
+                Penrose.errorLog.error("Unable to search "+filter+": "+e.getMessage());
+                complete = false;
+            }
+        }
+
+        return complete;
+    }
+
     public LDAPSource getSource() throws Exception {
         Partition sourcePartition = moduleContext.getPartition(sourcePartitionName);
         return (LDAPSource)sourcePartition.getSourceManager().getSource(sourceName);
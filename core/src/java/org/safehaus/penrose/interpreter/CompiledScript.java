@@ -0,0 +1,218 @@
+/**
+ * Copyright 2009 Red Hat, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.safehaus.penrose.interpreter;
+
+import bsh.Parser;
+import bsh.ParserConstants;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Script which has been tokenized once and cached. Scripts consisting only of string
+ * literals and variable references joined with '+' (e.g. "cn" or "rdn.uid+\"@example.com\"")
+ * are evaluated directly against the interpreter variables without BeanShell.
+ *
+ * If a variable is not defined or the values cannot be concatenated, eval() returns
+ * UNRESOLVED and the script has to be evaluated by BeanShell as before.
+ *
+ * @author Endi S. Dewata
+ */
+public class CompiledScript {
+
+    public final static Object UNRESOLVED = new Object();
+
+    public final static int MAX_CACHE_SIZE = 10000;
+
+    private final static ConcurrentMap<String,CompiledScript> cache = new ConcurrentHashMap<String,CompiledScript>();
+
+    private String script;
+
+    // String constants or Variable references, null if the script is not simple
+    private Object[] terms;
+
+    static class Variable {
+        String name;
+
+        Variable(String name) {
+            this.name = name;
+        }
+    }
+
+    public CompiledScript(String script) {
+        this.script = script;
+        this.terms = compile0(script);
+    }
+
+    public static CompiledScript compile(String script) {
+        CompiledScript compiledScript = cache.get(script);
+        if (compiledScript != null) return compiledScript;
+
+        compiledScript = new CompiledScript(script);
+        if (cache.size() < MAX_CACHE_SIZE) cache.put(script, compiledScript);
+
+        return compiledScript;
+    }
+
+    static Object[] compile0(String script) {
+
+        List<Object> list = new ArrayList<Object>();
+
+        try {
+            Parser parser = new Parser(new StringReader(script));
+
+            boolean expectTerm = true;
+            StringBuilder name = null;
+
+            bsh.Token token = parser.getNextToken();
+            while (token != null && token.kind != ParserConstants.EOF) {
+
+                if (expectTerm) {
+                    if (token.kind == ParserConstants.STRING_LITERAL && name == null) {
+                        String value = unescape(token.image);
+                        if (value == null) return null;
+                        list.add(value);
+                        expectTerm = false;
+
+                    } else if (token.kind == ParserConstants.IDENTIFIER) {
+                        if (name == null) name = new StringBuilder();
+                        name.append(token.image);
+                        expectTerm = false;
+
+                    } else {
+                        return null;
+                    }
+
+                } else if (token.kind == ParserConstants.DOT && name != null) {
+                    name.append('.');
+                    expectTerm = true;
+
+                } else if (token.kind == ParserConstants.PLUS || token.kind == ParserConstants.SEMICOLON) {
+                    if (name != null) {
+                        list.add(new Variable(name.toString()));
+                        name = null;
+                    }
+
+                    if (token.kind == ParserConstants.SEMICOLON) {
+                        token = parser.getNextToken();
+                        if (token != null && token.kind != ParserConstants.EOF) return null;
+                        break;
+                    }
+
+                    expectTerm = true;
+
+                } else {
+                    return null;
+                }
+
+                token = parser.getNextToken();
+            }
+
+            if (name != null) list.add(new Variable(name.toString()));
+            if (expectTerm && !list.isEmpty()) return null;
+
+        } catch (Throwable e) {
+            return null;
+        }
+
+        if (list.isEmpty()) return null;
+
+        return list.toArray();
+    }
+
+    static String unescape(String image) {
+
+        if (image.length() < 2) return null;
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i=1; i<image.length()-1; i++) {
+            char c = image.charAt(i);
+
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            c = image.charAt(++i);
+            switch (c) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'r': sb.append('\r'); break;
+                case 'f': sb.append('\f'); break;
+                case '\\': sb.append('\\'); break;
+                case '\'': sb.append('\''); break;
+                case '"': sb.append('"'); break;
+                default: return null;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public boolean isSimple() {
+        return terms != null;
+    }
+
+    /**
+     * Evaluates a simple script, returns UNRESOLVED if BeanShell is needed.
+     */
+    public Object eval(Interpreter interpreter) throws Exception {
+
+        if (terms == null) return UNRESOLVED;
+
+        Object result = null;
+
+        for (int i=0; i<terms.length; i++) {
+            Object term = terms[i];
+            Object value;
+
+            if (term instanceof Variable) {
+                value = interpreter.get(((Variable)term).name);
+                if (value == null) return UNRESOLVED;
+
+            } else {
+                value = term;
+            }
+
+            if (i == 0) {
+                result = value;
+
+            } else if (result instanceof String || value instanceof String) {
+                result = result.toString() + value;
+
+            } else {
+                return UNRESOLVED;
+            }
+        }
+
+        return result;
+    }
+
+    public static void clearCache() {
+        cache.clear();
+    }
+}
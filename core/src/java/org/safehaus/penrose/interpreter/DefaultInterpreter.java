@@ -35,6 +35,9 @@ public class DefaultInterpreter extends org.safehaus.penrose.interpreter.Interpr
     public Map<String,Object> variables = new HashMap<String,Object>();
     public Interpreter interpreter;
 
+    // BeanShell interpreters shared with other evaluations, null to create a new one
+    public InterpreterPool pool;
+
     public DefaultInterpreter() {
     }
 
@@ -113,13 +116,23 @@ public class DefaultInterpreter extends org.safehaus.penrose.interpreter.Interpr
     public Object eval(String script) throws Exception {
         try {
             if (script == null) return null;
+
+            // simple scripts don't need BeanShell
+            Object result = CompiledScript.compile(script).eval(this);
+            if (result != CompiledScript.UNRESOLVED) return result;
+
             if (interpreter == null) {
                 //log.debug("###################################################################");
                 //log.debug("# NEW INTERPRETER");
 
-                interpreter = new Interpreter();
-                interpreter.setClassLoader(classLoader);
-                
+                if (pool == null) {
+                    interpreter = new Interpreter();
+                    interpreter.setClassLoader(classLoader);
+
+                } else {
+                    interpreter = pool.get();
+                }
+
                 for (Iterator i=variables.keySet().iterator(); i.hasNext(); ) {
                     String name = (String)i.next();
                     Object value = variables.get(name);
@@ -137,6 +150,14 @@ public class DefaultInterpreter extends org.safehaus.penrose.interpreter.Interpr
         }
     }
 
+    public InterpreterPool getPool() {
+        return pool;
+    }
+
+    public void setPool(InterpreterPool pool) {
+        this.pool = pool;
+    }
+
     public void clear() throws Exception {
         //log.debug("Clearing interpreter:");
         if (interpreter != null) {
@@ -161,6 +182,14 @@ public class DefaultInterpreter extends org.safehaus.penrose.interpreter.Interpr
                 //log.debug(" - "+variableNames[i]+": "+interpreter.get(variableNames[i]));
                 interpreter.unset(variableNames[i]);
             }
+
+            // the interpreter can be bound to the variables of another evaluation,
+            // remove the methods and imports defined by the scripts too
+            if (pool != null) {
+                ns.clear();
+                pool.release(interpreter);
+                interpreter = null;
+            }
         }
 /*
         log.debug("Variables:");
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2009 Red Hat, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.safehaus.penrose.interpreter;
+
+import bsh.Interpreter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of BeanShell interpreters of a partition. Creating a BeanShell interpreter is
+ * expensive, so a DefaultInterpreter borrows one when a script has to be evaluated by
+ * BeanShell, binds its variables into it and returns it when it's cleared.
+ *
+ * @author Endi S. Dewata
+ */
+public class InterpreterPool {
+
+    public final static int DEFAULT_MAX_SIZE = 32;
+
+    private ClassLoader classLoader;
+    private int maxSize = DEFAULT_MAX_SIZE;
+
+    private Queue<Interpreter> interpreters = new ConcurrentLinkedQueue<Interpreter>();
+    private AtomicInteger size = new AtomicInteger();
+
+    public InterpreterPool(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns an interpreter without variables.
+     */
+    public Interpreter get() {
+        Interpreter interpreter = interpreters.poll();
+
+        if (interpreter == null) {
+            interpreter = new Interpreter();
+            interpreter.setClassLoader(classLoader);
+            return interpreter;
+        }
+
+        size.decrementAndGet();
+        return interpreter;
+    }
+
+    /**
+     * Returns an interpreter into the pool. The variables and methods have to be unset.
+     */
+    public void release(Interpreter interpreter) {
+        if (size.incrementAndGet() > maxSize) {
+            size.decrementAndGet();
+            return;
+        }
+
+        interpreters.offer(interpreter);
+    }
+
+    public void clear() {
+        while (interpreters.poll() != null) size.decrementAndGet();
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+}
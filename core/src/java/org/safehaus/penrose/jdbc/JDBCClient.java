@@ -35,7 +35,9 @@ public class JDBCClient {
     public Connection connection;
 
     public Integer queryTimeout;
+    public Integer fetchSize;
     public String quote;
+    public String dialect;
 
     public JDBCClient(Map<String,String> parameters) throws Exception {
         this(new JDBCConnectionFactory(parameters));
@@ -45,7 +47,9 @@ public class JDBCClient {
         this.connectionFactory = connectionFactory;
 
         queryTimeout = connectionFactory.getQueryTimeout();
+        fetchSize = connectionFactory.getFetchSize();
         quote = connectionFactory.getQuote();
+        dialect = connectionFactory.getDialect();
     }
 
     public Connection getConnection() throws Exception {
@@ -325,6 +329,19 @@ public class JDBCClient {
             Collection<Object> parameters,
             QueryResponse response
     ) throws Exception {
+        executeQuery(sql, parameters, 0, response);
+    }
+
+    /**
+     * Executes a query returning at most maxRows rows, 0 if unlimited. The limit is
+     * also enforced by the driver in case it could not be added into the SQL.
+     */
+    public void executeQuery(
+            String sql,
+            Collection<Object> parameters,
+            long maxRows,
+            QueryResponse response
+    ) throws Exception {
 
         boolean debug = log.isDebugEnabled();
         if (debug) {
@@ -362,6 +379,10 @@ public class JDBCClient {
         try {
             ps = connection.prepareStatement(sql);
             if (queryTimeout != null) ps.setQueryTimeout(queryTimeout);
+            if (fetchSize != null) ps.setFetchSize(fetchSize);
+
+            // pooled statements keep the previous limit
+            ps.setMaxRows(maxRows > 0 && maxRows <= Integer.MAX_VALUE ? (int)maxRows : 0);
 
             if (parameters != null && !parameters.isEmpty()) {
                 int counter = 1;
@@ -404,7 +425,15 @@ public class JDBCClient {
         return queryTimeout;
     }
 
+    public Integer getFetchSize() {
+        return fetchSize;
+    }
+
     public String getQuote() {
         return quote;
     }
+
+    public String getDialect() {
+        return dialect;
+    }
 }
\ No newline at end of file
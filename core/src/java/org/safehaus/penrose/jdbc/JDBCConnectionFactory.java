@@ -2,6 +2,7 @@ package org.safehaus.penrose.jdbc;
 
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.safehaus.penrose.jdbc.connection.JDBCConnection;
+import org.safehaus.penrose.jdbc.connection.JDBCStatementBuilder;
 
 import java.sql.Connection;
 import java.sql.Driver;
@@ -19,7 +20,9 @@ public class JDBCConnectionFactory implements ConnectionFactory {
 
     public String url;
     public Integer queryTimeout;
+    public Integer fetchSize;
     public String quote;
+    public String dialect;
 
     public JDBCConnectionFactory(
             Map<String,String> parameters
@@ -68,7 +71,17 @@ public class JDBCConnectionFactory implements ConnectionFactory {
             queryTimeout = Integer.parseInt(s);
         }
 
+        s = (String)properties.remove(JDBCConnection.FETCH_SIZE);
+        if (s != null) {
+            fetchSize = Integer.parseInt(s);
+        }
+
         quote = (String)properties.remove(JDBCConnection.QUOTE);
+
+        dialect = (String)properties.remove(JDBCConnection.DIALECT);
+        if (dialect == null) {
+            dialect = JDBCStatementBuilder.getDialect(url);
+        }
     }
 
     public void init() throws Exception {
@@ -102,7 +115,15 @@ public class JDBCConnectionFactory implements ConnectionFactory {
         return queryTimeout;
     }
 
+    public Integer getFetchSize() {
+        return fetchSize;
+    }
+
     public String getQuote() {
         return quote;
     }
+
+    public String getDialect() {
+        return dialect;
+    }
 }
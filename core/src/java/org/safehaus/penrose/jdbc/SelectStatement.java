@@ -19,6 +19,9 @@ public class SelectStatement extends Statement {
 
     protected Collection<String> orders = new ArrayList<String>();
 
+    // maximum number of rows, 0 if unlimited
+    protected long limit;
+
     public Collection<String> getColumnNames() {
         return columnNames;
     }
@@ -94,4 +97,12 @@ public class SelectStatement extends Statement {
     public void setWhereClause(String whereClause) {
         this.whereClause = whereClause;
     }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
 }
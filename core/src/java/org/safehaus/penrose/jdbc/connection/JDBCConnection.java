@@ -1,6 +1,9 @@
 package org.safehaus.penrose.jdbc.connection;
 
 import org.apache.commons.dbcp.PoolableConnectionFactory;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.safehaus.penrose.connection.Connection;
 import org.safehaus.penrose.jdbc.*;
@@ -28,6 +31,8 @@ public class JDBCConnection extends Connection {
     public final static String PASSWORD                             = "password";
     public final static String QUOTE                                = "quote";
     public final static String QUERY_TIMEOUT                        = "queryTimeout";
+    public final static String FETCH_SIZE                           = "fetchSize";
+    public final static String DIALECT                              = "dialect";
 
     public final static String INITIAL_SIZE                         = "initialSize";
     public final static String MAX_ACTIVE                           = "maxActive";
@@ -49,12 +54,21 @@ public class JDBCConnection extends Connection {
     public final static String WHEN_EXHAUSTED_BLOCK                 = "block";
     public final static String WHEN_EXHAUSTED_GROW                  = "grow";
 
+    public final static String POOL_PREPARED_STATEMENTS             = "poolPreparedStatements";
+    public final static String MAX_OPEN_PREPARED_STATEMENTS         = "maxOpenPreparedStatements";
+
+    public final static String LEASE                                = "lease";
+    public final static String LEASE_OPERATION                      = "operation";
+    public final static String LEASE_SESSION                        = "session";
+
     public GenericObjectPool.Config config = new GenericObjectPool.Config();
     public GenericObjectPool connectionPool;
 
     public JDBCConnectionFactory connectionFactory;
     public PoolableConnectionFactory poolableConnectionFactory;
 
+    public String lease = LEASE_OPERATION;
+
     public void init() throws Exception {
 
         log.debug("Initializing connection "+getName()+".");
@@ -124,13 +138,35 @@ public class JDBCConnection extends Connection {
 
         String validationQuery = parameters.remove(VALIDATION_QUERY);
 
+        s = parameters.remove(LEASE);
+        if (s != null) lease = s;
+
+        // prepared statements are cached in each pooled connection keyed by the SQL
+        s = parameters.remove(POOL_PREPARED_STATEMENTS);
+        boolean poolPreparedStatements = s == null || Boolean.valueOf(s);
+
+        s = parameters.remove(MAX_OPEN_PREPARED_STATEMENTS);
+        int maxOpenPreparedStatements = s == null ? GenericKeyedObjectPool.DEFAULT_MAX_TOTAL : Integer.parseInt(s);
+
+        KeyedObjectPoolFactory statementPoolFactory = null;
+        if (poolPreparedStatements) {
+            statementPoolFactory = new GenericKeyedObjectPoolFactory(
+                    null,
+                    -1, // unlimited active statements per SQL
+                    GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL,
+                    0, // max wait
+                    1, // max idle statements per SQL
+                    maxOpenPreparedStatements
+            );
+        }
+
         connectionPool = new GenericObjectPool(null, config);
 
         connectionFactory = new JDBCConnectionFactory(driver, parameters);
         poolableConnectionFactory = new PoolableConnectionFactory(
                 connectionFactory,
                 connectionPool,
-                null, // statement pool factory
+                statementPoolFactory,
                 validationQuery, // test query
                 false, // read only
                 true // auto commit
@@ -235,6 +271,46 @@ public class JDBCConnection extends Connection {
 */
     }
 
+    /**
+     * Returns a client for a single operation. In operation lease mode the client holds a
+     * pooled connection only until it's returned with returnClient(), unless the session
+     * already has its own client.
+     */
+    public JDBCClient borrowClient(Session session) throws Exception {
+
+        if (LEASE_SESSION.equals(lease)) return getClient(session);
+
+        String attributeName = getPartition().getName()+".connection."+getName();
+
+        JDBCClient client = (JDBCClient)session.getAttribute(attributeName);
+        if (client != null) return client;
+
+        long startTime = System.currentTimeMillis();
+
+        client = createClient();
+        client.connect();
+
+        addLease(System.currentTimeMillis() - startTime);
+
+        return client;
+    }
+
+    public void returnClient(Session session, JDBCClient client) throws Exception {
+
+        String attributeName = getPartition().getName()+".connection."+getName();
+        if (session.getAttribute(attributeName) == client) return;
+
+        client.close();
+    }
+
+    public int getActiveCount() {
+        return connectionPool == null ? 0 : connectionPool.getNumActive();
+    }
+
+    public int getIdleCount() {
+        return connectionPool == null ? 0 : connectionPool.getNumIdle();
+    }
+
     public void closeClient(Session session) throws Exception {
 
         //String authentication = source.getParameter(AUTHENTICATON);
@@ -412,6 +412,11 @@ public class JDBCFilterBuilder {
             StringBuilder sb
     ) throws Exception {
 
+        if (isInFilter(filter)) {
+            generateIn(filter, sb);
+            return;
+        }
+
         StringBuilder sb2 = new StringBuilder();
         for (Filter f : filter.getFilters()) {
 
@@ -436,6 +441,150 @@ public class JDBCFilterBuilder {
         sb.append(")");
     }
 
+    /**
+     * Returns true if the filter is a disjunction of equality filters
+     * on the same attribute which can be converted into an IN clause.
+     */
+    public boolean isInFilter(OrFilter filter) {
+
+        if (!extractValues) return false;
+
+        Collection<Filter> filters = filter.getFilters();
+        if (filters.size() < 2) return false;
+
+        String attribute = null;
+
+        for (Filter f : filters) {
+            if (!(f instanceof SimpleFilter)) return false;
+
+            SimpleFilter sf = (SimpleFilter)f;
+            if (!"=".equals(sf.getOperator())) return false;
+
+            if (attribute == null) {
+                attribute = sf.getAttribute();
+
+            } else if (!attribute.equalsIgnoreCase(sf.getAttribute())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void generateIn(
+            OrFilter filter,
+            StringBuilder sb
+    ) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        Collection<Filter> filters = filter.getFilters();
+        String name = ((SimpleFilter)filters.iterator().next()).getAttribute();
+
+        if (debug) log.debug("In Filter: "+name+" in "+filters.size()+" values");
+
+        StringBuilder sb1 = new StringBuilder();
+
+        String lsourceAlias;
+        String lfieldName;
+
+        int i = name.indexOf('.');
+        if (i < 0) {
+            lsourceAlias = sources.keySet().iterator().next();
+            lfieldName = name;
+        } else {
+            lsourceAlias = name.substring(0, i);
+            lfieldName = name.substring(i+1);
+        }
+
+        if (appendSourceAlias) {
+            sb1.append(lsourceAlias);
+            sb1.append(".");
+        }
+
+        StatementSource lsource = sources.get(lsourceAlias);
+        String lpartitionName = lsource.getPartitionName();
+        String lsourceName = lsource.getSourceName();
+
+        Partition lpartition = getPartition(lpartitionName);
+        SourceConfig ls = lpartition.getPartitionConfig().getSourceConfigManager().getSourceConfig(lsourceName);
+
+        FieldConfig lField = ls.getFieldConfig(lfieldName);
+        if (lField == null) throw new Exception("Unknown field: "+name);
+
+        if (quote != null) sb1.append(quote);
+        sb1.append(lField.getOriginalName());
+        if (quote != null) sb1.append(quote);
+
+        String lhs = sb1.toString();
+
+        String rhs;
+
+        if (lField.getCastType() != null) {
+            StringBuilder sb3 = new StringBuilder();
+            sb3.append("cast(? as ");
+            sb3.append(lField.getCastType());
+
+            if (lField.getLength() > 0) {
+                sb3.append("(");
+                sb3.append(lField.getLength());
+                sb3.append(")");
+            }
+
+            sb3.append(")");
+            rhs = sb3.toString();
+
+        } else {
+            rhs = "?";
+        }
+
+        boolean lowerCase = allowCaseSensitive && lField.isText() && !lField.isCaseSensitive();
+
+        if (lowerCase) {
+            sb.append("lower(");
+            sb.append(lhs);
+            sb.append(")");
+
+        } else {
+            sb.append(lhs);
+        }
+
+        sb.append(" in (");
+
+        boolean first = true;
+        for (Filter f : filters) {
+            Object value = ((SimpleFilter)f).getValue();
+
+            // same as the simple filter: lowercase the value ourselves if it's not wrapped in a cast
+            if (lowerCase && lField.getCastType() == null) {
+                if (value instanceof byte[]) {
+                    value = (new String((byte[])value)).toLowerCase().getBytes();
+                } else {
+                    value = value.toString().toLowerCase();
+                }
+            }
+
+            parameters.add(value);
+
+            if (first) {
+                first = false;
+            } else {
+                sb.append(", ");
+            }
+
+            if (lowerCase && lField.getCastType() != null) {
+                sb.append("lower(");
+                sb.append(rhs);
+                sb.append(")");
+
+            } else {
+                sb.append(rhs);
+            }
+        }
+
+        sb.append(")");
+    }
+
     public Collection<String> getSourceAliases() {
         return sources.keySet();
     }
@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  * @author Endi S. Dewata
@@ -19,11 +20,22 @@ public class JDBCStatementBuilder {
 
     public Logger log = LoggerFactory.getLogger(getClass());
 
+    public final static String DIALECT_LIMIT       = "limit";
+    public final static String DIALECT_FETCH_FIRST = "fetchFirst";
+    public final static String DIALECT_ROWNUM      = "rownum";
+    public final static String DIALECT_TOP         = "top";
+
+    public final static int MAX_CACHE_SIZE = 1000;
+
     protected Partition partition;
     protected String sql;
     protected Collection<Object> parameters = new ArrayList<Object>();
 
     private String quote;
+    private String dialect;
+
+    // select clauses generated for previous statements
+    private Map<String,String> cache;
 
     public JDBCStatementBuilder(Partition partition) {
         this.partition = partition;
@@ -52,8 +64,144 @@ public class JDBCStatementBuilder {
         log.debug("Generating select statement.");
 
         StringBuilder sb = new StringBuilder();
+
+        long limit = statement.getLimit();
+
+        if (limit > 0 && DIALECT_ROWNUM.equals(dialect)) {
+            sb.append("select * from (\n");
+        }
+
         sb.append("select distinct\n    ");
 
+        if (limit > 0 && DIALECT_TOP.equals(dialect)) {
+            sb.append("top ");
+            sb.append(limit);
+            sb.append("\n    ");
+        }
+
+        sb.append(getSelectClause(statement));
+
+        Filter filter = statement.getFilter();
+
+        JDBCFilterBuilder filterBuilder = new JDBCFilterBuilder(partition);
+        filterBuilder.setQuote(quote);
+
+        for (String cn : statement.getSourceAliases()) {
+            StatementSource source = statement.getSource(cn);
+            filterBuilder.addSource(cn, source);
+        }
+
+        filterBuilder.generate(filter);
+        String sql = filterBuilder.getSql();
+
+        if (statement.getWhereClause() != null) {
+            if (sql.length() > 0) {
+                sql = "("+sql+") and ("+statement.getWhereClause()+")";
+            } else {
+                sql = statement.getWhereClause();
+            }
+        }
+
+        if (sql.length() > 0) {
+            sb.append("\nwhere\n    ");
+            sb.append(sql);
+        }
+
+        parameters.addAll(filterBuilder.getParameters());
+
+        boolean first = true;
+        for (String columnName : statement.getOrders()) {
+
+            if (first) {
+                sb.append("\norder by\n    ");
+                first = false;
+            } else {
+                sb.append(", ");
+            }
+
+            int p = columnName.indexOf('.');
+
+            if (p >= 0) {
+                String sn = columnName.substring(0, p);
+                String fn = columnName.substring(p+1);
+
+                sb.append(sn);
+                sb.append('.');
+
+                columnName = fn;
+            }
+
+            if (quote != null) sb.append(quote);
+            sb.append(columnName);
+            if (quote != null) sb.append(quote);
+        }
+
+        if (limit > 0) {
+            if (DIALECT_LIMIT.equals(dialect)) {
+                sb.append("\nlimit ");
+                sb.append(limit);
+
+            } else if (DIALECT_FETCH_FIRST.equals(dialect)) {
+                sb.append("\nfetch first ");
+                sb.append(limit);
+                sb.append(" rows only");
+
+            } else if (DIALECT_ROWNUM.equals(dialect)) {
+                sb.append("\n) where rownum <= ");
+                sb.append(limit);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the column list, the tables and the join clauses. They only depend on
+     * the mapping, so if a cache is set they are generated once for each statement shape.
+     */
+    public String getSelectClause(SelectStatement statement) throws Exception {
+
+        if (cache == null) return generateSelectClause(statement);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(quote);
+        sb.append('|');
+        sb.append(statement.getColumnNames());
+
+        for (String alias : statement.getSourceAliases()) {
+            StatementSource source = statement.getSource(alias);
+            sb.append('|');
+            sb.append(alias);
+            sb.append('=');
+            sb.append(source.getPartitionName());
+            sb.append('.');
+            sb.append(source.getSourceName());
+        }
+
+        for (JoinClause joinClause : statement.getJoinClauses()) {
+            sb.append('|');
+            sb.append(joinClause.getType());
+            sb.append(' ');
+            sb.append(joinClause.getCondition());
+            sb.append(' ');
+            sb.append(joinClause.getWhere());
+        }
+
+        String key = sb.toString();
+
+        String selectClause = cache.get(key);
+        if (selectClause != null) return selectClause;
+
+        selectClause = generateSelectClause(statement);
+        if (cache.size() < MAX_CACHE_SIZE) cache.put(key, selectClause);
+
+        return selectClause;
+    }
+
+    public String generateSelectClause(SelectStatement statement) throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
         boolean first = true;
         for (String columnName : statement.getColumnNames()) {
 
@@ -139,78 +287,39 @@ public class JDBCStatementBuilder {
             }
         }
 
-        Filter filter = statement.getFilter();
+        return sb.toString();
+    }
 
-        JDBCFilterBuilder filterBuilder = new JDBCFilterBuilder(partition);
-        filterBuilder.setQuote(quote);
+    /**
+     * Returns the syntax used to limit the number of rows for the JDBC URL,
+     * or null if the database is unknown.
+     */
+    public static String getDialect(String url) {
 
-        for (String cn : statement.getSourceAliases()) {
-            source = statement.getSource(cn);
-            filterBuilder.addSource(cn, source);
-        }
+        if (url == null) return null;
 
-        filterBuilder.generate(filter);
-        String sql = filterBuilder.getSql();
+        String s = url.toLowerCase();
 
-        if (statement.getWhereClause() != null) {
-            if (sql.length() > 0) {
-                sql = "("+sql+") and ("+statement.getWhereClause()+")";
-            } else {
-                sql = statement.getWhereClause();
-            }
+        if (s.startsWith("jdbc:mysql:")
+                || s.startsWith("jdbc:postgresql:")
+                || s.startsWith("jdbc:hsqldb:")
+                || s.startsWith("jdbc:h2:")) {
+            return DIALECT_LIMIT;
         }
 
-        if (sql.length() > 0) {
-            sb.append("\nwhere\n    ");
-            sb.append(sql);
+        if (s.startsWith("jdbc:derby:") || s.startsWith("jdbc:db2:")) {
+            return DIALECT_FETCH_FIRST;
         }
 
-        parameters.addAll(filterBuilder.getParameters());
-
-        first = true;
-        for (String columnName : statement.getOrders()) {
-
-            if (first) {
-                sb.append("\norder by\n    ");
-                first = false;
-            } else {
-                sb.append(", ");
-            }
-
-            int p = columnName.indexOf('.');
-
-            if (p >= 0) {
-                String sn = columnName.substring(0, p);
-                String fn = columnName.substring(p+1);
-
-                sb.append(sn);
-                sb.append('.');
-
-                columnName = fn;
-            }
-
-            if (quote != null) sb.append(quote);
-            sb.append(columnName);
-            if (quote != null) sb.append(quote);
+        if (s.startsWith("jdbc:oracle:")) {
+            return DIALECT_ROWNUM;
         }
 
-/*
-        int totalCount = response.getTotalCount();
-        long sizeLimit = request.getSizeLimit();
-
-        if (sizeLimit == 0) {
-            log.debug("Retrieving all entries.");
-
-        } else {
-            int size = sizeLimit - totalCount + 1;
-            if (debug) log.debug("Retrieving "+size+" entries.");
-
-            sb.append(" limit ");
-            sb.append(size);
+        if (s.startsWith("jdbc:sqlserver:") || s.startsWith("jdbc:jtds:")) {
+            return DIALECT_TOP;
         }
-*/
 
-        return sb.toString();
+        return null;
     }
 
     public String generate(InsertStatement statement) throws Exception {
@@ -392,4 +501,20 @@ public class JDBCStatementBuilder {
     public void setQuote(String quote) {
         this.quote = quote;
     }
+
+    public String getDialect() {
+        return dialect;
+    }
+
+    public void setDialect(String dialect) {
+        this.dialect = dialect;
+    }
+
+    public Map<String,String> getCache() {
+        return cache;
+    }
+
+    public void setCache(Map<String,String> cache) {
+        this.cache = cache;
+    }
 }
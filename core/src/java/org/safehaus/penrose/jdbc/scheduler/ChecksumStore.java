@@ -0,0 +1,236 @@
+package org.safehaus.penrose.jdbc.scheduler;
+
+import org.safehaus.penrose.ldap.Attribute;
+import org.safehaus.penrose.ldap.Attributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Content checksums of the target rows written by the last synchronization, keyed by
+ * the target name and the normalized DN of the row. The records are split into shards
+ * by the hash of the key so each shard can be compared by a different thread.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class ChecksumStore {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int VERSION = 2;
+
+    public static class Record {
+
+        String source;
+        String dn;
+        long checksum;
+        boolean found;
+
+        public Record(String dn, long checksum) {
+            this(null, dn, checksum);
+        }
+
+        public Record(String source, String dn, long checksum) {
+            this.source = source;
+            this.dn = dn;
+            this.checksum = checksum;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getDn() {
+            return dn;
+        }
+
+        public long getChecksum() {
+            return checksum;
+        }
+    }
+
+    private File file;
+    private List<Map<String,Record>> shards = new ArrayList<Map<String,Record>>();
+    private boolean loaded;
+
+    public ChecksumStore(File file, int shardCount) {
+        this.file = file;
+        for (int i=0; i<shardCount; i++) {
+            shards.add(new HashMap<String,Record>());
+        }
+    }
+
+    /**
+     * Returns true if the checksums of a previous synchronization have been loaded.
+     */
+    public boolean exists() {
+        return loaded;
+    }
+
+    public void load() throws Exception {
+
+        for (Map<String,Record> shard : shards) shard.clear();
+        loaded = false;
+
+        if (!file.exists()) return;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            int version = in.readInt();
+
+            // the checksums of an older version have to be created again
+            if (version != VERSION) {
+                log.debug("Ignoring checksum file version "+version+" in "+file+".");
+                return;
+            }
+
+            long count = in.readLong();
+            for (long i=0; i<count; i++) {
+                String key = in.readUTF();
+                String source = in.readUTF();
+                String dn = in.readUTF();
+                long checksum = in.readLong();
+
+                getRecords(key).put(key, new Record(source, dn, checksum));
+            }
+
+            loaded = true;
+
+        } finally {
+            in.close();
+        }
+
+        log.debug("Loaded "+getCount()+" checksums from "+file+".");
+    }
+
+    /**
+     * Writes the records into a temporary file, then replaces the old file.
+     */
+    public void save() throws Exception {
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+
+        File tmp = new File(file.getPath()+".tmp");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+        try {
+            out.writeInt(VERSION);
+            out.writeLong(getCount());
+
+            for (Map<String,Record> shard : shards) {
+                for (Map.Entry<String,Record> entry : shard.entrySet()) {
+                    Record record = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(record.source == null ? "" : record.source);
+                    out.writeUTF(record.dn);
+                    out.writeLong(record.checksum);
+                }
+            }
+
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete()) throw new IOException("Unable to replace "+file+".");
+        if (!tmp.renameTo(file)) throw new IOException("Unable to rename "+tmp+".");
+
+        loaded = true;
+
+        log.debug("Saved "+getCount()+" checksums into "+file+".");
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public static String getKey(String source, String normalizedDn) {
+        return source+":"+normalizedDn;
+    }
+
+    public int getShard(String key) {
+        return (key.hashCode() & 0x7fffffff) % shards.size();
+    }
+
+    public Map<String,Record> getRecords(int shard) {
+        return shards.get(shard);
+    }
+
+    public Map<String,Record> getRecords(String key) {
+        return shards.get(getShard(key));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (Map<String,Record> shard : shards) count += shard.size();
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Computes a checksum of the attributes which does not depend on the order of the
+     * attributes and values.
+     */
+    public static long checksum(Attributes attributes) throws Exception {
+
+        Map<String,List<String>> map = new TreeMap<String,List<String>>();
+
+        for (Attribute attribute : attributes.getAll()) {
+            String name = attribute.getName().toLowerCase();
+
+            List<String> values = map.get(name);
+            if (values == null) {
+                values = new ArrayList<String>();
+                map.put(name, values);
+            }
+
+            for (Object value : attribute.getValues()) {
+                if (value instanceof byte[]) {
+                    values.add(toHex((byte[])value));
+                } else {
+                    values.add(value.toString());
+                }
+            }
+        }
+
+        MessageDigest md = MessageDigest.getInstance("MD5");
+
+        for (Map.Entry<String,List<String>> entry : map.entrySet()) {
+            List<String> values = entry.getValue();
+            Collections.sort(values);
+
+            for (String value : values) {
+                md.update(entry.getKey().getBytes("UTF-8"));
+                md.update((byte)':');
+                md.update(value.getBytes("UTF-8"));
+                md.update((byte)'\n');
+            }
+        }
+
+        byte[] digest = md.digest();
+
+        long checksum = 0;
+        for (int i=0; i<8; i++) {
+            checksum = (checksum << 8) | (digest[i] & 0xff);
+        }
+
+        return checksum;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
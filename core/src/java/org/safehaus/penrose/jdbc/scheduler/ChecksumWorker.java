@@ -0,0 +1,305 @@
+package org.safehaus.penrose.jdbc.scheduler;
+
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.session.Session;
+import org.safehaus.penrose.source.Field;
+import org.safehaus.penrose.source.Source;
+import org.safehaus.penrose.Penrose;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Compares the target rows of one shard of the checksum store with the checksums of
+ * the previous run. Rows which were not found are deleted when the worker is finished.
+ *
+ * The differences are only collected while comparing, so the checksums can be saved
+ * before they are applied. The apply() method writes them into the targets and the
+ * change log, and invalidates the checksums of the failed rows so they are compared
+ * again by the next run.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class ChecksumWorker implements Runnable {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int QUEUE_SIZE = 1000;
+
+    public final static int ADD    = 0;
+    public final static int MODIFY = 1;
+    public final static int DELETE = 2;
+
+    public static class Row {
+
+        Source target;
+        DN dn;
+        Attributes attributes;
+
+        public Row(Source target, DN dn, Attributes attributes) {
+            this.target = target;
+            this.dn = dn;
+            this.attributes = attributes;
+        }
+
+        public String getKey() throws Exception {
+            return ChecksumStore.getKey(target.getName(), dn.getNormalizedDn());
+        }
+    }
+
+    public static class Change {
+
+        int type;
+        String key;
+        ChecksumStore.Record record;
+        Source target;
+        DN dn;
+        Attributes attributes;
+
+        public Change(int type, String key, ChecksumStore.Record record, Source target, DN dn, Attributes attributes) {
+            this.type = type;
+            this.key = key;
+            this.record = record;
+            this.target = target;
+            this.dn = dn;
+            this.attributes = attributes;
+        }
+    }
+
+    final static Row END   = new Row(null, null, null);
+    final static Row ABORT = new Row(null, null, null);
+
+    private JDBCSyncJob job;
+    private Session session;
+    private Map<String,ChecksumStore.Record> records;
+    private boolean recordChanges;
+
+    private BlockingQueue<Row> queue = new ArrayBlockingQueue<Row>(QUEUE_SIZE);
+    private Exception exception;
+
+    private List<Change> changes = new ArrayList<Change>();
+
+    private long added;
+    private long modified;
+    private long deleted;
+    private long unchanged;
+    private long failed;
+
+    public ChecksumWorker(JDBCSyncJob job, Session session, Map<String,ChecksumStore.Record> records, boolean recordChanges) {
+        this.job = job;
+        this.session = session;
+        this.records = records;
+        this.recordChanges = recordChanges;
+
+        for (ChecksumStore.Record record : records.values()) {
+            record.found = false;
+        }
+    }
+
+    public void put(Row row) throws Exception {
+        queue.put(row);
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                Row row = queue.take();
+
+                if (row == END) {
+                    if (exception == null) finish();
+                    return;
+                }
+
+                if (row == ABORT) return;
+
+                // after a failure keep draining the queue so the search does not block
+                if (exception != null) continue;
+
+                try {
+                    process(row);
+                } catch (Exception e) {
+                    Penrose.errorLog.error(e.getMessage(), e);
+                    exception = e;
+                }
+            }
+
+        } catch (Exception e) {
+            Penrose.errorLog.error(e.getMessage(), e);
+            exception = e;
+        }
+    }
+
+    public void process(Row row) throws Exception {
+
+        String key = row.getKey();
+        long checksum = ChecksumStore.checksum(row.attributes);
+
+        ChecksumStore.Record record = records.get(key);
+
+        if (record == null) {
+            record = new ChecksumStore.Record(row.target.getName(), row.dn.toString(), checksum);
+            records.put(key, record);
+            record.found = true;
+
+            changes.add(new Change(ADD, key, record, row.target, row.dn, row.attributes));
+            added++;
+            return;
+        }
+
+        record.found = true;
+
+        if (record.checksum == checksum) {
+            unchanged++;
+            return;
+        }
+
+        record.checksum = checksum;
+
+        changes.add(new Change(MODIFY, key, record, row.target, row.dn, row.attributes));
+        modified++;
+    }
+
+    /**
+     * Removes the rows which were not found.
+     */
+    public void finish() throws Exception {
+
+        for (Iterator<Map.Entry<String,ChecksumStore.Record>> i=records.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<String,ChecksumStore.Record> entry = i.next();
+            ChecksumStore.Record record = entry.getValue();
+            if (record.found) continue;
+
+            Source target = job.getTargets().get(record.source);
+            if (target != null) {
+                changes.add(new Change(DELETE, entry.getKey(), record, target, new DN(record.dn), null));
+            }
+
+            i.remove();
+            deleted++;
+        }
+    }
+
+    /**
+     * Writes the differences into the targets and the change log.
+     */
+    public void apply() {
+
+        for (Change change : changes) {
+            try {
+                apply(change);
+
+            } catch (Exception e) {
+                Penrose.errorLog.error("Failed to synchronize "+change.dn+" in "+change.target.getName()+": "+e.getMessage(), e);
+
+                // the row will be added again or deleted again by the next run
+                if (change.type == DELETE) {
+                    records.put(change.key, change.record);
+                } else {
+                    records.remove(change.key);
+                }
+
+                failed++;
+            }
+        }
+
+        changes.clear();
+    }
+
+    public void apply(Change change) throws Exception {
+
+        Source target = change.target;
+
+        switch (change.type) {
+            case ADD:
+                try {
+                    target.add(session, change.dn, change.attributes);
+
+                } catch (Exception e) {
+                    // the row might have been added by a run which failed afterwards
+                    log.debug("Failed to add "+change.dn+", replacing instead: "+e.getMessage());
+                    target.modify(session, change.dn, createModifications(target, change.attributes));
+                }
+
+                if (recordChanges) {
+                    AddRequest request = new AddRequest();
+                    request.setDn(change.dn);
+                    request.setAttributes(change.attributes);
+                    job.recordAddOperation(session, request);
+                }
+                break;
+
+            case MODIFY:
+                Collection<Modification> modifications = createModifications(target, change.attributes);
+                target.modify(session, change.dn, modifications);
+
+                if (recordChanges) {
+                    ModifyRequest request = new ModifyRequest();
+                    request.setDn(change.dn);
+                    request.setModifications(modifications);
+                    job.recordModifyOperation(session, request);
+                }
+                break;
+
+            case DELETE:
+                target.delete(session, change.dn);
+
+                if (recordChanges) {
+                    DeleteRequest request = new DeleteRequest();
+                    request.setDn(change.dn);
+                    job.recordDeleteOperation(session, request);
+                }
+                break;
+        }
+    }
+
+    /**
+     * The old values are not stored, so the attributes are replaced and the fields
+     * without values are deleted.
+     */
+    public Collection<Modification> createModifications(Source target, Attributes attributes) {
+
+        Collection<Modification> modifications = new ArrayList<Modification>();
+        for (Attribute attribute : attributes.getAll()) {
+            modifications.add(new Modification(Modification.REPLACE, attribute));
+        }
+
+        for (Field field : target.getFields()) {
+            if (field.isPrimaryKey()) continue;
+            if (attributes.get(field.getName()) != null) continue;
+            modifications.add(new Modification(Modification.DELETE, new Attribute(field.getName())));
+        }
+
+        return modifications;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
+    public int getChangeCount() {
+        return changes.size();
+    }
+
+    public long getAdded() {
+        return added;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+}
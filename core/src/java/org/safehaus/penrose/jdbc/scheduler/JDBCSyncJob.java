@@ -10,15 +10,25 @@ import org.safehaus.penrose.jdbc.JDBC;
 import org.safehaus.penrose.ldap.*;
 import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.operation.SearchOperation;
+import org.safehaus.penrose.interpreter.Interpreter;
+import org.safehaus.penrose.interpreter.DefaultInterpreter;
 import org.safehaus.penrose.Penrose;
 
 import java.util.*;
+import java.io.File;
 
 /**
  * @author Endi Sukma Dewata
  */
 public class JDBCSyncJob extends Job {
 
+    public final static String MODE          = "mode";
+    public final static String SNAPSHOT      = "snapshot";
+    public final static String INCREMENTAL   = "incremental";
+
+    public final static String CHECKSUM_FILE = "checksumFile";
+    public final static String THREADS       = "threads";
+
     private Map<String,Source> sources = new LinkedHashMap<String,Source>();
 
     private Map<String,Source> targets = new LinkedHashMap<String,Source>();
@@ -34,6 +44,10 @@ public class JDBCSyncJob extends Job {
 
     private Source changelog;
 
+    private String mode;
+    private File checksumFile;
+    private int threads;
+
     public void init() throws Exception {
 
         log.debug("Initializing "+this.getName()+" job...");
@@ -105,6 +119,21 @@ public class JDBCSyncJob extends Job {
 
         String changeLogName = jobConfig.getParameter("changelog");
         changelog = sourceManager.getSource(changeLogName);
+
+        s = jobConfig.getParameter(MODE);
+        mode = s == null ? SNAPSHOT : s;
+
+        s = jobConfig.getParameter(THREADS);
+        threads = s == null ? 1 : Math.max(1, Integer.parseInt(s));
+
+        File path = partition.getPartitionContext().getPath();
+
+        s = jobConfig.getParameter(CHECKSUM_FILE);
+        checksumFile = new File(s == null ? "var"+File.separator+getName()+".checksums" : s);
+        if (!checksumFile.isAbsolute() && path != null) checksumFile = new File(path, checksumFile.getPath());
+
+        log.debug("Mode: "+mode);
+        if (INCREMENTAL.equals(mode)) log.debug("Checksums: "+checksumFile);
     }
 
     public Source createTmpTarget(Source target) throws Exception {
@@ -185,6 +214,11 @@ public class JDBCSyncJob extends Job {
         log.debug("============================================================================================");
         log.debug("Synchronizing "+targets.keySet());
 
+        if (INCREMENTAL.equals(mode)) {
+            synchronizeIncrementally();
+            return;
+        }
+
         initTmpEntries();
         loadSources();
 
@@ -195,6 +229,191 @@ public class JDBCSyncJob extends Job {
         switchSources();
     }
 
+    /**
+     * Splits the rows of the sources into target rows and compares their checksums with
+     * the checksums stored by the previous run. The differences are written into the
+     * targets and recorded in the change log. The first run compares the rows with the
+     * current contents of the targets and doesn't record the changes.
+     *
+     * The checksums are saved before the differences are applied, so a change is not
+     * recorded twice if the checksums cannot be saved. The checksums of the rows which
+     * could not be written are invalidated and saved again.
+     */
+    public void synchronizeIncrementally() throws Exception {
+
+        ChecksumStore store = new ChecksumStore(checksumFile, threads);
+        store.load();
+
+        boolean baseline = !store.exists();
+
+        Session session = createAdminSession();
+
+        try {
+            if (baseline) {
+                log.debug("Creating checksum baseline in "+checksumFile);
+                loadChecksums(session, store);
+            }
+
+            final ChecksumStore checksumStore = store;
+            final List<ChecksumWorker> workers = new ArrayList<ChecksumWorker>();
+
+            for (int i=0; i<threads; i++) {
+                workers.add(new ChecksumWorker(this, session, store.getRecords(i), !baseline && changelog != null));
+            }
+
+            final boolean async = threads > 1;
+
+            Collection<Thread> list = new ArrayList<Thread>();
+            if (async) {
+                for (int i=0; i<threads; i++) {
+                    Thread thread = new Thread(workers.get(i), getName()+"-"+i);
+                    thread.start();
+                    list.add(thread);
+                }
+            }
+
+            boolean complete = false;
+
+            try {
+                for (final String sourceName : sources.keySet()) {
+                    Source source = sources.get(sourceName);
+
+                    final SplitSearchResponse splitter = new SplitSearchResponse(
+                            session,
+                            getTargets(sourceName),
+                            createInterpreter()
+                    ) {
+                        public void add(Source target, DN dn, Attributes attributes) throws Exception {
+                            ChecksumWorker.Row row = new ChecksumWorker.Row(target, dn, attributes);
+                            ChecksumWorker worker = workers.get(checksumStore.getShard(row.getKey()));
+
+                            if (async) {
+                                worker.put(row);
+                            } else {
+                                worker.process(row);
+                            }
+                        }
+                    };
+
+                    SearchResponse response = new SearchResponse() {
+                        public void add(SearchResult result) throws Exception {
+                            SourceAttributes sourceValues = new SourceAttributes();
+                            sourceValues.set(sourceName, result.getAttributes());
+                            splitter.split(sourceValues);
+                        }
+                    };
+
+                    source.search(session, new SearchRequest(), response);
+                }
+
+                complete = true;
+
+            } finally {
+                // rows are only deleted if the search was complete
+                for (ChecksumWorker worker : workers) {
+                    if (async) {
+                        worker.put(complete ? ChecksumWorker.END : ChecksumWorker.ABORT);
+                    } else if (complete) {
+                        worker.finish();
+                    }
+                }
+
+                for (Thread thread : list) thread.join();
+            }
+
+            long added = 0, modified = 0, deleted = 0, unchanged = 0, changes = 0;
+
+            for (ChecksumWorker worker : workers) {
+                if (worker.getException() != null) throw worker.getException();
+
+                added += worker.getAdded();
+                modified += worker.getModified();
+                deleted += worker.getDeleted();
+                unchanged += worker.getUnchanged();
+                changes += worker.getChangeCount();
+            }
+
+            store.save();
+
+            log.debug("Added: "+added+", modified: "+modified+", deleted: "+deleted+", unchanged: "+unchanged+".");
+
+            if (changes == 0) return;
+
+            list.clear();
+
+            for (int i=0; i<threads; i++) {
+                final ChecksumWorker worker = workers.get(i);
+
+                if (!async) {
+                    worker.apply();
+                    continue;
+                }
+
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        worker.apply();
+                    }
+                }, getName()+"-"+i);
+
+                thread.start();
+                list.add(thread);
+            }
+
+            for (Thread thread : list) thread.join();
+
+            long failed = 0;
+            for (ChecksumWorker worker : workers) failed += worker.getFailed();
+
+            if (failed == 0) return;
+
+            Penrose.errorLog.error("Failed to synchronize "+failed+" row(s) of "+getName()+".");
+            store.save();
+
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Stores the checksums of the current target rows.
+     */
+    public void loadChecksums(Session session, final ChecksumStore store) throws Exception {
+
+        for (final Source target : targets.values()) {
+
+            SearchResponse response = new SearchResponse() {
+                public void add(SearchResult result) throws Exception {
+                    DN dn = result.getDn();
+                    String key = ChecksumStore.getKey(target.getName(), dn.getNormalizedDn());
+                    long checksum = ChecksumStore.checksum(result.getAttributes());
+
+                    store.getRecords(key).put(key, new ChecksumStore.Record(target.getName(), dn.toString(), checksum));
+                }
+            };
+
+            target.search(session, new SearchRequest(), response);
+        }
+
+        log.debug("Found "+store.getCount()+" rows in "+targets.keySet()+".");
+    }
+
+    public Collection<Source> getTargets(String sourceName) {
+
+        Collection<String> targetNames = relations.get(sourceName);
+        if (targetNames == null) return targets.values();
+
+        Collection<Source> list = new ArrayList<Source>();
+        for (String targetName : targetNames) {
+            list.add(targets.get(targetName));
+        }
+
+        return list;
+    }
+
+    public Interpreter createInterpreter() throws Exception {
+        return partition == null ? new DefaultInterpreter() : partition.newInterpreter();
+    }
+
     public void clear() throws Exception {
 
         log.debug("============================================================================================");
@@ -672,4 +891,28 @@ public class JDBCSyncJob extends Job {
     public void setChangelog(Source changelog) {
         this.changelog = changelog;
     }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public File getChecksumFile() {
+        return checksumFile;
+    }
+
+    public void setChecksumFile(File checksumFile) {
+        this.checksumFile = checksumFile;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
 }
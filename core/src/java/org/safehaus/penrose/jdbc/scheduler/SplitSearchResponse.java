@@ -34,10 +34,13 @@ public class SplitSearchResponse extends SearchResponse {
     }
 
     public void add(SearchResult result) throws Exception {
+        split(result.getSourceAttributes());
+    }
 
-        boolean debug = log.isDebugEnabled();
-
-        SourceAttributes sourceValues = result.getSourceAttributes();
+    /**
+     * Evaluates the fields of the targets from the source values and adds the rows.
+     */
+    public void split(SourceAttributes sourceValues) throws Exception {
 
         interpreter.set(sourceValues);
 
@@ -82,21 +85,24 @@ public class SplitSearchResponse extends SearchResponse {
             Collection<RDN> rdns = TransformationUtil.convert(primaryAttributes);
 
             for (RDN rdn : rdns) {
-                DN newDn = new DN(rdn);
-
-                if (debug) {
-                    log.debug("Adding " + target.getName() + ": " + newDn);
-                    attributes.print();
-                }
-
-                try {
-                    target.add(session, newDn, attributes);
-                } catch (Exception e) {
-                    Penrose.errorLog.error(e.getMessage());
-                }
+                add(target, new DN(rdn), attributes);
             }
         }
 
         interpreter.clear();
     }
+
+    public void add(Source target, DN dn, Attributes attributes) throws Exception {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Adding " + target.getName() + ": " + dn);
+            attributes.print();
+        }
+
+        try {
+            target.add(session, dn, attributes);
+        } catch (Exception e) {
+            Penrose.errorLog.error(e.getMessage());
+        }
+    }
 }
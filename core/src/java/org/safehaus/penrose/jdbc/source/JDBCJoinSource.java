@@ -10,6 +10,7 @@ import org.safehaus.penrose.filter.SimpleFilter;
 import org.safehaus.penrose.filter.Filter;
 import org.safehaus.penrose.filter.FilterTool;
 import org.safehaus.penrose.Penrose;
+import org.safehaus.penrose.statistic.StatisticManager;
 
 import java.util.*;
 import java.sql.ResultSet;
@@ -150,7 +151,7 @@ public class JDBCJoinSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             RDN rdn = request.getDn().getRdn();
@@ -183,7 +184,7 @@ public class JDBCJoinSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Add operation completed.");
@@ -235,7 +236,7 @@ public class JDBCJoinSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             RDN rdn = request.getDn().getRdn();
@@ -270,7 +271,7 @@ public class JDBCJoinSource extends Source {
             log.debug("Delete operation completed.");
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -291,7 +292,7 @@ public class JDBCJoinSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             UpdateStatement statement = new UpdateStatement();
@@ -345,7 +346,7 @@ public class JDBCJoinSource extends Source {
             log.debug("Modify operation completed.");
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -366,7 +367,7 @@ public class JDBCJoinSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             UpdateStatement statement = new UpdateStatement();
@@ -405,7 +406,7 @@ public class JDBCJoinSource extends Source {
             log.debug("ModRdn operation completed.");
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -481,7 +482,8 @@ public class JDBCJoinSource extends Source {
             queryResponse.setSizeLimit(Long.parseLong(sizeLimit));
         }
 
-        JDBCClient client = connection.getClient(session);
+        long startTime = System.nanoTime();
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             JDBCStatementBuilder statementBuilder = new JDBCStatementBuilder(sourceContext.getPartition());
@@ -493,7 +495,8 @@ public class JDBCJoinSource extends Source {
             client.executeQuery(sql, parameters, queryResponse);
 
         } finally {
-            connection.closeClient(session);
+            recordOperation(StatisticManager.SEARCH, startTime);
+            connection.returnClient(session, client);
         }
 
         log.debug("Search operation completed.");
@@ -671,7 +674,7 @@ public class JDBCJoinSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             StringBuilder sb = new StringBuilder();
@@ -684,7 +687,7 @@ public class JDBCJoinSource extends Source {
             client.executeUpdate(sql);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -818,7 +821,7 @@ public class JDBCJoinSource extends Source {
 
         return count;
 /*
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             client.executeQuery(sql, response);
@@ -833,7 +836,7 @@ public class JDBCJoinSource extends Source {
             return count;
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 */
     }
@@ -844,13 +847,13 @@ public class JDBCJoinSource extends Source {
 
     public void executeQuery(Session session, String sql, QueryResponse response) throws Exception {
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             client.executeQuery(sql, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -13,8 +13,10 @@ import org.safehaus.penrose.filter.SimpleFilter;
 import org.safehaus.penrose.filter.Filter;
 import org.safehaus.penrose.filter.FilterTool;
 import org.safehaus.penrose.Penrose;
+import org.safehaus.penrose.statistic.StatisticManager;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.sql.ResultSet;
 
 /**
@@ -31,6 +33,9 @@ public class JDBCSource extends Source {
 
     Map<String,Map<Collection<String>,SQLOperation>> operations = new LinkedHashMap<String,Map<Collection<String>,SQLOperation>>();
 
+    // select clauses generated for the search statements
+    Map<String,String> selectClauses = new ConcurrentHashMap<String,String>();
+
     public JDBCSource() {
     }
 
@@ -147,7 +152,7 @@ public class JDBCSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             InsertStatement statement = new InsertStatement();
@@ -191,7 +196,7 @@ public class JDBCSource extends Source {
             log.debug("Add operation completed.");
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -225,7 +230,7 @@ public class JDBCSource extends Source {
 
         Collection<Statement> statements = builder.generate();
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             for (Statement statement : statements) {
@@ -240,7 +245,7 @@ public class JDBCSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Add operation completed.");
@@ -291,7 +296,7 @@ public class JDBCSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             DeleteStatement statement = new DeleteStatement();
@@ -323,7 +328,7 @@ public class JDBCSource extends Source {
             log.debug("Delete operation completed.");
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -357,7 +362,7 @@ public class JDBCSource extends Source {
 
         Collection<Statement> statements = builder.generate();
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             for (Statement statement : statements) {
@@ -372,7 +377,7 @@ public class JDBCSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Delete operation completed.");
@@ -395,7 +400,7 @@ public class JDBCSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             UpdateStatement statement = new UpdateStatement();
@@ -449,7 +454,7 @@ public class JDBCSource extends Source {
             log.debug("Modify operation completed.");
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -483,7 +488,7 @@ public class JDBCSource extends Source {
 
         Collection<Statement> statements = builder.generate();
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             for (Statement statement : statements) {
@@ -498,7 +503,7 @@ public class JDBCSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Modify operation completed.");
@@ -521,7 +526,7 @@ public class JDBCSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             UpdateStatement statement = new UpdateStatement();
@@ -560,7 +565,7 @@ public class JDBCSource extends Source {
             log.debug("ModRdn operation completed.");
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -594,7 +599,7 @@ public class JDBCSource extends Source {
 
         Collection<Statement> statements = builder.generate();
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             for (Statement statement : statements) {
@@ -609,7 +614,7 @@ public class JDBCSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("ModRdn operation completed.");
@@ -700,10 +705,18 @@ public class JDBCSource extends Source {
             queryResponse.setSizeLimit(Long.parseLong(sizeLimit));
         }
 
-        JDBCClient client = connection.getClient(session);
+        // each row is an entry, so the database only needs to return one row
+        // more than the size limit to detect that the limit is exceeded
+        long limit = getLimit(request.getSizeLimit(), queryResponse.getSizeLimit());
+        if (limit > 0) statement.setLimit(limit + 1);
+
+        long startTime = System.nanoTime();
+        JDBCClient client = connection.borrowClient(session);
 
         JDBCStatementBuilder statementBuilder = new JDBCStatementBuilder(sourceContext.getPartition());
         statementBuilder.setQuote(client.getQuote());
+        statementBuilder.setDialect(client.getDialect());
+        statementBuilder.setCache(selectClauses);
 
         String sql = statementBuilder.generate(statement);
         Collection<Object> parameters = statementBuilder.getParameters();
@@ -724,30 +737,40 @@ public class JDBCSource extends Source {
 
                     if (debug) log.debug("Searching top entries.");
 
-                    client.executeQuery(sql, parameters, queryResponse);
+                    client.executeQuery(sql, parameters, statement.getLimit(), queryResponse);
                 }
 
             } else if (baseDn != null && (scope == SearchRequest.SCOPE_BASE || scope == SearchRequest.SCOPE_SUB)) {
 
                 if (debug) log.debug("Searching entry: "+filter);
 
-                client.executeQuery(sql, parameters, queryResponse);
+                client.executeQuery(sql, parameters, statement.getLimit(), queryResponse);
 
             } else if (baseDn == null) {
 
                 if (debug) log.debug("Searching all entries.");
 
-                client.executeQuery(sql, parameters, queryResponse);
+                client.executeQuery(sql, parameters, statement.getLimit(), queryResponse);
             }
 
         } finally {
-            connection.closeClient(session);
+            recordOperation(StatisticManager.SEARCH, startTime);
+            connection.returnClient(session, client);
             response.close();
         }
 
         log.debug("Search operation completed.");
     }
 
+    /**
+     * Returns the smaller of the non-zero size limits, or 0 if both are unlimited.
+     */
+    public long getLimit(long sizeLimit1, long sizeLimit2) {
+        if (sizeLimit1 <= 0) return sizeLimit2 <= 0 ? 0 : sizeLimit2;
+        if (sizeLimit2 <= 0) return sizeLimit1;
+        return Math.min(sizeLimit1, sizeLimit2);
+    }
+
     public SearchResult createSearchResult(
             ResultSet rs
     ) throws Exception {
@@ -867,11 +890,13 @@ public class JDBCSource extends Source {
             queryResponse.setSizeLimit(Long.parseLong(sizeLimit));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
+            // rows are merged into entries, so the size limit cannot be pushed down
             JDBCStatementBuilder statementBuilder = new JDBCStatementBuilder(sourceContext.getPartition());
             statementBuilder.setQuote(client.getQuote());
+            statementBuilder.setCache(selectClauses);
 
             String sql = statementBuilder.generate(statement);
             Collection<Object> parameters = statementBuilder.getParameters();
@@ -879,7 +904,7 @@ public class JDBCSource extends Source {
             client.executeQuery(sql, parameters, queryResponse);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Search operation completed.");
@@ -1067,7 +1092,7 @@ public class JDBCSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             StringBuilder sb = new StringBuilder();
@@ -1080,7 +1105,7 @@ public class JDBCSource extends Source {
             client.executeUpdate(sql);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -1214,7 +1239,7 @@ public class JDBCSource extends Source {
 
         return count;
 /*
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             client.executeQuery(sql, response);
@@ -1229,7 +1254,7 @@ public class JDBCSource extends Source {
             return count;
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 */
     }
@@ -1240,13 +1265,13 @@ public class JDBCSource extends Source {
 
     public void executeQuery(Session session, String sql, QueryResponse response) throws Exception {
 
-        JDBCClient client = connection.getClient(session);
+        JDBCClient client = connection.borrowClient(session);
 
         try {
             client.executeQuery(sql, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -107,6 +107,12 @@ public class LDAPClient implements Cloneable, LDAPAuthHandler {
         if (!connection.isConnected()) {
             log.debug("Disconnected, recreating LDAP connection.");
             connectionFactory.connect(connection);
+
+        } else if (bindDn != null && bindDn.equals(connection.getAuthenticationDN())) {
+            // pooled connection is still bound with the same credentials
+            log.debug("Connection already authenticated.");
+            initReferralHandler();
+            return;
         }
 
         for (int i=0; i<2; i++) {
@@ -133,6 +139,10 @@ public class LDAPClient implements Cloneable, LDAPAuthHandler {
             }
         }
 
+        initReferralHandler();
+    }
+
+    public void initReferralHandler() throws Exception {
         LDAPConstraints constraints = new LDAPConstraints();
         constraints.setReferralHandler(this);
 
@@ -700,6 +710,7 @@ public class LDAPClient implements Cloneable, LDAPAuthHandler {
                 while (rs.hasMore()) {
                     if (response.isClosed()) {
                         if (debug) log.debug("Search response has been closed.");
+                        try { connection.abandon(rs); } catch (Exception e) { log.debug(e.getMessage(), e); }
                         return;
                     }
 
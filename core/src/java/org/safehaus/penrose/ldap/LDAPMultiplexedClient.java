@@ -0,0 +1,111 @@
+package org.safehaus.penrose.ldap;
+
+import org.ietf.ldap.LDAPConnection;
+import org.safehaus.penrose.control.Control;
+import org.safehaus.penrose.control.PagedResultsControl;
+
+/**
+ * LDAP client which shares its connection with other clients. The operations of
+ * different clients run concurrently on the same connection.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class LDAPMultiplexedClient extends LDAPClient {
+
+    LDAPMultiplexer multiplexer;
+    LDAPMultiplexer.Channel channel;
+
+    boolean closed;
+
+    public LDAPMultiplexedClient(
+            LDAPMultiplexer multiplexer,
+            LDAPMultiplexer.Channel channel
+    ) throws Exception {
+        super(multiplexer.getConnectionFactory());
+
+        this.multiplexer = multiplexer;
+        this.channel = channel;
+
+        connect();
+    }
+
+    public synchronized void connect() throws Exception {
+        connection = channel.getConnection();
+    }
+
+    public synchronized void close() throws Exception {
+        if (closed) return;
+
+        multiplexer.release(channel);
+        connection = null;
+        closed = true;
+    }
+
+    public synchronized LDAPConnection getConnection() throws Exception {
+        if (closed) throw LDAP.createException(LDAP.OPERATIONS_ERROR);
+        return super.getConnection();
+    }
+
+    /**
+     * Binding would change the identity of the shared connection, so it's done
+     * on a dedicated connection.
+     */
+    public void bind(
+            BindRequest request,
+            BindResponse response
+    ) throws Exception {
+
+        LDAPClient client = multiplexer.createDedicatedClient();
+
+        try {
+            client.bind(request, response);
+
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * The shared connection is always bound with the connection credentials.
+     */
+    public void unbind(
+            UnbindRequest request,
+            UnbindResponse response
+    ) throws Exception {
+    }
+
+    /**
+     * Paged searches are done on a dedicated connection since some servers only
+     * keep one paged results state per connection.
+     */
+    public void search(
+            SearchRequest request,
+            SearchResponse response
+    ) throws Exception {
+
+        if (!isPaged(request)) {
+            super.search(request, response);
+            return;
+        }
+
+        LDAPClient client = multiplexer.createDedicatedClient();
+
+        try {
+            client.search(request, response);
+
+        } finally {
+            client.close();
+        }
+    }
+
+    public boolean isPaged(SearchRequest request) {
+
+        if (pageSize > 0) return true;
+
+        for (Control control : request.getControls()) {
+            if (PagedResultsControl.OID.equals(control.getOid())) return true;
+        }
+
+        return false;
+    }
+}
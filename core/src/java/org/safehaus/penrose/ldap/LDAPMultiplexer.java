@@ -0,0 +1,151 @@
+package org.safehaus.penrose.ldap;
+
+import org.apache.commons.pool.ObjectPool;
+import org.ietf.ldap.LDAPConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares a few LDAP connections between many concurrent operations. LDAP operations
+ * are identified by message ID, so several of them can be outstanding on the same
+ * connection and JLDAP delivers the responses to the queue of each operation.
+ *
+ * Each connection is bound once with the connection credentials and allows a limited
+ * number of outstanding operations. Operations which have to change the connection
+ * state (e.g. bind) are executed on a dedicated connection from the object pool.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class LDAPMultiplexer {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int DEFAULT_CONNECTIONS    = 2;
+    public final static int DEFAULT_MAX_OPERATIONS = 32;
+
+    LDAPConnectionFactory connectionFactory;
+    ObjectPool objectPool;
+
+    int maxOperations;
+
+    Channel[] channels;
+    AtomicInteger counter = new AtomicInteger();
+
+    class Channel {
+
+        Semaphore permits = new Semaphore(maxOperations, true);
+
+        // owns the shared connection and handles the referrals
+        LDAPClient owner;
+
+        synchronized LDAPConnection getConnection() throws Exception {
+
+            if (owner == null) {
+                log.debug("Creating multiplexed LDAP connection.");
+                owner = new LDAPClient(connectionFactory, true);
+
+            } else if (!owner.connection.isConnected()) {
+                log.debug("Reconnecting multiplexed LDAP connection.");
+                owner.connect();
+            }
+
+            return owner.connection;
+        }
+
+        synchronized void close() throws Exception {
+            if (owner != null) owner.close();
+            owner = null;
+        }
+    }
+
+    public LDAPMultiplexer(
+            LDAPConnectionFactory connectionFactory,
+            ObjectPool objectPool,
+            int connections,
+            int maxOperations
+    ) {
+        this.connectionFactory = connectionFactory;
+        this.objectPool = objectPool;
+        this.maxOperations = maxOperations;
+
+        channels = new Channel[connections];
+        for (int i=0; i<connections; i++) {
+            channels[i] = new Channel();
+        }
+    }
+
+    /**
+     * Returns a client using the least busy connection. If all connections have reached
+     * the maximum number of outstanding operations, waits until an operation finishes.
+     * The client has to be closed to release the connection.
+     */
+    public LDAPClient createClient() throws Exception {
+
+        int start = (counter.getAndIncrement() & 0x7fffffff) % channels.length;
+
+        Channel channel = null;
+        int available = 0;
+
+        for (int i=0; i<channels.length; i++) {
+            Channel c = channels[(start + i) % channels.length];
+            int permits = c.permits.availablePermits();
+            if (permits <= available) continue;
+
+            channel = c;
+            available = permits;
+        }
+
+        if (channel == null || !channel.permits.tryAcquire()) {
+            channel = channels[start];
+            channel.permits.acquire();
+        }
+
+        try {
+            return new LDAPMultiplexedClient(this, channel);
+
+        } catch (Exception e) {
+            channel.permits.release();
+            throw e;
+        }
+    }
+
+    void release(Channel channel) {
+        channel.permits.release();
+    }
+
+    /**
+     * Returns a client using a dedicated connection from the object pool.
+     */
+    public LDAPClient createDedicatedClient() throws Exception {
+        return new LDAPPoolableClient(objectPool, connectionFactory);
+    }
+
+    public int getOutstandingCount() {
+        int count = 0;
+        for (Channel channel : channels) {
+            count += maxOperations - channel.permits.availablePermits();
+        }
+        return count;
+    }
+
+    public void close() throws Exception {
+        for (Channel channel : channels) {
+            channel.close();
+        }
+    }
+
+    public LDAPConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public int getConnections() {
+        return channels.length;
+    }
+
+    public int getMaxOperations() {
+        return maxOperations;
+    }
+}
@@ -30,7 +30,10 @@ public class LDAPPoolableClient extends LDAPClient {
     }
 
     public synchronized void close() throws Exception {
+        if (connection == null) return;
+
         log.debug("Returning LDAP connection to connection pool.");
         objectPool.returnObject(connection);
+        connection = null;
     }
 }
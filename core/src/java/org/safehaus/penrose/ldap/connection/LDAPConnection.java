@@ -42,12 +42,25 @@ public class LDAPConnection extends Connection {
     public final static String WHEN_EXHAUSTED_BLOCK                 = "block";
     public final static String WHEN_EXHAUSTED_GROW                  = "grow";
 
+    public final static String LEASE                                = "lease";
+    public final static String LEASE_OPERATION                      = "operation";
+    public final static String LEASE_SESSION                        = "session";
+
+    public final static String MULTIPLEX                            = "multiplex";
+    public final static String MULTIPLEX_CONNECTIONS                = "multiplexConnections";
+    public final static String MAX_OPERATIONS                       = "maxOperations";
+
     public GenericObjectPool.Config config = new GenericObjectPool.Config();
     public GenericObjectPool connectionPool;
 
     public LDAPConnectionFactory connectionFactory;
     public LDAPPoolableConnectionFactory poolableConnectionFactory;
-    
+
+    public String lease = LEASE_OPERATION;
+
+    // shared connections for operations which don't need their own connection
+    public LDAPMultiplexer multiplexer;
+
     public void init() throws Exception {
 
         log.debug("Initializing connection "+getName()+".");
@@ -105,6 +118,18 @@ public class LDAPConnection extends Connection {
             config.whenExhaustedAction = GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION;
         }
 
+        s = parameters.remove(LEASE);
+        if (s != null) lease = s;
+
+        s = parameters.remove(MULTIPLEX);
+        boolean multiplex = Boolean.valueOf(s);
+
+        s = parameters.remove(MULTIPLEX_CONNECTIONS);
+        int multiplexConnections = s == null ? LDAPMultiplexer.DEFAULT_CONNECTIONS : Integer.parseInt(s);
+
+        s = parameters.remove(MAX_OPERATIONS);
+        int maxOperations = s == null ? LDAPMultiplexer.DEFAULT_MAX_OPERATIONS : Integer.parseInt(s);
+
         connectionPool = new GenericObjectPool(null, config);
 
         connectionFactory = new LDAPConnectionFactory(parameters);
@@ -112,6 +137,10 @@ public class LDAPConnection extends Connection {
 
         connectionPool.setFactory(poolableConnectionFactory);
 
+        if (multiplex) {
+            multiplexer = new LDAPMultiplexer(connectionFactory, connectionPool, multiplexConnections, maxOperations);
+        }
+
         //log.debug("Initializing "+initialSize+" connections.");
         for (int i = 0; i < initialSize; i++) {
              connectionPool.addObject();
@@ -120,6 +149,11 @@ public class LDAPConnection extends Connection {
         log.debug("Connection "+getName()+" initialized.");
     }
 
+    public void destroy() throws Exception {
+        if (multiplexer != null) multiplexer.close();
+        log.debug("Connection "+getName()+" closed.");
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // Client
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -185,6 +219,52 @@ public class LDAPConnection extends Connection {
         return newClient;
     }
 
+    /**
+     * Returns a client for a single operation. In operation lease mode the client holds a
+     * pooled connection only until it's returned with returnClient(), unless the session
+     * already has its own client (e.g. bound with the user's credentials).
+     */
+    public LDAPClient borrowClient(Session session) throws Exception {
+
+        if (LEASE_SESSION.equals(lease)) return getClient(session);
+
+        String attributeName = getPartition().getName()+".connection."+getName();
+
+        LDAPClient client = (LDAPClient)session.getAttribute(attributeName);
+        if (client != null) return client;
+
+        long startTime = System.currentTimeMillis();
+
+        client = multiplexer == null ? createClient() : multiplexer.createClient();
+
+        addLease(System.currentTimeMillis() - startTime);
+
+        return client;
+    }
+
+    public void returnClient(Session session, LDAPClient client) throws Exception {
+
+        String attributeName = getPartition().getName()+".connection."+getName();
+        if (session.getAttribute(attributeName) == client) return;
+
+        client.close();
+    }
+
+    public int getActiveCount() {
+        return connectionPool == null ? 0 : connectionPool.getNumActive();
+    }
+
+    /**
+     * Returns the number of operations running on the multiplexed connections.
+     */
+    public int getOutstandingCount() {
+        return multiplexer == null ? 0 : multiplexer.getOutstandingCount();
+    }
+
+    public int getIdleCount() {
+        return connectionPool == null ? 0 : connectionPool.getNumIdle();
+    }
+
     public void closeClient(Session session) throws Exception {
     }
 }
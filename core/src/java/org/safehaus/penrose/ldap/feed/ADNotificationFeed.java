@@ -0,0 +1,271 @@
+package org.safehaus.penrose.ldap.feed;
+
+import org.ietf.ldap.*;
+import org.safehaus.penrose.control.Control;
+import org.safehaus.penrose.filter.*;
+import org.safehaus.penrose.ldap.*;
+
+import java.util.*;
+
+/**
+ * Listens to the changes in Active Directory with the change notification control.
+ * Active Directory only sends the new state of the changed entries, so the type of the
+ * change is derived from the USNs: an entry created after the last processed USN is
+ * added, a deleted entry is deleted under its last known parent, and other entries are
+ * modified. A rename looks like a modification of the entry under the new DN.
+ *
+ * The notification search doesn't support filters, so the filter is evaluated on the
+ * notified entries. Deleted entries lose most of their attributes, so they are not
+ * filtered.
+ *
+ * The highest uSNChanged processed is kept, so after reconnecting the entries changed
+ * in the meantime are searched and processed in USN order before the notifications.
+ * When the feed is started it begins with the highest committed USN of the server.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class ADNotificationFeed extends ChangeFeed {
+
+    public final static String NOTIFICATION_OID = "1.2.840.113556.1.4.528";
+    public final static String SHOW_DELETED_OID = "1.2.840.113556.1.4.417";
+
+    public final static Collection<String> TRACKING_ATTRIBUTES = Arrays.asList(
+            "uSNChanged", "uSNCreated", "isDeleted", "lastKnownParent", "name"
+    );
+
+    protected volatile long lastUsn = -1;
+
+    protected FilterEvaluator filterEvaluator;
+
+    public ADNotificationFeed(String name, LDAPConnectionFactory connectionFactory, ChangeListener listener) {
+        super(name, connectionFactory, listener);
+    }
+
+    public void listen(LDAPClient client) throws Exception {
+
+        LDAPConnection connection = client.getConnection();
+
+        if (lastUsn < 0) {
+            lastUsn = getHighestCommittedUsn(client);
+            if (log.isDebugEnabled()) log.debug("Starting from USN "+lastUsn+".");
+        }
+
+        Collection<Control> controls = new ArrayList<Control>();
+        controls.add(new Control(NOTIFICATION_OID, null, true));
+        controls.add(new Control(SHOW_DELETED_OID, null, true));
+
+        LDAPSearchConstraints constraints = new LDAPSearchConstraints();
+        client.initConstraints(constraints);
+        constraints.setControls(client.convertControls(controls));
+
+        String base = baseDn == null ? "" : baseDn.toString();
+
+        // the notification search doesn't support other filters
+        LDAPSearchQueue queue = connection.search(
+                base, scope, "(objectClass=*)", getSearchAttributeNames(), false, (LDAPSearchQueue)null, constraints
+        );
+
+        try {
+            catchUp(client);
+            listener.resume();
+
+            while (!stopped) {
+
+                LDAPMessage message = queue.getResponse();
+                if (message == null) throw new Exception("Connection closed.");
+
+                if (message instanceof LDAPSearchResult) {
+                    LDAPEntry entry = ((LDAPSearchResult)message).getEntry();
+                    process(client.createSearchResult(entry));
+
+                } else if (message instanceof LDAPResponse) {
+                    LDAPResponse response = (LDAPResponse)message;
+                    throw new Exception("Notification search ended: "+response.getResultCode()+" "+response.getErrorMessage());
+                }
+            }
+
+        } finally {
+            try {
+                connection.abandon(queue);
+            } catch (Exception e) {
+                log.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    public long getHighestCommittedUsn(LDAPClient client) throws Exception {
+
+        SearchRequest request = new SearchRequest();
+        request.setScope(SearchRequest.SCOPE_BASE);
+        request.setAttributes(new String[] { "highestCommittedUSN" });
+
+        SearchResponse response = new SearchResponse();
+        client.search(request, response);
+
+        if (!response.hasNext()) return 0;
+
+        Object value = response.next().getAttributes().getValue("highestCommittedUSN");
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    /**
+     * Processes the entries changed since the last processed USN.
+     */
+    public void catchUp(LDAPClient client) throws Exception {
+
+        AndFilter af = new AndFilter();
+        if (filter != null) af.addFilter(filter);
+        af.addFilter(new SimpleFilter("uSNChanged", ">=", ""+(lastUsn + 1)));
+
+        SearchRequest request = new SearchRequest();
+        request.setDn(baseDn);
+        request.setScope(scope);
+        request.setFilter(af);
+        request.setAttributes(getSearchAttributeNames());
+
+        Collection<org.safehaus.penrose.control.Control> controls = new ArrayList<org.safehaus.penrose.control.Control>();
+        controls.add(new Control(SHOW_DELETED_OID, null, true));
+        request.setControls(controls);
+
+        SearchResponse response = new SearchResponse();
+        client.search(request, response);
+
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        while (response.hasNext()) {
+            results.add(response.next());
+        }
+
+        if (results.isEmpty()) return;
+        if (log.isDebugEnabled()) log.debug("Catching up with "+results.size()+" changes.");
+
+        Collections.sort(results, new Comparator<SearchResult>() {
+            public int compare(SearchResult result1, SearchResult result2) {
+                long usn1 = getUsn(result1.getAttributes(), "uSNChanged");
+                long usn2 = getUsn(result2.getAttributes(), "uSNChanged");
+                return usn1 < usn2 ? -1 : usn1 > usn2 ? 1 : 0;
+            }
+        });
+
+        for (SearchResult result : results) {
+            process(result);
+        }
+    }
+
+    public void process(SearchResult result) throws Exception {
+
+        long usn = getUsn(result.getAttributes(), "uSNChanged");
+        if (usn <= lastUsn) return; // already processed
+
+        if (matches(result)) {
+            Attributes change = createChange(result, attributes, lastUsn);
+            if (change != null) listener.process(change);
+        }
+
+        lastUsn = usn;
+    }
+
+    public boolean matches(SearchResult result) throws Exception {
+
+        if (filter == null || isDeleted(result.getAttributes())) return true;
+
+        if (filterEvaluator == null) filterEvaluator = new FilterEvaluator();
+        return filterEvaluator.eval(result.getAttributes(), filter);
+    }
+
+    /**
+     * Returns the requested attributes, the tracking attributes and the attributes used
+     * by the filter.
+     */
+    public String[] getSearchAttributeNames() {
+        Collection<String> list = new LinkedHashSet<String>();
+        if (attributes.isEmpty()) {
+            list.add("*");
+        } else {
+            list.addAll(attributes);
+            getAttributeNames(filter, list);
+        }
+        list.addAll(TRACKING_ATTRIBUTES);
+        return list.toArray(new String[list.size()]);
+    }
+
+    public static void getAttributeNames(Filter filter, Collection<String> list) {
+
+        if (filter instanceof ItemFilter) {
+            list.add(((ItemFilter)filter).getAttribute());
+
+        } else if (filter instanceof NotFilter) {
+            getAttributeNames(((NotFilter)filter).getFilter(), list);
+
+        } else if (filter instanceof AndFilter) {
+            for (Filter f : ((AndFilter)filter).getFilters()) getAttributeNames(f, list);
+
+        } else if (filter instanceof OrFilter) {
+            for (Filter f : ((OrFilter)filter).getFilters()) getAttributeNames(f, list);
+        }
+    }
+
+    public static long getUsn(Attributes attributes, String name) {
+        Object value = attributes.getValue(name);
+        return value == null ? -1 : Long.parseLong(value.toString());
+    }
+
+    public static boolean isDeleted(Attributes attributes) {
+        Object isDeleted = attributes.getValue("isDeleted");
+        return isDeleted != null && "TRUE".equalsIgnoreCase(isDeleted.toString());
+    }
+
+    /**
+     * Converts the entry into a change log entry. The entry is added if it was created
+     * after the last processed USN. The tracking attributes are removed unless they have
+     * been requested.
+     */
+    public static Attributes createChange(SearchResult result, Collection<String> requestedAttributes, long lastUsn) throws Exception {
+
+        Attributes attributes = result.getAttributes();
+
+        if (isDeleted(attributes)) {
+
+            // the RDN of a deleted entry is changed to <name>\nDEL:<GUID>
+            Object name = attributes.getValue("name");
+            Object lastKnownParent = attributes.getValue("lastKnownParent");
+            if (name == null || lastKnownParent == null) return null;
+
+            String value = name.toString();
+            int i = value.indexOf('\n');
+            if (i >= 0) value = value.substring(0, i);
+
+            RDNBuilder rb = new RDNBuilder();
+            rb.set(result.getDn().getRdn().getNames().iterator().next(), value);
+
+            DN dn = new DN(rb.toRdn()).append(new DN(lastKnownParent.toString()));
+            return createDeleteChange(dn);
+        }
+
+        long usnCreated = getUsn(attributes, "uSNCreated");
+
+        Attributes newAttributes = (Attributes)attributes.clone();
+
+        Collection<String> requested = new HashSet<String>();
+        for (String name : requestedAttributes) requested.add(name.toLowerCase());
+
+        for (String name : TRACKING_ATTRIBUTES) {
+            if (!requested.contains(name.toLowerCase())) newAttributes.remove(name);
+        }
+
+        SearchResult entry = new SearchResult(result.getDn(), newAttributes);
+
+        if (usnCreated >= 0 && usnCreated > lastUsn) {
+            return createAddChange(entry);
+        } else {
+            return createModifyChange(entry);
+        }
+    }
+
+    public long getLastUsn() {
+        return lastUsn;
+    }
+
+    public void setLastUsn(long lastUsn) {
+        this.lastUsn = lastUsn;
+    }
+}
@@ -0,0 +1,263 @@
+package org.safehaus.penrose.ldap.feed;
+
+import org.safehaus.penrose.filter.Filter;
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.util.BinaryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Listens to the changes in an LDAP server over a dedicated connection which is not
+ * shared with the connection pool. If the connection is lost the feed reconnects with
+ * an increasing delay and calls ChangeListener.resume() once it's listening again.
+ *
+ * The changes are converted into change log entries, so they can be processed like
+ * the entries read from a change log.
+ *
+ * @author Endi Sukma Dewata
+ */
+public abstract class ChangeFeed implements Runnable {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static long DEFAULT_MIN_RETRY_DELAY = 1000;  // ms
+    public final static long DEFAULT_MAX_RETRY_DELAY = 60000; // ms
+
+    protected String name;
+    protected LDAPConnectionFactory connectionFactory;
+    protected ChangeListener listener;
+
+    protected DN baseDn;
+    protected int scope = SearchRequest.SCOPE_SUB;
+    protected Filter filter;
+    protected Collection<String> attributes = new ArrayList<String>();
+
+    protected long minRetryDelay = DEFAULT_MIN_RETRY_DELAY;
+    protected long maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
+
+    protected volatile boolean stopped;
+    protected volatile LDAPClient client;
+    protected Thread thread;
+
+    public ChangeFeed(String name, LDAPConnectionFactory connectionFactory, ChangeListener listener) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.listener = listener;
+    }
+
+    public void start() {
+        stopped = false;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        close();
+        if (thread != null) thread.interrupt();
+    }
+
+    public void run() {
+
+        long delay = minRetryDelay;
+
+        while (!stopped) {
+
+            try {
+                client = new LDAPClient(connectionFactory, true);
+                if (log.isDebugEnabled()) log.debug("Listening to changes in "+baseDn+".");
+
+                listen(client);
+                delay = minRetryDelay;
+
+            } catch (Exception e) {
+                if (stopped) break;
+                log.error("Change feed "+name+" disconnected: "+e.getMessage()+". Reconnecting in "+delay+" ms.");
+                log.debug(e.getMessage(), e);
+
+            } finally {
+                close();
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            delay = Math.min(delay * 2, maxRetryDelay);
+        }
+
+        if (log.isDebugEnabled()) log.debug("Change feed "+name+" stopped.");
+    }
+
+    /**
+     * Listens to the changes until the connection is closed.
+     */
+    public abstract void listen(LDAPClient client) throws Exception;
+
+    public void close() {
+        LDAPClient c = client;
+        if (c == null) return;
+        client = null;
+
+        try {
+            c.close();
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+        }
+    }
+
+    public String[] getAttributeNames() {
+        return attributes.isEmpty() ? new String[] { "*" } : attributes.toArray(new String[attributes.size()]);
+    }
+
+    public String getFilterString() {
+        return filter == null ? "(objectClass=*)" : filter.toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Change Log Entries
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public static Attributes createAddChange(SearchResult result) throws Exception {
+
+        Attributes change = new Attributes();
+        change.setValue("changeType", "add");
+        change.setValue("targetDN", result.getDn().toString());
+
+        StringBuilder sb = new StringBuilder();
+        for (Attribute attribute : result.getAttributes().getAll()) {
+            appendValues(sb, attribute);
+        }
+        change.setValue("changes", sb.toString());
+
+        return change;
+    }
+
+    /**
+     * Creates a modify change which replaces the values of the attributes in the entry.
+     */
+    public static Attributes createModifyChange(SearchResult result) throws Exception {
+
+        Attributes change = new Attributes();
+        change.setValue("changeType", "modify");
+        change.setValue("targetDN", result.getDn().toString());
+
+        StringBuilder sb = new StringBuilder();
+        for (Attribute attribute : result.getAttributes().getAll()) {
+            sb.append("replace: ");
+            sb.append(attribute.getName());
+            sb.append("\n");
+            appendValues(sb, attribute);
+            sb.append("-\n");
+        }
+        change.setValue("changes", sb.toString());
+
+        return change;
+    }
+
+    public static Attributes createModRdnChange(DN oldDn, DN newDn) throws Exception {
+
+        Attributes change = new Attributes();
+        change.setValue("changeType", "modrdn");
+        change.setValue("targetDN", oldDn.toString());
+        change.setValue("newRDN", newDn.getRdn().toString());
+        change.setValue("deleteOldRDN", "true");
+
+        DN newParentDn = newDn.getParentDn();
+        if (!newParentDn.equals(oldDn.getParentDn())) {
+            change.setValue("newSuperior", newParentDn.toString());
+        }
+
+        return change;
+    }
+
+    public static Attributes createDeleteChange(DN dn) throws Exception {
+
+        Attributes change = new Attributes();
+        change.setValue("changeType", "delete");
+        change.setValue("targetDN", dn.toString());
+
+        return change;
+    }
+
+    static void appendValues(StringBuilder sb, Attribute attribute) {
+        for (Object value : attribute.getValues()) {
+            sb.append(attribute.getName());
+            if (value instanceof byte[]) {
+                sb.append(":: ");
+                sb.append(BinaryUtil.encode(BinaryUtil.BIG_INTEGER, (byte[])value));
+            } else {
+                sb.append(": ");
+                sb.append(value);
+            }
+            sb.append("\n");
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Parameters
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public String getName() {
+        return name;
+    }
+
+    public DN getBaseDn() {
+        return baseDn;
+    }
+
+    public void setBaseDn(DN baseDn) {
+        this.baseDn = baseDn;
+    }
+
+    public int getScope() {
+        return scope;
+    }
+
+    public void setScope(int scope) {
+        this.scope = scope;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+    }
+
+    public Collection<String> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(Collection<String> attributes) {
+        this.attributes.clear();
+        if (attributes != null) this.attributes.addAll(attributes);
+    }
+
+    public long getMinRetryDelay() {
+        return minRetryDelay;
+    }
+
+    public void setMinRetryDelay(long minRetryDelay) {
+        this.minRetryDelay = minRetryDelay;
+    }
+
+    public long getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    public void setMaxRetryDelay(long maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
@@ -0,0 +1,22 @@
+package org.safehaus.penrose.ldap.feed;
+
+import org.safehaus.penrose.ldap.Attributes;
+
+/**
+ * Receives the changes pushed by a change feed. The changes have the same attributes
+ * as a change log entry: changeType, targetDN, changes, newRDN, deleteOldRDN, and
+ * newSuperior, plus changeNumber if the server provides it.
+ *
+ * @author Endi Sukma Dewata
+ */
+public interface ChangeListener {
+
+    /**
+     * Called every time the feed has been (re)connected and is listening for changes,
+     * before the changes pushed since then are passed to process(). The listener can
+     * catch up with the changes made while the feed was not connected.
+     */
+    public void resume() throws Exception;
+
+    public void process(Attributes change) throws Exception;
+}
@@ -0,0 +1,130 @@
+package org.safehaus.penrose.ldap.feed;
+
+import org.ietf.ldap.*;
+import org.safehaus.penrose.control.Control;
+import org.safehaus.penrose.control.EntryChangeControl;
+import org.safehaus.penrose.control.PersistentSearchControl;
+import org.safehaus.penrose.ldap.Attributes;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.ldap.LDAPClient;
+import org.safehaus.penrose.ldap.LDAPConnectionFactory;
+import org.safehaus.penrose.ldap.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Listens to the changes with a persistent search. The type of each change and the
+ * previous DN of a renamed entry are taken from the entry change control.
+ *
+ * If the feed is listening to a change log the new change log entries are passed to
+ * the listener as they are.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class PersistentSearchFeed extends ChangeFeed {
+
+    protected boolean changeLog;
+
+    public PersistentSearchFeed(String name, LDAPConnectionFactory connectionFactory, ChangeListener listener) {
+        super(name, connectionFactory, listener);
+    }
+
+    public void listen(LDAPClient client) throws Exception {
+
+        LDAPConnection connection = client.getConnection();
+
+        int changeTypes = changeLog ? PersistentSearchControl.ADD : PersistentSearchControl.ANY;
+
+        Collection<Control> controls = new ArrayList<Control>();
+        controls.add(new PersistentSearchControl(changeTypes, true, true, true));
+
+        LDAPSearchConstraints constraints = new LDAPSearchConstraints();
+        client.initConstraints(constraints);
+        constraints.setControls(client.convertControls(controls));
+
+        String base = baseDn == null ? "" : baseDn.toString();
+
+        LDAPSearchQueue queue = connection.search(
+                base, scope, getFilterString(), getAttributeNames(), false, (LDAPSearchQueue)null, constraints
+        );
+
+        try {
+            listener.resume();
+
+            while (!stopped) {
+
+                LDAPMessage message = queue.getResponse();
+                if (message == null) throw new Exception("Connection closed.");
+
+                if (message instanceof LDAPSearchResult) {
+                    LDAPEntry entry = ((LDAPSearchResult)message).getEntry();
+                    SearchResult result = client.createSearchResult(entry);
+
+                    Attributes change = changeLog ? result.getAttributes() : createChange(result, getEntryChangeControl(message));
+                    if (change != null) listener.process(change);
+
+                } else if (message instanceof LDAPResponse) {
+                    LDAPResponse response = (LDAPResponse)message;
+                    throw new Exception("Persistent search ended: "+response.getResultCode()+" "+response.getErrorMessage());
+                }
+            }
+
+        } finally {
+            try {
+                connection.abandon(queue);
+            } catch (Exception e) {
+                log.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    public static EntryChangeControl getEntryChangeControl(LDAPMessage message) throws Exception {
+
+        LDAPControl[] controls = message.getControls();
+        if (controls == null) return null;
+
+        for (LDAPControl control : controls) {
+            if (!EntryChangeControl.OID.equals(control.getID())) continue;
+            return new EntryChangeControl(new Control(control.getID(), control.getValue(), control.isCritical()));
+        }
+
+        return null;
+    }
+
+    public static Attributes createChange(SearchResult result, EntryChangeControl control) throws Exception {
+
+        Attributes change;
+
+        if (control == null) { // only the new state is known
+            change = createModifyChange(result);
+
+        } else if (control.getChangeType() == PersistentSearchControl.ADD) {
+            change = createAddChange(result);
+
+        } else if (control.getChangeType() == PersistentSearchControl.DELETE) {
+            change = createDeleteChange(result.getDn());
+
+        } else if (control.getChangeType() == PersistentSearchControl.MODDN) {
+            if (control.getPreviousDn() == null) return null;
+            change = createModRdnChange(new DN(control.getPreviousDn()), result.getDn());
+
+        } else {
+            change = createModifyChange(result);
+        }
+
+        if (control != null && control.getChangeNumber() != null) {
+            change.setValue("changeNumber", control.getChangeNumber().toString());
+        }
+
+        return change;
+    }
+
+    public boolean isChangeLog() {
+        return changeLog;
+    }
+
+    public void setChangeLog(boolean changeLog) {
+        this.changeLog = changeLog;
+    }
+}
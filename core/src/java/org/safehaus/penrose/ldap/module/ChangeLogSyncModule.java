@@ -1,5 +1,6 @@
 package org.safehaus.penrose.ldap.module;
 
+import org.safehaus.penrose.changelog.ChangeLogApplier;
 import org.safehaus.penrose.filter.AndFilter;
 import org.safehaus.penrose.filter.Filter;
 import org.safehaus.penrose.filter.NotFilter;
@@ -7,11 +8,15 @@ import org.safehaus.penrose.filter.SimpleFilter;
 import org.safehaus.penrose.jdbc.QueryResponse;
 import org.safehaus.penrose.jdbc.source.JDBCSource;
 import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.ldap.connection.LDAPConnection;
+import org.safehaus.penrose.ldap.feed.ChangeListener;
+import org.safehaus.penrose.ldap.feed.PersistentSearchFeed;
 import org.safehaus.penrose.ldap.source.LDAPSource;
 import org.safehaus.penrose.module.Module;
 import org.safehaus.penrose.schema.SchemaManager;
 import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.source.SourceManager;
+import org.safehaus.penrose.statistic.StatisticManager;
 import org.safehaus.penrose.util.BinaryUtil;
 
 import java.io.BufferedReader;
@@ -28,11 +33,31 @@ import java.util.TreeSet;
  */
 public class ChangeLogSyncModule extends Module {
 
+    public final static String THREADS         = "threads";
+    public final static String QUEUE_SIZE      = "queueSize";
+    public final static String COMMIT_SIZE     = "commitSize";
+    public final static String COMMIT_INTERVAL = "commitInterval";
+    public final static String FEED            = "feed";
+    public final static String PERSISTENT      = "persistent";
+
     LDAPSource source;
     LDAPSource target;
     LDAPSource changelog;
     JDBCSource tracker;
 
+    int threads          = ChangeLogApplier.DEFAULT_THREADS;
+    int queueSize        = ChangeLogApplier.DEFAULT_QUEUE_SIZE;
+    int commitSize       = ChangeLogApplier.DEFAULT_COMMIT_SIZE;
+    long commitInterval  = ChangeLogApplier.DEFAULT_COMMIT_INTERVAL;
+
+    // the last or the running synchronization
+    protected ChangeLogApplier applier;
+
+    // changes up to this number might have been applied by the last failed synchronization
+    protected Number replayNumber;
+
+    protected PersistentSearchFeed feed;
+
     public void init() throws Exception {
 
         log.debug("Initializing "+this.getName()+" module...");
@@ -54,6 +79,94 @@ public class ChangeLogSyncModule extends Module {
         String trackerName = getParameter("tracker");
         log.debug("Tracker: "+trackerName);
         tracker = (JDBCSource)sourceManager.getSource(trackerName);
+
+        String s = getParameter(THREADS);
+        if (s != null) threads = Integer.parseInt(s);
+        log.debug("Threads: "+threads);
+
+        s = getParameter(QUEUE_SIZE);
+        if (s != null) queueSize = Integer.parseInt(s);
+        log.debug("Queue size: "+queueSize);
+
+        s = getParameter(COMMIT_SIZE);
+        if (s != null) commitSize = Integer.parseInt(s);
+        log.debug("Commit size: "+commitSize);
+
+        s = getParameter(COMMIT_INTERVAL);
+        if (s != null) commitInterval = Long.parseLong(s);
+        log.debug("Commit interval: "+commitInterval);
+
+        s = getParameter(FEED);
+        log.debug("Feed: "+s);
+
+        if (PERSISTENT.equals(s)) {
+            feed = createFeed();
+            feed.start();
+        }
+    }
+
+    public void destroy() throws Exception {
+        if (feed != null) feed.stop();
+    }
+
+    /**
+     * Creates a feed which pushes the new change log entries. After the feed has
+     * connected the changes since the last tracked change are synchronized.
+     */
+    public PersistentSearchFeed createFeed() throws Exception {
+
+        LDAPConnection connection = (LDAPConnection)changelog.getConnection();
+
+        PersistentSearchFeed feed = new PersistentSearchFeed(
+                partition.getName()+"."+getName(),
+                connection.connectionFactory,
+                new ChangeListener() {
+                    public void resume() throws Exception {
+                        synchronize();
+                    }
+                    public void process(Attributes change) throws Exception {
+                        processChange(change);
+                    }
+                }
+        );
+
+        feed.setChangeLog(true);
+        feed.setBaseDn(changelog.getBaseDn());
+        feed.setScope(changelog.getScope());
+        feed.setFilter(changelog.getFilter());
+
+        return feed;
+    }
+
+    /**
+     * Processes a change log entry pushed by the feed unless it has been synchronized.
+     */
+    public synchronized void processChange(Attributes attributes) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+        Long changeNumber = Long.parseLong(attributes.getValue("changeNumber").toString());
+
+        Session session = createAdminSession();
+
+        try {
+            Long lastTrackedNumber = getLastTrackedNumber(session);
+
+            if (lastTrackedNumber != null && changeNumber <= lastTrackedNumber) {
+                if (debug) log.debug("Change "+changeNumber+" has been synchronized.");
+                return;
+            }
+
+            if (debug) {
+                log.debug("Processing change "+changeNumber+":");
+                attributes.print();
+            }
+
+            process(session, attributes);
+            addTracker(session, changeNumber);
+
+        } finally {
+            session.close();
+        }
     }
 
     public void load() throws Exception {
@@ -85,43 +198,53 @@ public class ChangeLogSyncModule extends Module {
         }
     }
 
-    public void synchronize() throws Exception {
+    public synchronized void synchronize() throws Exception {
 
-        boolean debug = log.isDebugEnabled();
+        final boolean debug = log.isDebugEnabled();
         log.debug("============================================================================================");
         log.debug("Synchronizing cache...");
 
-        Session session = createAdminSession();
+        final Session session = createAdminSession();
 
         try {
             Long lastTrackedNumber = getLastTrackedNumber(session);
 
             SearchRequest request = createSearchRequest(lastTrackedNumber);
-            SearchResponse response = new SearchResponse();
 
-            changelog.search(session, request, response);
+            final ChangeLogApplier applier = createApplier();
+            applier.setReplayNumber(replayNumber);
 
-            if (!response.hasNext()) {
-                if (debug) log.debug("There is no new changes.");
-                return;
-            }
+            SearchResponse response = new SearchResponse() {
+                public void add(SearchResult result) throws Exception {
 
-            do {
-                SearchResult result = response.next();
-                DN dn = result.getDn();
-                Attributes attributes = result.getAttributes();
+                    if (debug) {
+                        log.debug("Processing: "+result.getDn());
+                        result.getAttributes().print();
+                    }
 
-                if (debug) {
-                    log.debug("Processing: "+dn);
-                    attributes.print();
+                    applier.add(result);
                 }
+            };
+
+            this.applier = applier;
+            applier.start();
 
-                process(session, attributes);
+            try {
+                changelog.search(session, request, response);
+                response.waitFor();
 
-                Long newChangeNumber = Long.parseLong(attributes.getValue("changeNumber").toString());
-                addTracker(session, newChangeNumber);
+            } finally {
+                try {
+                    applier.close();
+                } finally {
+                    replayNumber = applier.getReplayNumber();
+                }
+            }
 
-            } while (response.hasNext());
+            if (applier.getReadCount() == 0) {
+                if (debug) log.debug("There is no new changes.");
+                return;
+            }
 
             log.debug("LDAP synchronization completed.");
 
@@ -130,6 +253,45 @@ public class ChangeLogSyncModule extends Module {
         }
     }
 
+    public ChangeLogApplier createApplier() throws Exception {
+
+        ChangeLogApplier applier = new ChangeLogApplier(getName()) {
+            public Session openSession() throws Exception {
+                return createAdminSession();
+            }
+            public void apply(Session session, SearchResult result) throws Exception {
+                process(session, result.getAttributes());
+            }
+            public void addTracker(Number changeNumber) throws Exception {
+                Session session = createAdminSession();
+                try {
+                    ChangeLogSyncModule.this.addTracker(session, changeNumber);
+                } finally {
+                    session.close();
+                }
+            }
+        };
+
+        applier.setThreads(threads);
+        applier.setQueueSize(queueSize);
+        applier.setCommitSize(commitSize);
+        applier.setCommitInterval(commitInterval);
+
+        StatisticManager statisticManager = partition.getStatisticManager();
+        if (statisticManager != null) {
+            applier.setStatisticManager(
+                    statisticManager,
+                    StatisticManager.CHANGELOG+"/"+partition.getName()+"/"+getName()
+            );
+        }
+
+        return applier;
+    }
+
+    public ChangeLogApplier getApplier() {
+        return applier;
+    }
+
     public Long getLastChangeNumber(Session session) throws Exception {
 
         SearchRequest request = new SearchRequest();
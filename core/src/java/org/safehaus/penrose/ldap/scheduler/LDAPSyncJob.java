@@ -1,5 +1,6 @@
 package org.safehaus.penrose.ldap.scheduler;
 
+import org.safehaus.penrose.changelog.ChangeLogApplier;
 import org.safehaus.penrose.directory.Directory;
 import org.safehaus.penrose.directory.Entry;
 import org.safehaus.penrose.filter.AndFilter;
@@ -15,6 +16,7 @@ import org.safehaus.penrose.scheduler.Job;
 import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.source.Source;
 import org.safehaus.penrose.source.SourceManager;
+import org.safehaus.penrose.statistic.StatisticManager;
 import org.safehaus.penrose.util.BinaryUtil;
 
 import java.io.BufferedReader;
@@ -33,12 +35,28 @@ import java.util.TreeSet;
  */
 public class LDAPSyncJob extends Job {
 
+    public final static String THREADS         = "threads";
+    public final static String QUEUE_SIZE      = "queueSize";
+    public final static String COMMIT_SIZE     = "commitSize";
+    public final static String COMMIT_INTERVAL = "commitInterval";
+
     Source source;
     Source target;
     Source changelog;
     JDBCSource tracker;
     Source errors;
 
+    int threads          = ChangeLogApplier.DEFAULT_THREADS;
+    int queueSize        = ChangeLogApplier.DEFAULT_QUEUE_SIZE;
+    int commitSize       = ChangeLogApplier.DEFAULT_COMMIT_SIZE;
+    long commitInterval  = ChangeLogApplier.DEFAULT_COMMIT_INTERVAL;
+
+    // the last or the running synchronization
+    protected ChangeLogApplier applier;
+
+    // changes up to this number might have been applied by the last failed synchronization
+    protected Number replayNumber;
+
     public void init() throws Exception {
         String sourceName    = getParameter("source");
         String targetName    = getParameter("target");
@@ -54,6 +72,18 @@ public class LDAPSyncJob extends Job {
         changelog = sourceManager.getSource(changeLogName);
         tracker   = (JDBCSource)sourceManager.getSource(trackerName);
         errors    = sourceManager.getSource(errorsName);
+
+        String s = getParameter(THREADS);
+        if (s != null) threads = Integer.parseInt(s);
+
+        s = getParameter(QUEUE_SIZE);
+        if (s != null) queueSize = Integer.parseInt(s);
+
+        s = getParameter(COMMIT_SIZE);
+        if (s != null) commitSize = Integer.parseInt(s);
+
+        s = getParameter(COMMIT_INTERVAL);
+        if (s != null) commitInterval = Long.parseLong(s);
     }
 
     public void execute() throws Exception {
@@ -437,42 +467,75 @@ public class LDAPSyncJob extends Job {
 */
     public void synchronize() throws Exception {
 
-    boolean debug = log.isDebugEnabled();
+        final boolean debug = log.isDebugEnabled();
 
         log.debug("============================================================================================");
         log.debug("Synchronizing cache...");
 
-        Session session = createAdminSession();
+        final Session session = createAdminSession();
 
         try {
             Long lastChangeNumber = getLastChangeNumber(session);
 
             SearchRequest request = createSearchRequest(lastChangeNumber);
-            SearchResponse response = new SearchResponse();
 
-            changelog.search(session, request, response);
+            final ChangeLogApplier applier = createApplier();
+            applier.setReplayNumber(replayNumber);
+
+            SearchResponse response = new SearchResponse() {
+                public void add(SearchResult result) throws Exception {
+
+                    if (debug) {
+                        log.debug("Processing: "+result.getDn());
+                        result.getAttributes().print();
+                    }
+
+                    applier.add(result);
+                }
+            };
+
+            this.applier = applier;
+            applier.start();
+
+            try {
+                changelog.search(session, request, response);
+                response.waitFor();
+
+            } finally {
+                try {
+                    applier.close();
+                } finally {
+                    replayNumber = applier.getReplayNumber();
+                }
+            }
 
-            if (!response.hasNext()) {
+            if (applier.getReadCount() == 0) {
                 if (debug) log.debug("There is no new changes.");
                 return;
             }
 
-            do {
-                SearchResult result = response.next();
-                DN dn = result.getDn();
-                Attributes attributes = result.getAttributes();
+            log.debug("LDAP synchronization completed.");
 
-                if (debug) {
-                    log.debug("Processing: "+dn);
-                    attributes.print();
-                }
+        } finally {
+            session.close();
+        }
+    }
+
+    public ChangeLogApplier createApplier() throws Exception {
+
+        ChangeLogApplier applier = new ChangeLogApplier(getName()) {
+            public Session openSession() throws Exception {
+                return createAdminSession();
+            }
+            public void apply(Session session, SearchResult result) throws Exception {
+                DN dn = result.getDn();
 
                 try {
-                    process(session, attributes);
+                    process(session, result.getAttributes());
 
                 } catch (Throwable e) {
 
-                    if (errors != null) {
+                    if (errors != null && !isReplayed(getChangeNumber(result.getAttributes()), e)) {
 
                         Attributes attrs = new Attributes();
                         attrs.setValue("time", new Timestamp(System.currentTimeMillis()));
@@ -497,18 +560,30 @@ public class LDAPSyncJob extends Job {
 
                     throw new Exception(e);
                 }
+            }
+            public void addTracker(Number changeNumber) throws Exception {
+                LDAPSyncJob.this.addTracker(changeNumber.longValue());
+            }
+        };
 
-                Long newChangeNumber = Long.parseLong(attributes.getValue("changeNumber").toString());
-
-                addTracker(newChangeNumber);
+        applier.setThreads(threads);
+        applier.setQueueSize(queueSize);
+        applier.setCommitSize(commitSize);
+        applier.setCommitInterval(commitInterval);
 
-            } while (response.hasNext());
+        StatisticManager statisticManager = partition.getStatisticManager();
+        if (statisticManager != null) {
+            applier.setStatisticManager(
+                    statisticManager,
+                    StatisticManager.CHANGELOG+"/"+partition.getName()+"/"+getName()
+            );
+        }
 
-            log.debug("LDAP synchronization completed.");
+        return applier;
+    }
 
-        } finally {
-            session.close();
-        }
+    public ChangeLogApplier getApplier() {
+        return applier;
     }
 
     public Long getLastChangeNumber(Session session) throws Exception {
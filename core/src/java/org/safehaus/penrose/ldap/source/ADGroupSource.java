@@ -47,7 +47,7 @@ public class ADGroupSource extends LDAPSource {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             response.setSizeLimit(request.getSizeLimit());
@@ -76,7 +76,7 @@ public class ADGroupSource extends LDAPSource {
 
         } finally {
             response.close();
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -14,6 +14,7 @@ import org.safehaus.penrose.util.TextUtil;
 import org.safehaus.penrose.control.Control;
 import org.safehaus.penrose.pipeline.Pipeline;
 import org.safehaus.penrose.schema.SchemaManager;
+import org.safehaus.penrose.statistic.StatisticManager;
 
 import java.util.*;
 
@@ -160,13 +161,13 @@ public class LDAPSource extends Source {
 
         if (debug) log.debug("Adding entry "+dn+".");
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             client.add(newRequest, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Add operation completed.");
@@ -231,13 +232,14 @@ public class LDAPSource extends Source {
             throw LDAP.createException(LDAP.INVALID_CREDENTIALS);
         }
 
-        LDAPClient client = connection.getClient(session);
+        // with full authentication the following operations have to use the bound connection
+        LDAPClient client = LDAP.AUTHENTICATION_FULL.equals(authentication) ? connection.getClient(session) : connection.borrowClient(session);
 
         try {
             client.bind(newRequest, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Bind operation completed.");
@@ -293,13 +295,13 @@ public class LDAPSource extends Source {
 
         if (debug) log.debug("Comparing entry "+dn);
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             client.compare(newRequest, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Compare operation completed.");
@@ -341,13 +343,13 @@ public class LDAPSource extends Source {
 
         if (debug) log.debug("Deleting entry "+dn);
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             client.delete(newRequest, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Delete operation completed.");
@@ -405,13 +407,13 @@ public class LDAPSource extends Source {
 
         if (debug) log.debug("Modifying entry "+dn);
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             client.modify(newRequest, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Modify operation completed.");
@@ -453,13 +455,13 @@ public class LDAPSource extends Source {
 
         if (debug) log.debug("Renaming entry "+dn);
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             client.modrdn(newRequest, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Rename operation completed.");
@@ -485,14 +487,21 @@ public class LDAPSource extends Source {
             log.debug(TextUtil.displaySeparator(70));
         }
 
-        if (sourceBaseDn == null || sourceBaseDn.isEmpty()) {
-            searchFullTree(session, request, response);
+        long startTime = System.nanoTime();
 
-        } else if (sourceScope != SearchRequest.SCOPE_ONE) {
-            searchSubTree(session, request, response);
+        try {
+            if (sourceBaseDn == null || sourceBaseDn.isEmpty()) {
+                searchFullTree(session, request, response);
 
-        } else {
-            searchFlatTree(session, request, response);
+            } else if (sourceScope != SearchRequest.SCOPE_ONE) {
+                searchSubTree(session, request, response);
+
+            } else {
+                searchFlatTree(session, request, response);
+            }
+
+        } finally {
+            recordOperation(StatisticManager.SEARCH, startTime);
         }
 
         log.debug("Search operation completed.");
@@ -505,6 +514,9 @@ public class LDAPSource extends Source {
     ) throws Exception {
 
         final boolean debug = log.isDebugEnabled();
+
+        LDAPClient client = null;
+
         try {
 
             DN baseDn = request.getDn();
@@ -517,7 +529,7 @@ public class LDAPSource extends Source {
             Collection<String> attributes = createAttributes(request);
             Collection<Control> controls = createControls(request);
 
-            LDAPClient client = connection.getClient(session);
+            client = connection.borrowClient(session);
 
             if (baseDn != null && baseDn.isEmpty()) {
 
@@ -624,7 +636,7 @@ public class LDAPSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            if (client != null) connection.returnClient(session, client);
             response.close();
         }
     }
@@ -636,6 +648,9 @@ public class LDAPSource extends Source {
     ) throws Exception {
 
         final boolean debug = log.isDebugEnabled();
+
+        LDAPClient client = null;
+
         try {
 
             if (debug) log.debug("Source "+getName()+" is an LDAP subtree.");
@@ -679,7 +694,7 @@ public class LDAPSource extends Source {
             Collection<String> attributes = createAttributes(request);
             Collection<Control> controls = createControls(request);
 
-            LDAPClient client = connection.getClient(session);
+            client = connection.borrowClient(session);
 
             if (baseDn != null && baseDn.isEmpty()) {
 
@@ -792,7 +807,7 @@ public class LDAPSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            if (client != null) connection.returnClient(session, client);
             response.close();
         }
     }
@@ -804,6 +819,9 @@ public class LDAPSource extends Source {
     ) throws Exception {
 
         final boolean debug = log.isDebugEnabled();
+
+        LDAPClient client = null;
+
         try {
 
             if (debug) log.debug("Source "+getName()+" is a flat LDAP tree.");
@@ -818,7 +836,7 @@ public class LDAPSource extends Source {
             Collection<String> attributes = createAttributes(request);
             Collection<Control> controls = createControls(request);
 
-            LDAPClient client = connection.getClient(session);
+            client = connection.borrowClient(session);
 
             if (baseDn != null && baseDn.isEmpty()) {
 
@@ -959,7 +977,7 @@ public class LDAPSource extends Source {
             }
 
         } finally {
-            connection.closeClient(session);
+            if (client != null) connection.returnClient(session, client);
             response.close();
         }
     }
@@ -996,13 +1014,13 @@ public class LDAPSource extends Source {
 
         if (debug) log.debug("Unbinding as "+dn);
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             client.unbind(request, response);
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
 
         log.debug("Unbind operation completed.");
@@ -1205,14 +1223,14 @@ public class LDAPSource extends Source {
             }
         };
 
-        LDAPClient client = connection.getClient(session);
+        LDAPClient client = connection.borrowClient(session);
 
         try {
             client.search(request, response);
             return response.getTotalCount();
 
         } finally {
-            connection.closeClient(session);
+            connection.returnClient(session, client);
         }
     }
 
@@ -21,6 +21,7 @@ public class LDIFClient {
     }
 
     public void compare(CompareRequest request, CompareResponse response) throws Exception {
+        connection.getStore().compare(request, response);
     }
 
     public void delete(DeleteRequest request, DeleteResponse response) throws Exception {
@@ -33,6 +34,7 @@ public class LDIFClient {
     }
 
     public void search(SearchRequest request, SearchResponse response) throws Exception {
+        connection.getStore().search(request, response);
     }
 
     public void close() throws Exception {
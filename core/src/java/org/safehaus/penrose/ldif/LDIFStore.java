@@ -0,0 +1,662 @@
+package org.safehaus.penrose.ldif;
+
+import org.safehaus.penrose.filter.*;
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.util.BinaryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only store backed by an LDIF file. The file is memory-mapped and scanned once
+ * to build an index of record offsets by normalized DN, the children of each entry,
+ * and equality and presence indexes for the configured attributes. A search only
+ * decodes the records within the scope which can match the filter.
+ *
+ * The file is checked for modification before each operation. If data has only been
+ * appended to the file, only the new records are scanned, otherwise the index is
+ * rebuilt. The file should be replaced (e.g. renamed over) rather than truncated while
+ * the server is running.
+ *
+ * The index is not modified after it is built, so operations can run without locking.
+ *
+ * @author Endi S. Dewata
+ */
+public class LDIFStore {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static Charset UTF8 = Charset.forName("UTF-8");
+
+    File file;
+    Set<String> indexedAttributes = new LinkedHashSet<String>();
+
+    FilterEvaluator filterEvaluator;
+
+    volatile Index index;
+
+    public static class Record {
+        DN dn;
+        String normalizedDn;
+        String parentDn;
+        int offset;
+        int length;
+
+        public DN getDn() {
+            return dn;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    public static class Index {
+        long lastModified;
+        long length;
+
+        // offset where the next scan starts and the checksum of the bytes before it
+        int scanned;
+        long checksum;
+
+        ByteBuffer buffer;
+
+        Map<String,Record> records = new HashMap<String,Record>();
+        Map<String,List<Record>> children = new HashMap<String,List<Record>>();
+        Map<String,Map<String,List<Record>>> equalityIndexes = new HashMap<String,Map<String,List<Record>>>();
+        Map<String,List<Record>> presenceIndexes = new HashMap<String,List<Record>>();
+
+        Index() {
+        }
+
+        Index(Index index) {
+            records.putAll(index.records);
+
+            for (Map.Entry<String,List<Record>> entry : index.children.entrySet()) {
+                children.put(entry.getKey(), new ArrayList<Record>(entry.getValue()));
+            }
+
+            for (Map.Entry<String,Map<String,List<Record>>> entry : index.equalityIndexes.entrySet()) {
+                Map<String,List<Record>> map = new HashMap<String,List<Record>>();
+                for (Map.Entry<String,List<Record>> e : entry.getValue().entrySet()) {
+                    map.put(e.getKey(), new ArrayList<Record>(e.getValue()));
+                }
+                equalityIndexes.put(entry.getKey(), map);
+            }
+
+            for (Map.Entry<String,List<Record>> entry : index.presenceIndexes.entrySet()) {
+                presenceIndexes.put(entry.getKey(), new ArrayList<Record>(entry.getValue()));
+            }
+        }
+    }
+
+    public LDIFStore(File file) {
+        this.file = file;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Index
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized void load() throws Exception {
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        Index oldIndex = index;
+
+        if (oldIndex != null && oldIndex.lastModified == lastModified && oldIndex.length == length) return;
+
+        ByteBuffer buffer = map();
+
+        Index newIndex;
+        int start;
+
+        if (oldIndex != null && length >= oldIndex.scanned && checksum(buffer, oldIndex.scanned) == oldIndex.checksum) {
+            log.debug("Scanning "+(length - oldIndex.scanned)+" byte(s) appended to "+file+".");
+            newIndex = new Index(oldIndex);
+            start = oldIndex.scanned;
+
+        } else {
+            log.debug("Scanning "+file+".");
+            newIndex = new Index();
+            start = 0;
+        }
+
+        newIndex.lastModified = lastModified;
+        newIndex.length = buffer.limit();
+        newIndex.buffer = buffer;
+
+        newIndex.scanned = scan(newIndex, start);
+        newIndex.checksum = checksum(buffer, newIndex.scanned);
+
+        log.debug("Indexed "+newIndex.records.size()+" record(s) from "+file+".");
+
+        index = newIndex;
+    }
+
+    public ByteBuffer map() throws Exception {
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new Exception("LDIF file "+file+" is too large.");
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return buffer.asReadOnlyBuffer();
+
+        } finally {
+            raf.close();
+        }
+    }
+
+    public long checksum(ByteBuffer buffer, int length) {
+
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[8192];
+
+        ByteBuffer bb = buffer.duplicate();
+        bb.position(0);
+
+        int remaining = length;
+        while (remaining > 0) {
+            int n = Math.min(bytes.length, remaining);
+            bb.get(bytes, 0, n);
+            crc.update(bytes, 0, n);
+            remaining -= n;
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Indexes the records starting at the given offset. Returns the offset where the next
+     * scan has to start: the last record is scanned again in case more lines are appended.
+     */
+    public int scan(Index index, int start) throws Exception {
+
+        ByteBuffer buffer = index.buffer;
+        int limit = buffer.limit();
+
+        Set<String> names = new HashSet<String>(indexedAttributes);
+        names.add("dn");
+
+        int recordStart = -1;
+        int recordEnd = -1;
+
+        int p = start;
+        while (p < limit) {
+
+            int lineStart = p;
+            while (p < limit && buffer.get(p) != '\n') p++;
+
+            int lineEnd = p;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+            p++;
+
+            if (lineEnd > lineStart) {
+                if (recordStart < 0) recordStart = lineStart;
+                recordEnd = lineEnd;
+                continue;
+            }
+
+            if (recordStart >= 0) {
+                addRecord(index, recordStart, recordEnd - recordStart, names);
+                recordStart = -1;
+            }
+        }
+
+        if (recordStart < 0) return limit;
+
+        addRecord(index, recordStart, recordEnd - recordStart, names);
+        return recordStart;
+    }
+
+    public void addRecord(Index index, int offset, int length, Set<String> names) throws Exception {
+
+        Attributes attributes = parse(index.buffer, offset, length, names);
+
+        Object dnValue = attributes.getValue("dn");
+        if (dnValue == null) return; // version or comments
+
+        Record record = new Record();
+        record.dn = new DN(dnValue.toString());
+        record.normalizedDn = record.dn.getNormalizedDn();
+        record.parentDn = record.dn.getParentDn().getNormalizedDn();
+        record.offset = offset;
+        record.length = length;
+
+        Record oldRecord = index.records.put(record.normalizedDn, record);
+        if (oldRecord != null) removeRecord(index, oldRecord);
+
+        List<Record> children = index.children.get(record.parentDn);
+        if (children == null) {
+            children = new ArrayList<Record>();
+            index.children.put(record.parentDn, children);
+        }
+        children.add(record);
+
+        for (String name : indexedAttributes) {
+            Attribute attribute = attributes.get(name);
+            if (attribute == null) continue;
+
+            List<Record> presenceIndex = index.presenceIndexes.get(name);
+            if (presenceIndex == null) {
+                presenceIndex = new ArrayList<Record>();
+                index.presenceIndexes.put(name, presenceIndex);
+            }
+            presenceIndex.add(record);
+
+            Map<String,List<Record>> equalityIndex = index.equalityIndexes.get(name);
+            if (equalityIndex == null) {
+                equalityIndex = new HashMap<String,List<Record>>();
+                index.equalityIndexes.put(name, equalityIndex);
+            }
+
+            for (Object value : attribute.getValues()) {
+                String key = normalize(value);
+                if (key == null) continue;
+
+                List<Record> list = equalityIndex.get(key);
+                if (list == null) {
+                    list = new ArrayList<Record>();
+                    equalityIndex.put(key, list);
+                }
+                if (!list.contains(record)) list.add(record);
+            }
+        }
+    }
+
+    public void removeRecord(Index index, Record record) {
+
+        List<Record> children = index.children.get(record.parentDn);
+        if (children != null) children.remove(record);
+
+        for (List<Record> list : index.presenceIndexes.values()) {
+            list.remove(record);
+        }
+
+        for (Map<String,List<Record>> map : index.equalityIndexes.values()) {
+            for (List<Record> list : map.values()) {
+                list.remove(record);
+            }
+        }
+    }
+
+    /**
+     * Normalizes a value for the equality index. The index only narrows the candidates,
+     * the filter is always evaluated against the decoded record.
+     */
+    public static String normalize(Object value) {
+        if (!(value instanceof String)) return null;
+
+        StringBuilder sb = new StringBuilder();
+        boolean space = false;
+
+        String s = ((String)value).trim();
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) sb.append(' ');
+            sb.append(Character.toLowerCase(c));
+            space = false;
+        }
+
+        return sb.toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Decoding
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Decodes the attributes of a record. If names is not null only the attributes with
+     * those (lower case) names are decoded.
+     */
+    public Attributes parse(ByteBuffer buffer, int offset, int length, Set<String> names) throws Exception {
+
+        Attributes attributes = new Attributes();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        int end = offset + length;
+        int p = offset;
+
+        boolean skip = true;
+
+        while (p < end) {
+
+            int lineStart = p;
+            while (p < end && buffer.get(p) != '\n') p++;
+
+            int lineEnd = p;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+            p++;
+
+            if (lineEnd > lineStart && buffer.get(lineStart) == ' ') { // continuation
+                if (!skip) append(line, buffer, lineStart + 1, lineEnd);
+                continue;
+            }
+
+            if (!skip) addValue(attributes, line);
+            line.reset();
+
+            skip = lineEnd == lineStart || buffer.get(lineStart) == '#' || !isSelected(buffer, lineStart, lineEnd, names);
+            if (!skip) append(line, buffer, lineStart, lineEnd);
+        }
+
+        if (!skip) addValue(attributes, line);
+
+        return attributes;
+    }
+
+    boolean isSelected(ByteBuffer buffer, int start, int end, Set<String> names) {
+        if (names == null) return true;
+
+        StringBuilder sb = new StringBuilder();
+        for (int i=start; i<end; i++) {
+            byte b = buffer.get(i);
+            if (b == ':' || b == ';') break;
+            sb.append(Character.toLowerCase((char)b));
+        }
+
+        return names.contains(sb.toString());
+    }
+
+    void append(ByteArrayOutputStream out, ByteBuffer buffer, int start, int end) {
+        for (int i=start; i<end; i++) out.write(buffer.get(i));
+    }
+
+    void addValue(Attributes attributes, ByteArrayOutputStream line) throws Exception {
+
+        String s = new String(line.toByteArray(), "UTF-8");
+
+        int i = s.indexOf(':');
+        if (i <= 0) return;
+
+        String name = s.substring(0, i);
+        if (name.equalsIgnoreCase("version") || name.equalsIgnoreCase("changetype")) return;
+
+        Object value;
+
+        if (s.startsWith("::", i)) {
+            byte[] bytes = BinaryUtil.decode(BinaryUtil.BASE64, s.substring(i+2).trim());
+            value = decodeUTF8(bytes);
+
+        } else if (s.startsWith(":<", i)) {
+            log.debug("Unsupported URL value in attribute "+name+".");
+            return;
+
+        } else {
+            value = s.substring(i+1).trim();
+        }
+
+        attributes.addValue(name, value);
+    }
+
+    Object decodeUTF8(byte[] bytes) {
+        try {
+            CharsetDecoder decoder = UTF8.newDecoder();
+            decoder.onMalformedInput(CodingErrorAction.REPORT);
+            decoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+            return decoder.decode(ByteBuffer.wrap(bytes)).toString();
+
+        } catch (CharacterCodingException e) {
+            return bytes;
+        }
+    }
+
+    public Attributes getAttributes(Index index, Record record) throws Exception {
+        Attributes attributes = parse(index.buffer, record.offset, record.length, null);
+        attributes.remove("dn");
+        return attributes;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Operations
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public Index getIndex() throws Exception {
+        Index index = this.index;
+        if (index == null || index.lastModified != file.lastModified() || index.length != file.length()) {
+            load();
+            index = this.index;
+        }
+        return index;
+    }
+
+    public Attributes find(DN dn) throws Exception {
+        Index index = getIndex();
+
+        Record record = index.records.get(dn.getNormalizedDn());
+        if (record == null) return null;
+
+        return getAttributes(index, record);
+    }
+
+    public void compare(CompareRequest request, CompareResponse response) throws Exception {
+
+        Attributes attributes = find(request.getDn());
+        if (attributes == null) throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
+
+        SimpleFilter filter = new SimpleFilter(request.getAttributeName(), "=", request.getAttributeValue());
+        boolean result = getFilterEvaluator().eval(attributes, filter);
+
+        response.setReturnCode(result ? LDAP.COMPARE_TRUE : LDAP.COMPARE_FALSE);
+    }
+
+    public void search(SearchRequest request, SearchResponse response) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        try {
+            Index index = getIndex();
+
+            DN baseDn = request.getDn() == null ? new DN() : request.getDn();
+            String normalizedBaseDn = baseDn.getNormalizedDn();
+            int scope = request.getScope();
+            Filter filter = request.getFilter();
+
+            if (!baseDn.isEmpty() && !index.records.containsKey(normalizedBaseDn)) {
+                throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
+            }
+
+            Collection<Record> candidates = getCandidates(index, filter);
+
+            if (candidates == null) {
+                candidates = getScope(index, baseDn, scope);
+
+            } else {
+                if (debug) log.debug("Found "+candidates.size()+" candidate(s) in index.");
+
+                Collection<Record> list = new ArrayList<Record>();
+                for (Record record : candidates) {
+                    if (inScope(record, baseDn, normalizedBaseDn, scope)) list.add(record);
+                }
+                candidates = list;
+            }
+
+            FilterEvaluator filterEvaluator = getFilterEvaluator();
+
+            for (Record record : candidates) {
+                if (response.isClosed()) return;
+
+                Attributes attributes = getAttributes(index, record);
+                if (!filterEvaluator.eval(attributes, filter)) continue;
+
+                response.add(new SearchResult(record.dn, attributes));
+            }
+
+        } finally {
+            response.close();
+        }
+    }
+
+    public Collection<Record> getScope(Index index, DN baseDn, int scope) throws Exception {
+
+        String normalizedBaseDn = baseDn.getNormalizedDn();
+        Collection<Record> results = new ArrayList<Record>();
+
+        Record base = index.records.get(normalizedBaseDn);
+
+        if (scope == SearchRequest.SCOPE_BASE) {
+            if (base != null) results.add(base);
+
+        } else if (scope == SearchRequest.SCOPE_ONE) {
+            List<Record> children = index.children.get(normalizedBaseDn);
+            if (children != null) results.addAll(children);
+
+        } else {
+            if (base != null && scope == SearchRequest.SCOPE_SUB) results.add(base);
+            addDescendants(index, normalizedBaseDn, results);
+        }
+
+        return results;
+    }
+
+    void addDescendants(Index index, String normalizedDn, Collection<Record> results) {
+        List<Record> children = index.children.get(normalizedDn);
+        if (children == null) return;
+
+        for (Record child : children) {
+            results.add(child);
+            addDescendants(index, child.normalizedDn, results);
+        }
+    }
+
+    boolean inScope(Record record, DN baseDn, String normalizedBaseDn, int scope) throws Exception {
+
+        if (scope == SearchRequest.SCOPE_BASE) {
+            return record.normalizedDn.equals(normalizedBaseDn);
+
+        } else if (scope == SearchRequest.SCOPE_ONE) {
+            return record.parentDn.equals(normalizedBaseDn);
+
+        } else if (scope == SearchRequest.SCOPE_SUB) {
+            return baseDn.isEmpty() || record.dn.endsWith(baseDn);
+
+        } else {
+            return !record.normalizedDn.equals(normalizedBaseDn) && (baseDn.isEmpty() || record.dn.endsWith(baseDn));
+        }
+    }
+
+    /**
+     * Returns the records which can match the filter in file order, or null if the
+     * filter cannot be answered from the indexes.
+     */
+    public Collection<Record> getCandidates(Index index, Filter filter) throws Exception {
+
+        if (filter instanceof SimpleFilter) {
+            SimpleFilter sf = (SimpleFilter)filter;
+            if (!"=".equals(sf.getOperator())) return null;
+
+            Map<String,List<Record>> equalityIndex = getEqualityIndex(index, sf.getAttribute());
+            if (equalityIndex == null) return null;
+
+            String key = normalize(sf.getValue());
+            if (key == null) return null;
+
+            List<Record> list = equalityIndex.get(key);
+            return list == null ? new ArrayList<Record>() : list;
+
+        } else if (filter instanceof PresentFilter) {
+            String name = ((PresentFilter)filter).getAttribute().toLowerCase();
+            if (!indexedAttributes.contains(name)) return null;
+
+            List<Record> list = index.presenceIndexes.get(name);
+            return list == null ? new ArrayList<Record>() : list;
+
+        } else if (filter instanceof AndFilter) {
+            Collection<Record> results = null;
+
+            for (Filter f : ((AndFilter)filter).getFilters()) {
+                Collection<Record> list = getCandidates(index, f);
+                if (list == null) continue;
+                if (results == null || list.size() < results.size()) results = list;
+            }
+
+            return results;
+
+        } else if (filter instanceof OrFilter) {
+            Set<Record> results = new HashSet<Record>();
+
+            for (Filter f : ((OrFilter)filter).getFilters()) {
+                Collection<Record> list = getCandidates(index, f);
+                if (list == null) return null;
+                results.addAll(list);
+            }
+
+            List<Record> list = new ArrayList<Record>(results);
+            Collections.sort(list, new Comparator<Record>() {
+                public int compare(Record record1, Record record2) {
+                    return record1.offset - record2.offset;
+                }
+            });
+
+            return list;
+        }
+
+        return null;
+    }
+
+    Map<String,List<Record>> getEqualityIndex(Index index, String name) {
+        name = name.toLowerCase();
+        if (!indexedAttributes.contains(name)) return null;
+
+        Map<String,List<Record>> equalityIndex = index.equalityIndexes.get(name);
+        return equalityIndex == null ? new HashMap<String,List<Record>>() : equalityIndex;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Properties
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public File getFile() {
+        return file;
+    }
+
+    public Collection<String> getIndexedAttributes() {
+        return indexedAttributes;
+    }
+
+    public void addIndexedAttribute(String name) {
+        indexedAttributes.add(name.toLowerCase());
+    }
+
+    public FilterEvaluator getFilterEvaluator() throws Exception {
+        if (filterEvaluator == null) filterEvaluator = new FilterEvaluator();
+        return filterEvaluator;
+    }
+
+    public void setFilterEvaluator(FilterEvaluator filterEvaluator) {
+        this.filterEvaluator = filterEvaluator;
+    }
+
+    public int getCount() throws Exception {
+        return getIndex().records.size();
+    }
+
+    public void close() {
+        index = null;
+    }
+}
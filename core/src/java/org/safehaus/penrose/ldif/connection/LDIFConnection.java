@@ -1,25 +1,27 @@
 package org.safehaus.penrose.ldif.connection;
 
-import com.novell.ldap.LDAPEntry;
-import com.novell.ldap.LDAPMessage;
-import com.novell.ldap.LDAPSearchResult;
-import com.novell.ldap.util.LDIFReader;
 import org.safehaus.penrose.connection.Connection;
 import org.safehaus.penrose.ldif.LDIFClient;
+import org.safehaus.penrose.ldif.LDIFStore;
+import org.safehaus.penrose.partition.PartitionContext;
 import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.session.SessionListener;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.util.StringTokenizer;
 
 /**
  * @author Endi S. Dewata
  */
 public class LDIFConnection extends Connection {
 
-    public final static String FILE = "file";
+    public final static String FILE  = "file";
+
+    // comma-separated list of attributes with equality and presence indexes
+    public final static String INDEX = "index";
 
     public File file;
+    public LDIFStore store;
 
     public void init() throws Exception {
 
@@ -28,32 +30,36 @@ public class LDIFConnection extends Connection {
         String s = getParameter(FILE);
         file = new File(s);
 
+        store = new LDIFStore(file);
+
+        s = getParameter(INDEX);
+        if (s != null) {
+            for (StringTokenizer st = new StringTokenizer(s, ", "); st.hasMoreTokens(); ) {
+                store.addIndexedAttribute(st.nextToken());
+            }
+        }
+
+        PartitionContext partitionContext = getPartition().getPartitionContext();
+        if (partitionContext != null && partitionContext.getPenroseContext() != null) {
+            store.setFilterEvaluator(partitionContext.getPenroseContext().getFilterEvaluator());
+        }
+
         load();
         
         log.debug("Connection "+getName()+" initialized.");
     }
 
     public void load() throws Exception {
+        store.load();
+        log.debug("Loaded "+store.getCount()+" entries from "+file+".");
+    }
 
-        FileInputStream is = new FileInputStream(file);
-        LDIFReader reader = new LDIFReader(is);
-
-        LDAPMessage message;
-        while ((message = reader.readMessage()) != null) {
-/*
-            log.debug("Message ID: "+message.getMessageID());
-            log.debug(" - type: "+message.getType());
-            log.debug(" - class: "+message.getClass().getName());
-            log.debug(" - value: "+message);
-*/
-            if (!(message instanceof LDAPSearchResult)) continue;
-
-            LDAPSearchResult result = (LDAPSearchResult)message;
-            LDAPEntry entry = result.getEntry();
-
-        }
+    public void destroy() throws Exception {
+        if (store != null) store.close();
+    }
 
-        is.close();
+    public LDIFStore getStore() {
+        return store;
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
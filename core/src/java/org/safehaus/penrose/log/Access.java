@@ -17,8 +17,41 @@ public class Access {
 
     public static Logger log = LoggerFactory.getLogger(Access.class);
 
+    private static volatile AccessLog accessLog;
+
+    public static synchronized AccessLog getAccessLog() {
+        if (accessLog == null) accessLog = new AccessLog();
+        return accessLog;
+    }
+
+    /**
+     * Returns true if the records are written by the asynchronous access log.
+     */
+    public static boolean isAsync() {
+        return getActiveAccessLog() != null;
+    }
+
+    static AccessLog getActiveAccessLog() {
+        AccessLog accessLog = Access.accessLog;
+        return accessLog != null && accessLog.isActive() ? accessLog : null;
+    }
+
     public static void log(Session session, ConnectRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("CONNECT", false, session.getSessionName(), null);
+            if (record == null) return;
+            try {
+                if (request.getClientAddress() != null) record.add("from", request.getClientAddress());
+                if (request.getServerAddress() != null) record.add("to", request.getServerAddress());
+                if (request.getProtocol() != null) record.add("protocol", request.getProtocol());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -51,6 +84,14 @@ public class Access {
 
     public static void log(Session session, DisconnectRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("DISCONNECT", false, session.getSessionName(), null);
+            if (record == null) return;
+            accessLog.publish(record);
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -65,6 +106,18 @@ public class Access {
 
     public static void log(Session session, AbandonRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("ABANDON", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            try {
+                record.add("operationToAbandon", request.getOperationName());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -90,6 +143,18 @@ public class Access {
 
     public static void log(Session session, AbandonResponse response) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("ABANDON", true, session.getSessionName(), response.getMessageId());
+            if (record == null) return;
+            try {
+                record.setResult(response.getErrorMessage());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -116,6 +181,18 @@ public class Access {
 
     public static void log(Session session, AddRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("ADD", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            try {
+                record.setDn("dn", request.getDn());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -141,6 +218,18 @@ public class Access {
 
     public static void log(Session session, AddResponse response) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("ADD", true, session.getSessionName(), response.getMessageId());
+            if (record == null) return;
+            try {
+                record.setResult(response.getErrorMessage());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -166,6 +255,18 @@ public class Access {
 
     public static void log(Session session, BindRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("BIND", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            try {
+                record.setDn("dn", request.getDn());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -191,6 +292,19 @@ public class Access {
 
     public static void log(Session session, BindResponse response) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("BIND", true, session.getSessionName(), response.getMessageId());
+            if (record == null) return;
+            try {
+                record.setResult(response.getErrorMessage());
+                if (response.getReturnCode() == LDAP.SUCCESS && session.getBindDn() != null) record.add("authDn", session.getBindDn());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -222,6 +336,19 @@ public class Access {
 
     public static void log(Session session, CompareRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("COMPARE", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            try {
+                record.setDn("dn", request.getDn());
+                record.add("attr", request.getAttributeName());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -249,6 +376,18 @@ public class Access {
 
     public static void log(Session session, CompareResponse response) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("COMPARE", true, session.getSessionName(), response.getMessageId());
+            if (record == null) return;
+            try {
+                record.setResult(response.getErrorMessage());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -274,6 +413,18 @@ public class Access {
 
     public static void log(Session session, DeleteRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("DELETE", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            try {
+                record.setDn("dn", request.getDn());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -299,6 +450,18 @@ public class Access {
 
     public static void log(Session session, DeleteResponse response) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("DELETE", true, session.getSessionName(), response.getMessageId());
+            if (record == null) return;
+            try {
+                record.setResult(response.getErrorMessage());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -324,6 +487,18 @@ public class Access {
 
     public static void log(Session session, ModifyRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("MODIFY", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            try {
+                record.setDn("dn", request.getDn());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -349,6 +524,18 @@ public class Access {
 
     public static void log(Session session, ModifyResponse response) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("MODIFY", true, session.getSessionName(), response.getMessageId());
+            if (record == null) return;
+            try {
+                record.setResult(response.getErrorMessage());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -374,6 +561,20 @@ public class Access {
 
     public static void log(Session session, ModRdnRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("MODRDN", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            try {
+                record.setDn("dn", request.getDn());
+                record.add("newRdn", request.getNewRdn());
+                record.add("deleteOldRdn", request.getDeleteOldRdn());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -403,6 +604,18 @@ public class Access {
 
     public static void log(Session session, ModRdnResponse response) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("MODRDN", true, session.getSessionName(), response.getMessageId());
+            if (record == null) return;
+            try {
+                record.setResult(response.getErrorMessage());
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
@@ -428,6 +641,26 @@ public class Access {
 
     public static void log(SearchOperation operation) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("SEARCH", false, operation.getSessionName(), operation.getOperationName());
+            if (record == null) return;
+            try {
+                record.setDn("base", operation.getDn());
+                record.add("scope", LDAP.getScope(operation.getScope()));
+
+                Filter filter = operation.getFilter();
+                record.add("filter", filter == null ? "(objectClass=*)" : filter);
+
+                Collection<String> attributes = operation.getAttributes();
+                if (!attributes.isEmpty()) record.add("attrs", attributes);
+
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
 
@@ -471,6 +704,22 @@ public class Access {
 
     public static void log(SearchOperation searchOperation, long elapsedTime) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("SEARCH", true, searchOperation.getSessionName(), searchOperation.getOperationName());
+            if (record == null) return;
+            try {
+                SearchResponse response = searchOperation.getSearchResponse();
+                record.setResult(response.getErrorMessage());
+                record.setEntries(response.getTotalCount());
+                record.setTime(elapsedTime);
+
+            } finally {
+                accessLog.publish(record);
+            }
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
 
@@ -496,6 +745,14 @@ public class Access {
 
     public static void log(Session session, UnbindRequest request) {
 
+        AccessLog accessLog = getActiveAccessLog();
+        if (accessLog != null) {
+            AccessRecord record = accessLog.claim("UNBIND", false, session.getSessionName(), request.getMessageId());
+            if (record == null) return;
+            accessLog.publish(record);
+            return;
+        }
+
         boolean warn = log.isWarnEnabled();
         if (warn) {
             StringBuilder sb = new StringBuilder();
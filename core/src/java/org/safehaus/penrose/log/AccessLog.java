@@ -0,0 +1,364 @@
+package org.safehaus.penrose.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.partition.Partition;
+import org.safehaus.penrose.partition.PartitionConfig;
+import org.safehaus.penrose.partition.PartitionManager;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous access log. Operation threads claim a preallocated record from a ring
+ * buffer, store the request values and publish it. A background thread formats the
+ * records and writes them in batches into the access log files of the partitions.
+ * If the buffer is full the record is dropped and counted instead of blocking the
+ * operation. A claimed record must always be published, otherwise the writer cannot
+ * get past it.
+ *
+ * The writer thread sleeps while there is nothing to write and is woken up by the
+ * next publish(). It's stopped when the last output is removed.
+ *
+ * Responses are written into the same file as their requests. Records which do not
+ * belong to a partition (e.g. connect and disconnect) are written into the file of
+ * the root partition. Records without a file are written into the access logger.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class AccessLog implements Runnable {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int DEFAULT_BUFFER_SIZE = 8192;
+    public final static int BATCH_SIZE          = 1024;
+    public final static int MAX_PENDING         = 10000;
+
+    public final static long FLUSH_WAIT_TIME    = 1000000; // 1 ms
+    public final static long FLUSH_TIMEOUT      = 5000; // 5 s
+
+    private AccessRecord[] records;
+    private int mask;
+
+    private AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    private AtomicLong dropCount = new AtomicLong();
+    private long reportedDropCount;
+
+    private Map<String,AccessLogOutput> outputs = new ConcurrentHashMap<String,AccessLogOutput>();
+    private volatile boolean active;
+
+    private volatile PartitionManager partitionManager;
+
+    // partition names of pending requests, only accessed by the writer thread
+    private Map<String,String> pending = new HashMap<String,String>();
+
+    private StringBuilder sb = new StringBuilder();
+    private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private volatile Thread thread;
+
+    // the writer thread is about to park or parked
+    private volatile boolean sleeping;
+
+    public AccessLog() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public AccessLog(int bufferSize) {
+
+        int size = 1;
+        while (size < bufferSize) size <<= 1;
+
+        records = new AccessRecord[size];
+        for (int i=0; i<size; i++) records[i] = new AccessRecord();
+        mask = size - 1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Producers
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Claims a record for an operation. Returns null if the buffer is full.
+     */
+    public AccessRecord claim(String type, boolean response, String sessionName, Object operation) {
+
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= records.length) {
+                dropCount.incrementAndGet();
+                return null;
+            }
+        } while (!head.compareAndSet(sequence, sequence+1));
+
+        AccessRecord record = records[(int)(sequence & mask)];
+        record.claimed = sequence;
+        record.set(type, response, sessionName, operation);
+
+        return record;
+    }
+
+    public void publish(AccessRecord record) {
+        record.sequence = record.claimed;
+
+        if (!sleeping) return;
+
+        Thread t = thread;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Writer
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized void start() {
+        if (thread != null) return;
+
+        thread = new Thread(this, "AccessLog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        Thread t = thread;
+        if (t == null) return;
+
+        thread = null;
+        LockSupport.unpark(t);
+        t.join();
+    }
+
+    public void run() {
+        Thread currentThread = Thread.currentThread();
+
+        while (thread == currentThread) {
+            try {
+                if (write() > 0) continue;
+
+                sleeping = true;
+                if (thread == currentThread && !isPublished(tail)) LockSupport.park(this);
+                sleeping = false;
+
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    boolean isPublished(long sequence) {
+        return records[(int)(sequence & mask)].sequence == sequence;
+    }
+
+    /**
+     * Writes the published records up to the batch size, then flushes the files.
+     * Returns the number of records written.
+     */
+    int write() throws Exception {
+
+        Collection<AccessLogOutput> written = new HashSet<AccessLogOutput>();
+
+        int count = 0;
+        while (count < BATCH_SIZE) {
+
+            long sequence = tail;
+            if (!isPublished(sequence)) break;
+
+            AccessRecord record = records[(int)(sequence & mask)];
+
+            try {
+                AccessLogOutput output = write(record);
+                if (output != null) written.add(output);
+
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+
+            } finally {
+                record.clear();
+                tail = sequence + 1;
+            }
+
+            count++;
+        }
+
+        long drops = dropCount.get();
+        if (drops > reportedDropCount) {
+            writeDropCount(drops - reportedDropCount, written);
+            reportedDropCount = drops;
+        }
+
+        for (AccessLogOutput output : written) {
+            output.flush();
+        }
+
+        return count;
+    }
+
+    AccessLogOutput write(AccessRecord record) throws Exception {
+
+        AccessLogOutput output = getOutput(route(record));
+
+        sb.setLength(0);
+
+        if (output == null) {
+            record.formatText(sb);
+            Access.log.warn(sb.toString());
+            return null;
+        }
+
+        if (AccessLogOutput.JSON.equals(output.getFormat())) {
+            record.formatJson(sb, dateFormat);
+        } else {
+            record.formatText(sb);
+        }
+
+        output.write(sb);
+
+        return output;
+    }
+
+    void writeDropCount(long drops, Collection<AccessLogOutput> written) throws Exception {
+
+        for (AccessLogOutput output : outputs.values()) {
+            sb.setLength(0);
+
+            if (AccessLogOutput.JSON.equals(output.getFormat())) {
+                sb.append("{\"type\":\"DROPPED\",\"count\":");
+                sb.append(drops);
+                sb.append('}');
+            } else {
+                sb.append("DROPPED count=\"");
+                sb.append(drops);
+                sb.append('"');
+            }
+
+            output.write(sb);
+            written.add(output);
+        }
+
+        log.warn("Access log buffer full, "+drops+" record(s) dropped.");
+    }
+
+    /**
+     * Returns the name of the partition the record belongs to.
+     */
+    String route(AccessRecord record) throws Exception {
+
+        String key = record.operation == null ? null : record.sessionName+":"+record.operation;
+
+        if (record.response) {
+            String partitionName = key == null ? null : pending.remove(key);
+            return partitionName == null ? PartitionConfig.ROOT : partitionName;
+        }
+
+        if (record.dn == null || partitionManager == null) return PartitionConfig.ROOT;
+
+        DN dn = record.dn instanceof DN ? (DN)record.dn : new DN(record.dn.toString());
+        Partition partition = partitionManager.getPartition(dn);
+        String partitionName = partition == null ? PartitionConfig.ROOT : partition.getName();
+
+        if (key != null) {
+            // responses which were dropped leave their requests behind
+            if (pending.size() >= MAX_PENDING) pending.clear();
+            pending.put(key, partitionName);
+        }
+
+        return partitionName;
+    }
+
+    /**
+     * Waits until the published records have been written.
+     */
+    public void flush() {
+
+        long sequence = head.get();
+        long timeout = System.currentTimeMillis() + FLUSH_TIMEOUT;
+
+        while (thread != null && tail < sequence && System.currentTimeMillis() < timeout) {
+            LockSupport.parkNanos(FLUSH_WAIT_TIME);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Outputs
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized void addOutput(String partitionName, AccessLogOutput output) throws Exception {
+
+        AccessLogOutput oldOutput = outputs.put(partitionName, output);
+        if (oldOutput != null) oldOutput.close();
+
+        start();
+        active = true;
+    }
+
+    public synchronized void removeOutput(String partitionName) throws Exception {
+
+        if (!outputs.containsKey(partitionName)) return;
+
+        flush();
+
+        AccessLogOutput output = outputs.remove(partitionName);
+        output.close();
+
+        active = !outputs.isEmpty();
+        if (!active) stop();
+    }
+
+    /**
+     * Writes the pending records, closes the outputs and stops the writer thread.
+     */
+    public synchronized void destroy() throws Exception {
+
+        active = false;
+        flush();
+
+        for (AccessLogOutput output : outputs.values()) {
+            output.close();
+        }
+        outputs.clear();
+
+        stop();
+    }
+
+    public AccessLogOutput getOutput(String partitionName) {
+        return outputs.get(partitionName);
+    }
+
+    public Collection<String> getOutputNames() {
+        return new ArrayList<String>(outputs.keySet());
+    }
+
+    /**
+     * Returns true if at least one partition has an access log file.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public boolean isStarted() {
+        return thread != null;
+    }
+
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    public int getBufferSize() {
+        return records.length;
+    }
+
+    public PartitionManager getPartitionManager() {
+        return partitionManager;
+    }
+
+    public void setPartitionManager(PartitionManager partitionManager) {
+        this.partitionManager = partitionManager;
+    }
+}
@@ -0,0 +1,106 @@
+package org.safehaus.penrose.log;
+
+import java.io.*;
+
+/**
+ * Access log file which is rolled over when it reaches the maximum size. Old files are
+ * renamed to file.1, file.2, etc. up to the maximum number of backups.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class AccessLogOutput {
+
+    public final static String TEXT = "text";
+    public final static String JSON = "json";
+
+    public final static long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+    public final static int DEFAULT_MAX_BACKUPS    = 10;
+
+    public final static int BUFFER_SIZE = 64 * 1024;
+
+    File file;
+    String format;
+    long maxFileSize;
+    int maxBackups;
+
+    Writer writer;
+    long size;
+    boolean closed;
+
+    public AccessLogOutput(File file, String format, long maxFileSize, int maxBackups) throws Exception {
+        this.file = file;
+        this.format = format == null ? TEXT : format;
+        this.maxFileSize = maxFileSize;
+        this.maxBackups = maxBackups;
+
+        open();
+    }
+
+    void open() throws Exception {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+
+        size = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"), BUFFER_SIZE);
+    }
+
+    public synchronized void write(CharSequence line) throws Exception {
+        if (closed) return;
+
+        writer.append(line);
+        writer.write('\n');
+
+        // approximate size in bytes
+        size += line.length() + 1;
+
+        if (maxFileSize > 0 && size >= maxFileSize) roll();
+    }
+
+    void roll() throws Exception {
+        writer.close();
+
+        if (maxBackups > 0) {
+            File last = new File(file.getPath()+"."+maxBackups);
+            if (last.exists()) last.delete();
+
+            for (int i=maxBackups-1; i>=1; i--) {
+                File backup = new File(file.getPath()+"."+i);
+                if (backup.exists()) backup.renameTo(new File(file.getPath()+"."+(i+1)));
+            }
+
+            file.renameTo(new File(file.getPath()+".1"));
+
+        } else {
+            file.delete();
+        }
+
+        open();
+    }
+
+    public synchronized void flush() throws Exception {
+        if (closed) return;
+        writer.flush();
+    }
+
+    public synchronized void close() throws Exception {
+        if (closed) return;
+        closed = true;
+        writer.close();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public int getMaxBackups() {
+        return maxBackups;
+    }
+}
@@ -0,0 +1,244 @@
+package org.safehaus.penrose.log;
+
+import org.safehaus.penrose.ldap.DN;
+
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Slot in the access log ring buffer. The operation thread stores the request values
+ * as immutable values (strings, numbers, DNs) since the request objects may change
+ * before the record is formatted by the access log writer thread. Records are reused,
+ * so they must not be kept after they have been published.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class AccessRecord {
+
+    public final static int MAX_VALUES = 4;
+
+    // sequence number of the published record
+    volatile long sequence = -1;
+
+    // sequence number claimed by the operation thread
+    long claimed;
+
+    long timestamp;
+
+    String type;
+    boolean response;
+
+    String sessionName;
+    Object operation;
+
+    String dnName;
+    Object dn;
+
+    String[] names = new String[MAX_VALUES];
+    Object[] values = new Object[MAX_VALUES];
+    int size;
+
+    String result;
+    long entries = -1;
+    long time = -1;
+
+    public void set(String type, boolean response, String sessionName, Object operation) {
+        this.timestamp = System.currentTimeMillis();
+        this.type = type;
+        this.response = response;
+        this.sessionName = sessionName;
+        this.operation = copy(operation);
+    }
+
+    public void setDn(String name, Object dn) {
+        this.dnName = name;
+        this.dn = dn instanceof DN ? dn : copy(dn);
+    }
+
+    public void add(String name, Object value) {
+        if (size == MAX_VALUES) return;
+        names[size] = name;
+        values[size] = copy(value);
+        size++;
+    }
+
+    /**
+     * Returns an immutable copy of the value.
+     */
+    Object copy(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        appendValue(sb, value);
+        return sb.toString();
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public void clear() {
+        type = null;
+        sessionName = null;
+        operation = null;
+        dnName = null;
+        dn = null;
+        for (int i=0; i<size; i++) {
+            names[i] = null;
+            values[i] = null;
+        }
+        size = 0;
+        result = null;
+        entries = -1;
+        time = -1;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isResponse() {
+        return response;
+    }
+
+    public String getSessionName() {
+        return sessionName;
+    }
+
+    public Object getOperation() {
+        return operation;
+    }
+
+    public Object getDn() {
+        return dn;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Formatting
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Formats the record like the synchronous access log, e.g.:
+     * SEARCH session="1" operation="2" base="dc=example,dc=com" scope="SUBTREE" filter="(uid=bob)"
+     */
+    public void formatText(StringBuilder sb) {
+
+        sb.append(type);
+        appendText(sb, "session", sessionName);
+        if (operation != null) appendText(sb, "operation", operation);
+        if (dnName != null) appendText(sb, dnName, dn);
+        if (response) appendText(sb, "result", result);
+
+        for (int i=0; i<size; i++) {
+            appendText(sb, names[i], values[i]);
+        }
+
+        if (entries >= 0) appendText(sb, "entries", entries);
+        if (time >= 0) appendText(sb, "time", time);
+    }
+
+    void appendText(StringBuilder sb, String name, Object value) {
+        sb.append(' ');
+        sb.append(name);
+        sb.append("=\"");
+        appendValue(sb, value);
+        sb.append('"');
+    }
+
+    /**
+     * Formats the record as a JSON object on a single line.
+     */
+    public void formatJson(StringBuilder sb, SimpleDateFormat dateFormat) {
+
+        sb.append('{');
+        appendJson(sb, "time", dateFormat.format(new Date(timestamp)), true);
+        appendJson(sb, "type", type, false);
+        appendJson(sb, "response", response ? "true" : "false", false);
+        appendJson(sb, "session", sessionName, false);
+        if (operation != null) appendJson(sb, "operation", operation, false);
+        if (dnName != null) appendJson(sb, dnName, dn, false);
+        if (response) appendJson(sb, "result", result, false);
+
+        for (int i=0; i<size; i++) {
+            appendJson(sb, names[i], values[i], false);
+        }
+
+        if (entries >= 0) appendJson(sb, "entries", entries, false);
+        if (time >= 0) appendJson(sb, "elapsed", time, false);
+        sb.append('}');
+    }
+
+    void appendJson(StringBuilder sb, String name, Object value, boolean first) {
+        if (!first) sb.append(',');
+        sb.append('"');
+        sb.append(name);
+        sb.append("\":");
+
+        if (value instanceof Number) {
+            sb.append(value);
+            return;
+        }
+
+        sb.append('"');
+        int start = sb.length();
+        appendValue(sb, value);
+
+        // escape the value in place
+        for (int i=start; i<sb.length(); i++) {
+            char c = sb.charAt(i);
+            String s;
+            if (c == '"') {
+                s = "\\\"";
+            } else if (c == '\\') {
+                s = "\\\\";
+            } else if (c == '\n') {
+                s = "\\n";
+            } else if (c == '\r') {
+                s = "\\r";
+            } else if (c < 0x20) {
+                s = String.format("\\u%04x", (int)c);
+            } else {
+                continue;
+            }
+            sb.replace(i, i+1, s);
+            i += s.length() - 1;
+        }
+
+        sb.append('"');
+    }
+
+    void appendValue(StringBuilder sb, Object value) {
+        if (value instanceof Collection) {
+            boolean first = true;
+            for (Object object : (Collection)value) {
+                if (first) {
+                    first = false;
+                } else {
+                    sb.append(',');
+                }
+                sb.append(object);
+            }
+
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[])value;
+            for (int i=0; i<array.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(array[i]);
+            }
+
+        } else {
+            sb.append(value);
+        }
+    }
+}
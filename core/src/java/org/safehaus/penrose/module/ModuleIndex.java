@@ -0,0 +1,222 @@
+package org.safehaus.penrose.module;
+
+import org.safehaus.penrose.directory.Entry;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.ldap.RDN;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Module mappings compiled into maps keyed by the normalized base DN, so finding the
+ * modules of a DN only looks up the DN, its parent and its suffixes instead of matching
+ * every mapping. Mappings with dynamic base DNs (e.g. uid=...) are still matched one by one.
+ *
+ * The modules found for each DN and the module chains created for each entry are cached.
+ * The index is not modified after it is built; the module manager builds a new one when
+ * the modules or the mappings change.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class ModuleIndex {
+
+    public final static int MAX_CACHE_SIZE = 10000;
+    public final static int MAX_CHAINS_PER_ENTRY = 100;
+
+    public final static List<Module> EMPTY_MODULES = Collections.unmodifiableList(new ArrayList<Module>());
+
+    class Item {
+        ModuleMapping moduleMapping;
+        Module module;
+        int order;
+
+        Item(ModuleMapping moduleMapping, Module module, int order) {
+            this.moduleMapping = moduleMapping;
+            this.module = module;
+            this.order = order;
+        }
+    }
+
+    // entries are compared by identity
+    class EntryKey {
+        Entry entry;
+
+        EntryKey(Entry entry) {
+            this.entry = entry;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(entry);
+        }
+
+        public boolean equals(Object object) {
+            return object instanceof EntryKey && ((EntryKey)object).entry == entry;
+        }
+    }
+
+    private int generation;
+
+    private Map<String,List<Item>> objectItems = new HashMap<String,List<Item>>();
+    private Map<String,List<Item>> oneLevelItems = new HashMap<String,List<Item>>();
+    private Map<String,List<Item>> subtreeItems = new HashMap<String,List<Item>>();
+    private List<Item> dynamicItems = new ArrayList<Item>();
+    private int counter;
+
+    private ConcurrentMap<String,List<Module>> modulesCache = new ConcurrentHashMap<String,List<Module>>();
+    private ConcurrentMap<EntryKey,ConcurrentMap<List<Module>,ModuleChain>> chainsCache = new ConcurrentHashMap<EntryKey,ConcurrentMap<List<Module>,ModuleChain>>();
+
+    public ModuleIndex(int generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Adds the mappings in the order the modules should be called.
+     */
+    public void add(ModuleMapping moduleMapping, Module module) throws Exception {
+
+        Item item = new Item(moduleMapping, module, counter++);
+
+        DN baseDn = moduleMapping.getBaseDn();
+        if (baseDn == null) return;
+
+        if (isDynamic(baseDn)) {
+            dynamicItems.add(item);
+            return;
+        }
+
+        String scope = moduleMapping.getScope();
+        String key = baseDn.getNormalizedDn();
+
+        Map<String,List<Item>> map;
+        if (ModuleMapping.OBJECT.equals(scope)) {
+            map = objectItems;
+        } else if (ModuleMapping.ONELEVEL.equals(scope)) {
+            map = oneLevelItems;
+        } else {
+            map = subtreeItems;
+        }
+
+        List<Item> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Item>();
+            map.put(key, list);
+        }
+        list.add(item);
+    }
+
+    public static boolean isDynamic(DN dn) throws Exception {
+        for (int i=0; i<dn.getLength(); i++) {
+            if (dn.getRdn(i).isWildcard()) return true;
+        }
+        return false;
+    }
+
+    public List<Module> findModules(DN dn) throws Exception {
+
+        if (dn == null) return EMPTY_MODULES;
+
+        String key = dn.getNormalizedDn();
+
+        List<Module> modules = modulesCache.get(key);
+        if (modules != null) return modules;
+
+        List<Item> items = new ArrayList<Item>();
+
+        if (isDynamic(dn)) {
+            // the normalized DN cannot be used to match dynamic RDNs
+            addMatchingItems(objectItems, dn, items);
+            addMatchingItems(oneLevelItems, dn, items);
+            addMatchingItems(subtreeItems, dn, items);
+
+        } else {
+            addItems(objectItems.get(key), items);
+
+            addItems(oneLevelItems.get(dn.getParentDn().getNormalizedDn()), items);
+
+            String suffix = "";
+            addItems(subtreeItems.get(suffix), items);
+
+            for (int i=dn.getLength()-1; i>=0; i--) {
+                RDN rdn = dn.getRdn(i);
+                suffix = suffix.length() == 0 ? rdn.getNormalized() : rdn.getNormalized()+","+suffix;
+                addItems(subtreeItems.get(suffix), items);
+            }
+        }
+
+        for (Item item : dynamicItems) {
+            if (item.moduleMapping.match(dn)) items.add(item);
+        }
+
+        Collections.sort(items, new Comparator<Item>() {
+            public int compare(Item item1, Item item2) {
+                return item1.order - item2.order;
+            }
+        });
+
+        modules = new ArrayList<Module>(items.size());
+        for (Item item : items) {
+            modules.add(item.module);
+        }
+        modules = modules.isEmpty() ? EMPTY_MODULES : Collections.unmodifiableList(modules);
+
+        if (modulesCache.size() < MAX_CACHE_SIZE) modulesCache.put(key, modules);
+
+        return modules;
+    }
+
+    void addItems(List<Item> list, List<Item> items) {
+        if (list != null) items.addAll(list);
+    }
+
+    void addMatchingItems(Map<String,List<Item>> map, DN dn, List<Item> items) throws Exception {
+        for (List<Item> list : map.values()) {
+            for (Item item : list) {
+                if (item.moduleMapping.match(dn)) items.add(item);
+            }
+        }
+    }
+
+    /**
+     * Returns the module chain for an operation on the DN executed by the entry. The chain
+     * is shared between operations and must not be modified.
+     */
+    public ModuleChain getModuleChain(Entry entry, DN dn) throws Exception {
+
+        List<Module> modules = findModules(dn);
+
+        EntryKey key = new EntryKey(entry);
+
+        ConcurrentMap<List<Module>,ModuleChain> chains = chainsCache.get(key);
+        if (chains == null) {
+            if (chainsCache.size() >= MAX_CACHE_SIZE) return createModuleChain(entry, modules);
+
+            chains = new ConcurrentHashMap<List<Module>,ModuleChain>();
+            ConcurrentMap<List<Module>,ModuleChain> map = chainsCache.putIfAbsent(key, chains);
+            if (map != null) chains = map;
+        }
+
+        ModuleChain chain = chains.get(modules);
+        if (chain != null) return chain;
+
+        chain = createModuleChain(entry, modules);
+        if (chains.size() < MAX_CHAINS_PER_ENTRY) chains.put(modules, chain);
+
+        return chain;
+    }
+
+    public static ModuleChain createModuleChain(Entry entry, List<Module> modules) {
+
+        ModuleChain chain = new ModuleChain(entry);
+
+        for (int i=modules.size()-1; i>=0; i--) {
+            chain = new ModuleChain(entry, modules.get(i), chain);
+        }
+
+        return chain;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+}
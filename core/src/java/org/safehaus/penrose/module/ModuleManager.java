@@ -1,5 +1,6 @@
 package org.safehaus.penrose.module;
 
+import org.safehaus.penrose.directory.Entry;
 import org.safehaus.penrose.ldap.DN;
 import org.safehaus.penrose.partition.Partition;
 import org.safehaus.penrose.partition.PartitionConfig;
@@ -11,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Endi Sukma Dewata
@@ -22,8 +24,15 @@ public class ModuleManager {
     protected Partition partition;
     protected ModuleConfigManager moduleConfigManager;
 
+    // incremented whenever a module is started or stopped in any partition since
+    // mappings can refer to modules in the root partition, an index built for an
+    // older generation is rebuilt before it's used
+    protected static AtomicInteger generation = new AtomicInteger();
+
     protected Map<String,Module> modules = new LinkedHashMap<String,Module>();
 
+    protected volatile ModuleIndex moduleIndex;
+
     public ModuleManager(Partition partition) {
         this.partition = partition;
 
@@ -90,6 +99,9 @@ public class ModuleManager {
         module.init(moduleConfig, moduleContext);
 
         modules.put(module.getName(), module);
+
+        // the index will be rebuilt on the next operation
+        generation.incrementAndGet();
     }
 
     public void stopModule(String moduleName) throws Exception {
@@ -98,6 +110,9 @@ public class ModuleManager {
         if (debug) log.debug("Stopping module "+moduleName+".");
 
         Module module = modules.remove(moduleName);
+
+        generation.incrementAndGet();
+
         module.destroy();
     }
 
@@ -116,29 +131,51 @@ public class ModuleManager {
         return moduleManager.getModule(moduleName);
     }
 
-    public Collection<Module> findModules(DN dn) throws Exception {
-
-        boolean debug = log.isDebugEnabled();
-
-        if (debug) log.debug("Modules:");
+    /**
+     * Rebuilds the module mapping index. Has to be called after the module mappings are changed.
+     */
+    public synchronized void updateIndex() throws Exception {
 
-        Collection<Module> list = new ArrayList<Module>();
+        ModuleIndex index = new ModuleIndex(generation.get());
 
         for (ModuleMapping moduleMapping : moduleConfigManager.getModuleMappings()) {
             String moduleName = moduleMapping.getModuleName();
 
-            boolean b = moduleMapping.match(dn);
-            if (!b) continue;
-
             Module module = getModule(moduleName);
             if (module == null) continue;
             if (!module.isEnabled()) continue;
 
-            if (debug) log.debug(" - "+moduleName);
-            list.add(module);
+            index.add(moduleMapping, module);
+        }
+
+        moduleIndex = index;
+    }
+
+    public ModuleIndex getModuleIndex() throws Exception {
+        ModuleIndex index = moduleIndex;
+        if (index != null && index.getGeneration() == generation.get()) return index;
+
+        updateIndex();
+        return moduleIndex;
+    }
+
+    public Collection<Module> findModules(DN dn) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        Collection<Module> list = getModuleIndex().findModules(dn);
+
+        if (debug) {
+            log.debug("Modules:");
+            for (Module module : list) {
+                log.debug(" - "+module.getName());
+            }
         }
 
         return list;
     }
 
+    public ModuleChain getModuleChain(Entry entry, DN dn) throws Exception {
+        return getModuleIndex().getModuleChain(entry, dn);
+    }
 }
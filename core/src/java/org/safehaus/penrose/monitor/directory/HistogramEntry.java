@@ -0,0 +1,134 @@
+package org.safehaus.penrose.monitor.directory;
+
+import org.safehaus.penrose.directory.Entry;
+import org.safehaus.penrose.directory.EntrySearchOperation;
+import org.safehaus.penrose.operation.SearchOperation;
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.filter.Filter;
+import org.safehaus.penrose.util.TextUtil;
+import org.safehaus.penrose.statistic.StatisticManager;
+import org.safehaus.penrose.statistic.Histogram;
+
+import java.util.Map;
+
+/**
+ * Latency histogram. The times are in microseconds and the rate is in operations per second
+ * since the statistics were started.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class HistogramEntry extends Entry {
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Filter
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public boolean validateFilter(SearchOperation operation) throws Exception {
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Search
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void search(
+            SearchOperation operation
+    ) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        final DN baseDn     = operation.getDn();
+        final Filter filter = operation.getFilter();
+        final int scope     = operation.getScope();
+
+        if (debug) {
+            log.debug(TextUtil.displaySeparator(70));
+            log.debug(TextUtil.displayLine("HISTOGRAM ENTRY SEARCH", 70));
+            log.debug(TextUtil.displayLine("Filter : "+filter, 70));
+            log.debug(TextUtil.displayLine("Scope  : "+ LDAP.getScope(scope), 70));
+            log.debug(TextUtil.displayLine("Entry  : "+getDn(), 70));
+            log.debug(TextUtil.displayLine("Base   : "+baseDn, 70));
+            log.debug(TextUtil.displaySeparator(70));
+        }
+
+        EntrySearchOperation op = new EntrySearchOperation(operation, this);
+
+        try {
+            if (!validate(op)) return;
+
+            expand(op);
+
+        } finally {
+            op.close();
+        }
+    }
+
+    public void expand(
+            SearchOperation operation
+    ) throws Exception {
+
+        DN entryDn = getDn();
+
+        DN baseDn = operation.getDn();
+        int scope = operation.getScope();
+
+        int baseLength = baseDn.getLength();
+        int entryLength = entryDn.getLength();
+
+        StatisticManager statisticManager = partition.getStatisticManager();
+
+        if (baseLength < entryLength && scope == SearchRequest.SCOPE_SUB
+                || baseLength == entryLength-1 && scope == SearchRequest.SCOPE_ONE) {
+
+            for (String name : statisticManager.getHistogramNames()) {
+                Histogram histogram = statisticManager.getHistogram(name);
+                if (histogram == null) continue;
+
+                SearchResult result = createSearchResult(operation, statisticManager, histogram);
+                operation.add(result);
+            }
+
+        } else if (baseDn.matches(entryDn) && (scope == SearchRequest.SCOPE_SUB || scope == SearchRequest.SCOPE_BASE)) {
+
+            RDN rdn = baseDn.getRdn();
+            String name = (String)rdn.getValue();
+
+            Histogram histogram = statisticManager.getHistogram(name);
+            if (histogram == null) throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
+
+            SearchResult result = createSearchResult(operation, statisticManager, histogram);
+            operation.add(result);
+        }
+    }
+
+    public SearchResult createSearchResult(
+            SearchOperation operation,
+            StatisticManager statisticManager,
+            Histogram histogram
+    ) throws Exception {
+
+        RDNBuilder rb = new RDNBuilder();
+        rb.set("cn", histogram.getName());
+        RDN rdn = rb.toRdn();
+
+        DN entryDn = rdn.append(getParentDn());
+
+        Attributes attributes = new Attributes();
+        attributes.addValue("objectClass", "monitoredObject");
+        attributes.addValue("cn", histogram.getName());
+
+        Map<String,Long> summary = histogram.getSummary();
+        for (String name : summary.keySet()) {
+            attributes.addValue(name, summary.get(name));
+        }
+
+        long elapsed = System.currentTimeMillis() - statisticManager.getStartTime();
+        Long rate = elapsed <= 0 ? 0 : summary.get("count") * 1000 / elapsed;
+        attributes.addValue("rate", rate);
+
+        SearchResult result = new SearchResult(entryDn, attributes);
+        result.setEntryName(getName());
+
+        return result;
+    }
+}
@@ -94,6 +94,40 @@ public class MonitorEntry extends Entry {
 
         addChild(sessionsEntry);
 
+        DN statisticsDn = new RDN("cn=Statistics").append(entryDn);
+
+        EntryConfig statisticsEntryConfig = new EntryConfig();
+        statisticsEntryConfig.setName(getName()+"_statistics");
+        statisticsEntryConfig.setDn(statisticsDn);
+        statisticsEntryConfig.addObjectClass("monitoredObject");
+        statisticsEntryConfig.addAttributesFromRdn();
+
+        EntryContext statisticsEntryContext = new EntryContext();
+        statisticsEntryContext.setDirectory(directory);
+        statisticsEntryContext.setParent(this);
+
+        StatisticsEntry statisticsEntry = new StatisticsEntry();
+        statisticsEntry.init(statisticsEntryConfig, statisticsEntryContext);
+
+        addChild(statisticsEntry);
+
+        DN connectionsDn = new RDN("cn=Connections").append(entryDn);
+
+        EntryConfig connectionsEntryConfig = new EntryConfig();
+        connectionsEntryConfig.setName(getName()+"_connections");
+        connectionsEntryConfig.setDn(connectionsDn);
+        connectionsEntryConfig.addObjectClass("monitoredObject");
+        connectionsEntryConfig.addAttributesFromRdn();
+
+        EntryContext connectionsEntryContext = new EntryContext();
+        connectionsEntryContext.setDirectory(directory);
+        connectionsEntryContext.setParent(this);
+
+        ConnectionsEntry connectionsEntry = new ConnectionsEntry();
+        connectionsEntry.init(connectionsEntryConfig, connectionsEntryContext);
+
+        addChild(connectionsEntry);
+
         super.init();
     }
 
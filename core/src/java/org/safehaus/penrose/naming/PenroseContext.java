@@ -7,6 +7,7 @@ import org.safehaus.penrose.filter.FilterEvaluator;
 import org.safehaus.penrose.partition.PartitionManager;
 import org.safehaus.penrose.schema.SchemaManager;
 import org.safehaus.penrose.session.SessionContext;
+import org.safehaus.penrose.statistic.StatisticManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +40,7 @@ public class PenroseContext {
 
     protected PartitionManager   partitionManager;
     protected LogManager         logManager;
+    protected StatisticManager   statisticManager;
 
     protected SessionContext     sessionContext;
 
@@ -99,6 +101,8 @@ public class PenroseContext {
 
         logManager = new LogManager(home);
         logManager.load();
+
+        statisticManager = new StatisticManager();
     }
 
     public void start() throws Exception {
@@ -142,4 +146,12 @@ public class PenroseContext {
     public void setLogManager(LogManager logManager) {
         this.logManager = logManager;
     }
+
+    public StatisticManager getStatisticManager() {
+        return statisticManager;
+    }
+
+    public void setStatisticManager(StatisticManager statisticManager) {
+        this.statisticManager = statisticManager;
+    }
 }
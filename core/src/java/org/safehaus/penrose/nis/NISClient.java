@@ -93,6 +93,13 @@ public abstract class NISClient {
             SearchResponse response
     ) throws Exception;
 
+    /**
+     * Returns a value which changes when the map changes, or null if it is unknown.
+     */
+    public Object getVersion(String base) throws Exception {
+        return null;
+    }
+
     public SearchResult createSearchResult(
             String base,
             String type,
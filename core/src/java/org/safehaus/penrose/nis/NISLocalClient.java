@@ -81,6 +81,12 @@ public class NISLocalClient extends NISClient {
         }
     }
 
+    public Object getVersion(String base) throws Exception {
+        File file = dir == null ? new File(base) : new File(dir, base);
+        if (!file.exists()) return null;
+        return file.lastModified()+":"+file.length();
+    }
+
     public void list(
             String base,
             String type,
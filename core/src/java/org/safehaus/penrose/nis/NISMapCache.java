@@ -0,0 +1,125 @@
+package org.safehaus.penrose.nis;
+
+import org.safehaus.penrose.ldap.SearchResponse;
+import org.safehaus.penrose.ldap.SearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resident snapshots of the NIS maps of a connection. Each map is loaded once with the
+ * list operation of the client. After the refresh interval the version of the map (e.g.
+ * the YP order number or the file modification time) is checked and the map is reloaded
+ * if it has changed. While a map is being reloaded other threads keep using the old
+ * snapshot.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class NISMapCache {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static long DEFAULT_REFRESH_INTERVAL = 10; // seconds
+
+    class Holder {
+        volatile NISMapSnapshot snapshot;
+        volatile long checkTime;
+        ReentrantLock lock = new ReentrantLock();
+    }
+
+    private ConcurrentMap<String,Holder> holders = new ConcurrentHashMap<String,Holder>();
+
+    private long refreshInterval;
+
+    public NISMapCache() {
+        this(DEFAULT_REFRESH_INTERVAL * 1000);
+    }
+
+    public NISMapCache(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public NISMapSnapshot getSnapshot(NISClient client, String base, String type) throws Exception {
+
+        String key = base+":"+type;
+
+        Holder holder = holders.get(key);
+        if (holder == null) {
+            holder = new Holder();
+            Holder h = holders.putIfAbsent(key, holder);
+            if (h != null) holder = h;
+        }
+
+        NISMapSnapshot snapshot = holder.snapshot;
+        if (snapshot != null && !isExpired(holder)) return snapshot;
+
+        if (snapshot == null) {
+            holder.lock.lock();
+
+        } else if (!holder.lock.tryLock()) {
+            // another thread is refreshing the map
+            return snapshot;
+        }
+
+        try {
+            snapshot = holder.snapshot;
+            if (snapshot != null && !isExpired(holder)) return snapshot;
+
+            // get the version before loading so changes made during the load are not missed
+            Object version = client.getVersion(base);
+
+            if (snapshot == null || version == null || !version.equals(snapshot.getVersion())) {
+                snapshot = load(client, base, type, version);
+                holder.snapshot = snapshot;
+            }
+
+            holder.checkTime = System.currentTimeMillis();
+
+            return snapshot;
+
+        } finally {
+            holder.lock.unlock();
+        }
+    }
+
+    boolean isExpired(Holder holder) {
+        return System.currentTimeMillis() - holder.checkTime >= refreshInterval;
+    }
+
+    public NISMapSnapshot load(NISClient client, String base, String type, Object version) throws Exception {
+
+        log.debug("Loading NIS map "+base+" ("+type+").");
+
+        final Collection<SearchResult> list = new ArrayList<SearchResult>();
+
+        SearchResponse response = new SearchResponse() {
+            public void add(SearchResult result) throws Exception {
+                list.add(result);
+            }
+        };
+
+        client.list(base, type, response);
+
+        NISMapSnapshot snapshot = new NISMapSnapshot(base, type, version);
+        for (SearchResult result : list) {
+            snapshot.add(result);
+        }
+
+        log.debug("Loaded "+snapshot.getSize()+" entries from NIS map "+base+".");
+
+        return snapshot;
+    }
+
+    public void clear() {
+        holders.clear();
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+}
@@ -0,0 +1,138 @@
+package org.safehaus.penrose.nis;
+
+import org.safehaus.penrose.ldap.*;
+
+import java.util.*;
+
+/**
+ * Parsed entries of a NIS map indexed by RDN and by the values of some attributes.
+ * A snapshot is not modified after it is loaded, so the search results must be cloned
+ * before they are returned to the caller.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class NISMapSnapshot {
+
+    public final static String[] INDEXED_ATTRIBUTES = {
+            "uidNumber",
+            "gidNumber",
+            "memberUid"
+    };
+
+    private String base;
+    private String type;
+    private Object version;
+    private long loadTime;
+
+    private List<SearchResult> results = new ArrayList<SearchResult>();
+    private Map<String,SearchResult> rdnIndex = new HashMap<String,SearchResult>();
+
+    // attribute name => normalized value => results
+    private Map<String,Map<String,Collection<SearchResult>>> indexes = new HashMap<String,Map<String,Collection<SearchResult>>>();
+
+    public NISMapSnapshot(String base, String type, Object version) {
+        this.base = base;
+        this.type = type;
+        this.version = version;
+        this.loadTime = System.currentTimeMillis();
+
+        for (String name : INDEXED_ATTRIBUTES) {
+            indexes.put(name.toLowerCase(), new HashMap<String,Collection<SearchResult>>());
+        }
+    }
+
+    public void add(SearchResult result) throws Exception {
+
+        results.add(result);
+
+        // the first record wins like in a sequential scan
+        String rdn = getKey(result.getDn().getRdn());
+        if (!rdnIndex.containsKey(rdn)) rdnIndex.put(rdn, result);
+
+        Attributes attributes = result.getAttributes();
+
+        for (Map.Entry<String,Map<String,Collection<SearchResult>>> entry : indexes.entrySet()) {
+            Attribute attribute = attributes.get(entry.getKey());
+            if (attribute == null) continue;
+
+            Map<String,Collection<SearchResult>> index = entry.getValue();
+
+            for (Object value : attribute.getValues()) {
+                String key = normalize(value);
+
+                Collection<SearchResult> list = index.get(key);
+                if (list == null) {
+                    list = new ArrayList<SearchResult>(1);
+                    index.put(key, list);
+                }
+                list.add(result);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of an RDN. The attribute names are not case sensitive, but the
+     * values are compared exactly like ypmatch does.
+     */
+    public static String getKey(RDN rdn) {
+        Map<String,Object> values = new TreeMap<String,Object>();
+        for (Map.Entry<String,Object> entry : rdn.getValues().entrySet()) {
+            values.put(entry.getKey().toLowerCase(), entry.getValue());
+        }
+        return values.toString();
+    }
+
+    public static String normalize(Object value) {
+        return value.toString().trim().toLowerCase();
+    }
+
+    public static boolean isIndexed(String attributeName) {
+        for (String name : INDEXED_ATTRIBUTES) {
+            if (name.equalsIgnoreCase(attributeName)) return true;
+        }
+        return false;
+    }
+
+    public SearchResult lookup(RDN rdn) throws Exception {
+        return rdnIndex.get(getKey(rdn));
+    }
+
+    public Collection<SearchResult> list() {
+        return results;
+    }
+
+    /**
+     * Returns the results which might have the attribute value. The index is not case
+     * sensitive, so the results must still be evaluated against the filter.
+     */
+    public Collection<SearchResult> find(String attributeName, Object value) {
+
+        Map<String,Collection<SearchResult>> index = indexes.get(attributeName.toLowerCase());
+        if (index == null) return null;
+
+        Collection<SearchResult> list = index.get(normalize(value));
+        if (list == null) return Collections.emptyList();
+
+        return list;
+    }
+
+    public String getBase() {
+        return base;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Object getVersion() {
+        return version;
+    }
+
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    public int getSize() {
+        return results.size();
+    }
+}
@@ -0,0 +1,114 @@
+package org.safehaus.penrose.nis;
+
+import org.safehaus.penrose.ldap.*;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * NIS client which serves lookups and lists from the resident map snapshots. The maps
+ * are loaded and refreshed with the underlying client.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class NISSnapshotClient extends NISClient {
+
+    private NISClient client;
+    private NISMapCache cache;
+
+    public NISSnapshotClient(NISClient client, NISMapCache cache) throws Exception {
+        this.client = client;
+        this.cache = cache;
+    }
+
+    public void init(Map<String,String> parameters) throws Exception {
+        client.init(parameters);
+    }
+
+    public void connect() throws Exception {
+        client.connect();
+    }
+
+    public void close() throws Exception {
+        client.close();
+    }
+
+    public void bind(String serviceName, String username, String password) throws Exception {
+        client.bind(serviceName, username, password);
+    }
+
+    public Object getVersion(String base) throws Exception {
+        return client.getVersion(base);
+    }
+
+    public void lookup(
+            String base,
+            RDN rdn,
+            String type,
+            SearchResponse response
+    ) throws Exception {
+
+        try {
+            NISMapSnapshot snapshot = cache.getSnapshot(client, base, type);
+
+            SearchResult result = snapshot.lookup(rdn);
+            if (result == null) {
+                throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
+            }
+
+            response.add((SearchResult)result.clone());
+
+        } finally {
+            response.close();
+        }
+    }
+
+    public void list(
+            String base,
+            String type,
+            SearchResponse response
+    ) throws Exception {
+
+        try {
+            NISMapSnapshot snapshot = cache.getSnapshot(client, base, type);
+
+            for (SearchResult result : snapshot.list()) {
+                response.add((SearchResult)result.clone());
+            }
+
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Returns the entries which might have the attribute value using the index of the
+     * map, or all entries if the attribute is not indexed.
+     */
+    public void find(
+            String base,
+            String type,
+            String attributeName,
+            Object value,
+            SearchResponse response
+    ) throws Exception {
+
+        try {
+            NISMapSnapshot snapshot = cache.getSnapshot(client, base, type);
+
+            Collection<SearchResult> results = snapshot.find(attributeName, value);
+            if (results == null) results = snapshot.list();
+
+            for (SearchResult result : results) {
+                response.add((SearchResult)result.clone());
+            }
+
+        } finally {
+            response.close();
+        }
+    }
+
+    public NISClient getClient() {
+        return client;
+    }
+}
@@ -169,6 +169,57 @@ public class NISYPClient extends NISClient {
         }
     }
 
+    /**
+     * Returns the order number of the map.
+     */
+    public Object getVersion(String base) throws Exception {
+
+        BufferedReader in = null;
+
+        try {
+            Process process = yppoll(base);
+
+            in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+
+            String orderNumber = null;
+            String line;
+
+            // Map passwd.byname has order number 1234567890.
+            while ((line = in.readLine()) != null) {
+                int i = line.indexOf("order number");
+                if (i < 0) continue;
+
+                orderNumber = line.substring(i+12).trim();
+                if (orderNumber.endsWith(".")) orderNumber = orderNumber.substring(0, orderNumber.length()-1);
+            }
+
+            int rc = process.waitFor();
+            if (rc != 0) return null;
+
+            return orderNumber;
+
+        } finally {
+            if (in != null) in.close();
+        }
+    }
+
+    public Process yppoll(String map) throws Exception {
+
+        String[] command = new String[] {
+                "/usr/sbin/yppoll",
+                "-h",
+                hostname,
+                "-d",
+                domain,
+                map
+        };
+
+        if (log.isDebugEnabled()) log.debug("Command: /usr/sbin/yppoll -h "+hostname+" -d "+domain+" "+map);
+
+        Runtime rt = Runtime.getRuntime();
+        return rt.exec(command);
+    }
+
     public Process ypmatch(String key, String map) throws Exception {
 
         boolean debug = log.isDebugEnabled();
@@ -33,10 +33,32 @@ public class NISConnection extends Connection {
             "nisMap"
     };
 
+    public NISMapCache cache;
+
     public NISConnection() throws Exception {
     }
 
     public void init() throws Exception {
+
+        String method = getParameter(NIS.METHOD);
+        if (method == null) method = NIS.DEFAULT_METHOD;
+
+        // JNDI clients do not fork processes and cannot tell if a map has changed
+        String s = getParameter(NIS.SNAPSHOT);
+        boolean snapshot = s == null ? !NIS.JNDI.equals(method) : Boolean.valueOf(s);
+
+        if (snapshot) {
+            s = getParameter(NIS.REFRESH_INTERVAL);
+            long refreshInterval = s == null ? NISMapCache.DEFAULT_REFRESH_INTERVAL : Long.parseLong(s);
+
+            log.debug("Caching NIS maps, refresh interval: "+refreshInterval+" s.");
+            cache = new NISMapCache(refreshInterval * 1000);
+        }
+    }
+
+    public void destroy() throws Exception {
+        if (cache != null) cache.clear();
+        super.destroy();
     }
 
     public void validate() throws Exception {
@@ -70,6 +92,8 @@ public class NISConnection extends Connection {
 
         client.init(parameters);
 
+        if (cache != null) client = new NISSnapshotClient(client, cache);
+
         return client;
     }
 
@@ -5,13 +5,17 @@ import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.ldap.*;
 import org.safehaus.penrose.filter.Filter;
 import org.safehaus.penrose.filter.FilterEvaluator;
+import org.safehaus.penrose.filter.SimpleFilter;
 import org.safehaus.penrose.util.TextUtil;
 import org.safehaus.penrose.partition.PartitionContext;
 import org.safehaus.penrose.naming.PenroseContext;
 import org.safehaus.penrose.nis.connection.NISConnection;
 import org.safehaus.penrose.nis.NISClient;
+import org.safehaus.penrose.nis.NISMapSnapshot;
+import org.safehaus.penrose.nis.NISSnapshotClient;
 import org.safehaus.penrose.nis.NIS;
 import org.safehaus.penrose.Penrose;
+import org.safehaus.penrose.statistic.StatisticManager;
 
 import java.util.*;
 
@@ -102,6 +106,7 @@ public class NISSource extends Source {
 
         newResponse.setSizeLimit(request.getSizeLimit());
 
+        long startTime = System.nanoTime();
         NISClient client = connection.createClient();
 
         try {
@@ -130,6 +135,14 @@ public class NISSource extends Source {
 
                 client.lookup(base, rdn, type, newResponse);
 
+            } else if (baseDn == null && client instanceof NISSnapshotClient && isIndexed(filter)) {
+
+                SimpleFilter sf = (SimpleFilter)filter;
+
+                if (debug) log.debug("Searching indexed entries: "+sf);
+
+                ((NISSnapshotClient)client).find(base, type, sf.getAttribute(), sf.getValue(), newResponse);
+
             } else if (baseDn == null) {
 
                 if (debug) log.debug("Searching all entries.");
@@ -149,6 +162,7 @@ public class NISSource extends Source {
             }
 
         } finally {
+            recordOperation(StatisticManager.SEARCH, startTime);
             response.close();
             client.close();
         }
@@ -156,6 +170,13 @@ public class NISSource extends Source {
         log.debug("Search operation completed.");
     }
 
+    public boolean isIndexed(Filter filter) {
+        if (!(filter instanceof SimpleFilter)) return false;
+
+        SimpleFilter sf = (SimpleFilter)filter;
+        return "=".equals(sf.getOperator()) && NISMapSnapshot.isIndexed(sf.getAttribute());
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // Automount Maps
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
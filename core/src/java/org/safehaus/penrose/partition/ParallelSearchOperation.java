@@ -35,19 +35,28 @@ public class ParallelSearchOperation extends PipelineSearchOperation {
         //if (debug) log.debug("Result: \""+result.getDn()+"\".");
 
         DN dn = result.getDn();
-        if (dns.contains(dn)) {
-            if (debug) log.debug("Duplicate entry \""+result.getDn()+"\".");
-            return;
+        synchronized (dns) {
+            if (!dns.add(dn)) {
+                if (debug) log.debug("Duplicate entry \""+result.getDn()+"\".");
+                return;
+            }
         }
 
-        dns.add(dn);
         super.add(result);
     }
 
-    public void setException(LDAPException exception) {
+    public synchronized void setException(LDAPException exception) {
         if (getReturnCode() == LDAP.SUCCESS) super.setException(exception);
     }
 
+    /**
+     * Returns true if the remaining entries should not be searched because the operation
+     * has been abandoned or has failed (e.g. size limit exceeded).
+     */
+    public boolean isStopped() {
+        return isAbandoned() || getReturnCode() != LDAP.SUCCESS;
+    }
+
     public synchronized void close(Entry entry) throws Exception {
 
         boolean debug = log.isDebugEnabled();
@@ -24,6 +24,10 @@ import org.safehaus.penrose.directory.Directory;
 import org.safehaus.penrose.directory.Entry;
 import org.safehaus.penrose.interpreter.DefaultInterpreter;
 import org.safehaus.penrose.interpreter.Interpreter;
+import org.safehaus.penrose.interpreter.InterpreterPool;
+import org.safehaus.penrose.log.Access;
+import org.safehaus.penrose.log.AccessLog;
+import org.safehaus.penrose.log.AccessLogOutput;
 import org.safehaus.penrose.ldap.*;
 import org.safehaus.penrose.mapping.MappingManager;
 import org.safehaus.penrose.module.Module;
@@ -39,6 +43,7 @@ import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.operation.SearchOperation;
 import org.safehaus.penrose.operation.PipelineSearchOperation;
 import org.safehaus.penrose.source.SourceManager;
+import org.safehaus.penrose.statistic.StatisticManager;
 import org.safehaus.penrose.thread.ThreadManager;
 import org.safehaus.penrose.thread.ThreadManagerConfig;
 import org.safehaus.penrose.Penrose;
@@ -47,10 +52,13 @@ import org.slf4j.LoggerFactory;
 import org.ietf.ldap.LDAPException;
 
 import java.lang.reflect.Constructor;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Endi S. Dewata
@@ -67,6 +75,11 @@ public class Partition implements Cloneable {
     public final static String     SCHEMA_CHECKING         = "schemaChecking";
     public final static boolean    DEFAULT_SCHEMA_CHECKING = false; // disabled
 
+    public final static String     ACCESS_LOG               = "accessLog";
+    public final static String     ACCESS_LOG_FORMAT        = "accessLogFormat";
+    public final static String     ACCESS_LOG_MAX_FILE_SIZE = "accessLogMaxFileSize";
+    public final static String     ACCESS_LOG_MAX_BACKUPS   = "accessLogMaxBackups";
+
     protected PartitionConfig      partitionConfig;
     protected PartitionContext     partitionContext;
 
@@ -82,8 +95,11 @@ public class Partition implements Cloneable {
 
     protected SchemaManager        schemaManager;
     protected ACLEvaluator         aclEvaluator;
+    protected StatisticManager     statisticManager;
+    protected InterpreterPool      interpreterPool;
 
     protected boolean              schemaChecking;
+    protected AccessLogOutput      accessLogOutput;
     protected String               status = STOPPED;
 
     public Partition() {
@@ -100,9 +116,12 @@ public class Partition implements Cloneable {
 
         PenroseContext penroseContext = partitionContext.getPenroseContext();
         schemaManager = penroseContext.getSchemaManager();
+        statisticManager = penroseContext.getStatisticManager();
 
         threadManager = createThreadManager(partitionConfig.getThreadManagerConfig());
 
+        interpreterPool = new InterpreterPool(partitionContext.getClassLoader());
+
         aclEvaluator = new ACLEvaluator();
         aclEvaluator.init(this);
 
@@ -129,6 +148,8 @@ public class Partition implements Cloneable {
         String s = getParameter(SCHEMA_CHECKING);
         schemaChecking = s == null ? DEFAULT_SCHEMA_CHECKING : Boolean.valueOf(s);
 
+        accessLogOutput = createAccessLogOutput();
+
         init();
 
         status = STARTED;
@@ -138,6 +159,45 @@ public class Partition implements Cloneable {
     public void init() throws Exception {
     }
 
+    public void recordOperation(String operation, long startTime) {
+        if (statisticManager == null) return;
+        statisticManager.recordOperation(getName(), operation, startTime);
+    }
+
+    public void recordEntry(Entry entry, String operation, long startTime) {
+        if (statisticManager == null) return;
+        statisticManager.recordEntry(getName(), entry.getName(), operation, startTime);
+    }
+
+    public AccessLogOutput createAccessLogOutput() throws Exception {
+
+        String s = getParameter(ACCESS_LOG);
+        if (s == null) return null;
+
+        File file = new File(s);
+        if (!file.isAbsolute() && partitionContext.getPath() != null) {
+            file = new File(partitionContext.getPath(), s);
+        }
+
+        String format = getParameter(ACCESS_LOG_FORMAT);
+
+        s = getParameter(ACCESS_LOG_MAX_FILE_SIZE);
+        long maxFileSize = s == null ? AccessLogOutput.DEFAULT_MAX_FILE_SIZE : Long.parseLong(s);
+
+        s = getParameter(ACCESS_LOG_MAX_BACKUPS);
+        int maxBackups = s == null ? AccessLogOutput.DEFAULT_MAX_BACKUPS : Integer.parseInt(s);
+
+        AccessLogOutput output = new AccessLogOutput(file, format, maxFileSize, maxBackups);
+
+        AccessLog accessLog = Access.getAccessLog();
+        if (partitionContext.getPartitionManager() != null) {
+            accessLog.setPartitionManager(partitionContext.getPartitionManager());
+        }
+        accessLog.addOutput(getName(), output);
+
+        return output;
+    }
+
     public void destroy() throws Exception {
         //log.debug("Stopping "+partitionConfig.getName()+" partition.");
         if (STOPPING.equals(status)) return;
@@ -146,12 +206,19 @@ public class Partition implements Cloneable {
         if (scheduler != null) scheduler.destroy();
         if (threadManager != null) threadManager.destroy();
 
+        if (accessLogOutput != null) {
+            Access.getAccessLog().removeOutput(getName());
+            accessLogOutput = null;
+        }
+
         moduleManager.destroy();
         directory.destroy();
         mappingManager.destroy();
         sourceManager.destroy();
         connectionManager.destroy();
 
+        if (interpreterPool != null) interpreterPool.clear();
+
         partitionContext.destroy();
 
         status = STOPPED;
@@ -174,6 +241,10 @@ public class Partition implements Cloneable {
         partitionConfig.setDescription(description);
     }
 
+    public StatisticManager getStatisticManager() {
+        return statisticManager;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -323,6 +394,10 @@ public class Partition implements Cloneable {
         return moduleManager.findModules(dn);
     }
 
+    public ModuleChain getModuleChain(Entry entry, DN dn) throws Exception {
+        return moduleManager.getModuleChain(entry, dn);
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // Normalize
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -624,6 +699,8 @@ public class Partition implements Cloneable {
     ) throws Exception {
 
         boolean debug = log.isDebugEnabled();
+        long startTime = System.nanoTime();
+
         try {
             normalize(request);
 
@@ -636,15 +713,13 @@ public class Partition implements Cloneable {
                 throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
             }
 
-            Collection<Module> modules = findModules(dn);
-
             Exception exception = null;
 
             for (Entry entry : entries) {
                 try {
                     if (debug) log.debug("Adding " + dn + " into " + entry.getDn());
 
-                    ModuleChain chain = createModuleChain(entry, modules);
+                    ModuleChain chain = getModuleChain(entry, dn);
                     chain.add(session, request, response);
 
                     return; // return after the first successful operation
@@ -659,6 +734,9 @@ public class Partition implements Cloneable {
         } catch (LDAPException e) {
             response.setException(e);
             throw e;
+
+        } finally {
+            recordOperation(StatisticManager.ADD, startTime);
         }
     }
 
@@ -673,6 +751,8 @@ public class Partition implements Cloneable {
     ) throws Exception {
 
         boolean debug = log.isDebugEnabled();
+        long startTime = System.nanoTime();
+
         try {
             normalize(request);
 
@@ -685,8 +765,6 @@ public class Partition implements Cloneable {
                 throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
             }
 
-            Collection<Module> modules = findModules(dn);
-
             boolean found = false;
             Exception exception = null;
 
@@ -694,7 +772,7 @@ public class Partition implements Cloneable {
                 try {
                     if (debug) log.debug("Binding " + dn + " in " + entry.getDn());
 
-                    ModuleChain chain = createModuleChain(entry, modules);
+                    ModuleChain chain = getModuleChain(entry, dn);
                     chain.bind(session, request, response);
 
                     return; // return after the first successful operation
@@ -716,6 +794,9 @@ public class Partition implements Cloneable {
         } catch (LDAPException e) {
             response.setException(e);
             throw e;
+
+        } finally {
+            recordOperation(StatisticManager.BIND, startTime);
         }
     }
 
@@ -730,6 +811,8 @@ public class Partition implements Cloneable {
     ) throws Exception {
 
         boolean debug = log.isDebugEnabled();
+        long startTime = System.nanoTime();
+
         try {
             normalize(request);
 
@@ -742,15 +825,13 @@ public class Partition implements Cloneable {
                 throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
             }
 
-            Collection<Module> modules = findModules(dn);
-
             Exception exception = null;
 
             for (Entry entry : entries) {
                 try {
                     if (debug) log.debug("Comparing " + dn + " in " + entry.getDn());
 
-                    ModuleChain chain = createModuleChain(entry, modules);
+                    ModuleChain chain = getModuleChain(entry, dn);
                     chain.compare(session, request, response);
 
                     return; // return after the first successful operation
@@ -765,6 +846,9 @@ public class Partition implements Cloneable {
         } catch (LDAPException e) {
             response.setException(e);
             throw e;
+
+        } finally {
+            recordOperation(StatisticManager.COMPARE, startTime);
         }
     }
 
@@ -779,6 +863,8 @@ public class Partition implements Cloneable {
     ) throws Exception {
 
         boolean debug = log.isDebugEnabled();
+        long startTime = System.nanoTime();
+
         try {
             normalize(request);
 
@@ -791,15 +877,13 @@ public class Partition implements Cloneable {
                 throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
             }
 
-            Collection<Module> modules = findModules(dn);
-
             Exception exception = null;
 
             for (Entry entry : entries) {
                 try {
                     if (debug) log.debug("Deleting " + dn + " from " + entry.getDn());
 
-                    ModuleChain chain = createModuleChain(entry, modules);
+                    ModuleChain chain = getModuleChain(entry, dn);
                     chain.delete(session, request, response);
 
                     return; // return after the first successful operation
@@ -814,6 +898,9 @@ public class Partition implements Cloneable {
         } catch (LDAPException e) {
             response.setException(e);
             throw e;
+
+        } finally {
+            recordOperation(StatisticManager.DELETE, startTime);
         }
     }
 
@@ -866,6 +953,8 @@ public class Partition implements Cloneable {
     ) throws Exception {
 
         boolean debug = log.isDebugEnabled();
+        long startTime = System.nanoTime();
+
         try {
             normalize(request);
 
@@ -878,15 +967,13 @@ public class Partition implements Cloneable {
                 throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
             }
 
-            Collection<Module> modules = findModules(dn);
-
             Exception exception = null;
 
             for (Entry entry : entries) {
                 try {
                     if (debug) log.debug("Modifying " + dn + " in " + entry.getDn());
 
-                    ModuleChain chain = createModuleChain(entry, modules);
+                    ModuleChain chain = getModuleChain(entry, dn);
                     chain.modify(session, request, response);
 
                     return; // return after the first successful operation
@@ -901,6 +988,9 @@ public class Partition implements Cloneable {
         } catch (LDAPException e) {
             response.setException(e);
             throw e;
+
+        } finally {
+            recordOperation(StatisticManager.MODIFY, startTime);
         }
     }
 
@@ -915,6 +1005,8 @@ public class Partition implements Cloneable {
     ) throws Exception {
 
         boolean debug = log.isDebugEnabled();
+        long startTime = System.nanoTime();
+
         try {
             normalize(request);
 
@@ -927,15 +1019,13 @@ public class Partition implements Cloneable {
                 throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
             }
 
-            Collection<Module> modules = findModules(dn);
-
             Exception exception = null;
 
             for (Entry entry : entries) {
                 try {
                     if (debug) log.debug("Renaming " + dn + " in " + entry.getDn());
 
-                    ModuleChain chain = createModuleChain(entry, modules);
+                    ModuleChain chain = getModuleChain(entry, dn);
                     chain.modrdn(session, request, response);
 
                     return; // return after the first successful operation
@@ -950,6 +1040,9 @@ public class Partition implements Cloneable {
         } catch (LDAPException e) {
             response.setException(e);
             throw e;
+
+        } finally {
+            recordOperation(StatisticManager.MODRDN, startTime);
         }
     }
 
@@ -978,6 +1071,19 @@ public class Partition implements Cloneable {
             SearchOperation operation
     ) throws Exception {
 
+        long startTime = System.nanoTime();
+        try {
+            searchEntries(operation);
+
+        } finally {
+            recordOperation(StatisticManager.SEARCH, startTime);
+        }
+    }
+
+    public void searchEntries(
+            SearchOperation operation
+    ) throws Exception {
+
         boolean debug = log.isDebugEnabled();
         DN dn = operation.getDn();
         Collection<String> requestedAttributes = operation.getAttributes();
@@ -1027,9 +1133,14 @@ public class Partition implements Cloneable {
             }
         };
 
-        Collection<Module> modules = findModules(entry.getDn());
-        ModuleChain chain = createModuleChain(entry, modules);
-        chain.search(op);
+        long startTime = System.nanoTime();
+        try {
+            ModuleChain chain = getModuleChain(entry, entry.getDn());
+            chain.search(op);
+
+        } finally {
+            recordEntry(entry, StatisticManager.SEARCH, startTime);
+        }
 
         DN baseDn = op.getDn();
         int scope = op.getScope();
@@ -1051,6 +1162,14 @@ public class Partition implements Cloneable {
         searchEntries(op, children, true);
     }
 
+    /**
+     * Searches the entries and waits until all of them are done. If there is a thread manager,
+     * the entries after the first one are forked to the pool while the current thread searches
+     * the first entry. The current thread then joins the entries in order, searching the ones
+     * that no pool thread has started yet, so it never waits for a task stuck in the queue.
+     * If the wait flag is false the entries are joined by a pool thread instead and the
+     * method returns immediately.
+     */
     public void searchEntries(
             final SearchOperation operation,
             final List<Entry> entries,
@@ -1060,52 +1179,82 @@ public class Partition implements Cloneable {
         boolean debug = log.isDebugEnabled();
         final ParallelSearchOperation op = new ParallelSearchOperation(operation, entries.size());
 
-        if (threadManager == null) {
+        boolean parallel = threadManager != null && threadManager.isRunning() && entries.size() > 1;
+        boolean ordered = threadManager != null && threadManager.isOrderedResults();
+
+        if (!parallel) {
             // important for deterministic merging
             if (debug) log.debug("Searching "+entries.size()+" entries sequentially.");
         } else {
-            // could affect merging outcome
+            // could affect merging outcome unless the results are ordered
             if (debug) log.debug("Searching "+entries.size()+" entries in parallel.");
         }
 
-        for (final Entry entry : entries) {
-            if (debug) log.debug("Searching \""+entry.getDn()+"\" ("+entry.getName()+").");
+        final List<SearchTask> tasks = new ArrayList<SearchTask>(entries.size());
 
-            if (op.isAbandoned()) {
-                if (debug) log.debug("Operation "+op.getOperationName()+" has been abandoned.");
-                op.close();
-                continue;
-            }
+        for (Entry entry : entries) {
+            SearchTask task = new SearchTask(this, op, entry, ordered);
+            if (parallel && !tasks.isEmpty()) task.forkedTask = threadManager.fork(task);
+            tasks.add(task);
+        }
 
-            Runnable runnable = new Runnable() {
+        if (wait || !parallel) {
+            joinTasks(op, tasks);
+            return;
+        }
+
+        if (debug) log.debug("Joining "+entries.size()+" entries in the background.");
+
+        try {
+            threadManager.execute(new Runnable() {
                 public void run() {
                     try {
-                        searchEntry(op, entry);
-
-                    } catch (LDAPException e) {
-                        op.setException(e);
-                        
-                    } catch (Throwable e) {
+                        joinTasks(op, tasks);
+                    } catch (Exception e) {
                         Penrose.errorLog.error(e.getMessage(), e);
-                        op.setException(LDAP.createException(e));
-
-                    } finally {
-                        try { op.close(entry); } catch (Exception e) { Penrose.errorLog.error(e.getMessage(), e); }
                     }
                 }
-            };
+            });
 
-            if (threadManager == null) {
-                runnable.run();
-            } else {
-                threadManager.execute(runnable);
-            }
+        } catch (RejectedExecutionException e) {
+            if (debug) log.debug("Thread pool is not available, joining entries in the current thread.");
+            joinTasks(op, tasks);
         }
+    }
+
+    public void joinTasks(ParallelSearchOperation op, List<SearchTask> tasks) throws Exception {
+
+        boolean debug = log.isDebugEnabled();
+
+        for (SearchTask task : tasks) {
+            Entry entry = task.getEntry();
+
+            if (op.isStopped()) {
+                if (debug) log.debug("Operation "+op.getOperationName()+" has been stopped.");
+
+                // don't search the remaining entries, only wait for the running ones
+                for (SearchTask t : tasks) t.cancel();
+                break;
+            }
 
-        if (wait) {
-            if (debug) log.debug("Waiting for "+entries.size()+" entries.");
-            op.waitFor();
+            if (debug) log.debug("Searching \""+entry.getDn()+"\" ("+entry.getName()+").");
+
+            try {
+                task.join();
+
+            } catch (LDAPException e) {
+                op.setException(e);
+
+            } catch (Throwable e) {
+                Penrose.errorLog.error(e.getMessage(), e);
+                op.setException(LDAP.createException(e));
+            }
+
+            if (debug) log.debug("Done searching \""+entry.getDn()+"\".");
         }
+
+        if (debug) log.debug("Done searching "+tasks.size()+" entries.");
+        op.close();
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -1120,6 +1269,8 @@ public class Partition implements Cloneable {
 
         boolean debug = log.isDebugEnabled();
 
+        long startTime = System.nanoTime();
+
         try {
             DN dn = session.getBindDn();
             if (dn == null || dn.isEmpty()) return;
@@ -1131,15 +1282,13 @@ public class Partition implements Cloneable {
                 throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
             }
 
-            Collection<Module> modules = findModules(dn);
-
             Exception exception = null;
 
             for (Entry entry : entries) {
                 try {
                     if (debug) log.debug("Unbinding " + dn + " from " + entry.getDn());
 
-                    ModuleChain chain = createModuleChain(entry, modules);
+                    ModuleChain chain = getModuleChain(entry, dn);
                     chain.unbind(session, request, response);
 
                     return; // return after the first successful operation
@@ -1154,6 +1303,9 @@ public class Partition implements Cloneable {
         } catch (LDAPException e) {
             response.setException(e);
             throw e;
+
+        } finally {
+            recordOperation(StatisticManager.UNBIND, startTime);
         }
     }
 
@@ -1168,8 +1320,9 @@ public class Partition implements Cloneable {
     public Interpreter newInterpreter() throws Exception {
         ClassLoader classLoader = partitionContext.getClassLoader();
 
-        Interpreter interpreter = new DefaultInterpreter();
+        DefaultInterpreter interpreter = new DefaultInterpreter();
         interpreter.setClassLoader(classLoader);
+        interpreter.setPool(interpreterPool);
 
         return interpreter;
     }
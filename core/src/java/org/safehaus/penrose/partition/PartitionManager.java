@@ -1,5 +1,6 @@
 package org.safehaus.penrose.partition;
 
+import org.safehaus.penrose.acl.ACLEvaluator;
 import org.safehaus.penrose.adapter.AdapterConfig;
 import org.safehaus.penrose.PenroseConfig;
 import org.safehaus.penrose.Penrose;
@@ -42,6 +43,9 @@ public class PartitionManager {
     PenroseContext penroseContext;
 
     Map<String,Partition> partitions = new LinkedHashMap<String,Partition>();
+
+    // routing trie of all partitions, rebuilt after a partition or an entry is changed
+    volatile EntryTrie trie;
     PartitionConfigManager partitionConfigManager = new PartitionConfigManager();
 
     Queue<String> queue = new LinkedList<String>();
@@ -345,6 +349,7 @@ public class PartitionManager {
         partitions.put(partitionConfig.getName(), partition);
 
         partition.init(partitionConfig, partitionContext);
+        invalidate();
 
         if (!listeners.isEmpty()) {
             //log.debug("Invoking "+listeners.size()+" listener(s).");
@@ -437,6 +442,7 @@ public class PartitionManager {
         partition.destroy();
 
         partitions.remove(partitionName);
+        invalidate();
 
         if (!listeners.isEmpty()) {
             //log.debug("Invoking "+listeners.size()+" listener(s).");
@@ -472,6 +478,7 @@ public class PartitionManager {
     public void clear() throws Exception {
         partitionConfigManager.clear();
         partitions.clear();
+        invalidate();
     }
 
     public Partition getPartition(String name) {
@@ -555,16 +562,43 @@ public class PartitionManager {
     public Collection<Entry> findEntries(DN dn) throws Exception {
 
         Collection<Entry> results = new ArrayList<Entry>();
+        results.addAll(getTrie().find(dn));
 
-        for (Partition partition : partitions.values()) {
+        return results;
+    }
 
-            //if (debug) log.debug("Searching for \""+dn+"\" in "+partition.getName()+".");
+    public EntryTrie getTrie() throws Exception {
+        EntryTrie t = trie;
+        if (t != null) return t;
+        return buildTrie();
+    }
+
+    synchronized EntryTrie buildTrie() throws Exception {
+        if (trie != null) return trie;
 
+        EntryTrie t = new EntryTrie();
+
+        for (Partition partition : partitions.values()) {
             Directory directory = partition.getDirectory();
-            results.addAll(directory.findEntries(dn));
+            if (directory == null) continue;
+
+            for (Entry entry : directory.getRootEntries()) {
+                t.addTree(entry);
+            }
         }
 
-        return results;
+        trie = t;
+        return t;
+    }
+
+    public synchronized void invalidate() {
+        trie = null;
+
+        // the ACLs of the entries might be inherited from another partition
+        for (Partition partition : partitions.values()) {
+            ACLEvaluator aclEvaluator = partition.getAclEvaluator();
+            if (aclEvaluator != null) aclEvaluator.invalidate();
+        }
     }
 /*
     public Collection<Partition> getPartitions(DN dn) throws Exception {
@@ -0,0 +1,175 @@
+package org.safehaus.penrose.partition;
+
+import org.ietf.ldap.LDAPException;
+import org.safehaus.penrose.Penrose;
+import org.safehaus.penrose.directory.Entry;
+import org.safehaus.penrose.ldap.LDAP;
+import org.safehaus.penrose.ldap.SearchReference;
+import org.safehaus.penrose.ldap.SearchResult;
+import org.safehaus.penrose.operation.PipelineSearchOperation;
+import org.safehaus.penrose.operation.SearchOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches one entry and its children. The task is either executed by a pool thread or,
+ * if no thread has started it yet, by the thread joining it, so a thread never waits
+ * for a task that is still in the queue.
+ *
+ * If the results have to be ordered, a task executed by a pool thread keeps its results
+ * until it's joined. A task executed by the joining thread sends the results directly.
+ * The kept results are only bounded by the size limit of the search, so a large subtree
+ * searched by a pool thread is held in memory until the entries before it are done.
+ *
+ * @author Endi S. Dewata
+ */
+public class SearchTask implements Runnable {
+
+    public final static int PENDING = 0;
+    public final static int RUNNING = 1;
+    public final static int DONE    = 2;
+
+    Partition partition;
+    ParallelSearchOperation operation;
+    Entry entry;
+    boolean ordered;
+
+    int state = PENDING;
+
+    // results and references of a task executed by a pool thread in ordered mode
+    List<Object> results;
+
+    // the kept results already exceed the size limit
+    boolean truncated;
+
+    // the task in the thread manager's queue
+    Runnable forkedTask;
+
+    public SearchTask(Partition partition, ParallelSearchOperation operation, Entry entry, boolean ordered) {
+        this.partition = partition;
+        this.operation = operation;
+        this.entry = entry;
+        this.ordered = ordered;
+    }
+
+    synchronized boolean claim() {
+        if (state != PENDING) return false;
+        state = RUNNING;
+        return true;
+    }
+
+    /**
+     * Executed by a pool thread.
+     */
+    public void run() {
+        if (!claim()) return;
+        execute(ordered);
+    }
+
+    /**
+     * Executes the task in the current thread if it hasn't been started, otherwise waits
+     * until it's done and sends the kept results.
+     */
+    public void join() throws Exception {
+
+        if (claim()) {
+            if (forkedTask != null) partition.getThreadManager().cancel(forkedTask);
+            execute(false);
+            return;
+        }
+
+        synchronized (this) {
+            while (state != DONE) wait();
+        }
+
+        if (results == null) return;
+
+        for (Object object : results) {
+            if (operation.isStopped()) break;
+
+            if (object instanceof SearchResult) {
+                operation.add((SearchResult)object);
+            } else {
+                operation.add((SearchReference)object);
+            }
+        }
+
+        results = null;
+    }
+
+    /**
+     * Prevents the task from being started, or waits until it's done if it's already
+     * running. The kept results are discarded.
+     */
+    public void cancel() throws InterruptedException {
+
+        if (claim()) {
+            if (forkedTask != null) partition.getThreadManager().cancel(forkedTask);
+            synchronized (this) {
+                state = DONE;
+                notifyAll();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            while (state != DONE) wait();
+        }
+
+        results = null;
+    }
+
+    void execute(boolean keepResults) {
+
+        SearchOperation op = operation;
+
+        if (keepResults) {
+            results = new ArrayList<Object>();
+            final long sizeLimit = operation.getSizeLimit();
+
+            op = new PipelineSearchOperation(operation) {
+                public void add(SearchResult result) throws Exception {
+                    results.add(result);
+
+                    // the limit will be exceeded when the results are sent, stop searching
+                    if (sizeLimit > 0 && results.size() > sizeLimit) {
+                        truncated = true;
+                        throw LDAP.createException(LDAP.SIZE_LIMIT_EXCEEDED);
+                    }
+                }
+                public void add(SearchReference reference) throws Exception {
+                    results.add(reference);
+                }
+                public void close() throws Exception {
+                }
+            };
+        }
+
+        try {
+            if (!operation.isStopped()) partition.searchEntry(op, entry);
+
+        } catch (LDAPException e) {
+            if (!truncated) operation.setException(e);
+
+        } catch (Throwable e) {
+            if (truncated) return;
+            Penrose.errorLog.error(e.getMessage(), e);
+            operation.setException(LDAP.createException(e));
+
+        } finally {
+            synchronized (this) {
+                state = DONE;
+                notifyAll();
+            }
+        }
+    }
+
+    public Entry getEntry() {
+        return entry;
+    }
+
+    public synchronized int getState() {
+        return state;
+    }
+}
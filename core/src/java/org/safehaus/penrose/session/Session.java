@@ -97,13 +97,13 @@ public class Session {
     }
 
     public void connect(ConnectRequest request) throws Exception {
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         Access.log(this, request);
         if (warn) log.warn("Session "+ sessionName +": Connect from "+request.getClientAddress()+".");
     }
 
     public void disconnect(DisconnectRequest request) throws Exception {
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         Access.log(this, request);
         if (warn) log.warn("Session "+ sessionName +": Disconnect.");
     }
@@ -193,7 +193,7 @@ public class Session {
 
     public void abandon(AbandonRequest request, AbandonResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
@@ -257,7 +257,7 @@ public class Session {
     
     public void add(AddRequest request, AddResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
@@ -355,7 +355,7 @@ public class Session {
 
     public void bind(BindRequest request, BindResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
@@ -472,7 +472,7 @@ public class Session {
 
     public void compare(CompareRequest request, CompareResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
@@ -565,7 +565,7 @@ public class Session {
 
     public void delete(DeleteRequest request, DeleteResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
@@ -646,7 +646,7 @@ public class Session {
 
     public void modify(ModifyRequest request, ModifyResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
@@ -745,7 +745,7 @@ public class Session {
 
     public void modrdn(ModRdnRequest request, ModRdnResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
@@ -862,7 +862,7 @@ public class Session {
         request.setFilter(filter);
         request.setScope(scope);
 
-        SearchResponse response = new SearchResponse();
+        SearchResponse response = new RingBufferSearchResponse();
 
         search(request, response);
 
@@ -876,7 +876,7 @@ public class Session {
 
     public void search(SearchOperation operation) throws Exception {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         Access.log(operation);
@@ -939,7 +939,7 @@ public class Session {
 
     public void unbind(UnbindRequest request, UnbindResponse response) throws LDAPException {
 
-        boolean warn = log.isWarnEnabled();
+        boolean warn = log.isWarnEnabled() && !Access.isAsync();
         boolean debug = log.isDebugEnabled();
 
         try {
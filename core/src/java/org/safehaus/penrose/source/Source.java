@@ -9,6 +9,7 @@ import org.safehaus.penrose.filter.Filter;
 import org.safehaus.penrose.filter.FilterTool;
 import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.session.SessionManager;
+import org.safehaus.penrose.statistic.StatisticManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -152,6 +153,18 @@ public class Source implements Cloneable {
         return fieldsByOriginalName.get(fieldOriginalName.toLowerCase());
     }
 
+    /**
+     * Records the latency of an operation since the start time returned by System.nanoTime().
+     */
+    public void recordOperation(String operation, long startTime) {
+        if (partition == null) return;
+
+        StatisticManager statisticManager = partition.getStatisticManager();
+        if (statisticManager == null) return;
+
+        statisticManager.recordSource(partition.getName(), getName(), operation, startTime);
+    }
+
     public SourceContext getSourceContext() {
         return sourceContext;
     }
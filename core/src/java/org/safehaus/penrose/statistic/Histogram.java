@@ -0,0 +1,152 @@
+package org.safehaus.penrose.statistic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with logarithmic buckets which are divided into linear sub-buckets
+ * like HdrHistogram, so any recorded value is reported within 1/16 (about 6%) of its
+ * actual value. Values are recorded in microseconds, up to about 12 days. Recording a
+ * value only increments a bucket, so it does not block.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class Histogram {
+
+    public final static int SUB_BUCKET_BITS  = 4;
+    public final static int SUB_BUCKETS      = 1 << SUB_BUCKET_BITS;
+    public final static int MAX_BITS         = 40;
+
+    public final static long MAX_VALUE = (1L << MAX_BITS) - 1;
+    public final static int SIZE = 2 * SUB_BUCKETS + (MAX_BITS - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private String name;
+
+    private AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private StripedCounter total = new StripedCounter();
+    private AtomicLong max = new AtomicLong();
+
+    public Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static int getIndex(long value) {
+
+        if (value < 2 * SUB_BUCKETS) return (int)value;
+
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        int shift = bits - SUB_BUCKET_BITS - 1;
+        int subBucket = (int)(value >>> shift) - SUB_BUCKETS;
+
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest value which is recorded into the same bucket.
+     */
+    public static long getValue(int index) {
+
+        if (index < 2 * SUB_BUCKETS) return index;
+
+        int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value in microseconds.
+     */
+    public void record(long value) {
+
+        if (value < 0) value = 0;
+        if (value > MAX_VALUE) value = MAX_VALUE;
+
+        counts.incrementAndGet(getIndex(value));
+        total.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the start time returned by System.nanoTime().
+     */
+    public void recordSince(long startTime) {
+        record((System.nanoTime() - startTime) / 1000);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i=0; i<SIZE; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotal() / count;
+    }
+
+    /**
+     * Returns the value below which the percentage of the recorded values fall.
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        long count = getCount();
+        if (count == 0) return 0;
+
+        long rank = (long)Math.ceil(percentile / 100 * count);
+        if (rank < 1) rank = 1;
+
+        long current = 0;
+        for (int i=0; i<SIZE; i++) {
+            current += counts.get(i);
+            if (current >= rank) return Math.min(getValue(i), getMax());
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Returns the count, the mean, the maximum and the percentiles in microseconds.
+     */
+    public Map<String,Long> getSummary() {
+
+        Map<String,Long> summary = new LinkedHashMap<String,Long>();
+        summary.put("count", getCount());
+        summary.put("mean", getMean());
+        summary.put("max", getMax());
+        summary.put("p50", getValueAtPercentile(50));
+        summary.put("p90", getValueAtPercentile(90));
+        summary.put("p99", getValueAtPercentile(99));
+        summary.put("p999", getValueAtPercentile(99.9));
+
+        return summary;
+    }
+
+    public void reset() {
+        for (int i=0; i<SIZE; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+}
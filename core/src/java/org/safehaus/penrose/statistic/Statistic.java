@@ -1,7 +1,5 @@
 package org.safehaus.penrose.statistic;
 
-import java.util.Date;
-
 /**
  * @author Endi Sukma Dewata
  */
@@ -9,7 +7,7 @@ public class Statistic {
     
     private String name;
 
-    private long counter;
+    private StripedCounter counter = new StripedCounter();
 
     public Statistic(String name) {
         this.name = name;
@@ -24,18 +22,18 @@ public class Statistic {
     }
 
     public long getCounter() {
-        return counter;
+        return counter.get();
     }
 
     public void setCounter(long counter) {
-        this.counter = counter;
+        this.counter.set(counter);
     }
 
     public void incrementCounter() {
-        counter++;
+        counter.increment();
     }
 
     public void resetCounter() {
-        counter = 0;
+        counter.reset();
     }
 }
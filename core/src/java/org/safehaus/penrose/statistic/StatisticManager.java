@@ -1,10 +1,20 @@
 package org.safehaus.penrose.statistic;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Operation counters and latency histograms. The histograms are named after what they
+ * measure:
+ * <ul>
+ * <li>operation/&lt;operation&gt;</li>
+ * <li>partition/&lt;partition&gt;/&lt;operation&gt;</li>
+ * <li>entry/&lt;partition&gt;/&lt;entry&gt;/&lt;operation&gt;</li>
+ * <li>source/&lt;partition&gt;/&lt;source&gt;/&lt;operation&gt;</li>
+ * <li>changelog/&lt;partition&gt;/&lt;module or job&gt;/&lt;apply|lag&gt;</li>
+ * </ul>
+ *
  * @author Endi Sukma Dewata
  */
 public class StatisticManager {
@@ -19,7 +29,18 @@ public class StatisticManager {
     public final static String SEARCH  = "search";
     public final static String UNBIND  = "unbind";
 
+    public final static String OPERATION = "operation";
+    public final static String PARTITION = "partition";
+    public final static String ENTRY     = "entry";
+    public final static String SOURCE    = "source";
+    public final static String CHANGELOG = "changelog";
+
+    public final static int MAX_HISTOGRAMS = 10000;
+
     public Map<String,Statistic> statistics = new LinkedHashMap<String,Statistic>();
+    public ConcurrentMap<String,Histogram> histograms = new ConcurrentHashMap<String,Histogram>();
+
+    private long startTime = System.currentTimeMillis();
 
     public StatisticManager() {
         addStatistic(new Statistic(ABANDON));
@@ -50,4 +71,68 @@ public class StatisticManager {
         if (statistic == null) return;
         statistic.incrementCounter();
     }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Histograms
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Records the latency of an operation since the start time returned by System.nanoTime().
+     */
+    public void recordOperation(String partitionName, String operation, long startTime) {
+        long elapsed = (System.nanoTime() - startTime) / 1000;
+
+        record(OPERATION+"/"+operation, elapsed);
+        if (partitionName != null) record(PARTITION+"/"+partitionName+"/"+operation, elapsed);
+    }
+
+    public void recordEntry(String partitionName, String entryName, String operation, long startTime) {
+        record(ENTRY+"/"+partitionName+"/"+entryName+"/"+operation, (System.nanoTime() - startTime) / 1000);
+    }
+
+    public void recordSource(String partitionName, String sourceName, String operation, long startTime) {
+        record(SOURCE+"/"+partitionName+"/"+sourceName+"/"+operation, (System.nanoTime() - startTime) / 1000);
+    }
+
+    public void record(String name, long value) {
+        Histogram histogram = createHistogram(name);
+        if (histogram == null) return;
+        histogram.record(value);
+    }
+
+    public Histogram createHistogram(String name) {
+
+        Histogram histogram = histograms.get(name);
+        if (histogram != null) return histogram;
+
+        if (histograms.size() >= MAX_HISTOGRAMS) return null;
+
+        histogram = new Histogram(name);
+        Histogram oldHistogram = histograms.putIfAbsent(name, histogram);
+
+        return oldHistogram == null ? histogram : oldHistogram;
+    }
+
+    public Collection<String> getHistogramNames() {
+        return new TreeSet<String>(histograms.keySet());
+    }
+
+    public Histogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * Returns the time the statistics were started or reset.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void reset() {
+        for (Statistic statistic : statistics.values()) {
+            statistic.resetCounter();
+        }
+        histograms.clear();
+        startTime = System.currentTimeMillis();
+    }
 }
@@ -0,0 +1,60 @@
+package org.safehaus.penrose.statistic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter which spreads the updates of concurrent threads over several cells, so the
+ * threads do not compete for the same cache line. Reading the value adds up the cells.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class StripedCounter {
+
+    // distance between the cells, in longs
+    public final static int PADDING = 8;
+
+    private AtomicLongArray cells;
+    private int mask;
+
+    public StripedCounter() {
+
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        int size = 1;
+        while (size < processors * 2) size <<= 1;
+
+        cells = new AtomicLongArray(size * PADDING);
+        mask = size - 1;
+    }
+
+    int getIndex() {
+        return ((int)Thread.currentThread().getId() & mask) * PADDING;
+    }
+
+    public void increment() {
+        cells.incrementAndGet(getIndex());
+    }
+
+    public void add(long value) {
+        cells.addAndGet(getIndex(), value);
+    }
+
+    public long get() {
+        long value = 0;
+        for (int i=0; i<cells.length(); i+=PADDING) {
+            value += cells.get(i);
+        }
+        return value;
+    }
+
+    public void set(long value) {
+        reset();
+        cells.addAndGet(0, value);
+    }
+
+    public void reset() {
+        for (int i=0; i<cells.length(); i+=PADDING) {
+            cells.set(i, 0);
+        }
+    }
+}
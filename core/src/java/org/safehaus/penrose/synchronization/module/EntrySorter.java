@@ -0,0 +1,409 @@
+package org.safehaus.penrose.synchronization.module;
+
+import org.safehaus.penrose.ldap.Attribute;
+import org.safehaus.penrose.ldap.Attributes;
+import org.safehaus.penrose.ldap.DN;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * External sort of entries by key. The entries are collected in memory up to the run
+ * size, then sorted and written into run files. The runs are merged while the entries
+ * are read back, so memory usage is bounded by the run size and the number of runs
+ * and not by the number of entries. If all entries fit into one run no file is used.
+ *
+ * At most max fan-in runs are opened at the same time. If there are more runs they are
+ * merged into bigger runs in several passes before the entries are read back.
+ *
+ * The key of an entry is its normalized DN with the RDNs in reverse order separated
+ * by a character that sorts before any other character, so a parent is always sorted
+ * right before its subtree.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class EntrySorter {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int DEFAULT_RUN_SIZE   = 10000;
+    public final static int DEFAULT_MAX_FAN_IN = 64;
+    public final static int BUFFER_SIZE        = 64 * 1024;
+
+    public final static char SEPARATOR = '\u0000';
+
+    public final static byte STRING = 0;
+    public final static byte BINARY = 1;
+
+    public final static Comparator<Record> ASCENDING = new Comparator<Record>() {
+        public int compare(Record record1, Record record2) {
+            return record1.key.compareTo(record2.key);
+        }
+    };
+
+    public final static Comparator<Record> DESCENDING = new Comparator<Record>() {
+        public int compare(Record record1, Record record2) {
+            return record2.key.compareTo(record1.key);
+        }
+    };
+
+    public static class Record {
+
+        String key;
+        String dn;
+        Attributes attributes;
+
+        public Record(String key, String dn, Attributes attributes) {
+            this.key = key;
+            this.dn = dn;
+            this.attributes = attributes;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public DN getDn() {
+            return new DN(dn);
+        }
+
+        public Attributes getAttributes() {
+            return attributes;
+        }
+
+        void write(DataOutputStream out) throws Exception {
+            writeString(out, key);
+            writeString(out, dn);
+
+            if (attributes == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            Collection<Attribute> list = attributes.getAll();
+            out.writeInt(list.size());
+
+            for (Attribute attribute : list) {
+                writeString(out, attribute.getName());
+
+                Collection<Object> values = attribute.getValues();
+                out.writeInt(values.size());
+
+                for (Object value : values) {
+                    if (value instanceof byte[]) {
+                        byte[] bytes = (byte[])value;
+                        out.writeByte(BINARY);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+
+                    } else {
+                        out.writeByte(STRING);
+                        writeString(out, value.toString());
+                    }
+                }
+            }
+        }
+
+        static Record read(DataInputStream in) throws Exception {
+
+            String key;
+            try {
+                key = readString(in);
+            } catch (EOFException e) {
+                return null;
+            }
+
+            String dn = readString(in);
+
+            int size = in.readInt();
+            if (size < 0) return new Record(key, dn, null);
+
+            Attributes attributes = new Attributes();
+
+            for (int i=0; i<size; i++) {
+                String name = readString(in);
+
+                int count = in.readInt();
+                for (int j=0; j<count; j++) {
+                    byte type = in.readByte();
+                    if (type == BINARY) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        attributes.addValue(name, bytes);
+
+                    } else {
+                        attributes.addValue(name, readString(in));
+                    }
+                }
+            }
+
+            return new Record(key, dn, attributes);
+        }
+
+        // writeUTF() is limited to 64 KB
+        static void writeString(DataOutputStream out, String s) throws Exception {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        static String readString(DataInputStream in) throws Exception {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+
+    class Run {
+
+        File file;
+        DataInputStream in;
+        Record record;
+
+        Run(File file) throws Exception {
+            this.file = file;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            next();
+        }
+
+        void next() throws Exception {
+            record = Record.read(in);
+            if (record == null) close();
+        }
+
+        void close() throws Exception {
+            in.close();
+        }
+    }
+
+    private File dir;
+    private String name;
+    private int runSize;
+    private int maxFanIn = DEFAULT_MAX_FAN_IN;
+    private Comparator<Record> comparator;
+
+    private List<Record> buffer = new ArrayList<Record>();
+    private List<File> files = new ArrayList<File>();
+    private int fileCounter;
+    private long count;
+
+    // merge
+    private PriorityQueue<Run> runs;
+    private Iterator<Record> iterator;
+
+    public EntrySorter(File dir, String name, int runSize, Comparator<Record> comparator) {
+        this.dir = dir;
+        this.name = name;
+        this.runSize = runSize <= 0 ? DEFAULT_RUN_SIZE : runSize;
+        this.comparator = comparator;
+    }
+
+    public static String getKey(DN dn) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i=dn.getLength()-1; i>=0; i--) {
+            if (sb.length() > 0) sb.append(SEPARATOR);
+            sb.append(dn.getRdn(i).getNormalized());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns true if the first key is the key of an ancestor of the second key.
+     */
+    public static boolean isAncestor(String key1, String key2) {
+        if (key1.length() == 0) return key2.length() > 0;
+        return key2.length() > key1.length()
+                && key2.startsWith(key1)
+                && key2.charAt(key1.length()) == SEPARATOR;
+    }
+
+    public void add(DN dn, Attributes attributes) throws Exception {
+        add(new Record(getKey(dn), dn.toString(), attributes));
+    }
+
+    public void add(Record record) throws Exception {
+        buffer.add(record);
+        count++;
+
+        if (buffer.size() >= runSize) writeRun();
+    }
+
+    void writeRun() throws Exception {
+
+        Collections.sort(buffer, comparator);
+
+        File file = createFile();
+        if (log.isDebugEnabled()) log.debug("Writing "+buffer.size()+" entries into "+file+".");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            for (Record record : buffer) {
+                record.write(out);
+            }
+        } finally {
+            out.close();
+        }
+
+        files.add(file);
+        buffer.clear();
+    }
+
+    File createFile() {
+        if (!dir.exists()) dir.mkdirs();
+        return new File(dir, name+"-"+(fileCounter++)+".tmp");
+    }
+
+    /**
+     * Merges groups of runs into bigger runs until there are at most max fan-in runs.
+     */
+    void mergeRuns() throws Exception {
+
+        while (files.size() > maxFanIn) {
+
+            List<File> pass = new ArrayList<File>(files);
+            if (log.isDebugEnabled()) log.debug("Merging "+pass.size()+" runs.");
+
+            for (int i=0; i<pass.size(); i+=maxFanIn) {
+                List<File> group = pass.subList(i, Math.min(i+maxFanIn, pass.size()));
+                if (group.size() == 1) continue;
+
+                File file = createFile();
+                files.add(file);
+
+                mergeRuns(group, file);
+
+                for (File f : group) {
+                    files.remove(f);
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    void mergeRuns(Collection<File> group, File file) throws Exception {
+
+        PriorityQueue<Run> queue = openRuns(group);
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            try {
+                for (Record record = next(queue); record != null; record = next(queue)) {
+                    record.write(out);
+                }
+            } finally {
+                out.close();
+            }
+
+        } finally {
+            close(queue);
+        }
+    }
+
+    PriorityQueue<Run> openRuns(Collection<File> group) throws Exception {
+
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(group.size(), new Comparator<Run>() {
+            public int compare(Run run1, Run run2) {
+                return comparator.compare(run1.record, run2.record);
+            }
+        });
+
+        try {
+            for (File file : group) {
+                Run run = new Run(file);
+                if (run.record != null) queue.add(run);
+            }
+
+        } catch (Exception e) {
+            close(queue);
+            throw e;
+        }
+
+        return queue;
+    }
+
+    Record next(PriorityQueue<Run> queue) throws Exception {
+
+        Run run = queue.poll();
+        if (run == null) return null;
+
+        Record record = run.record;
+
+        run.next();
+        if (run.record != null) queue.add(run);
+
+        return record;
+    }
+
+    void close(PriorityQueue<Run> queue) {
+
+        for (Run run : queue) {
+            try {
+                run.close();
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+
+        queue.clear();
+    }
+
+    /**
+     * Finishes adding entries. After this the entries can be read in sorted order.
+     */
+    public void sort() throws Exception {
+
+        if (files.isEmpty()) {
+            Collections.sort(buffer, comparator);
+            iterator = buffer.iterator();
+            return;
+        }
+
+        if (!buffer.isEmpty()) writeRun();
+        buffer = new ArrayList<Record>();
+
+        mergeRuns();
+
+        runs = openRuns(files);
+    }
+
+    /**
+     * Returns the next entry in sorted order or null if there are no more entries.
+     */
+    public Record next() throws Exception {
+
+        if (iterator != null) {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        return next(runs);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getMaxFanIn() {
+        return maxFanIn;
+    }
+
+    public void setMaxFanIn(int maxFanIn) {
+        this.maxFanIn = maxFanIn < 2 ? DEFAULT_MAX_FAN_IN : maxFanIn;
+    }
+
+    /**
+     * Removes the run files.
+     */
+    public void close() {
+
+        if (runs != null) close(runs);
+
+        for (File file : files) {
+            file.delete();
+        }
+
+        files.clear();
+        buffer.clear();
+    }
+}
@@ -11,16 +11,23 @@ import org.safehaus.penrose.source.SourceManager;
 import org.safehaus.penrose.synchronization.SynchronizationResult;
 import org.ietf.ldap.LDAPException;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Endi Sukma Dewata
  */
 public class SynchronizationModule extends Module implements SynchronizationModuleMBean {
 
+    public final static String WORK_DIR = "workDir";
+    public final static String RUN_SIZE   = "runSize";
+    public final static String MAX_FAN_IN = "maxFanIn";
+    public final static String THREADS    = "threads";
+
     protected String sourcePartitionName;
     protected String sourceName;
 
@@ -33,6 +40,13 @@ public class SynchronizationModule extends Module implements SynchronizationModu
     protected Collection<String> ignoredObjectClasses = new HashSet<String>();
     protected Collection<String> ignoredAttributes = new HashSet<String>();
 
+    protected File workDir;
+    protected int runSize = EntrySorter.DEFAULT_RUN_SIZE;
+    protected int maxFanIn = EntrySorter.DEFAULT_MAX_FAN_IN;
+    protected int threads = SynchronizationWriter.DEFAULT_THREADS;
+
+    private AtomicInteger counter = new AtomicInteger();
+
     public void init() throws Exception {
 
         String s = getParameter("source");
@@ -92,6 +106,27 @@ public class SynchronizationModule extends Module implements SynchronizationModu
                 ignoredAttributes.add(ignoredAttribute);
             }
         }
+
+        s = getParameter(WORK_DIR);
+        if (s != null) {
+            workDir = new File(s);
+
+            File path = partition.getPartitionContext().getPath();
+            if (!workDir.isAbsolute() && path != null) workDir = new File(path, workDir.getPath());
+        }
+        log.debug("Work directory: "+getWorkDir());
+
+        s = getParameter(RUN_SIZE);
+        if (s != null) runSize = Integer.parseInt(s);
+        log.debug("Run size: "+runSize);
+
+        s = getParameter(MAX_FAN_IN);
+        if (s != null) maxFanIn = Integer.parseInt(s);
+        log.debug("Max fan-in: "+maxFanIn);
+
+        s = getParameter(THREADS);
+        if (s != null) threads = Integer.parseInt(s);
+        log.debug("Threads: "+threads);
     }
 
     public void execute(Session session, AddRequest request) throws Exception {
@@ -714,192 +749,242 @@ public class SynchronizationModule extends Module implements SynchronizationModu
 
         final DN sourceDn = targetDn.getPrefix(targetSuffix).append(sourceSuffix);
 
-        final Collection<String> dns = new LinkedHashSet<String>();
+        // both sides are sorted by the target DN and merged, so the entries don't have to
+        // be kept in memory or retrieved again one by one
 
-        SearchRequest targetRequest = new SearchRequest();
-        targetRequest.setDn(targetDn);
-        targetRequest.setAttributes(new String[] { "dn" });
+        File dir = getWorkDir();
+        String name = getName()+"-"+counter.incrementAndGet();
 
-        if (warn) log.warn("Searching existing entries: "+targetDn);
+        final EntrySorter targets = new EntrySorter(dir, name+"-target", runSize, EntrySorter.ASCENDING);
+        final EntrySorter sources = new EntrySorter(dir, name+"-source", runSize, EntrySorter.ASCENDING);
+        final EntrySorter deletes = new EntrySorter(dir, name+"-delete", runSize, EntrySorter.DESCENDING);
 
-        SearchResponse targetResponse = new SearchResponse() {
-            public void add(SearchResult result) throws Exception {
+        targets.setMaxFanIn(maxFanIn);
+        sources.setMaxFanIn(maxFanIn);
+        deletes.setMaxFanIn(maxFanIn);
 
-                DN dn = result.getDn();
-                if (dn.equals(targetDn)) return;
+        try {
+            SearchRequest targetRequest = new SearchRequest();
+            targetRequest.setDn(targetDn);
 
-                totalCount++;
+            if (warn) log.warn("Searching existing entries: "+targetDn);
 
-                String normalizedDn = dn.getNormalizedDn();
-                //if (warn) log.warn(" - "+normalizedDn);
+            SearchResponse targetResponse = new SearchResponse() {
+                public void add(SearchResult result) throws Exception {
 
-                dns.add(normalizedDn);
+                    DN dn = result.getDn();
+                    if (dn.equals(targetDn)) return;
+
+                    totalCount++;
 
-                if (warn) {
-                    if (totalCount % 100 == 0) log.warn("Found "+totalCount+" entries.");
+                    // entries with ignored object classes are neither modified nor deleted
+                    targets.add(dn, checkSearchResult(result) ? result.getAttributes() : null);
+
+                    if (warn) {
+                        if (totalCount % 100 == 0) log.warn("Found "+totalCount+" entries.");
+                    }
                 }
-            }
-        };
+            };
+
+            Source target = getTarget();
 
-        final Source target = getTarget();
+            try {
+                target.search(session, targetRequest, targetResponse);
 
-        try {
-            target.search(session, targetRequest, targetResponse);
+            } catch (LDAPException e) {
+                int rc = e.getResultCode();
+                if (rc == LDAP.CONNECT_ERROR) {
+                    throw LDAP.createException(rc, "Unable to access target server.");
+                } else {
+                    throw e;
+                }
 
-        } catch (LDAPException e) {
-            int rc = e.getResultCode();
-            if (rc == LDAP.CONNECT_ERROR) {
-                throw LDAP.createException(rc, "Unable to access target server.");
-            } else {
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
                 throw e;
             }
 
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            throw e;
-        }
+            int rc1 = targetResponse.waitFor();
+            if (warn) log.warn("Search completed. RC="+rc1+".");
 
-        int rc1 = targetResponse.waitFor();
-        if (warn) log.warn("Search completed. RC="+rc1+".");
+            if (rc1 != LDAP.SUCCESS) {
+                throw LDAP.createException(rc1, "Unable to access target server.");
+            }
 
-        if (rc1 != LDAP.SUCCESS) {
-            throw LDAP.createException(rc1, "Unable to access target server.");
-        }
+            long targetEntries = targetResponse.getTotalCount();
+            if (warn) log.warn("Found "+targetEntries+" entries.");
+
+            result.setTargetEntries(targetEntries);
 
-        long targetEntries = targetResponse.getTotalCount();
-        if (warn) log.warn("Found "+targetEntries+" entries.");
+            SearchRequest sourceRequest = new SearchRequest();
+            sourceRequest.setDn(sourceDn);
 
-        result.setTargetEntries(targetEntries);
+            if (warn) log.warn("Searching new entries: "+sourceDn);
 
-        SearchRequest sourceRequest = new SearchRequest();
-        sourceRequest.setDn(sourceDn);
+            SearchResponse sourceResponse = new SearchResponse() {
+                public void add(SearchResult result2) throws Exception {
 
-        if (warn) log.warn("Searching new entries: "+sourceDn);
+                    DN dn2 = result2.getDn();
+                    if (dn2.equals(sourceDn)) return;
 
-        SearchResponse sourceResponse = new SearchResponse() {
-            public void add(SearchResult result2) throws Exception {
+                    totalCount++;
 
-                DN dn2 = result2.getDn();
-                if (dn2.equals(sourceDn)) return;
+                    DN dn1 = dn2.getPrefix(sourceSuffix).append(targetSuffix);
+                    sources.add(dn1, result2.getAttributes());
 
-                totalCount++;
+                    if (warn) {
+                        if (totalCount % 100 == 0) log.warn("Found "+totalCount+" entries.");
+                    }
+                }
+            };
 
-                DN dn1 = dn2.getPrefix(sourceSuffix).append(targetSuffix);
-                String normalizedDn = dn1.getNormalizedDn();
+            Source source = getSource();
 
-                if (dns.contains(normalizedDn)) {
+            try {
+                source.search(session, sourceRequest, sourceResponse);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                return result;
+            }
 
-                    SearchResult result1 = target.find(session, dn1);
+            int rc2 = sourceResponse.waitFor();
+            if (warn) log.warn("Search completed. RC="+rc2+".");
 
-                    Attributes attributes1 = result1.getAttributes();
-                    if (!checkSearchResult(result1)) return;
+            if (rc2 != LDAP.SUCCESS) {
+                return result;
+            }
 
-                    Attributes attributes2 = result2.getAttributes();
+            if (warn) log.warn("Found "+sourceResponse.getTotalCount()+" source entries.");
+            result.setSourceEntries(sourceResponse.getTotalCount());
 
-                    Collection<Modification> modifications = createModifications(
-                            attributes1,
-                            attributes2
-                    );
+            targets.sort();
+            sources.sort();
 
-                    if (modifications.isEmpty()) {
-                        //if (warn) log.warn("No changes, skipping "+normalizedDn+".");
-                        result.incUnchangedEntries();
+            SynchronizationWriter writer = new SynchronizationWriter(this, session, result, threads);
 
-                    } else { // modify entry
+            try {
+                merge(targets, sources, deletes, writer, result);
 
-                        //if (warn) log.warn("Modifying "+normalizedDn+".");
+                // delete the children before the parents
+                writer.flush();
+                deletes.sort();
 
-                        ModifyRequest request = new ModifyRequest();
-                        request.setDn(dn1);
-                        request.setModifications(modifications);
+                for (EntrySorter.Record record = deletes.next(); record != null; record = deletes.next()) {
 
-                        try {
-                            execute(session, request);
-                            result.incModifiedEntries();
+                    DeleteRequest request = new DeleteRequest();
+                    request.setDn(record.getDn());
 
-                        } catch (Exception e) {
-                            result.incFailedEntries();
-                        }
-                    }
+                    writer.delete(record.getKey(), request);
+                }
 
-                    dns.remove(normalizedDn);
+            } finally {
+                writer.close();
+            }
 
-                } else { // add entry
+        } finally {
+            targets.close();
+            sources.close();
+            deletes.close();
+        }
 
-                    //if (warn) log.warn("Adding "+normalizedDn+".");
+        long endTime = System.currentTimeMillis();
+        result.setDuration(endTime - startTime);
 
-                    AddRequest request = new AddRequest();
-                    request.setDn(dn1);
-                    request.setAttributes(result2.getAttributes());
+        if (warn) {
+            log.warn(result.toString());
+        }
+
+        return result;
+    }
 
-                    try {
-                        execute(session, request);
-                        result.incAddedEntries();
+    public void merge(
+            EntrySorter targets,
+            EntrySorter sources,
+            EntrySorter deletes,
+            SynchronizationWriter writer,
+            SynchronizationResult result
+    ) throws Exception {
 
-                    } catch (Exception e) {
-                        result.incFailedEntries();
-                    }
-                }
+        boolean warn = log.isWarnEnabled();
+        long count = 0;
 
-                if (warn) {
-                    if (totalCount % 100 == 0) log.warn("Processed "+totalCount+" entries.");
-                }
+        EntrySorter.Record record1 = targets.next();
+        EntrySorter.Record record2 = sources.next();
+
+        while (record1 != null || record2 != null) {
+
+            int c;
+            if (record1 == null) {
+                c = 1;
+            } else if (record2 == null) {
+                c = -1;
+            } else {
+                c = record1.getKey().compareTo(record2.getKey());
             }
-        };
 
-        Source source = getSource();
-        
-        try {
-            source.search(session, sourceRequest, sourceResponse);
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            return result;
-        }
+            if (c < 0) { // delete entry
 
-        int rc2 = sourceResponse.waitFor();
-        if (warn) log.warn("Search completed. RC="+rc2+".");
+                if (record1.getAttributes() != null) {
+                    deletes.add(new EntrySorter.Record(record1.getKey(), record1.getDn().toString(), null));
+                }
 
-        if (rc2 != LDAP.SUCCESS) {
-            return result;
-        }
+                record1 = targets.next();
 
-        if (warn) log.warn("Found "+sourceResponse.getTotalCount()+" source entries.");
-        result.setSourceEntries(sourceResponse.getTotalCount());
+            } else if (c > 0) { // add entry
 
-        for (String normalizedDn : dns) { // deleting entry
+                AddRequest request = new AddRequest();
+                request.setDn(record2.getDn());
+                request.setAttributes(record2.getAttributes());
 
-            List<DN> list = getDns(session, normalizedDn);
+                writer.add(record2.getKey(), request);
 
-            //DeleteRequest request = new DeleteRequest();
-            //request.setDn(normalizedDn);
-            //if (!execute(request)) success[0] = false;
+                record2 = sources.next();
 
-            for (int i=list.size()-1; i>=0; i--) {
-                DN dn = list.get(i);
+            } else {
 
-                //if (warn) log.warn("Deleting "+dn+".");
+                if (record1.getAttributes() != null) {
 
-                DeleteRequest deleteRequest = new DeleteRequest();
-                deleteRequest.setDn(dn);
+                    Collection<Modification> modifications = createModifications(
+                            record1.getAttributes(),
+                            record2.getAttributes()
+                    );
 
-                try {
-                    execute(session, deleteRequest);
-                    result.incDeletedEntries();
+                    if (modifications.isEmpty()) {
+                        synchronized (result) {
+                            result.incUnchangedEntries();
+                        }
+
+                    } else { // modify entry
+
+                        ModifyRequest request = new ModifyRequest();
+                        request.setDn(record1.getDn());
+                        request.setModifications(modifications);
 
-                } catch (Exception e) {
-                    result.incFailedEntries();
+                        writer.modify(record1.getKey(), request);
+                    }
                 }
+
+                record1 = targets.next();
+                record2 = sources.next();
             }
-        }
 
-        long endTime = System.currentTimeMillis();
-        result.setDuration(endTime - startTime);
+            count++;
 
-        if (warn) {
-            log.warn(result.toString());
+            if (warn) {
+                if (count % 100 == 0) log.warn("Processed "+count+" entries.");
+            }
         }
+    }
 
-        return result;
+    public File getWorkDir() {
+        if (workDir != null) return workDir;
+
+        File dir = new File("var"+File.separator+getName());
+
+        File path = partition.getPartitionContext().getPath();
+        if (path != null) dir = new File(path, dir.getPath());
+
+        return dir;
     }
 
 /*
@@ -0,0 +1,142 @@
+package org.safehaus.penrose.synchronization.module;
+
+import org.safehaus.penrose.ldap.AddRequest;
+import org.safehaus.penrose.ldap.DeleteRequest;
+import org.safehaus.penrose.ldap.ModifyRequest;
+import org.safehaus.penrose.ldap.Request;
+import org.safehaus.penrose.session.Session;
+import org.safehaus.penrose.synchronization.SynchronizationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the changes of a synchronization in a bounded pool of threads. An operation
+ * is not started while an operation on an ancestor or a descendant of the same entry
+ * is still running, so adds submitted parent first and deletes submitted children first
+ * are executed in that order. The number of pending operations is limited, so the
+ * caller waits if the target is slower than the reconciliation.
+ *
+ * @author Endi Sukma Dewata
+ */
+public class SynchronizationWriter {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    public final static int DEFAULT_THREADS = 4;
+
+    private SynchronizationModule module;
+    private Session session;
+    private SynchronizationResult result;
+
+    private int maxPending;
+    private ExecutorService executor;
+
+    // keys of the entries being modified
+    private Collection<String> pending = new ArrayList<String>();
+
+    public SynchronizationWriter(SynchronizationModule module, Session session, SynchronizationResult result, int threads) {
+        this.module = module;
+        this.session = session;
+        this.result = result;
+
+        if (threads <= 0) threads = DEFAULT_THREADS;
+        maxPending = threads * 2;
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    public void add(String key, AddRequest request) throws Exception {
+        submit(key, request);
+    }
+
+    public void modify(String key, ModifyRequest request) throws Exception {
+        submit(key, request);
+    }
+
+    public void delete(String key, DeleteRequest request) throws Exception {
+        submit(key, request);
+    }
+
+    void submit(final String key, final Request request) throws Exception {
+
+        synchronized (this) {
+            while (pending.size() >= maxPending || isBlocked(key)) {
+                wait();
+            }
+            pending.add(key);
+        }
+
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    execute(request);
+
+                } finally {
+                    synchronized (SynchronizationWriter.this) {
+                        pending.remove(key);
+                        SynchronizationWriter.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    boolean isBlocked(String key) {
+        for (String p : pending) {
+            if (p.equals(key) || EntrySorter.isAncestor(p, key) || EntrySorter.isAncestor(key, p)) return true;
+        }
+        return false;
+    }
+
+    void execute(Request request) {
+        try {
+            if (request instanceof AddRequest) {
+                module.execute(session, (AddRequest)request);
+                synchronized (result) {
+                    result.incAddedEntries();
+                }
+
+            } else if (request instanceof ModifyRequest) {
+                module.execute(session, (ModifyRequest)request);
+                synchronized (result) {
+                    result.incModifiedEntries();
+                }
+
+            } else if (request instanceof DeleteRequest) {
+                module.execute(session, (DeleteRequest)request);
+                synchronized (result) {
+                    result.incDeletedEntries();
+                }
+            }
+
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            synchronized (result) {
+                result.incFailedEntries();
+            }
+        }
+    }
+
+    /**
+     * Waits until the submitted operations have been executed.
+     */
+    public synchronized void flush() throws Exception {
+        while (!pending.isEmpty()) {
+            wait();
+        }
+    }
+
+    public void close() throws Exception {
+        try {
+            flush();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+}
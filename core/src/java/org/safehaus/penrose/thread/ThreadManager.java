@@ -23,6 +23,13 @@ import org.slf4j.Logger;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Thread pool of a partition. Besides executing independent tasks, it runs tasks
+ * forked by an operation which the caller joins later (e.g. searching child entries).
+ * The number of forked tasks is limited by the parallelism. A forked task which has
+ * not been started can be cancelled so the caller can run it itself instead of
+ * waiting for a pool thread.
+ */
 public class ThreadManager {
 
     public Logger log = LoggerFactory.getLogger(getClass());
@@ -32,13 +39,35 @@ public class ThreadManager {
     public int corePoolSize                  = ThreadManagerConfig.DEFAULT_CORE_POOL_SIZE;
     public int maximumPoolSize               = ThreadManagerConfig.DEFAULT_MAXIMUM_POOL_SIZE;
     public long keepAliveTime                = ThreadManagerConfig.DEFAULT_KEEP_ALIVE_TIME;
-    
+    public int queueSize                     = ThreadManagerConfig.DEFAULT_QUEUE_SIZE;
+    public int parallelism                   = ThreadManagerConfig.DEFAULT_PARALLELISM;
+    public boolean orderedResults            = ThreadManagerConfig.DEFAULT_ORDERED_RESULTS;
+
     public TimeUnit unit                     = TimeUnit.SECONDS;
     public BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<Runnable>();
 
     public ThreadGroup        threadGroup;
     public ThreadPoolExecutor executorService;
 
+    public Semaphore forkPermits;
+
+    public class ForkedTask implements Runnable {
+
+        Runnable runnable;
+
+        public ForkedTask(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        public void run() {
+            try {
+                runnable.run();
+            } finally {
+                forkPermits.release();
+            }
+        }
+    }
+
     public ThreadManager(String name) {
         threadGroup = new ThreadGroup(name);
     }
@@ -61,6 +90,23 @@ public class ThreadManager {
         if (s != null) keepAliveTime = Integer.parseInt(s);
         log.debug(" - keepAliveTime: "+keepAliveTime);
 
+        s = threadManagerConfig.getParameter(ThreadManagerConfig.QUEUE_SIZE);
+        if (s != null) queueSize = Integer.parseInt(s);
+        log.debug(" - queueSize: "+queueSize);
+
+        s = threadManagerConfig.getParameter(ThreadManagerConfig.PARALLELISM);
+        if (s != null) parallelism = Integer.parseInt(s);
+        if (parallelism <= 0) parallelism = maximumPoolSize;
+        log.debug(" - parallelism: "+parallelism);
+
+        s = threadManagerConfig.getParameter(ThreadManagerConfig.ORDERED_RESULTS);
+        if (s != null) orderedResults = Boolean.valueOf(s);
+        log.debug(" - orderedResults: "+orderedResults);
+
+        if (queueSize > 0) workQueue = new ArrayBlockingQueue<Runnable>(queueSize);
+
+        forkPermits = new Semaphore(parallelism);
+
         executorService = new ThreadPoolExecutor(
                 corePoolSize,
                 maximumPoolSize,
@@ -89,6 +135,35 @@ public class ThreadManager {
         executorService.execute(runnable);
     }
 
+    /**
+     * Submits a task which the caller will join. Returns the queued task, or null if
+     * the parallelism has been reached, the queue is full or the pool has been shut
+     * down and the caller should run the task itself.
+     */
+    public Runnable fork(Runnable runnable) {
+        if (!forkPermits.tryAcquire()) return null;
+
+        ForkedTask task = new ForkedTask(runnable);
+
+        try {
+            executorService.execute(task);
+            return task;
+
+        } catch (RejectedExecutionException e) {
+            forkPermits.release();
+            return null;
+        }
+    }
+
+    /**
+     * Removes a forked task which has not been started from the queue.
+     */
+    public boolean cancel(Runnable task) {
+        if (task == null || !executorService.remove(task)) return false;
+        forkPermits.release();
+        return true;
+    }
+
     public int getCorePoolSize() {
         return corePoolSize;
     }
@@ -113,6 +188,30 @@ public class ThreadManager {
         this.keepAliveTime = keepAliveTime;
     }
 
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isOrderedResults() {
+        return orderedResults;
+    }
+
+    public void setOrderedResults(boolean orderedResults) {
+        this.orderedResults = orderedResults;
+    }
+
     public TimeUnit getUnit() {
         return unit;
     }
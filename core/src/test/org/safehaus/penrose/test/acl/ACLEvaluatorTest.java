@@ -0,0 +1,144 @@
+package org.safehaus.penrose.test.acl;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.acl.ACI;
+import org.safehaus.penrose.acl.ACLEvaluator;
+import org.safehaus.penrose.acl.ReadableAttributes;
+import org.safehaus.penrose.directory.Entry;
+import org.safehaus.penrose.directory.EntryConfig;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.ldap.LDAP;
+import org.safehaus.penrose.session.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class ACLEvaluatorTest extends TestCase {
+
+    public static class TestEntry extends Entry {
+        public TestEntry(String dn, Entry parent) {
+            entryConfig = new EntryConfig(dn);
+            entryConfig.setName(dn);
+            this.parent = parent;
+        }
+    }
+
+    ACLEvaluator evaluator;
+
+    Entry root;
+    Entry users;
+    Entry user;
+
+    public void setUp() throws Exception {
+        evaluator = new ACLEvaluator();
+        evaluator.init(null);
+
+        root = new TestEntry("dc=Example,dc=com", null);
+        root.getEntryConfig().addACI(createACI(ACI.SUBJECT_USER, "cn=Manager,dc=Example,dc=com", ACI.SCOPE_SUBTREE, ACI.ACTION_GRANT, "rswad"));
+        root.getEntryConfig().addACI(createACI(ACI.SUBJECT_ANYBODY, null, ACI.SCOPE_SUBTREE, ACI.ACTION_GRANT, "rs"));
+
+        users = new TestEntry("ou=Users,dc=Example,dc=com", root);
+        users.getEntryConfig().addACI(createACI(ACI.SUBJECT_ANONYMOUS, null, ACI.SCOPE_OBJECT, ACI.ACTION_DENY, "rs"));
+
+        // dynamic entry
+        user = new TestEntry("uid=...,ou=Users,dc=Example,dc=com", users);
+        user.getEntryConfig().addACI(createACI(ACI.SUBJECT_SELF, null, ACI.SCOPE_SUBTREE, ACI.ACTION_GRANT, "w"));
+
+        // like the object ACIs, the first read ACI takes precedence
+        ACI aci = createACI(ACI.SUBJECT_SELF, null, ACI.SCOPE_SUBTREE, ACI.ACTION_GRANT, "r");
+        aci.setTarget(ACI.TARGET_ATTRIBUTES);
+        aci.setAttributes("userPassword");
+        user.getEntryConfig().addACI(aci);
+
+        aci = createACI(ACI.SUBJECT_ANYBODY, null, ACI.SCOPE_SUBTREE, ACI.ACTION_DENY, "r");
+        aci.setTarget(ACI.TARGET_ATTRIBUTES);
+        aci.setAttributes("userPassword, telephoneNumber");
+        user.getEntryConfig().addACI(aci);
+    }
+
+    public ACI createACI(String subject, String dn, String scope, String action, String permission) {
+        ACI aci = new ACI(permission);
+        aci.setSubject(subject);
+        aci.setDn(dn);
+        aci.setScope(scope);
+        aci.setAction(action);
+        return aci;
+    }
+
+    public Session createSession(String bindDn) {
+        Session session = new Session(null);
+        if (bindDn != null) session.setBindDn(bindDn);
+        return session;
+    }
+
+    public void testObjectPermission() throws Exception {
+
+        Session anonymous = createSession(null);
+        DN dn = new DN("uid=bob,ou=Users,dc=Example,dc=com");
+
+        assertEquals(LDAP.SUCCESS, evaluator.checkRead(anonymous, root, root.getDn()));
+        assertEquals(LDAP.INSUFFICIENT_ACCESS_RIGHTS, evaluator.checkRead(anonymous, users, users.getDn()));
+        assertEquals(LDAP.SUCCESS, evaluator.checkRead(anonymous, user, dn));
+        assertEquals(LDAP.INSUFFICIENT_ACCESS_RIGHTS, evaluator.checkWrite(anonymous, user, dn));
+
+        Session manager = createSession("CN=manager, dc=example,dc=com");
+        assertEquals(LDAP.SUCCESS, evaluator.checkWrite(manager, user, dn));
+        assertEquals(LDAP.SUCCESS, evaluator.checkDelete(manager, users, users.getDn()));
+
+        Session bob = createSession("uid=bob,ou=Users,dc=Example,dc=com");
+        assertEquals(LDAP.INSUFFICIENT_ACCESS_RIGHTS, evaluator.checkDelete(bob, users, users.getDn()));
+
+        // the decision depends on the target DN
+        assertEquals(LDAP.SUCCESS, evaluator.checkWrite(bob, user, dn));
+        assertEquals(LDAP.INSUFFICIENT_ACCESS_RIGHTS, evaluator.checkWrite(bob, user, new DN("uid=alice,ou=Users,dc=Example,dc=com")));
+        assertEquals(LDAP.SUCCESS, evaluator.checkWrite(bob, user, dn));
+
+        // rebinding changes the decisions
+        bob.setBindDn("uid=alice,ou=Users,dc=Example,dc=com");
+        assertEquals(LDAP.INSUFFICIENT_ACCESS_RIGHTS, evaluator.checkWrite(bob, user, dn));
+    }
+
+    public void testReadableAttributes() throws Exception {
+
+        DN bobDn = new DN("uid=bob,ou=Users,dc=Example,dc=com");
+
+        Session bob = createSession("uid=bob,ou=Users,dc=Example,dc=com");
+        ReadableAttributes attributes = evaluator.getReadableAttributes(bob, user, bobDn);
+        assertTrue(attributes.isReadable("cn"));
+        assertTrue(attributes.isReadable("userpassword"));
+        assertFalse(attributes.isReadable("telephonenumber"));
+
+        Session alice = createSession("uid=alice,ou=Users,dc=Example,dc=com");
+        attributes = evaluator.getReadableAttributes(alice, user, bobDn);
+        assertTrue(attributes.isReadable("cn"));
+        assertFalse(attributes.isReadable("userpassword"));
+
+        // the object ACI of the users entry doesn't apply to the subtree
+        Session anonymous = createSession(null);
+        attributes = evaluator.getReadableAttributes(anonymous, user, bobDn);
+        assertTrue(attributes.isReadable("cn"));
+
+        attributes = evaluator.getReadableAttributes(anonymous, users, users.getDn());
+        assertFalse(attributes.isReadable("ou"));
+    }
+
+    public void testInvalidate() throws Exception {
+
+        Session anonymous = createSession(null);
+        assertEquals(LDAP.SUCCESS, evaluator.checkSearch(anonymous, root, root.getDn()));
+
+        List<ACI> acl = new ArrayList<ACI>();
+        acl.add(createACI(ACI.SUBJECT_ANONYMOUS, null, ACI.SCOPE_OBJECT, ACI.ACTION_DENY, "s"));
+        acl.addAll(root.getACL());
+        root.getEntryConfig().setACL(acl);
+
+        // the compiled ACL is used until it's invalidated
+        assertEquals(LDAP.SUCCESS, evaluator.checkSearch(anonymous, root, root.getDn()));
+
+        evaluator.invalidate();
+        assertEquals(LDAP.INSUFFICIENT_ACCESS_RIGHTS, evaluator.checkSearch(anonymous, root, root.getDn()));
+    }
+}
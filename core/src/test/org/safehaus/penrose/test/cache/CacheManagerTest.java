@@ -0,0 +1,155 @@
+package org.safehaus.penrose.test.cache;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.cache.Cache;
+import org.safehaus.penrose.cache.CacheKey;
+import org.safehaus.penrose.cache.CacheManager;
+import org.safehaus.penrose.ldap.*;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class CacheManagerTest extends TestCase {
+
+    public CacheKey createKey(String dn, int scope) throws Exception {
+        SearchRequest request = new SearchRequest();
+        request.setDn(dn);
+        request.setScope(scope);
+
+        CacheKey key = new CacheKey();
+        key.setRequest(request);
+        key.setEntryId("users");
+
+        return key;
+    }
+
+    public Cache load(CacheManager cacheManager, CacheKey key, int count) throws Exception {
+        Cache cache = cacheManager.create(key);
+        assertNull(cacheManager.load(cache));
+
+        for (int i=0; i<count; i++) {
+            cache.add(new SearchResult("uid=user"+i+",ou=Users,dc=Example,dc=com", new Attributes()));
+        }
+
+        cacheManager.add(cache);
+        return cache;
+    }
+
+    public void testLoad() throws Exception {
+        CacheManager cacheManager = new CacheManager();
+        CacheKey key = createKey("ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_ONE);
+
+        assertNull(cacheManager.get(key));
+
+        Cache cache = cacheManager.create(key);
+        assertNull(cacheManager.load(cache));
+
+        // identical search waits for the same cache
+        assertSame(cache, cacheManager.load(cacheManager.create(key)));
+        assertSame(cache, cacheManager.get(key));
+        assertFalse(cache.isFinished());
+
+        cache.add(new SearchResult("uid=user,ou=Users,dc=Example,dc=com", new Attributes()));
+        cacheManager.add(cache);
+
+        assertTrue(cache.isFinished());
+        assertEquals(1, cacheManager.get(key).getResults().size());
+        assertEquals(1, cacheManager.getCount());
+        assertEquals(1, cacheManager.getMisses());
+        assertEquals(2, cacheManager.getHits());
+    }
+
+    public void testResultSize() throws Exception {
+        CacheManager cacheManager = new CacheManager();
+        cacheManager.setResultSize(10);
+
+        CacheKey key = createKey("ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_ONE);
+        Cache cache = load(cacheManager, key, 11);
+
+        assertNull(cache.getResults());
+        assertNull(cacheManager.get(key));
+    }
+
+    public void testEviction() throws Exception {
+        CacheManager cacheManager = new CacheManager(1);
+        cacheManager.setQuerySize(2);
+
+        CacheKey key1 = createKey("uid=user1,ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_BASE);
+        CacheKey key2 = createKey("uid=user2,ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_BASE);
+        CacheKey key3 = createKey("uid=user3,ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_BASE);
+
+        load(cacheManager, key1, 1);
+        load(cacheManager, key2, 1);
+
+        // key1 becomes the most recently used
+        assertNotNull(cacheManager.get(key1));
+
+        load(cacheManager, key3, 1);
+
+        assertNotNull(cacheManager.get(key1));
+        assertNull(cacheManager.get(key2));
+        assertNotNull(cacheManager.get(key3));
+        assertEquals(1, cacheManager.getEvictions());
+    }
+
+    public void testQuerySize() throws Exception {
+        CacheManager cacheManager = new CacheManager();
+        cacheManager.setQuerySize(10);
+
+        for (int i=0; i<100; i++) {
+            load(cacheManager, createKey("uid=user"+i+",ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_BASE), 1);
+        }
+
+        // the limit is not rounded up to one query per segment
+        assertEquals(10, cacheManager.getCount());
+        assertEquals(90, cacheManager.getEvictions());
+
+        cacheManager.setQuerySize(3);
+        assertEquals(3, cacheManager.getCount());
+    }
+
+    public void testMemorySize() throws Exception {
+        CacheManager cacheManager = new CacheManager(1);
+        cacheManager.setMemorySize(1);
+
+        CacheKey key = createKey("ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_ONE);
+        load(cacheManager, key, 1);
+
+        assertNull(cacheManager.get(key));
+        assertEquals(0, cacheManager.getSize());
+    }
+
+    public void testInvalidate() throws Exception {
+        CacheManager cacheManager = new CacheManager();
+
+        CacheKey base = createKey("uid=user1,ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_BASE);
+        CacheKey one = createKey("ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_ONE);
+        CacheKey other = createKey("ou=Groups,dc=Example,dc=com", SearchRequest.SCOPE_SUB);
+        other.setEntryId("groups");
+
+        load(cacheManager, base, 1);
+        load(cacheManager, one, 1);
+        load(cacheManager, other, 1);
+
+        cacheManager.invalidate("people", new DN("uid=user2,ou=Users,dc=Example,dc=com"));
+
+        assertNotNull(cacheManager.get(base));
+        assertNull(cacheManager.get(one));
+        assertNotNull(cacheManager.get(other));
+        assertEquals(1, cacheManager.getInvalidations());
+    }
+
+    public void testInvalidateLoading() throws Exception {
+        CacheManager cacheManager = new CacheManager();
+        CacheKey key = createKey("ou=Users,dc=Example,dc=com", SearchRequest.SCOPE_SUB);
+
+        Cache cache = cacheManager.create(key);
+        assertNull(cacheManager.load(cache));
+
+        cacheManager.invalidate(null, new DN("uid=user,ou=Users,dc=Example,dc=com"));
+        cacheManager.add(cache);
+
+        assertNull(cache.getResults());
+        assertNull(cacheManager.get(key));
+    }
+}
@@ -0,0 +1,256 @@
+package org.safehaus.penrose.test.changelog;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.changelog.ChangeLogApplier;
+import org.safehaus.penrose.ldap.Attributes;
+import org.safehaus.penrose.ldap.LDAP;
+import org.safehaus.penrose.ldap.SearchResult;
+import org.safehaus.penrose.session.Session;
+
+import java.util.*;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class ChangeLogApplierTest extends TestCase {
+
+    public SearchResult createChange(long changeNumber, String changeType, String targetDn) {
+        Attributes attributes = new Attributes();
+        attributes.setValue("changeNumber", ""+changeNumber);
+        attributes.setValue("changeType", changeType);
+        attributes.setValue("targetDN", targetDn);
+        return new SearchResult("changeNumber="+changeNumber+",cn=changelog", attributes);
+    }
+
+    public void testOrder() throws Exception {
+
+        final Map<String,List<Long>> applied = new HashMap<String,List<Long>>();
+        final List<Number> trackers = new ArrayList<Number>();
+
+        ChangeLogApplier applier = new ChangeLogApplier("test") {
+            public void apply(Session session, SearchResult result) throws Exception {
+                Attributes attributes = result.getAttributes();
+                String dn = (String)attributes.getValue("targetDN");
+                long changeNumber = Long.parseLong((String)attributes.getValue("changeNumber"));
+                synchronized (applied) {
+                    List<Long> list = applied.get(dn);
+                    if (list == null) {
+                        list = new ArrayList<Long>();
+                        applied.put(dn, list);
+                    }
+                    list.add(changeNumber);
+                }
+            }
+            public void addTracker(Number changeNumber) throws Exception {
+                trackers.add(changeNumber);
+            }
+        };
+
+        applier.setThreads(4);
+        applier.setQueueSize(10);
+        applier.setCommitSize(100);
+        applier.start();
+
+        for (int i=1; i<=1000; i++) {
+            applier.add(createChange(i, "modify", "uid=user"+(i % 7)+",ou=Users,dc=Example,dc=com"));
+        }
+
+        applier.close();
+
+        assertEquals(1000, applier.getAppliedCount());
+        assertEquals(0, applier.getLag());
+        assertEquals(1000L, applier.getLastCommittedNumber());
+
+        for (List<Long> list : applied.values()) {
+            List<Long> sorted = new ArrayList<Long>(list);
+            Collections.sort(sorted);
+            assertEquals(sorted, list);
+        }
+
+        long last = 0;
+        for (Number changeNumber : trackers) {
+            assertTrue(changeNumber.longValue() > last);
+            last = changeNumber.longValue();
+        }
+        assertTrue(trackers.size() >= 10);
+    }
+
+    public void testParentBeforeChild() throws Exception {
+
+        final Set<String> entries = Collections.synchronizedSet(new HashSet<String>());
+
+        ChangeLogApplier applier = new ChangeLogApplier("test") {
+            public void apply(Session session, SearchResult result) throws Exception {
+                Attributes attributes = result.getAttributes();
+                String dn = (String)attributes.getValue("targetDN");
+                String parentDn = dn.substring(dn.indexOf(',')+1);
+
+                if (!"dc=com".equals(parentDn) && !entries.contains(parentDn)) {
+                    throw new Exception("Parent "+parentDn+" not found.");
+                }
+
+                Thread.sleep(1);
+                entries.add(dn);
+            }
+            public void addTracker(Number changeNumber) throws Exception {
+            }
+        };
+
+        applier.setThreads(8);
+        applier.start();
+
+        applier.add(createChange(1, "add", "dc=Example,dc=com"));
+
+        long changeNumber = 2;
+        for (int i=0; i<10; i++) {
+            String ou = "ou=Unit"+i+",dc=Example,dc=com";
+            applier.add(createChange(changeNumber++, "add", ou));
+            for (int j=0; j<10; j++) {
+                applier.add(createChange(changeNumber++, "add", "uid=user"+j+","+ou));
+            }
+        }
+
+        applier.close();
+
+        assertEquals(111, entries.size());
+    }
+
+    public void testFailure() throws Exception {
+
+        final List<Number> trackers = new ArrayList<Number>();
+
+        ChangeLogApplier applier = new ChangeLogApplier("test") {
+            public void apply(Session session, SearchResult result) throws Exception {
+                if ("50".equals(result.getAttributes().getValue("changeNumber"))) {
+                    throw new Exception("Failed.");
+                }
+            }
+            public void addTracker(Number changeNumber) throws Exception {
+                trackers.add(changeNumber);
+            }
+        };
+
+        applier.setCommitSize(1);
+        applier.start();
+
+        try {
+            for (int i=1; i<=100; i++) {
+                applier.add(createChange(i, "modify", "uid=user"+i+",dc=Example,dc=com"));
+            }
+        } catch (Exception e) {
+            // the reader is stopped after the failure
+        }
+
+        try {
+            applier.close();
+            fail();
+
+        } catch (Exception e) {
+            assertEquals("Failed.", e.getMessage());
+        }
+
+        assertEquals(49L, applier.getLastCommittedNumber());
+    }
+
+    public ChangeLogApplier createApplier(final Set<String> entries, final long failingNumber, final List<Number> trackers) {
+        return new ChangeLogApplier("test") {
+            public void apply(Session session, SearchResult result) throws Exception {
+                Attributes attributes = result.getAttributes();
+                long changeNumber = Long.parseLong((String)attributes.getValue("changeNumber"));
+                String changeType = (String)attributes.getValue("changeType");
+                String dn = (String)attributes.getValue("targetDN");
+
+                if (changeNumber == failingNumber) {
+                    // let the other lanes apply the changes after this one
+                    Thread.sleep(200);
+                    throw new Exception("Failed.");
+                }
+
+                if ("add".equals(changeType)) {
+                    if (!entries.add(dn)) throw LDAP.createException(LDAP.ENTRY_ALREADY_EXISTS);
+
+                } else if ("delete".equals(changeType)) {
+                    if (!entries.remove(dn)) throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
+                }
+            }
+            public void addTracker(Number changeNumber) throws Exception {
+                trackers.add(changeNumber);
+            }
+        };
+    }
+
+    public void testReplay() throws Exception {
+
+        List<SearchResult> changes = new ArrayList<SearchResult>();
+        for (int i=1; i<=100; i++) {
+            changes.add(createChange(i, "add", "uid=user"+i+",dc=Example,dc=com"));
+        }
+        for (int i=1; i<=20; i++) {
+            changes.add(createChange(100+i, "delete", "uid=user"+(i*5)+",dc=Example,dc=com"));
+        }
+
+        Set<String> entries = Collections.synchronizedSet(new HashSet<String>());
+        List<Number> trackers = Collections.synchronizedList(new ArrayList<Number>());
+
+        ChangeLogApplier applier = createApplier(entries, 50, trackers);
+        applier.setCommitSize(1);
+        applier.start();
+
+        try {
+            for (SearchResult change : changes) {
+                applier.add(change);
+            }
+        } catch (Exception e) {
+            // the reader is stopped after the failure
+        }
+
+        try {
+            applier.close();
+            fail();
+
+        } catch (Exception e) {
+            assertEquals("Failed.", e.getMessage());
+        }
+
+        assertEquals(49L, applier.getLastCommittedNumber());
+        assertTrue(entries.contains("uid=user51,dc=Example,dc=com"));
+
+        Number replayNumber = applier.getReplayNumber();
+        assertNotNull(replayNumber);
+
+        // the next run starts after the tracker and replays the changes applied by other lanes
+        applier = createApplier(entries, -1, trackers);
+        applier.setReplayNumber(replayNumber);
+        applier.start();
+
+        for (SearchResult change : changes.subList(49, changes.size())) {
+            applier.add(change);
+        }
+
+        applier.close();
+
+        assertEquals(120L, applier.getLastCommittedNumber());
+        assertNull(applier.getReplayNumber());
+        assertEquals(80, entries.size());
+        assertFalse(entries.contains("uid=user50,dc=Example,dc=com"));
+        assertTrue(entries.contains("uid=user51,dc=Example,dc=com"));
+    }
+
+    public void testNoReplay() throws Exception {
+
+        Set<String> entries = Collections.synchronizedSet(new HashSet<String>());
+        entries.add("uid=user1,dc=Example,dc=com");
+
+        ChangeLogApplier applier = createApplier(entries, -1, new ArrayList<Number>());
+        applier.start();
+        applier.add(createChange(1, "add", "uid=user1,dc=Example,dc=com"));
+
+        try {
+            applier.close();
+            fail();
+
+        } catch (Exception e) {
+            assertEquals(LDAP.ENTRY_ALREADY_EXISTS, LDAP.getReturnCode(e));
+        }
+    }
+}
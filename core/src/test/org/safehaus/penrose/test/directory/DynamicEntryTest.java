@@ -0,0 +1,146 @@
+package org.safehaus.penrose.test.directory;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.directory.DynamicEntry;
+import org.safehaus.penrose.directory.EntrySource;
+import org.safehaus.penrose.filter.Filter;
+import org.safehaus.penrose.filter.OrFilter;
+import org.safehaus.penrose.filter.SimpleFilter;
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.session.Session;
+import org.safehaus.penrose.source.Field;
+import org.safehaus.penrose.source.FieldConfig;
+import org.safehaus.penrose.source.Source;
+import org.safehaus.penrose.source.SourceConfig;
+
+import java.util.*;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class DynamicEntryTest extends TestCase {
+
+    /**
+     * A source which compares values without case like most directories and databases.
+     */
+    public static class MemorySource extends Source {
+
+        List<String> values = new ArrayList<String>();
+        List<Filter> filters = new ArrayList<Filter>();
+
+        public MemorySource(boolean caseSensitive) {
+            SourceConfig sourceConfig = new SourceConfig();
+            sourceConfig.setName("groups");
+            setSourceConfig(sourceConfig);
+
+            FieldConfig fieldConfig = new FieldConfig("member", false);
+            fieldConfig.setCaseSensitive(caseSensitive);
+            addField(new Field(this, fieldConfig));
+        }
+
+        public void search(Session session, SearchRequest request, SearchResponse response) throws Exception {
+
+            Filter filter = request.getFilter();
+            filters.add(filter);
+
+            Collection<SimpleFilter> list = new ArrayList<SimpleFilter>();
+            if (filter instanceof OrFilter) {
+                for (Filter f : ((OrFilter)filter).getFilters()) list.add((SimpleFilter)f);
+            } else {
+                list.add((SimpleFilter)filter);
+            }
+
+            for (String value : values) {
+                for (SimpleFilter sf : list) {
+                    if (!value.equalsIgnoreCase(sf.getValue().toString())) continue;
+
+                    Attributes attributes = new Attributes();
+                    attributes.setValue("member", value);
+                    response.add(new SearchResult("member="+value, attributes));
+                    break;
+                }
+            }
+
+            response.close();
+        }
+    }
+
+    DynamicEntry entry = new DynamicEntry();
+
+    public Collection<Object> createLinks(String... links) {
+        return new ArrayList<Object>(Arrays.asList(links));
+    }
+
+    public void testSearchLinks() throws Exception {
+
+        MemorySource source = new MemorySource(false);
+        source.values.add("alice");
+        source.values.add("bob");
+        source.values.add("carol");
+
+        Map<String,Collection<SearchResult>> results = entry.searchLinks(
+                null, new EntrySource(source), "member", createLinks("alice", "bob", "dave", "bob")
+        );
+
+        // the links are searched at once and the duplicates are removed
+        assertEquals(1, source.filters.size());
+        OrFilter filter = (OrFilter)source.filters.get(0);
+        assertEquals(3, filter.getFilters().size());
+
+        assertEquals(2, results.size());
+        assertEquals(1, results.get("alice").size());
+        assertEquals(1, results.get("bob").size());
+        assertNull(results.get("dave"));
+    }
+
+    public void testSingleLink() throws Exception {
+
+        MemorySource source = new MemorySource(false);
+        source.values.add("alice");
+
+        entry.searchLinks(null, new EntrySource(source), "member", createLinks("alice"));
+
+        assertEquals(1, source.filters.size());
+        assertTrue(source.filters.get(0) instanceof SimpleFilter);
+    }
+
+    public void testCaseInsensitiveLinks() throws Exception {
+
+        MemorySource source = new MemorySource(false);
+        source.values.add("Alice");
+
+        Map<String,Collection<SearchResult>> results = entry.searchLinks(
+                null, new EntrySource(source), "member", createLinks("ALICE", "alice")
+        );
+
+        assertTrue(source.filters.get(0) instanceof SimpleFilter);
+
+        Field field = source.getField("member");
+        assertEquals(1, results.get(entry.normalizeLink(field, "ALICE")).size());
+        assertEquals(1, results.get(entry.normalizeLink(field, "alice")).size());
+    }
+
+    public void testCaseSensitiveLinks() throws Exception {
+
+        MemorySource source = new MemorySource(true);
+        source.values.add("ABC");
+        source.values.add("abc");
+
+        Map<String,Collection<SearchResult>> results = entry.searchLinks(
+                null, new EntrySource(source), "member", createLinks("ABC", "abc")
+        );
+
+        OrFilter filter = (OrFilter)source.filters.get(0);
+        assertEquals(2, filter.getFilters().size());
+
+        Field field = source.getField("member");
+
+        Collection<SearchResult> list = results.get(entry.normalizeLink(field, "ABC"));
+        assertEquals(1, list.size());
+        assertEquals("ABC", list.iterator().next().getAttributes().getValue("member"));
+
+        list = results.get(entry.normalizeLink(field, "abc"));
+        assertEquals(1, list.size());
+        assertEquals("abc", list.iterator().next().getAttributes().getValue("member"));
+    }
+}
@@ -6,6 +6,10 @@ import org.safehaus.penrose.ldap.RDN;
 import org.apache.log4j.Logger;
 
 import java.util.Collection;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ByteArrayInputStream;
 
 /**
  * @author Endi S. Dewata
@@ -36,6 +40,54 @@ public class DNTest extends TestCase {
         assertEquals(parentDn1, parentDn2);
     }
 
+    public void testInternParentDn() throws Exception {
+        DN dn1 = new DN("cn=James Bond,ou=Users,dc=Example,dc=com");
+        DN dn2 = new DN("cn=Jason Bourne,ou=Users,dc=Example,dc=com");
+
+        assertSame(dn1.getParentDn(), dn2.getParentDn());
+        assertTrue(new DN("dc=com").getParentDn().isEmpty());
+    }
+
+    public void testInternPoolIsBounded() throws Exception {
+        for (int i=0; i<2*DN.MAX_POOL_SIZE; i++) {
+            DN.intern(new DN("ou=Group"+i+",dc=Example,dc=com"));
+        }
+
+        // recently used DNs are still interned after the pool is full
+        DN dn = DN.intern(new DN("ou=New,dc=Example,dc=com"));
+        assertSame(dn, DN.intern(new DN("ou=New,dc=Example,dc=com")));
+    }
+
+    public void testSerialization() throws Exception {
+        DN dn1 = new DN("uid=test,ou=Users,dc=Example,dc=com");
+        dn1.parse();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(dn1);
+        out.writeObject(new DN("ou=Groups,dc=Example,dc=com"));
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        DN dn2 = (DN)in.readObject();
+        DN dn3 = (DN)in.readObject();
+
+        assertEquals(dn1, dn2);
+        assertEquals("uid=test", dn2.getRdn().toString());
+        assertEquals(new DN("ou=Groups,dc=Example,dc=com"), dn3);
+    }
+
+    public void testAppend() throws Exception {
+        DN dn = new DN("cn=James Bond").append("ou=Users,dc=Example,dc=com");
+
+        assertEquals(4, dn.getLength());
+        assertEquals("cn=James Bond,ou=Users,dc=Example,dc=com", dn.toString());
+        assertEquals("cn=james bond,ou=users,dc=example,dc=com", dn.getNormalizedDn());
+
+        dn = new DN("dc=Example,dc=com").prepend("ou=Users");
+        assertTrue(dn.matches("OU=users,DC=example,DC=com"));
+    }
+
     public void testEndsWith() throws Exception {
         DN dn = new DN("ou=Users,dc=Example,dc=com");
 
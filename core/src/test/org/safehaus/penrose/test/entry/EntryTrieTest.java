@@ -0,0 +1,89 @@
+package org.safehaus.penrose.test.entry;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.directory.Entry;
+import org.safehaus.penrose.directory.EntryConfig;
+import org.safehaus.penrose.directory.EntryTrie;
+import org.safehaus.penrose.ldap.DN;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class EntryTrieTest extends TestCase {
+
+    Entry root;
+    Entry users;
+    Entry user;
+    Entry groups;
+    Entry proxy;
+
+    EntryTrie trie;
+
+    public class TestEntry extends Entry {
+        public TestEntry(String dn) {
+            entryConfig = new EntryConfig(dn);
+        }
+    }
+
+    public class TestProxyEntry extends TestEntry {
+        public TestProxyEntry(String dn) {
+            super(dn);
+        }
+        public List<Entry> findEntries(DN dn) throws Exception {
+            List<Entry> results = new ArrayList<Entry>();
+            if (dn.endsWith(getDn())) results.add(this);
+            return results;
+        }
+    }
+
+    public void setUp() throws Exception {
+        root = new TestEntry("dc=Example,dc=com");
+
+        users = new TestEntry("ou=Users,dc=Example,dc=com");
+        root.addChild(users);
+
+        user = new TestEntry("uid=...,ou=Users,dc=Example,dc=com");
+        users.addChild(user);
+
+        groups = new TestEntry("ou=Groups,dc=Example,dc=com");
+        root.addChild(groups);
+
+        proxy = new TestProxyEntry("ou=Proxy,dc=Example,dc=com");
+        root.addChild(proxy);
+
+        trie = new EntryTrie();
+        trie.addTree(root);
+    }
+
+    public void assertFound(Entry entry, String dn) throws Exception {
+        List<Entry> results = trie.find(new DN(dn));
+        assertEquals(root.findEntries(new DN(dn)), results);
+        assertEquals(1, results.size());
+        assertSame(entry, results.get(0));
+    }
+
+    public void testStaticEntry() throws Exception {
+        assertFound(root, "dc=Example,dc=com");
+        assertFound(users, "OU=users,DC=example,DC=com");
+        assertFound(groups, "ou=Groups,dc=Example,dc=com");
+    }
+
+    public void testDynamicEntry() throws Exception {
+        assertFound(user, "uid=jstockton,ou=Users,dc=Example,dc=com");
+        assertFound(user, "uid=...,ou=Users,dc=Example,dc=com");
+    }
+
+    public void testProxyEntry() throws Exception {
+        assertFound(proxy, "ou=Proxy,dc=Example,dc=com");
+        assertFound(proxy, "cn=Test,ou=Proxy,dc=Example,dc=com");
+    }
+
+    public void testNotFound() throws Exception {
+        assertTrue(trie.find(new DN("uid=jstockton,ou=Groups,dc=Example,dc=com")).isEmpty());
+        assertTrue(trie.find(new DN("dc=com")).isEmpty());
+        assertTrue(trie.find(new DN("dc=Example,dc=org")).isEmpty());
+    }
+}
@@ -0,0 +1,142 @@
+package org.safehaus.penrose.test.federation;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.federation.module.ConflictDetector;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class ConflictDetectorTest extends TestCase {
+
+    File dir;
+
+    public void setUp() throws Exception {
+        dir = File.createTempFile("conflicts", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    public void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) delete(f);
+        }
+        file.delete();
+    }
+
+    public void scan(ConflictDetector detector) throws Exception {
+        detector.begin();
+        for (int i=0; i<1000; i++) {
+            detector.add(ConflictDetector.normalize("uidNumber", ""+(1000+i)), "nis1", "uid=user"+i+",ou=Users");
+        }
+        detector.add(ConflictDetector.normalize("uidNumber", "1005"), "nis2", "uid=bob,ou=Users");
+        detector.add(ConflictDetector.normalize("uidNumber", "1007"), "nis2", "uid=user7,ou=Users");
+        detector.end();
+    }
+
+    public void testDetect() throws Exception {
+        ConflictDetector detector = new ConflictDetector(dir, 8, ConflictDetector.DEFAULT_MAX_BUCKET_SIZE);
+        scan(detector);
+
+        Collection<ConflictDetector.Conflict> conflicts = detector.detect(2);
+        assertEquals(2, conflicts.size());
+    }
+
+    public void testSplit() throws Exception {
+        // every bucket is split into smaller files
+        ConflictDetector detector = new ConflictDetector(dir, 2, 100);
+        scan(detector);
+
+        Collection<ConflictDetector.Conflict> conflicts = detector.detect(2);
+        assertEquals(2, conflicts.size());
+    }
+
+    public void testIncremental() throws Exception {
+        ConflictDetector detector = new ConflictDetector(dir, 8, ConflictDetector.DEFAULT_MAX_BUCKET_SIZE);
+        scan(detector);
+        detector.detect(2);
+
+        // bob gets a unique number, alice takes user1's number
+        detector.beginChanges();
+        detector.addChange(ConflictDetector.normalize("uidNumber", "5000"), "nis2", "uid=bob,ou=Users");
+        detector.addChange(ConflictDetector.normalize("uidNumber", "1001"), "nis2", "uid=alice,ou=Users");
+
+        // the conflict of user7 is kept, the conflict of bob is resolved
+        Collection<ConflictDetector.Conflict> conflicts = detector.detect(2);
+        assertEquals(2, conflicts.size());
+
+        Map<String,ConflictDetector.Conflict> map = new HashMap<String,ConflictDetector.Conflict>();
+        for (ConflictDetector.Conflict conflict : conflicts) {
+            map.put(conflict.getKey(), conflict);
+        }
+
+        assertEquals(2, map.get("uidnumber=1001").getRecords().size());
+        assertEquals(2, map.get("uidnumber=1007").getRecords().size());
+        assertNull(map.get("uidnumber=1005"));
+
+        // the full check finds the same conflicts
+        conflicts = detector.detect(2);
+        assertEquals(2, conflicts.size());
+    }
+
+    public void testUnchangedBuckets() throws Exception {
+        ConflictDetector detector = new ConflictDetector(dir, 8, ConflictDetector.DEFAULT_MAX_BUCKET_SIZE);
+        scan(detector);
+
+        detector.detect(2);
+
+        File bucketsDir = detector.getBucketsDir();
+        for (int i=0; i<8; i++) {
+            detector.getBucketFile(bucketsDir, i).setLastModified(0);
+            detector.getConflictsFile(bucketsDir, i).setLastModified(0);
+        }
+
+        // a new entry only appends to the bucket of its key
+        String key = ConflictDetector.normalize("uidNumber", "5000");
+        detector.beginChanges();
+        detector.addChange(key, "nis2", "uid=alice,ou=Users");
+
+        // the conflicts of the unchanged buckets are still reported
+        assertEquals(2, detector.detect(2).size());
+
+        int modified = 0;
+        int checked = 0;
+        for (int i=0; i<8; i++) {
+            if (detector.getBucketFile(bucketsDir, i).lastModified() != 0) modified++;
+            if (detector.getConflictsFile(bucketsDir, i).lastModified() != 0) checked++;
+        }
+        assertEquals(1, modified);
+        assertEquals(1, checked);
+
+        // the conflict of user7 is still found
+        assertEquals(2, detector.detect(2).size());
+    }
+
+    public void testTooManyChanges() throws Exception {
+        ConflictDetector detector = new ConflictDetector(dir, 8, ConflictDetector.DEFAULT_MAX_BUCKET_SIZE);
+        scan(detector);
+
+        detector.beginChanges();
+        detector.setMaxChanges(10);
+
+        try {
+            for (int i=0; i<100; i++) {
+                detector.addChange(ConflictDetector.normalize("uidNumber", ""+(5000+i)), "nis2", "uid=user"+i+",ou=Users");
+            }
+            fail();
+
+        } catch (ConflictDetector.TooManyChangesException e) {
+            assertTrue(detector.isFull());
+            assertEquals(10, detector.getChangeCount());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.safehaus.penrose.test.federation;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.federation.module.IdentityLinkIndex;
+import org.safehaus.penrose.ldap.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class IdentityLinkIndexTest extends TestCase {
+
+    IdentityLinkIndex index;
+
+    DN bob;
+    DN alice;
+
+    public void setUp() throws Exception {
+        index = new IdentityLinkIndex("uid", "seeAlso");
+
+        bob = new DN("uid=bob,ou=Users,dc=Global");
+        Attributes attributes = new Attributes();
+        attributes.addValue("uid", "bob");
+        attributes.addValue("seeAlso", "uid=bob,ou=Users,dc=Local");
+        index.add(bob, attributes);
+
+        alice = new DN("uid=alice,ou=Users,dc=Global");
+        attributes = new Attributes();
+        attributes.addValue("uid", "alice");
+        index.add(alice, attributes);
+    }
+
+    public void testFind() throws Exception {
+        assertEquals(bob, index.findByKey("BOB").iterator().next());
+        assertEquals(bob, index.findByLink("uid=bob,ou=users,dc=local").iterator().next());
+        assertTrue(index.findByLink("uid=alice,ou=users,dc=local").isEmpty());
+
+        index.addLink(alice, "uid=alice,ou=Users,dc=Local");
+        assertEquals(alice, index.findByLink("uid=alice,ou=users,dc=local").iterator().next());
+
+        index.removeLink(bob, "uid=bob,ou=Users,dc=Local");
+        assertTrue(index.findByLink("uid=bob,ou=users,dc=local").isEmpty());
+    }
+
+    public void testModify() throws Exception {
+        Collection<Modification> modifications = new ArrayList<Modification>();
+        modifications.add(new Modification(Modification.REPLACE, new Attribute("uid", "robert")));
+        index.modify(bob, modifications);
+
+        assertTrue(index.findByKey("bob").isEmpty());
+        assertEquals(bob, index.findByKey("robert").iterator().next());
+
+        DN robert = new DN("uid=robert,ou=Users,dc=Global");
+        index.rename(bob, robert);
+        assertEquals(robert, index.findByKey("robert").iterator().next());
+        assertEquals(robert, index.findByLink("uid=bob,ou=users,dc=local").iterator().next());
+
+        index.remove(robert);
+        assertTrue(index.findByKey("robert").isEmpty());
+        assertEquals(1, index.getSize());
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("links", ".dat");
+
+        try {
+            index.setTimestamp(1234);
+            index.save(file);
+
+            IdentityLinkIndex index2 = new IdentityLinkIndex("uid", "seeAlso");
+            index2.load(file);
+
+            // the loaded index has to be validated against the target
+            assertFalse(index2.isComplete());
+            assertEquals(1234, index2.getTimestamp());
+            assertEquals(2, index2.getSize());
+            assertEquals(bob, index2.findByLink("uid=bob,ou=users,dc=local").iterator().next());
+            assertEquals(alice, index2.findByKey("alice").iterator().next());
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testDirty() throws Exception {
+        File file = File.createTempFile("links", ".dat");
+
+        try {
+            index.save(file);
+            assertFalse(index.isDirty());
+
+            // adding an unchanged entry doesn't change the index
+            Attributes attributes = new Attributes();
+            attributes.addValue("uid", "BOB");
+            attributes.addValue("seeAlso", "uid=bob,ou=Users,dc=Local");
+            index.add(bob, attributes);
+            index.addLink(bob, "uid=bob,ou=users,dc=local");
+            index.removeLink(alice, "uid=alice,ou=Users,dc=Local");
+            assertFalse(index.isDirty());
+
+            Collection<Modification> modifications = new ArrayList<Modification>();
+            modifications.add(new Modification(Modification.REPLACE, new Attribute("uid", "bob")));
+            index.modify(bob, modifications);
+            assertFalse(index.isDirty());
+
+            attributes.setValue("seeAlso", "uid=robert,ou=Users,dc=Local");
+            index.add(bob, attributes);
+            assertTrue(index.isDirty());
+            assertEquals(bob, index.findByLink("uid=robert,ou=users,dc=local").iterator().next());
+
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.safehaus.penrose.test.interpreter;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.interpreter.CompiledScript;
+import org.safehaus.penrose.interpreter.DefaultInterpreter;
+import org.safehaus.penrose.interpreter.InterpreterPool;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class CompiledScriptTest extends TestCase {
+
+    public void testSimpleScripts() throws Exception {
+        assertTrue(CompiledScript.compile("cn").isSimple());
+        assertTrue(CompiledScript.compile("rdn.uid").isSimple());
+        assertTrue(CompiledScript.compile("\"Users\"").isSimple());
+        assertTrue(CompiledScript.compile("u.firstName+\" \"+u.lastName").isSimple());
+        assertTrue(CompiledScript.compile("u.firstName + \" \" + u.lastName;").isSimple());
+    }
+
+    public void testComplexScripts() throws Exception {
+        assertFalse(CompiledScript.compile("u.name.toLowerCase()").isSimple());
+        assertFalse(CompiledScript.compile("return cn;").isSimple());
+        assertFalse(CompiledScript.compile("a = 1; b").isSimple());
+        assertFalse(CompiledScript.compile("1 + 2").isSimple());
+        assertFalse(CompiledScript.compile("cn +").isSimple());
+        assertFalse(CompiledScript.compile("").isSimple());
+    }
+
+    public void testEval() throws Exception {
+        DefaultInterpreter interpreter = new DefaultInterpreter();
+        interpreter.set("u.firstName", "James");
+        interpreter.set("u.lastName", "Bond");
+        interpreter.set("u.id", new Integer(7));
+
+        assertEquals("James Bond", interpreter.eval("u.firstName+\" \"+u.lastName"));
+        assertEquals("00\"7", interpreter.eval("\"00\\\"\"+u.id"));
+
+        // evaluated without creating a BeanShell interpreter
+        assertNull(interpreter.interpreter);
+
+        assertEquals("james", interpreter.eval("u.firstName.toLowerCase()"));
+        assertNotNull(interpreter.interpreter);
+
+        assertEquals("James Bond", interpreter.eval("u.firstName+\" \"+u.lastName"));
+    }
+
+    public void testPool() throws Exception {
+        InterpreterPool pool = new InterpreterPool(getClass().getClassLoader());
+
+        DefaultInterpreter interpreter1 = new DefaultInterpreter();
+        interpreter1.setPool(pool);
+        interpreter1.set("cn", "James Bond");
+        assertEquals("james bond", interpreter1.eval("cn.toLowerCase()"));
+        assertEquals(new Integer(1), interpreter1.eval("foo() { return 1; } i = foo();"));
+
+        bsh.Interpreter bsh = interpreter1.interpreter;
+        interpreter1.clear();
+        assertEquals(1, pool.getSize());
+
+        // the same BeanShell interpreter is bound to the variables of the next evaluation
+        DefaultInterpreter interpreter2 = new DefaultInterpreter();
+        interpreter2.setPool(pool);
+        interpreter2.set("sn", "Bond");
+        assertEquals("BOND", interpreter2.eval("sn.toUpperCase()"));
+        assertSame(bsh, interpreter2.interpreter);
+        assertEquals(0, pool.getSize());
+
+        assertNull(interpreter2.eval("cn"));
+        assertNull(interpreter2.eval("i"));
+        assertEquals(Boolean.TRUE, interpreter2.eval("cn == void"));
+
+        try {
+            interpreter2.eval("foo()");
+            fail();
+        } catch (Exception e) {
+            // the method has been unset
+        }
+
+        // the default imports are still available
+        assertEquals("4", interpreter2.eval("String.valueOf(sn.length())"));
+    }
+
+    public void testUnresolved() throws Exception {
+        DefaultInterpreter interpreter = new DefaultInterpreter();
+        interpreter.set("a", new Integer(1));
+        interpreter.set("b", new Integer(2));
+
+        assertSame(CompiledScript.UNRESOLVED, CompiledScript.compile("a+b").eval(interpreter));
+        assertSame(CompiledScript.UNRESOLVED, CompiledScript.compile("c").eval(interpreter));
+
+        assertEquals(new Integer(3), interpreter.eval("a+b"));
+    }
+}
@@ -0,0 +1,80 @@
+package org.safehaus.penrose.test.jdbc;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.jdbc.scheduler.ChecksumStore;
+import org.safehaus.penrose.ldap.Attributes;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class ChecksumStoreTest extends TestCase {
+
+    public void testChecksum() throws Exception {
+        Attributes attributes1 = new Attributes();
+        attributes1.addValue("uid", "bob");
+        attributes1.addValue("mail", "bob@example.com");
+        attributes1.addValue("mail", "robert@example.com");
+
+        Attributes attributes2 = new Attributes();
+        attributes2.addValue("MAIL", "robert@example.com");
+        attributes2.addValue("mail", "bob@example.com");
+        attributes2.addValue("UID", "bob");
+
+        assertEquals(ChecksumStore.checksum(attributes1), ChecksumStore.checksum(attributes2));
+
+        attributes2.setValue("uid", "alice");
+        assertFalse(ChecksumStore.checksum(attributes1) == ChecksumStore.checksum(attributes2));
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("checksums", ".dat");
+        file.delete();
+
+        try {
+            ChecksumStore store = new ChecksumStore(file, 4);
+            assertFalse(store.exists());
+
+            for (int i=0; i<100; i++) {
+                String dn = "uid=user"+i+",ou=Users,dc=Example,dc=com";
+                store.getRecords(dn.toLowerCase()).put(dn.toLowerCase(), new ChecksumStore.Record(dn, i));
+            }
+            store.save();
+
+            ChecksumStore store2 = new ChecksumStore(file, 4);
+            store2.load();
+            assertTrue(store2.exists());
+            assertEquals(100, store2.getCount());
+
+            String ndn = "uid=user42,ou=users,dc=example,dc=com";
+            ChecksumStore.Record record = store2.getRecords(ndn).get(ndn);
+            assertEquals("uid=user42,ou=Users,dc=Example,dc=com", record.getDn());
+            assertEquals(42, record.getChecksum());
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testOldVersion() throws Exception {
+        File file = File.createTempFile("checksums", ".dat");
+
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+            out.writeInt(1);
+            out.writeLong(0);
+            out.close();
+
+            // the checksums have to be created again
+            ChecksumStore store = new ChecksumStore(file, 4);
+            store.load();
+            assertFalse(store.exists());
+
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.safehaus.penrose.test.jdbc;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.filter.Filter;
+import org.safehaus.penrose.filter.OrFilter;
+import org.safehaus.penrose.filter.SimpleFilter;
+import org.safehaus.penrose.jdbc.StatementSource;
+import org.safehaus.penrose.jdbc.connection.JDBCFilterBuilder;
+import org.safehaus.penrose.partition.Partition;
+import org.safehaus.penrose.partition.PartitionConfig;
+import org.safehaus.penrose.source.FieldConfig;
+import org.safehaus.penrose.source.SourceConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class JDBCFilterBuilderTest extends TestCase {
+
+    Partition partition;
+
+    public void setUp() throws Exception {
+
+        SourceConfig sourceConfig = new SourceConfig();
+        sourceConfig.setName("users");
+        sourceConfig.addFieldConfig(new FieldConfig("uid", true));
+
+        FieldConfig fieldConfig = new FieldConfig("code", false);
+        fieldConfig.setCaseSensitive(true);
+        sourceConfig.addFieldConfig(fieldConfig);
+
+        sourceConfig.addFieldConfig(new FieldConfig("cn", false));
+
+        PartitionConfig partitionConfig = new PartitionConfig();
+        partitionConfig.setName("example");
+        partitionConfig.getSourceConfigManager().addSourceConfig(sourceConfig);
+
+        partition = new Partition();
+        partition.setPartitionConfig(partitionConfig);
+    }
+
+    public JDBCFilterBuilder createBuilder() throws Exception {
+
+        JDBCFilterBuilder builder = new JDBCFilterBuilder(partition) {
+            public Partition getPartition(String name) {
+                return partition;
+            }
+        };
+
+        StatementSource source = new StatementSource();
+        source.setPartitionName("example");
+        source.setSourceName("users");
+        builder.addSource("u", source);
+
+        return builder;
+    }
+
+    public OrFilter createOrFilter(String attribute, Object... values) {
+        OrFilter filter = new OrFilter();
+        for (Object value : values) {
+            filter.addFilter(new SimpleFilter(attribute, "=", value));
+        }
+        return filter;
+    }
+
+    public void testIn() throws Exception {
+
+        JDBCFilterBuilder builder = createBuilder();
+        builder.generate(createOrFilter("uid", "Alice", "Bob", "Carol"));
+
+        assertEquals("lower(u.uid) in (?, ?, ?)", builder.getSql());
+        assertEquals(Arrays.asList("alice", "bob", "carol"), new ArrayList<Object>(builder.getParameters()));
+    }
+
+    public void testCaseSensitiveIn() throws Exception {
+
+        JDBCFilterBuilder builder = createBuilder();
+        builder.generate(createOrFilter("code", "ABC", "abc"));
+
+        assertEquals("u.code in (?, ?)", builder.getSql());
+        assertEquals(Arrays.asList("ABC", "abc"), new ArrayList<Object>(builder.getParameters()));
+    }
+
+    public void testMixedAttributes() throws Exception {
+
+        OrFilter filter = new OrFilter();
+        filter.addFilter(new SimpleFilter("uid", "=", "alice"));
+        filter.addFilter(new SimpleFilter("cn", "=", "Bob"));
+
+        JDBCFilterBuilder builder = createBuilder();
+        assertFalse(builder.isInFilter(filter));
+
+        builder.generate(filter);
+        assertEquals(-1, builder.getSql().indexOf(" in ("));
+        assertEquals(2, builder.getParameters().size());
+    }
+
+    public void testSingleValue() throws Exception {
+
+        Filter filter = createOrFilter("uid", "alice");
+
+        JDBCFilterBuilder builder = createBuilder();
+        builder.generate(filter);
+
+        assertEquals(-1, builder.getSql().indexOf(" in ("));
+        assertEquals(1, builder.getParameters().size());
+    }
+}
@@ -0,0 +1,92 @@
+package org.safehaus.penrose.test.jdbc;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.jdbc.SelectStatement;
+import org.safehaus.penrose.jdbc.StatementSource;
+import org.safehaus.penrose.jdbc.connection.JDBCStatementBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class JDBCStatementBuilderTest extends TestCase {
+
+    class TestStatementBuilder extends JDBCStatementBuilder {
+
+        int counter;
+
+        public TestStatementBuilder() {
+            super(null);
+        }
+
+        public String getTableName(StatementSource source) {
+            return source.getSourceName();
+        }
+
+        public String generateSelectClause(SelectStatement statement) throws Exception {
+            counter++;
+            return super.generateSelectClause(statement);
+        }
+    }
+
+    public SelectStatement createStatement(long limit) {
+        SelectStatement statement = new SelectStatement();
+        statement.addColumn("u.uid");
+        statement.addColumn("u.cn");
+        statement.addSource("u", "example", "users");
+        statement.setWhereClause("u.active = 1");
+        statement.setLimit(limit);
+        return statement;
+    }
+
+    public String generate(String dialect, long limit) throws Exception {
+        JDBCStatementBuilder builder = new TestStatementBuilder();
+        builder.setDialect(dialect);
+        return builder.generate(createStatement(limit)).replaceAll("\\s+", " ");
+    }
+
+    public void testDialect() throws Exception {
+        assertEquals(JDBCStatementBuilder.DIALECT_LIMIT, JDBCStatementBuilder.getDialect("jdbc:mysql://localhost/penrose"));
+        assertEquals(JDBCStatementBuilder.DIALECT_LIMIT, JDBCStatementBuilder.getDialect("jdbc:hsqldb:mem:penrose"));
+        assertEquals(JDBCStatementBuilder.DIALECT_FETCH_FIRST, JDBCStatementBuilder.getDialect("jdbc:derby:penrose"));
+        assertEquals(JDBCStatementBuilder.DIALECT_ROWNUM, JDBCStatementBuilder.getDialect("jdbc:oracle:thin:@localhost:1521:penrose"));
+        assertEquals(JDBCStatementBuilder.DIALECT_TOP, JDBCStatementBuilder.getDialect("jdbc:jtds:sqlserver://localhost/penrose"));
+        assertNull(JDBCStatementBuilder.getDialect("jdbc:odbc:penrose"));
+    }
+
+    public void testLimit() throws Exception {
+        String select = "select distinct u.uid, u.cn from users u where u.active = 1";
+
+        assertEquals(select, generate(JDBCStatementBuilder.DIALECT_LIMIT, 0));
+        assertEquals(select+" limit 11", generate(JDBCStatementBuilder.DIALECT_LIMIT, 11));
+        assertEquals(select+" fetch first 11 rows only", generate(JDBCStatementBuilder.DIALECT_FETCH_FIRST, 11));
+        assertEquals("select * from ( "+select+" ) where rownum <= 11", generate(JDBCStatementBuilder.DIALECT_ROWNUM, 11));
+        assertEquals("select distinct top 11 u.uid, u.cn from users u where u.active = 1", generate(JDBCStatementBuilder.DIALECT_TOP, 11));
+        assertEquals(select, generate(null, 11));
+    }
+
+    public void testCache() throws Exception {
+        Map<String,String> cache = new HashMap<String,String>();
+
+        for (int i=0; i<3; i++) {
+            TestStatementBuilder builder = new TestStatementBuilder();
+            builder.setCache(cache);
+            builder.generate(createStatement(0));
+            assertEquals(i == 0 ? 1 : 0, builder.counter);
+        }
+
+        assertEquals(1, cache.size());
+
+        TestStatementBuilder builder = new TestStatementBuilder();
+        builder.setCache(cache);
+
+        SelectStatement statement = createStatement(0);
+        statement.addColumn("u.mail");
+        builder.generate(statement);
+
+        assertEquals(1, builder.counter);
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,194 @@
+package org.safehaus.penrose.test.jdbc;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.jdbc.scheduler.JDBCSyncJob;
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.scheduler.JobConfig;
+import org.safehaus.penrose.session.Session;
+import org.safehaus.penrose.source.Field;
+import org.safehaus.penrose.source.FieldConfig;
+import org.safehaus.penrose.source.Source;
+import org.safehaus.penrose.source.SourceConfig;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class JDBCSyncJobTest extends TestCase {
+
+    public static class MemorySource extends Source {
+
+        Map<String,Attributes> rows = new TreeMap<String,Attributes>();
+        List<Attributes> records = new ArrayList<Attributes>();
+        boolean failing;
+
+        public MemorySource(String name) {
+            SourceConfig sourceConfig = new SourceConfig();
+            sourceConfig.setName(name);
+            setSourceConfig(sourceConfig);
+        }
+
+        public void addField(String name, boolean primaryKey, String variable) {
+            FieldConfig fieldConfig = new FieldConfig(name, primaryKey);
+            fieldConfig.setVariable(variable);
+            addField(new Field(this, fieldConfig));
+        }
+
+        public void put(String uid, String name, String value) {
+            Attributes attributes = new Attributes();
+            attributes.setValue("uid", uid);
+            attributes.setValue(name, value);
+            rows.put("uid="+uid, attributes);
+        }
+
+        public Object getValue(String uid, String name) {
+            Attributes attributes = rows.get("uid="+uid);
+            return attributes == null ? null : attributes.getValue(name);
+        }
+
+        public void add(Session session, AddRequest request, AddResponse response) throws Exception {
+
+            // change log records don't have a DN
+            if (request.getDn().isEmpty()) {
+                records.add(request.getAttributes());
+                return;
+            }
+
+            String key = request.getDn().getNormalizedDn();
+            if (rows.containsKey(key)) throw LDAP.createException(LDAP.ENTRY_ALREADY_EXISTS);
+            rows.put(key, (Attributes)request.getAttributes().clone());
+        }
+
+        public void modify(Session session, ModifyRequest request, ModifyResponse response) throws Exception {
+            if (failing) throw LDAP.createException(LDAP.UNAVAILABLE);
+
+            Attributes attributes = rows.get(request.getDn().getNormalizedDn());
+            if (attributes == null) throw LDAP.createException(LDAP.NO_SUCH_OBJECT);
+
+            for (Modification modification : request.getModifications()) {
+                Attribute attribute = modification.getAttribute();
+
+                if (modification.getType() == Modification.REPLACE) {
+                    attributes.set(attribute);
+                } else if (modification.getType() == Modification.DELETE) {
+                    attributes.remove(attribute.getName());
+                }
+            }
+        }
+
+        public void delete(Session session, DeleteRequest request, DeleteResponse response) throws Exception {
+            rows.remove(request.getDn().getNormalizedDn());
+        }
+
+        public void search(Session session, SearchRequest request, SearchResponse response) throws Exception {
+            for (Map.Entry<String,Attributes> entry : rows.entrySet()) {
+                response.add(new SearchResult(new DN(entry.getKey()), (Attributes)entry.getValue().clone()));
+            }
+            response.close();
+        }
+    }
+
+    public static class TestSyncJob extends JDBCSyncJob {
+
+        public Session createAdminSession() throws Exception {
+            return new Session(null) {
+                public void close() throws Exception {
+                }
+            };
+        }
+    }
+
+    File file;
+
+    MemorySource users;
+    MemorySource people;
+    MemorySource changelog;
+
+    TestSyncJob job;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("checksums", ".dat");
+        file.delete();
+
+        users = new MemorySource("users");
+        users.addField("uid", true, null);
+        users.addField("cn", false, null);
+
+        people = new MemorySource("people");
+        people.addField("uid", true, "users.uid");
+        people.addField("name", false, "users.cn");
+
+        changelog = new MemorySource("changelog");
+
+        JobConfig jobConfig = new JobConfig();
+        jobConfig.setName("sync");
+
+        job = new TestSyncJob();
+        job.setJobConfig(jobConfig);
+        job.getSources().put("users", users);
+        job.getTargets().put("people", people);
+        job.setChangelog(changelog);
+        job.setMode(JDBCSyncJob.INCREMENTAL);
+        job.setChecksumFile(file);
+        job.setThreads(1);
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testSynchronizeIncrementally() throws Exception {
+
+        users.put("bob", "cn", "Bob");
+        users.put("alice", "cn", "Alice");
+
+        people.put("alice", "name", "Ally");
+        people.put("carol", "name", "Carol");
+
+        // the first run compares the sources with the current targets
+        job.synchronize();
+
+        assertEquals("Bob", people.getValue("bob", "name"));
+        assertEquals("Alice", people.getValue("alice", "name"));
+        assertNull(people.getValue("carol", "uid"));
+        assertTrue(changelog.records.isEmpty());
+
+        users.put("bob", "cn", "Robert");
+        users.rows.remove("uid=alice");
+        users.put("dave", "cn", "Dave");
+
+        job.synchronize();
+
+        assertEquals("Robert", people.getValue("bob", "name"));
+        assertNull(people.getValue("alice", "uid"));
+        assertEquals("Dave", people.getValue("dave", "name"));
+        assertEquals(3, changelog.records.size());
+
+        // nothing is recorded if the sources didn't change
+        job.synchronize();
+        assertEquals(3, changelog.records.size());
+    }
+
+    public void testFailedChangesAreRetried() throws Exception {
+
+        job.setThreads(2);
+
+        users.put("bob", "cn", "Bob");
+        job.synchronize();
+
+        users.put("bob", "cn", "Robert");
+        people.failing = true;
+        job.synchronize();
+
+        assertEquals("Bob", people.getValue("bob", "name"));
+        assertTrue(changelog.records.isEmpty());
+
+        people.failing = false;
+        job.synchronize();
+
+        assertEquals("Robert", people.getValue("bob", "name"));
+        assertEquals(1, changelog.records.size());
+    }
+}
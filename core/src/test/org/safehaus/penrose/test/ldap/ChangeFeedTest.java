@@ -0,0 +1,152 @@
+package org.safehaus.penrose.test.ldap;
+
+import com.novell.ldap.asn1.*;
+import junit.framework.TestCase;
+import org.safehaus.penrose.control.Control;
+import org.safehaus.penrose.control.EntryChangeControl;
+import org.safehaus.penrose.control.PersistentSearchControl;
+import org.safehaus.penrose.ldap.Attributes;
+import org.safehaus.penrose.ldap.SearchResult;
+import org.safehaus.penrose.filter.FilterTool;
+import org.safehaus.penrose.ldap.feed.ADNotificationFeed;
+import org.safehaus.penrose.ldap.feed.ChangeListener;
+import org.safehaus.penrose.ldap.feed.PersistentSearchFeed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class ChangeFeedTest extends TestCase {
+
+    public EntryChangeControl createControl(int changeType, String previousDn, Long changeNumber) throws Exception {
+
+        ASN1Sequence sequence = new ASN1Sequence();
+        sequence.add(new ASN1Enumerated(changeType));
+        if (previousDn != null) sequence.add(new ASN1OctetString(previousDn));
+        if (changeNumber != null) sequence.add(new ASN1Integer(changeNumber));
+
+        byte[] value = sequence.getEncoding(new LBEREncoder());
+
+        return new EntryChangeControl(new Control(EntryChangeControl.OID, value, false));
+    }
+
+    public SearchResult createEntry(String dn) {
+        Attributes attributes = new Attributes();
+        attributes.addValue("cn", "Bob");
+        attributes.addValue("cn", "Robert");
+        return new SearchResult(dn, attributes);
+    }
+
+    public void testEntryChangeControl() throws Exception {
+        EntryChangeControl control = createControl(PersistentSearchControl.MODDN, "uid=bob,ou=Users,dc=Example,dc=com", 42L);
+        assertEquals(PersistentSearchControl.MODDN, control.getChangeType());
+        assertEquals("uid=bob,ou=Users,dc=Example,dc=com", control.getPreviousDn());
+        assertEquals(new Long(42), control.getChangeNumber());
+
+        control = createControl(PersistentSearchControl.ADD, null, null);
+        assertNull(control.getPreviousDn());
+        assertNull(control.getChangeNumber());
+    }
+
+    public void testPersistentSearchChanges() throws Exception {
+
+        SearchResult entry = createEntry("uid=bob,ou=Users,dc=Example,dc=com");
+
+        Attributes change = PersistentSearchFeed.createChange(entry, createControl(PersistentSearchControl.ADD, null, 5L));
+        assertEquals("add", change.getValue("changeType"));
+        assertEquals("uid=bob,ou=Users,dc=Example,dc=com", change.getValue("targetDN"));
+        assertEquals("cn: Bob\ncn: Robert\n", change.getValue("changes"));
+        assertEquals("5", change.getValue("changeNumber"));
+
+        change = PersistentSearchFeed.createChange(entry, createControl(PersistentSearchControl.MODIFY, null, null));
+        assertEquals("modify", change.getValue("changeType"));
+        assertEquals("replace: cn\ncn: Bob\ncn: Robert\n-\n", change.getValue("changes"));
+
+        change = PersistentSearchFeed.createChange(entry, createControl(PersistentSearchControl.DELETE, null, null));
+        assertEquals("delete", change.getValue("changeType"));
+
+        change = PersistentSearchFeed.createChange(
+                createEntry("uid=robert,ou=People,dc=Example,dc=com"),
+                createControl(PersistentSearchControl.MODDN, "uid=bob,ou=Users,dc=Example,dc=com", null)
+        );
+        assertEquals("modrdn", change.getValue("changeType"));
+        assertEquals("uid=bob,ou=Users,dc=Example,dc=com", change.getValue("targetDN"));
+        assertEquals("uid=robert", change.getValue("newRDN"));
+        assertEquals("ou=People,dc=Example,dc=com", change.getValue("newSuperior"));
+    }
+
+    public void testNotificationChanges() throws Exception {
+
+        SearchResult entry = createEntry("CN=Bob,OU=Users,DC=Example,DC=com");
+        Attributes attributes = entry.getAttributes();
+        attributes.setValue("uSNCreated", "100");
+        attributes.setValue("uSNChanged", "100");
+
+        Attributes change = ADNotificationFeed.createChange(entry, new ArrayList<String>(), 90);
+        assertEquals("add", change.getValue("changeType"));
+        assertEquals("cn: Bob\ncn: Robert\n", change.getValue("changes"));
+
+        // created and changed again since the last processed USN
+        attributes.setValue("uSNChanged", "120");
+        change = ADNotificationFeed.createChange(entry, new ArrayList<String>(), 90);
+        assertEquals("add", change.getValue("changeType"));
+
+        change = ADNotificationFeed.createChange(entry, Arrays.asList("cn", "uSNChanged"), 110);
+        assertEquals("modify", change.getValue("changeType"));
+        assertTrue(((String)change.getValue("changes")).contains("uSNChanged: 120\n"));
+        assertFalse(((String)change.getValue("changes")).contains("uSNCreated"));
+
+        Attributes deleted = new Attributes();
+        deleted.setValue("isDeleted", "TRUE");
+        deleted.setValue("name", "Bob\nDEL:0a1b2c3d");
+        deleted.setValue("lastKnownParent", "OU=Users,DC=Example,DC=com");
+
+        change = ADNotificationFeed.createChange(
+                new SearchResult("CN=Bob\\0ADEL:0a1b2c3d,CN=Deleted Objects,DC=Example,DC=com", deleted),
+                new ArrayList<String>(),
+                90
+        );
+        assertEquals("delete", change.getValue("changeType"));
+        assertEquals("CN=Bob,OU=Users,DC=Example,DC=com", change.getValue("targetDN"));
+    }
+
+    public void testNotificationFilter() throws Exception {
+
+        final List<Attributes> changes = new ArrayList<Attributes>();
+
+        ADNotificationFeed feed = new ADNotificationFeed("test", null, new ChangeListener() {
+            public void resume() throws Exception {
+            }
+            public void process(Attributes change) throws Exception {
+                changes.add(change);
+            }
+        });
+
+        feed.setFilter(FilterTool.parseFilter("(objectClass=user)"));
+        feed.setAttributes(Arrays.asList("cn"));
+        feed.setLastUsn(90);
+
+        assertTrue(Arrays.asList(feed.getSearchAttributeNames()).contains("objectClass"));
+
+        SearchResult user = createEntry("CN=Bob,OU=Users,DC=Example,DC=com");
+        user.getAttributes().setValue("objectClass", "user");
+        user.getAttributes().setValue("uSNCreated", "100");
+        user.getAttributes().setValue("uSNChanged", "100");
+        feed.process(user);
+
+        SearchResult group = createEntry("CN=Admins,OU=Groups,DC=Example,DC=com");
+        group.getAttributes().setValue("objectClass", "group");
+        group.getAttributes().setValue("uSNCreated", "50");
+        group.getAttributes().setValue("uSNChanged", "101");
+        feed.process(group);
+
+        assertEquals(1, changes.size());
+        assertEquals("CN=Bob,OU=Users,DC=Example,DC=com", changes.get(0).getValue("targetDN"));
+
+        // the filtered entries are still processed
+        assertEquals(101, feed.getLastUsn());
+    }
+}
@@ -0,0 +1,200 @@
+package org.safehaus.penrose.test.ldap;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.ldap.*;
+import org.ietf.ldap.LDAPException;
+import org.apache.log4j.Logger;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class RingBufferSearchResponseTest extends TestCase {
+
+    Logger log = Logger.getLogger(getClass());
+
+    public SearchResult createSearchResult(int i) throws Exception {
+        return new SearchResult("uid=user"+i+",ou=Users,dc=Example,dc=com", new Attributes());
+    }
+
+    public Thread produce(final SearchResponse response, final int count) {
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    for (int i=0; i<count; i++) {
+                        response.add(createSearchResult(i));
+                    }
+                    response.close();
+
+                } catch (Exception e) {
+                    log.error(e.getMessage(), e);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    public void testUnbounded() throws Exception {
+        SearchResponse response = new RingBufferSearchResponse();
+
+        for (int i=0; i<100; i++) {
+            response.add(createSearchResult(i));
+        }
+        response.close();
+
+        assertEquals(100, response.getTotalCount());
+
+        int i = 0;
+        while (response.hasNext()) {
+            SearchResult result = response.next();
+            assertEquals(createSearchResult(i).getDn(), result.getDn());
+            i++;
+        }
+
+        assertEquals(100, i);
+    }
+
+    public void testBackpressure() throws Exception {
+        RingBufferSearchResponse response = new RingBufferSearchResponse(10);
+
+        Thread producer = produce(response, 1000);
+
+        int i = 0;
+        while (response.hasNext()) {
+            SearchResult result = response.next();
+            assertEquals(createSearchResult(i).getDn(), result.getDn());
+            i++;
+        }
+
+        producer.join();
+
+        assertEquals(1000, i);
+        assertEquals(1000, response.getTotalCount());
+    }
+
+    public void testCloseWhileFull() throws Exception {
+        RingBufferSearchResponse response = new RingBufferSearchResponse(4);
+
+        Thread producer = produce(response, 100);
+
+        assertEquals(createSearchResult(0).getDn(), response.next().getDn());
+
+        // wait until the buffer is full
+        while (response.getTotalCount() < 5) Thread.sleep(10);
+
+        response.close();
+        producer.join();
+
+        // the buffered results are not overwritten by the released producer
+        int i = 1;
+        while (response.hasNext()) {
+            assertEquals(createSearchResult(i).getDn(), response.next().getDn());
+            i++;
+        }
+
+        assertEquals(5, i);
+    }
+
+    public void testReference() throws Exception {
+        SearchResponse response = new RingBufferSearchResponse();
+
+        response.add(createSearchResult(0));
+        response.add(new SearchReference(new DN("ou=Groups,dc=Example,dc=com"), new java.util.ArrayList<String>()));
+        response.close();
+
+        assertTrue(response.hasNext());
+        assertNotNull(response.next());
+
+        assertTrue(response.hasNext());
+        try {
+            response.next();
+            fail();
+        } catch (SearchReferenceException e) {
+            assertEquals(new DN("ou=Groups,dc=Example,dc=com"), e.getReference().getDn());
+        }
+
+        assertFalse(response.hasNext());
+    }
+
+    public void testSizeLimit() throws Exception {
+        SearchResponse response = new RingBufferSearchResponse();
+        response.setSizeLimit(2);
+
+        response.add(createSearchResult(0));
+        response.add(createSearchResult(1));
+
+        try {
+            response.add(createSearchResult(2));
+            fail();
+        } catch (LDAPException e) {
+            assertEquals(LDAP.SIZE_LIMIT_EXCEEDED, e.getResultCode());
+        }
+
+        response.close();
+
+        assertTrue(response.hasNext());
+        response.next();
+        response.next();
+
+        try {
+            response.hasNext();
+            fail();
+        } catch (LDAPException e) {
+            assertEquals(LDAP.SIZE_LIMIT_EXCEEDED, e.getResultCode());
+        }
+    }
+
+    public void testListener() throws Exception {
+        SearchResponse response = new RingBufferSearchResponse();
+
+        final int[] counter = new int[1];
+
+        response.addListener(new SearchListener() {
+            public void add(SearchResult result) throws Exception {
+                counter[0]++;
+            }
+            public void add(SearchReference reference) throws Exception {
+            }
+            public void close() throws Exception {
+            }
+        });
+
+        for (int i=0; i<10; i++) {
+            response.add(createSearchResult(i));
+        }
+        response.close();
+
+        assertEquals(10, counter[0]);
+        assertFalse(response.hasNext());
+    }
+
+    public long consume(SearchResponse response, int count) throws Exception {
+        long start = System.currentTimeMillis();
+
+        Thread producer = produce(response, count);
+
+        int i = 0;
+        while (response.hasNext()) {
+            response.next();
+            i++;
+        }
+
+        producer.join();
+        assertEquals(count, i);
+
+        return System.currentTimeMillis() - start;
+    }
+
+    public void testComparison() throws Exception {
+        int count = 100000;
+
+        SearchResponse response1 = new SearchResponse();
+        response1.setBufferSize(100);
+        long time1 = consume(response1, count);
+
+        SearchResponse response2 = new RingBufferSearchResponse(100);
+        long time2 = consume(response2, count);
+
+        log.info("SearchResponse: "+time1+" ms, RingBufferSearchResponse: "+time2+" ms.");
+    }
+}
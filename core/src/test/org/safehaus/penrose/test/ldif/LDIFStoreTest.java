@@ -0,0 +1,152 @@
+package org.safehaus.penrose.test.ldif;
+
+import junit.framework.TestCase;
+import org.ietf.ldap.LDAPException;
+import org.safehaus.penrose.filter.FilterTool;
+import org.safehaus.penrose.ldap.*;
+import org.safehaus.penrose.ldif.LDIFStore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class LDIFStoreTest extends TestCase {
+
+    File file;
+    LDIFStore store;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("penrose", ".ldif");
+
+        write(false,
+                "version: 1\n" +
+                "\n" +
+                "dn: dc=Example,dc=com\n" +
+                "objectClass: dcObject\n" +
+                "dc: Example\n" +
+                "\n" +
+                "dn: ou=Hosts,dc=Example,dc=com\n" +
+                "objectClass: organizationalUnit\n" +
+                "ou: Hosts\n" +
+                "\n" +
+                "# web server\n" +
+                "dn: cn=www,ou=Hosts,dc=Example,dc=com\n" +
+                "objectClass: ipHost\n" +
+                "cn: www\n" +
+                "ipHostNumber: 10.0.0.1\n" +
+                "description: Web\n" +
+                "  server\n" +
+                "\n" +
+                "dn:: Y249bWFpbCxvdT1Ib3N0cyxkYz1FeGFtcGxlLGRjPWNvbQ==\n" +
+                "objectClass: ipHost\n" +
+                "cn: MAIL\n" +
+                "ipHostNumber: 10.0.0.2\n"
+        );
+
+        store = new LDIFStore(file);
+        store.addIndexedAttribute("cn");
+        store.addIndexedAttribute("ipHostNumber");
+        store.load();
+    }
+
+    public void tearDown() throws Exception {
+        store.close();
+        file.delete();
+    }
+
+    public void write(boolean append, String content) throws Exception {
+        FileOutputStream out = new FileOutputStream(file, append);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    public List<String> search(String baseDn, int scope, String filter) throws Exception {
+        SearchRequest request = new SearchRequest();
+        request.setDn(baseDn);
+        request.setScope(scope);
+        request.setFilter(FilterTool.parseFilter(filter));
+
+        SearchResponse response = new SearchResponse();
+        store.search(request, response);
+
+        List<String> dns = new ArrayList<String>();
+        while (response.hasNext()) {
+            dns.add(response.next().getDn().getNormalizedDn());
+        }
+        return dns;
+    }
+
+    public void testScopes() throws Exception {
+        assertEquals(4, store.getCount());
+
+        assertEquals(1, search("dc=example,dc=com", SearchRequest.SCOPE_BASE, null).size());
+        assertEquals(1, search("dc=example,dc=com", SearchRequest.SCOPE_ONE, null).size());
+        assertEquals(4, search("dc=example,dc=com", SearchRequest.SCOPE_SUB, null).size());
+        assertEquals(2, search("ou=hosts,dc=example,dc=com", SearchRequest.SCOPE_ONE, null).size());
+
+        try {
+            search("ou=groups,dc=example,dc=com", SearchRequest.SCOPE_SUB, null);
+            fail();
+        } catch (LDAPException e) {
+            assertEquals(LDAP.NO_SUCH_OBJECT, e.getResultCode());
+        }
+    }
+
+    public void testDecoding() throws Exception {
+        Attributes attributes = store.find(new DN("cn=www,ou=hosts,dc=example,dc=com"));
+        assertEquals("Web server", attributes.getValue("description"));
+        assertEquals("10.0.0.1", attributes.getValue("ipHostNumber"));
+        assertNull(attributes.get("dn"));
+    }
+
+    public void testIndexes() throws Exception {
+        String base = "dc=example,dc=com";
+
+        List<String> dns = search(base, SearchRequest.SCOPE_SUB, "(cn=mail)");
+        assertEquals(1, dns.size());
+        assertEquals("cn=mail,ou=hosts,dc=example,dc=com", dns.get(0));
+
+        assertEquals(2, search(base, SearchRequest.SCOPE_SUB, "(ipHostNumber=*)").size());
+        assertEquals(2, search(base, SearchRequest.SCOPE_SUB, "(|(cn=www)(cn=mail))").size());
+        assertEquals(1, search(base, SearchRequest.SCOPE_SUB, "(&(cn=www)(objectClass=ipHost))").size());
+        assertEquals(0, search(base, SearchRequest.SCOPE_ONE, "(cn=www)").size());
+        assertEquals(0, search(base, SearchRequest.SCOPE_SUB, "(cn=ftp)").size());
+
+        // not indexed
+        assertEquals(1, search(base, SearchRequest.SCOPE_SUB, "(description=web server)").size());
+    }
+
+    public void testReload() throws Exception {
+        write(true,
+                "description: Mail server\n" +
+                "\n" +
+                "dn: cn=ftp,ou=Hosts,dc=Example,dc=com\n" +
+                "objectClass: ipHost\n" +
+                "cn: ftp\n"
+        );
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertEquals(5, store.getCount());
+        assertEquals(1, search("dc=example,dc=com", SearchRequest.SCOPE_SUB, "(cn=ftp)").size());
+
+        Attributes attributes = store.find(new DN("cn=mail,ou=hosts,dc=example,dc=com"));
+        assertEquals("Mail server", attributes.getValue("description"));
+
+        write(false,
+                "dn: dc=Example,dc=com\n" +
+                "objectClass: dcObject\n" +
+                "dc: Example\n"
+        );
+        file.setLastModified(file.lastModified() + 4000);
+
+        assertEquals(1, store.getCount());
+
+        Collection<String> dns = search("dc=example,dc=com", SearchRequest.SCOPE_SUB, "(objectClass=*)");
+        assertEquals(1, dns.size());
+    }
+}
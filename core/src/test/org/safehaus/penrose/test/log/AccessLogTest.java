@@ -0,0 +1,105 @@
+package org.safehaus.penrose.test.log;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.log.AccessLog;
+import org.safehaus.penrose.log.AccessLogOutput;
+import org.safehaus.penrose.log.AccessRecord;
+import org.safehaus.penrose.partition.PartitionConfig;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class AccessLogTest extends TestCase {
+
+    File file;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("access", ".log");
+        file.delete();
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public List<String> readLines() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        String line;
+        while ((line = in.readLine()) != null) lines.add(line);
+        in.close();
+        return lines;
+    }
+
+    public void testWrite() throws Exception {
+        AccessLog accessLog = new AccessLog(16);
+        accessLog.addOutput(PartitionConfig.ROOT, new AccessLogOutput(file, AccessLogOutput.JSON, 0, 0));
+        assertTrue(accessLog.isActive());
+
+        AccessRecord record = accessLog.claim("SEARCH", false, "1", "2");
+        record.setDn("base", new DN("dc=Example,dc=com"));
+        record.add("filter", "(cn=\"x\")");
+        record.add("attrs", new String[] { "cn", "sn" });
+        accessLog.publish(record);
+
+        record = accessLog.claim("SEARCH", true, "1", "2");
+        record.setResult("Success");
+        record.setEntries(3);
+        record.setTime(5);
+        accessLog.publish(record);
+
+        accessLog.removeOutput(PartitionConfig.ROOT);
+        assertFalse(accessLog.isActive());
+
+        List<String> lines = readLines();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith(
+                "\"type\":\"SEARCH\",\"response\":\"false\",\"session\":\"1\",\"operation\":\"2\",\"base\":\"dc=Example,dc=com\",\"filter\":\"(cn=\\\"x\\\")\",\"attrs\":\"cn,sn\"}"));
+        assertTrue(lines.get(1), lines.get(1).endsWith(
+                "\"result\":\"Success\",\"entries\":3,\"elapsed\":5}"));
+    }
+
+    public void testCopyValues() throws Exception {
+        AccessLog accessLog = new AccessLog(16);
+        accessLog.addOutput(PartitionConfig.ROOT, new AccessLogOutput(file, AccessLogOutput.TEXT, 0, 0));
+        assertTrue(accessLog.isStarted());
+
+        // the value is formatted when the record is claimed, not when it's written
+        StringBuilder filter = new StringBuilder("(cn=a)");
+        List<String> attributes = new ArrayList<String>();
+        attributes.add("cn");
+
+        AccessRecord record = accessLog.claim("SEARCH", false, "1", "2");
+        record.add("filter", filter);
+        record.add("attrs", attributes);
+        filter.setLength(0);
+        attributes.clear();
+        accessLog.publish(record);
+
+        accessLog.removeOutput(PartitionConfig.ROOT);
+
+        // the writer thread is stopped with the last output
+        assertFalse(accessLog.isStarted());
+
+        List<String> lines = readLines();
+        assertEquals(1, lines.size());
+        assertEquals("SEARCH session=\"1\" operation=\"2\" filter=\"(cn=a)\" attrs=\"cn\"", lines.get(0));
+    }
+
+    public void testDrop() throws Exception {
+        AccessLog accessLog = new AccessLog(2);
+        assertEquals(2, accessLog.getBufferSize());
+
+        assertNotNull(accessLog.claim("BIND", false, "1", "1"));
+        assertNotNull(accessLog.claim("BIND", true, "1", "1"));
+        assertNull(accessLog.claim("UNBIND", false, "1", "2"));
+        assertEquals(1, accessLog.getDropCount());
+    }
+}
@@ -0,0 +1,84 @@
+package org.safehaus.penrose.test.module;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.directory.Entry;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.module.Module;
+import org.safehaus.penrose.module.ModuleChain;
+import org.safehaus.penrose.module.ModuleIndex;
+import org.safehaus.penrose.module.ModuleMapping;
+
+import java.util.List;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class ModuleIndexTest extends TestCase {
+
+    Module subtree = new Module();
+    Module object = new Module();
+    Module oneLevel = new Module();
+    Module dynamic = new Module();
+    Module root = new Module();
+
+    ModuleIndex index;
+
+    public void setUp() throws Exception {
+        index = new ModuleIndex(0);
+        index.add(createModuleMapping("ou=Users,dc=Example,dc=com", ModuleMapping.SUBTREE), subtree);
+        index.add(createModuleMapping("uid=admin,ou=Users,dc=Example,dc=com", ModuleMapping.OBJECT), object);
+        index.add(createModuleMapping("ou=Users,dc=Example,dc=com", ModuleMapping.ONELEVEL), oneLevel);
+        index.add(createModuleMapping("uid=...,ou=Users,dc=Example,dc=com", ModuleMapping.OBJECT), dynamic);
+        index.add(createModuleMapping("", ModuleMapping.SUBTREE), root);
+    }
+
+    public ModuleMapping createModuleMapping(String baseDn, String scope) {
+        ModuleMapping moduleMapping = new ModuleMapping();
+        moduleMapping.setBaseDn(baseDn);
+        moduleMapping.setScope(scope);
+        return moduleMapping;
+    }
+
+    public void testFindModules() throws Exception {
+        List<Module> modules = index.findModules(new DN("uid=Admin,ou=users,dc=example,dc=com"));
+        assertEquals(5, modules.size());
+        assertSame(subtree, modules.get(0));
+        assertSame(object, modules.get(1));
+        assertSame(oneLevel, modules.get(2));
+        assertSame(dynamic, modules.get(3));
+        assertSame(root, modules.get(4));
+
+        modules = index.findModules(new DN("cn=x,uid=admin,ou=users,dc=example,dc=com"));
+        assertEquals(2, modules.size());
+        assertSame(subtree, modules.get(0));
+        assertSame(root, modules.get(1));
+
+        modules = index.findModules(new DN("dc=example,dc=com"));
+        assertEquals(1, modules.size());
+        assertSame(root, modules.get(0));
+
+        // dynamic RDNs are matched like ModuleMapping.match()
+        modules = index.findModules(new DN("uid=...,ou=users,dc=example,dc=com"));
+        assertEquals(5, modules.size());
+        assertSame(object, modules.get(1));
+        assertSame(dynamic, modules.get(3));
+
+        assertSame(modules, index.findModules(new DN("uid=...,ou=users,dc=example,dc=com")));
+    }
+
+    public void testModuleChain() throws Exception {
+        Entry entry = new Entry();
+
+        ModuleChain chain = index.getModuleChain(entry, new DN("uid=bob,ou=users,dc=example,dc=com"));
+        assertSame(chain, index.getModuleChain(entry, new DN("uid=alice,ou=users,dc=example,dc=com")));
+
+        assertSame(subtree, chain.getModule());
+        assertSame(oneLevel, chain.getChain().getModule());
+        assertSame(dynamic, chain.getChain().getChain().getModule());
+        assertSame(root, chain.getChain().getChain().getChain().getModule());
+        assertNull(chain.getChain().getChain().getChain().getChain().getModule());
+
+        assertNotSame(chain, index.getModuleChain(entry, new DN("uid=admin,ou=users,dc=example,dc=com")));
+        assertNotSame(chain, index.getModuleChain(new Entry(), new DN("uid=bob,ou=users,dc=example,dc=com")));
+    }
+}
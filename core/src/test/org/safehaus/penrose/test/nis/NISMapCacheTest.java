@@ -0,0 +1,118 @@
+package org.safehaus.penrose.test.nis;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.nis.*;
+import org.safehaus.penrose.ldap.*;
+import org.ietf.ldap.LDAPException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class NISMapCacheTest extends TestCase {
+
+    File dir;
+    File file;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("passwd", "");
+        dir = file.getParentFile();
+
+        write(
+                "root:x:0:0:root:/root:/bin/bash\n"+
+                "bob:x:500:100:Bob:/home/bob:/bin/bash\n"+
+                "alice:x:501:100:Alice:/home/alice:/bin/bash\n"
+        );
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void write(String content) throws Exception {
+        FileWriter out = new FileWriter(file);
+        out.write(content);
+        out.close();
+    }
+
+    public NISClient createClient(NISMapCache cache) throws Exception {
+        Map<String,String> parameters = new HashMap<String,String>();
+        parameters.put("dir", dir.getPath());
+
+        NISClient client = new NISLocalClient();
+        client.init(parameters);
+
+        return new NISSnapshotClient(client, cache);
+    }
+
+    public void testLookup() throws Exception {
+        NISClient client = createClient(new NISMapCache());
+
+        SearchResponse response = new SearchResponse();
+        client.lookup(file.getName(), new RDN("uid=bob"), "posixAccount", response);
+
+        assertTrue(response.hasNext());
+        SearchResult result = response.next();
+        assertEquals("500", result.getAttributes().getValue("uidNumber"));
+
+        try {
+            client.lookup(file.getName(), new RDN("uid=carol"), "posixAccount", new SearchResponse());
+            fail();
+        } catch (LDAPException e) {
+            assertEquals(LDAP.NO_SUCH_OBJECT, e.getResultCode());
+        }
+    }
+
+    public void testLookupCase() throws Exception {
+        write(
+                "bob:x:500:100:Bob:/home/bob:/bin/bash\n"+
+                "Bob:x:502:100:Robert:/home/Bob:/bin/bash\n"
+        );
+
+        NISClient client = createClient(new NISMapCache());
+
+        SearchResponse response = new SearchResponse();
+        client.lookup(file.getName(), new RDN("uid=Bob"), "posixAccount", response);
+        assertEquals("502", response.next().getAttributes().getValue("uidNumber"));
+
+        response = new SearchResponse();
+        client.lookup(file.getName(), new RDN("UID=bob"), "posixAccount", response);
+        assertEquals("500", response.next().getAttributes().getValue("uidNumber"));
+
+        try {
+            client.lookup(file.getName(), new RDN("uid=BOB"), "posixAccount", new SearchResponse());
+            fail();
+        } catch (LDAPException e) {
+            assertEquals(LDAP.NO_SUCH_OBJECT, e.getResultCode());
+        }
+    }
+
+    public void testFind() throws Exception {
+        NISSnapshotClient client = (NISSnapshotClient)createClient(new NISMapCache());
+
+        SearchResponse response = new SearchResponse();
+        client.find(file.getName(), "posixAccount", "gidNumber", "100", response);
+        assertEquals(2, response.getTotalCount());
+
+        response = new SearchResponse();
+        client.find(file.getName(), "posixAccount", "uidNumber", "0", response);
+        assertEquals(1, response.getTotalCount());
+    }
+
+    public void testRefresh() throws Exception {
+        NISMapCache cache = new NISMapCache(0);
+        NISClient client = ((NISSnapshotClient)createClient(cache)).getClient();
+
+        NISMapSnapshot snapshot = cache.getSnapshot(client, file.getName(), "posixAccount");
+        assertEquals(3, snapshot.getSize());
+        assertSame(snapshot, cache.getSnapshot(client, file.getName(), "posixAccount"));
+
+        write("bob:x:500:100:Bob:/home/bob:/bin/bash\n");
+
+        snapshot = cache.getSnapshot(client, file.getName(), "posixAccount");
+        assertEquals(1, snapshot.getSize());
+    }
+}
@@ -0,0 +1,60 @@
+package org.safehaus.penrose.test.statistic;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.statistic.Histogram;
+import org.safehaus.penrose.statistic.StatisticManager;
+import org.safehaus.penrose.statistic.StripedCounter;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class HistogramTest extends TestCase {
+
+    public void testBuckets() throws Exception {
+        int lastIndex = -1;
+        for (long value=0; value<100000; value++) {
+            int index = Histogram.getIndex(value);
+            assertTrue(index == lastIndex || index == lastIndex+1);
+            assertTrue(value <= Histogram.getValue(index));
+            assertTrue(Histogram.getValue(index) - value <= value / 16);
+            lastIndex = index;
+        }
+
+        assertEquals(Histogram.SIZE - 1, Histogram.getIndex(Histogram.MAX_VALUE));
+    }
+
+    public void testPercentiles() throws Exception {
+        Histogram histogram = new Histogram("test");
+        for (int i=1; i<=1000; i++) histogram.record(i);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 500 && p50 <= 500 + 500/16);
+
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    public void testStatisticManager() throws Exception {
+        StatisticManager statisticManager = new StatisticManager();
+        statisticManager.recordOperation("example", StatisticManager.SEARCH, System.nanoTime());
+        statisticManager.recordSource("example", "users", StatisticManager.SEARCH, System.nanoTime());
+
+        assertEquals(1, statisticManager.getHistogram("operation/search").getCount());
+        assertEquals(1, statisticManager.getHistogram("partition/example/search").getCount());
+        assertEquals(1, statisticManager.getHistogram("source/example/users/search").getCount());
+        assertEquals(3, statisticManager.getHistogramNames().size());
+
+        StripedCounter counter = new StripedCounter();
+        counter.increment();
+        counter.add(5);
+        assertEquals(6, counter.get());
+    }
+}
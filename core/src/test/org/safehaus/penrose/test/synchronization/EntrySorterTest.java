@@ -0,0 +1,149 @@
+package org.safehaus.penrose.test.synchronization;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.ldap.Attributes;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.synchronization.module.EntrySorter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class EntrySorterTest extends TestCase {
+
+    File dir;
+
+    public void setUp() throws Exception {
+        dir = File.createTempFile("sorter", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    public List<String> read(EntrySorter sorter) throws Exception {
+        List<String> list = new ArrayList<String>();
+        for (EntrySorter.Record record = sorter.next(); record != null; record = sorter.next()) {
+            list.add(record.getKey());
+        }
+        return list;
+    }
+
+    public void testRuns() throws Exception {
+        EntrySorter sorter = new EntrySorter(dir, "test", 10, EntrySorter.ASCENDING);
+        for (int i=99; i>=0; i--) {
+            sorter.add(new DN("uid=user"+(i < 10 ? "0"+i : ""+i)+",ou=Users,dc=Example,dc=com"), null);
+        }
+        sorter.sort();
+        assertEquals(10, dir.listFiles().length);
+
+        List<String> keys = read(sorter);
+        assertEquals(100, keys.size());
+
+        List<String> sorted = new ArrayList<String>(keys);
+        Collections.sort(sorted);
+        assertEquals(sorted, keys);
+
+        sorter.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    public void testMaxFanIn() throws Exception {
+        EntrySorter sorter = new EntrySorter(dir, "test", 2, EntrySorter.ASCENDING);
+        sorter.setMaxFanIn(4);
+
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (int i=0; i<100; i++) numbers.add(i);
+        Collections.shuffle(numbers, new Random(0));
+
+        for (int i : numbers) {
+            sorter.add(new DN("uid=user"+(i < 10 ? "0"+i : ""+i)+",ou=Users,dc=Example,dc=com"), null);
+        }
+
+        // 50 runs are merged into 13, 4 and then read back
+        sorter.sort();
+        assertTrue(dir.listFiles().length <= 4);
+
+        List<String> keys = read(sorter);
+        assertEquals(100, keys.size());
+
+        List<String> sorted = new ArrayList<String>(keys);
+        Collections.sort(sorted);
+        assertEquals(sorted, keys);
+
+        sorter.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    public void testParentBeforeChildren() throws Exception {
+        EntrySorter sorter = new EntrySorter(dir, "test", 2, EntrySorter.ASCENDING);
+        sorter.add(new DN("uid=bob,ou=Users,dc=Example,dc=com"), null);
+        sorter.add(new DN("ou=Users-2,dc=Example,dc=com"), null);
+        sorter.add(new DN("ou=Users,dc=Example,dc=com"), null);
+        sorter.add(new DN("uid=alice,ou=Users,dc=Example,dc=com"), null);
+        sorter.sort();
+
+        List<String> keys = read(sorter);
+        sorter.close();
+
+        assertEquals(EntrySorter.getKey(new DN("ou=Users,dc=Example,dc=com")), keys.get(0));
+        assertEquals(EntrySorter.getKey(new DN("uid=alice,ou=Users,dc=Example,dc=com")), keys.get(1));
+        assertEquals(EntrySorter.getKey(new DN("uid=bob,ou=Users,dc=Example,dc=com")), keys.get(2));
+        assertEquals(EntrySorter.getKey(new DN("ou=Users-2,dc=Example,dc=com")), keys.get(3));
+
+        assertTrue(EntrySorter.isAncestor(keys.get(0), keys.get(2)));
+        assertFalse(EntrySorter.isAncestor(keys.get(0), keys.get(3)));
+        assertFalse(EntrySorter.isAncestor(keys.get(2), keys.get(0)));
+    }
+
+    public void testDescending() throws Exception {
+        EntrySorter sorter = new EntrySorter(dir, "test", 2, EntrySorter.DESCENDING);
+        sorter.add(new DN("ou=Users,dc=Example,dc=com"), null);
+        sorter.add(new DN("uid=bob,ou=Users,dc=Example,dc=com"), null);
+        sorter.add(new DN("cn=x,uid=bob,ou=Users,dc=Example,dc=com"), null);
+        sorter.sort();
+
+        List<String> keys = read(sorter);
+        sorter.close();
+
+        assertEquals(EntrySorter.getKey(new DN("cn=x,uid=bob,ou=Users,dc=Example,dc=com")), keys.get(0));
+        assertEquals(EntrySorter.getKey(new DN("ou=Users,dc=Example,dc=com")), keys.get(2));
+    }
+
+    public void testAttributes() throws Exception {
+        EntrySorter sorter = new EntrySorter(dir, "test", 1, EntrySorter.ASCENDING);
+
+        Attributes attributes = new Attributes();
+        attributes.addValue("cn", "Bob");
+        attributes.addValue("cn", "Robert");
+        attributes.addValue("jpegPhoto", new byte[] { 0, 1, 2, (byte)0xff });
+
+        sorter.add(new DN("uid=bob,ou=Users,dc=Example,dc=com"), attributes);
+        sorter.add(new DN("uid=alice,ou=Users,dc=Example,dc=com"), null);
+        sorter.sort();
+
+        EntrySorter.Record record = sorter.next();
+        assertEquals("uid=alice,ou=Users,dc=Example,dc=com", record.getDn().toString());
+        assertNull(record.getAttributes());
+
+        record = sorter.next();
+        assertEquals("uid=bob,ou=Users,dc=Example,dc=com", record.getDn().toString());
+        assertEquals(2, record.getAttributes().get("cn").getValues().size());
+        assertTrue(Arrays.equals(new byte[] { 0, 1, 2, (byte)0xff }, (byte[])record.getAttributes().getValue("jpegPhoto")));
+
+        assertNull(sorter.next());
+        sorter.close();
+    }
+}
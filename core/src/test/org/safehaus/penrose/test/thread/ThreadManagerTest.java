@@ -0,0 +1,89 @@
+package org.safehaus.penrose.test.thread;
+
+import junit.framework.TestCase;
+import org.safehaus.penrose.thread.ThreadManager;
+import org.safehaus.penrose.thread.ThreadManagerConfig;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class ThreadManagerTest extends TestCase {
+
+    ThreadManager threadManager;
+
+    public void setUp() throws Exception {
+        ThreadManagerConfig threadManagerConfig = new ThreadManagerConfig();
+        threadManagerConfig.setParameter(ThreadManagerConfig.CORE_POOL_SIZE, "1");
+        threadManagerConfig.setParameter(ThreadManagerConfig.MAXIMUM_POOL_SIZE, "1");
+        threadManagerConfig.setParameter(ThreadManagerConfig.QUEUE_SIZE, "10");
+        threadManagerConfig.setParameter(ThreadManagerConfig.PARALLELISM, "2");
+
+        threadManager = new ThreadManager("test");
+        threadManager.init(threadManagerConfig);
+    }
+
+    public void tearDown() throws Exception {
+        threadManager.destroy();
+    }
+
+    public void testFork() throws Exception {
+        assertEquals(2, threadManager.getParallelism());
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Runnable blocker = new Runnable() {
+            public void run() {
+                started.countDown();
+                try { release.await(); } catch (InterruptedException e) { }
+            }
+        };
+
+        Runnable noop = new Runnable() {
+            public void run() {
+            }
+        };
+
+        assertNotNull(threadManager.fork(blocker));
+        started.await();
+
+        // queued behind the blocker
+        Runnable task = threadManager.fork(noop);
+        assertNotNull(task);
+
+        // parallelism reached, the caller has to run it
+        assertNull(threadManager.fork(noop));
+
+        // not started yet, can be taken back by the caller
+        assertTrue(threadManager.cancel(task));
+        assertFalse(threadManager.cancel(task));
+
+        assertNotNull(threadManager.fork(noop));
+
+        release.countDown();
+    }
+
+    public void testShutdown() throws Exception {
+
+        Runnable noop = new Runnable() {
+            public void run() {
+            }
+        };
+
+        threadManager.destroy();
+
+        // the caller runs forked tasks itself
+        assertNull(threadManager.fork(noop));
+
+        // other tasks are not silently dropped
+        try {
+            threadManager.execute(noop);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.safehaus.penrose.ldapbackend.apacheds;
+
+import org.apache.directory.server.core.invocation.Invocation;
+import org.apache.directory.server.core.invocation.InvocationStack;
+import org.safehaus.penrose.ldapbackend.SearchResult;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the entries found by the interceptor. ApacheDS checks the target entry and
+ * its parent with hasEntry() and lookup() in several services before it executes an
+ * operation, and without the cache each check would be a search through the mappings.
+ *
+ * The entries are kept until the outermost invocation on the thread has finished, so
+ * the checks of one operation share a single search. The cache is cleared when the
+ * operation modifies an entry. DNs which don't exist can also be remembered across
+ * operations for a limited time. A TTL of 0 disables that, which is the default since
+ * entries added without going through ApacheDS would not be visible until it expires.
+ *
+ * @author Endi S. Dewata
+ */
+public class EntryCache {
+
+    public final static int MAX_NOT_FOUND = 10000;
+
+    class Scope {
+
+        Invocation invocation;
+
+        // null value: entry doesn't exist
+        Map<String,SearchResult> entries = new HashMap<String,SearchResult>();
+
+        Scope(Invocation invocation) {
+            this.invocation = invocation;
+        }
+    }
+
+    private ThreadLocal<Scope> scopes = new ThreadLocal<Scope>();
+
+    private long notFoundTtl;
+
+    // expiration time of the DNs which don't exist
+    private Map<String,Long> notFound = new ConcurrentHashMap<String,Long>();
+
+    public EntryCache(long notFoundTtl) {
+        this.notFoundTtl = notFoundTtl;
+    }
+
+    /**
+     * Returns the cached entries of the current operation or null if the thread isn't
+     * executing an operation.
+     */
+    Map<String,SearchResult> getEntries() {
+
+        InvocationStack stack = InvocationStack.getInstance();
+        if (stack.isEmpty()) {
+            scopes.remove();
+            return null;
+        }
+
+        // the stack is ordered from the innermost invocation
+        Invocation[] invocations = stack.toArray();
+        Invocation invocation = invocations[invocations.length-1];
+
+        Scope scope = scopes.get();
+        if (scope == null || scope.invocation != invocation) {
+            scope = new Scope(invocation);
+            scopes.set(scope);
+        }
+
+        return scope.entries;
+    }
+
+    /**
+     * Returns true if the cache knows whether the entry exists.
+     */
+    public boolean contains(String bindDn, String key) {
+
+        Map<String,SearchResult> entries = getEntries();
+        if (entries != null && entries.containsKey(key)) return true;
+
+        if (notFoundTtl <= 0) return false;
+
+        String notFoundKey = bindDn+"|"+key;
+        Long expiration = notFound.get(notFoundKey);
+        if (expiration == null) return false;
+
+        if (expiration > System.currentTimeMillis()) return true;
+
+        notFound.remove(notFoundKey);
+        return false;
+    }
+
+    /**
+     * Returns the cached entry or null if it doesn't exist or isn't cached.
+     */
+    public SearchResult get(String key) {
+        Map<String,SearchResult> entries = getEntries();
+        return entries == null ? null : entries.get(key);
+    }
+
+    /**
+     * Stores the result of a search. A null result means the entry doesn't exist.
+     */
+    public void put(String bindDn, String key, SearchResult result) {
+
+        Map<String,SearchResult> entries = getEntries();
+        if (entries != null) entries.put(key, result);
+
+        if (result != null || notFoundTtl <= 0) return;
+
+        long now = System.currentTimeMillis();
+        if (notFound.size() >= MAX_NOT_FOUND) purge(now);
+
+        notFound.put(bindDn+"|"+key, now + notFoundTtl);
+    }
+
+    void purge(long now) {
+
+        for (Iterator<Long> i=notFound.values().iterator(); i.hasNext(); ) {
+            if (i.next() <= now) i.remove();
+        }
+
+        if (notFound.size() >= MAX_NOT_FOUND) notFound.clear();
+    }
+
+    /**
+     * Forgets the entries of the current operation after it has modified an entry.
+     */
+    public void clear() {
+        Map<String,SearchResult> entries = getEntries();
+        if (entries != null) entries.clear();
+    }
+
+    /**
+     * Forgets the DNs which didn't exist after an entry has been added or renamed.
+     */
+    public void clearNotFound() {
+        notFound.clear();
+    }
+
+    public long getNotFoundTtl() {
+        return notFoundTtl;
+    }
+}
@@ -23,6 +23,8 @@ import org.apache.directory.server.core.DirectoryServiceConfiguration;
 import org.apache.directory.server.core.configuration.InterceptorConfiguration;
 import org.apache.directory.shared.ldap.name.LdapDN;
 import org.apache.directory.shared.ldap.filter.ExprNode;
+import org.apache.directory.shared.ldap.filter.PresenceNode;
+import org.apache.directory.shared.ldap.message.IteratorNamingEnumeration;
 import org.apache.directory.shared.ldap.message.ModificationItemImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,12 +48,31 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
     Backend backend;
 
+    // (objectClass=*) used by the existence checks and lookups
+    Filter presenceFilter;
+
+    long negativeCacheTtl;
+    EntryCache cache = new EntryCache(0);
+
     public Backend getBackend() {
         return backend;
     }
 
     public void setBackend(Backend backend) {
         this.backend = backend;
+        this.presenceFilter = null;
+    }
+
+    public long getNegativeCacheTtl() {
+        return negativeCacheTtl;
+    }
+
+    /**
+     * Sets how long DNs which don't exist are remembered (ms). 0 disables it.
+     */
+    public void setNegativeCacheTtl(long negativeCacheTtl) {
+        this.negativeCacheTtl = negativeCacheTtl;
+        cache = new EntryCache(negativeCacheTtl);
     }
 
     public void init(
@@ -62,9 +83,13 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
         super.init(factoryCfg, cfg);
     }
 
+    public String getBindDn() {
+        return getPrincipal() == null ? null : getPrincipal().getJndiName().getUpName();
+    }
+
     public Connection getSession() throws Exception {
 
-        String bindDn = getPrincipal() == null ? null : getPrincipal().getJndiName().getUpName();
+        String bindDn = getBindDn();
 
         Connection connection = backend.getConnection(bindDn);
 
@@ -81,7 +106,7 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
     public void removeSession() throws Exception {
 
-        String bindDn = getPrincipal() == null ? null : getPrincipal().getJndiName().getUpName();
+        String bindDn = getBindDn();
 
         DisconnectRequest request = backend.createDisconnectRequest();
         request.setConnectionId(bindDn);
@@ -89,6 +114,49 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
         backend.disconnect(request);
     }
 
+    public Filter getPresenceFilter() throws Exception {
+        if (presenceFilter == null) presenceFilter = backend.createPresentFilter("objectClass");
+        return presenceFilter;
+    }
+
+    /**
+     * Finds the entry with a base search, or returns null if it doesn't exist. The result
+     * is kept for the rest of the operation.
+     */
+    public org.safehaus.penrose.ldapbackend.SearchResult find(LdapDN name, DN dn) throws Exception {
+
+        String bindDn = getBindDn();
+        String key = name.getNormName().toLowerCase();
+
+        if (cache.contains(bindDn, key)) {
+            if (log.isDebugEnabled()) log.debug("Found \""+dn+"\" in cache.");
+            return cache.get(key);
+        }
+
+        if (log.isDebugEnabled()) log.debug("searching \""+dn+"\"");
+
+        Connection connection = getSession();
+
+        SearchResponse response = connection.search(
+                dn,
+                getPresenceFilter(),
+                SearchRequest.SCOPE_BASE
+        );
+
+        org.safehaus.penrose.ldapbackend.SearchResult result;
+        try {
+            result = response.hasNext() ? (org.safehaus.penrose.ldapbackend.SearchResult)response.next() : null;
+
+        } catch (LDAPException e) {
+            if (e.getResultCode() != LDAPException.NO_SUCH_OBJECT) throw e;
+            result = null;
+        }
+
+        cache.put(bindDn, key, result);
+
+        return result;
+    }
+
     public void bind(
             NextInterceptor next,
             LdapDN bindDn,
@@ -183,6 +251,9 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
             connection.add(dn, attributes);
 
+            cache.clear();
+            cache.clearNotFound();
+
         } catch (LDAPException e) {
             throw ExceptionTool.createNamingException(e);
 
@@ -246,6 +317,8 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
             connection.delete(dn);
 
+            cache.clear();
+
         } catch (LDAPException e) {
             throw ExceptionTool.createNamingException(e);
 
@@ -308,11 +381,9 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
             Connection connection = getSession();
 
-            Filter filter = backend.createFilter("(objectClass=*)");
-
             SearchResponse response = connection.search(
                     dn,
-                    filter,
+                    getPresenceFilter(),
                     SearchRequest.SCOPE_ONE
             );
 
@@ -344,19 +415,7 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
                 return next.hasEntry(name);
             }
 
-            if (debug) log.debug("searching \""+dn+"\"");
-
-            Connection connection = getSession();
-
-            Filter filter = backend.createFilter("(objectClass=*)");
-
-            SearchResponse response = connection.search(
-                    dn,
-                    filter,
-                    SearchRequest.SCOPE_BASE
-            );
-
-            return response.hasNext();
+            return find(name, dn) != null;
 
         } catch (LDAPException e) {
             throw ExceptionTool.createNamingException(e);
@@ -377,8 +436,6 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
         log.debug("===============================================================================");
         try {
             DN dn = backend.createDn(name.getUpName());
-            log.debug("lookup(\""+dn+"\", "+ Arrays.asList(attrIds)+")");
-
             if (debug) log.debug("lookup(\""+dn+"\", "+Arrays.asList(attrIds)+")");
 
             if (!backend.contains(dn)) {
@@ -386,17 +443,8 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
                 return next.lookup(name, attrIds);
             }
 
-            Connection connection = getSession();
-
-            Filter filter = backend.createFilter("(objectClass=*)");
-
-            SearchResponse response = connection.search(
-                    dn,
-                    filter,
-                    SearchRequest.SCOPE_BASE
-            );
-
-            org.safehaus.penrose.ldapbackend.SearchResult result = (org.safehaus.penrose.ldapbackend.SearchResult)response.next();
+            org.safehaus.penrose.ldapbackend.SearchResult result = find(name, dn);
+            if (result == null) throw ExceptionTool.createNamingException(LDAPException.NO_SUCH_OBJECT);
 
             javax.naming.directory.SearchResult sr = EntryTool.createSearchResult(result);
             return sr.getAttributes();
@@ -427,17 +475,8 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
                 return next.lookup(name);
             }
 
-            Connection connection = getSession();
-
-            Filter filter = backend.createFilter("(objectClass=*)");
-
-            SearchResponse response = connection.search(
-                    dn,
-                    filter,
-                    SearchRequest.SCOPE_BASE
-            );
-
-            org.safehaus.penrose.ldapbackend.SearchResult result = (org.safehaus.penrose.ldapbackend.SearchResult)response.next();
+            org.safehaus.penrose.ldapbackend.SearchResult result = find(name, dn);
+            if (result == null) throw ExceptionTool.createNamingException(LDAPException.NO_SUCH_OBJECT);
 
             javax.naming.directory.SearchResult sr = EntryTool.createSearchResult(result);
             return sr.getAttributes();
@@ -477,6 +516,16 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
                 return next.search(base, env, filter, searchControls);
             }
 
+            if (isBaseLookup(filter, searchControls)) {
+                org.safehaus.penrose.ldapbackend.SearchResult result = find(base, dn);
+                if (result == null) throw ExceptionTool.createNamingException(LDAPException.NO_SUCH_OBJECT);
+
+                Collection<javax.naming.directory.SearchResult> results = new ArrayList<javax.naming.directory.SearchResult>();
+                results.add(EntryTool.createSearchResult(result));
+
+                return new IteratorNamingEnumeration(results.iterator());
+            }
+
             String deref = (String)env.get("java.naming.ldap.derefAliases");
             int scope = searchControls.getSearchScope();
             String returningAttributes[] = searchControls.getReturningAttributes();
@@ -517,6 +566,19 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
         }
     }
 
+    /**
+     * Returns true if the search reads a single entry like lookup(), so it can use the
+     * entry found by the existence checks.
+     */
+    public boolean isBaseLookup(ExprNode filter, SearchControls searchControls) {
+
+        if (searchControls.getSearchScope() != SearchControls.OBJECT_SCOPE) return false;
+        if (searchControls.getReturningAttributes() != null) return false;
+        if (!(filter instanceof PresenceNode)) return false;
+
+        return "objectClass".equalsIgnoreCase(((PresenceNode)filter).getAttribute());
+    }
+
     public void modify(
             NextInterceptor next,
             LdapDN name,
@@ -569,6 +631,8 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
             connection.modify(dn, modifications);
 
+            cache.clear();
+
         } catch (LDAPException e) {
             throw ExceptionTool.createNamingException(e);
 
@@ -617,6 +681,8 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
             connection.modify(dn, modifications);
 
+            cache.clear();
+
         } catch (LDAPException e) {
             throw ExceptionTool.createNamingException(e);
 
@@ -652,6 +718,9 @@ public class LDAPBackendInterceptor extends BaseInterceptor {
 
             connection.modrdn(dn, newRdn, deleteOldDn);
 
+            cache.clear();
+            cache.clearNotFound();
+
         } catch (LDAPException e) {
             throw ExceptionTool.createNamingException(e);
 
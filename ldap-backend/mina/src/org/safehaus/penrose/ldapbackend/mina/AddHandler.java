@@ -50,7 +50,7 @@ public class AddHandler implements MessageHandler {
 
         try {
             int messageId = request.getMessageId();
-            DN dn = handler.backend.createDn(request.getEntry().toString());
+            DN dn = DNTool.createDn(handler.backend, request.getEntry());
             Attributes attributes = handler.createAttributes(request.getAttributes());
 
             Long connectionId = handler.getConnectionId(ioSession);
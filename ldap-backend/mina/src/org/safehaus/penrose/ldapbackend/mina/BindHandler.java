@@ -32,7 +32,7 @@ public class BindHandler implements MessageHandler {
 
         try {
             int messageId = request.getMessageId();
-            DN bindDn = handler.backend.createDn(request.getName().toString());
+            DN bindDn = DNTool.createDn(handler.backend, request.getName());
             byte[] password = request.getCredentials();
 
             Long connectionId = handler.getConnectionId(ioSession);
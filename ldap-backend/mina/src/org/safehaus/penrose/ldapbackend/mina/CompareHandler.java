@@ -32,7 +32,7 @@ public class CompareHandler implements MessageHandler {
 
         try {
             int messageId = request.getMessageId();
-            DN dn = handler.backend.createDn(request.getName().toString());
+            DN dn = DNTool.createDn(handler.backend, request.getName());
             String name = request.getAttributeId();
             Object value = request.getAssertionValue();
 
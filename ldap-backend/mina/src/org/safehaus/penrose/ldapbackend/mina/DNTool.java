@@ -0,0 +1,199 @@
+package org.safehaus.penrose.ldapbackend.mina;
+
+import org.apache.directory.shared.ldap.name.AttributeTypeAndValue;
+import org.apache.directory.shared.ldap.name.LdapDN;
+import org.apache.directory.shared.ldap.name.Rdn;
+import org.safehaus.penrose.ldapbackend.Backend;
+import org.safehaus.penrose.ldapbackend.DN;
+import org.safehaus.penrose.ldapbackend.RDN;
+
+import java.util.*;
+
+/**
+ * Translates DNs between the decoded LDAP messages and the backend without formatting
+ * and parsing the DN strings. The values in LdapDN are already unescaped, so they can
+ * be copied directly into the backend RDNs.
+ *
+ * @author Endi S. Dewata
+ */
+public class DNTool {
+
+    public final static int MAX_PARENT_DNS = 100;
+
+    public static DN createDn(Backend backend, LdapDN ldapDn) throws Exception {
+
+        if (ldapDn == null) return null;
+
+        Collection<RDN> rdns = new ArrayList<RDN>(ldapDn.size());
+        for (Object object : ldapDn.getRdns()) {
+            rdns.add(createRdn(backend, (Rdn)object));
+        }
+
+        return backend.createDn(rdns);
+    }
+
+    public static RDN createRdn(Backend backend, Rdn rdn) throws Exception {
+
+        if (rdn == null) return null;
+
+        Map<String,Object> values = new LinkedHashMap<String,Object>();
+        for (Iterator i=rdn.iterator(); i.hasNext(); ) {
+            AttributeTypeAndValue atav = (AttributeTypeAndValue)i.next();
+            values.put(atav.getType(), atav.getValue());
+        }
+
+        return backend.createRdn(values);
+    }
+
+    /**
+     * Creates the LdapDN of an entry by appending its RDN to the LdapDN of the parent.
+     * The LdapDNs of the parents are kept in the map, so the entries under the same
+     * parent only have to translate their own RDN.
+     */
+    public static LdapDN createLdapDn(DN dn, Map<String,LdapDN> parents) throws Exception {
+
+        RDN rdn = dn.getRdn();
+        if (rdn == null) return new LdapDN();
+
+        DN parentDn = dn.getParentDn();
+        String key = parentDn.toString();
+
+        LdapDN parent = parents.get(key);
+        if (parent == null) {
+            parent = createLdapDn(parentDn);
+            if (parents.size() < MAX_PARENT_DNS) parents.put(key, parent);
+        }
+
+        LdapDN ldapDn = (LdapDN)parent.clone();
+        ldapDn.add(createRdn(rdn));
+
+        return ldapDn;
+    }
+
+    public static LdapDN createLdapDn(DN dn) throws Exception {
+
+        List<RDN> rdns = new ArrayList<RDN>(dn.getRdns());
+
+        // LdapDN.add() prepends the RDN, so the RDNs are added from the root
+        LdapDN ldapDn = new LdapDN();
+        for (int i=rdns.size()-1; i>=0; i--) {
+            ldapDn.add(createRdn(rdns.get(i)));
+        }
+
+        return ldapDn;
+    }
+
+    public static Rdn createRdn(RDN rdn) throws Exception {
+
+        Collection<String> names = rdn.getNames();
+        if (names.size() == 1) {
+            String name = names.iterator().next();
+            Collection<Object> values = rdn.getValues(name);
+
+            if (values.size() == 1) {
+                Object value = values.iterator().next();
+
+                // Rdn(type, value) keeps the value as is, so it's only used if the value
+                // doesn't need to be escaped
+                if (value instanceof String && !needsEscaping((String)value)) {
+                    return new Rdn(name, (String)value);
+                }
+            }
+        }
+
+        // the backend escapes the values differently, so the RDN string is created here
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            for (Object value : rdn.getValues(name)) {
+                if (sb.length() > 0) sb.append('+');
+                sb.append(name);
+                sb.append('=');
+                sb.append(escape(value));
+            }
+        }
+
+        return new Rdn(sb.toString());
+    }
+
+    /**
+     * Escapes an RDN value as in RFC 4514. Binary values are encoded as #hex.
+     */
+    public static String escape(Object value) {
+
+        StringBuilder sb = new StringBuilder();
+
+        if (value instanceof byte[]) {
+            sb.append('#');
+            for (byte b : (byte[])value) {
+                appendHex(sb, b & 0xff);
+            }
+            return sb.toString();
+        }
+
+        String s = value.toString();
+        int length = s.length();
+
+        for (int i=0; i<length; i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x20) {
+                sb.append('\\');
+                appendHex(sb, c);
+                continue;
+            }
+
+            if (i == 0 && (c == ' ' || c == '#') || i == length-1 && c == ' ') {
+                sb.append('\\');
+                sb.append(c);
+                continue;
+            }
+
+            switch (c) {
+                case ',':
+                case '+':
+                case '"':
+                case '\\':
+                case '<':
+                case '>':
+                case ';':
+                case '=':
+                    sb.append('\\');
+            }
+
+            sb.append(c);
+        }
+
+        return sb.toString();
+    }
+
+    public static void appendHex(StringBuilder sb, int b) {
+        if (b < 0x10) sb.append('0');
+        sb.append(Integer.toHexString(b));
+    }
+
+    public static boolean needsEscaping(String value) {
+
+        int length = value.length();
+        if (length == 0) return true;
+        if (value.charAt(0) == ' ' || value.charAt(0) == '#' || value.charAt(length-1) == ' ') return true;
+
+        for (int i=0; i<length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c >= 0x7f) return true;
+
+            switch (c) {
+                case ',':
+                case '+':
+                case '"':
+                case '\\':
+                case '<':
+                case '>':
+                case ';':
+                case '=':
+                    return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -32,7 +32,7 @@ public class DeleteHandler implements MessageHandler {
 
         try {
             int messageId = request.getMessageId();
-            DN dn = handler.backend.createDn(request.getName().toString());
+            DN dn = DNTool.createDn(handler.backend, request.getName());
 
             Long connectionId = handler.getConnectionId(ioSession);
             Connection connection = handler.getConnection(connectionId);
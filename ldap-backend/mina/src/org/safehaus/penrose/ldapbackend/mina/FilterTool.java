@@ -3,7 +3,10 @@ package org.safehaus.penrose.ldapbackend.mina;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.directory.shared.ldap.filter.*;
+import org.safehaus.penrose.ldapbackend.Backend;
+import org.safehaus.penrose.ldapbackend.Filter;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 
@@ -14,6 +17,69 @@ public class FilterTool {
 
     public static Logger log = LoggerFactory.getLogger(FilterTool.class);
 
+    /**
+     * Creates the backend filter directly from the decoded filter nodes. Unlike the
+     * string conversion the values are passed as they are, so they don't need to be
+     * escaped. Returns null if the filter is not supported.
+     */
+    public static Filter createFilter(Backend backend, ExprNode node) throws Exception {
+
+        if (node == null) return null;
+
+        if (node instanceof SimpleNode) {
+            SimpleNode simpleNode = (SimpleNode)node;
+
+            String attribute = simpleNode.getAttribute();
+            String operator = AbstractExprNode.getOperationString(simpleNode.getAssertionType());
+            Object value = simpleNode.getValue();
+
+            return backend.createSimpleFilter(attribute, operator, value);
+
+        } else if (node instanceof PresenceNode) {
+            PresenceNode presenceNode = (PresenceNode)node;
+
+            return backend.createPresentFilter(presenceNode.getAttribute());
+
+        } else if (node instanceof SubstringNode) {
+            SubstringNode substringNode = (SubstringNode)node;
+
+            Collection<Object> any = new ArrayList<Object>();
+            if (substringNode.getAny() != null) any.addAll(substringNode.getAny());
+
+            return backend.createSubstringFilter(
+                    substringNode.getAttribute(),
+                    substringNode.getInitial(),
+                    any,
+                    substringNode.getFinal()
+            );
+
+        } else if (node instanceof BranchNode) {
+            BranchNode branchNode = (BranchNode)node;
+
+            if (branchNode.isNegation()) {
+                Filter filter = createFilter(backend, branchNode.getChild());
+                return filter == null ? null : backend.createNotFilter(filter);
+            }
+
+            Collection<Filter> filters = new ArrayList<Filter>();
+            for (Object object : branchNode.getChildren()) {
+                Filter filter = createFilter(backend, (ExprNode)object);
+                if (filter != null) filters.add(filter);
+            }
+
+            if (branchNode.isConjunction()) {
+                return backend.createAndFilter(filters);
+
+            } else if (branchNode.isDisjunction()) {
+                return backend.createOrFilter(filters);
+            }
+        }
+
+        if (FilterTool.log.isDebugEnabled()) FilterTool.log.debug("Unsupported filter: "+node);
+
+        return null;
+    }
+
     public static String convert(ExprNode node) throws Exception {
         StringBuilder sb = new StringBuilder();
         FilterTool.convert(node, sb);
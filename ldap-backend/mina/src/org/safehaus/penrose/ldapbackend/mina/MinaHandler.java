@@ -39,6 +39,8 @@ public class MinaHandler extends DemuxingIoHandler {
     public Backend backend;
     public ProtocolCodecFactory codecFactory;
 
+    public WriteThrottle writeThrottle = new WriteThrottle(0, 0);
+
     long nextConnectionId;
     public Map<IoSession,Long> connectionIds = Collections.synchronizedMap(new HashMap<IoSession,Long>());
 
@@ -141,6 +143,11 @@ public class MinaHandler extends DemuxingIoHandler {
         super.sessionClosed(ioSession);
     }
 
+    public void messageSent(IoSession ioSession, Object message) throws Exception {
+        writeThrottle.signal();
+        super.messageSent(ioSession, message);
+    }
+
     public void exceptionCaught(IoSession ioSession, Throwable cause) throws Exception {
 
         Long connectionId = getConnectionId(ioSession);
@@ -172,6 +179,14 @@ public class MinaHandler extends DemuxingIoHandler {
         this.backend = backend;
     }
 
+    public WriteThrottle getWriteThrottle() {
+        return writeThrottle;
+    }
+
+    public void setWriteThrottle(WriteThrottle writeThrottle) {
+        this.writeThrottle = writeThrottle;
+    }
+
     public ProtocolCodecFactory getCodecFactory() {
         return codecFactory;
     }
@@ -304,7 +319,7 @@ public class MinaHandler extends DemuxingIoHandler {
 
             javax.naming.directory.Attribute attr = new BasicAttribute(name);
             for (Object value : values) {
-                if (value instanceof byte[]) {
+                if (value instanceof String || value instanceof byte[]) {
                     attr.add(value);
 
                 } else {
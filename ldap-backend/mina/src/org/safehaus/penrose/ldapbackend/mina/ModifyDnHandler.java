@@ -33,8 +33,8 @@ public class ModifyDnHandler implements MessageHandler {
 
         try {
             int messageId = request.getMessageId();
-            DN dn = handler.backend.createDn(request.getName().toString());
-            RDN newRdn = handler.backend.createRdn(request.getNewRdn().toString());
+            DN dn = DNTool.createDn(handler.backend, request.getName());
+            RDN newRdn = DNTool.createRdn(handler.backend, request.getNewRdn());
             boolean deleteOldRdn = request.getDeleteOldRdn();
 
             Long connectionId = handler.getConnectionId(ioSession);
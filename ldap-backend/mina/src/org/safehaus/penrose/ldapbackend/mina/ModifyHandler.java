@@ -35,7 +35,7 @@ public class ModifyHandler implements MessageHandler {
 
         try {
             int messageId = request.getMessageId();
-            DN dn = handler.backend.createDn(request.getName().toString());
+            DN dn = DNTool.createDn(handler.backend, request.getName());
             Collection<Modification> modifications = handler.createModifications(request.getModificationItems());
 
             Long connectionId = handler.getConnectionId(ioSession);
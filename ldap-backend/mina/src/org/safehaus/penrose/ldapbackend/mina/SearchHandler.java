@@ -9,6 +9,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.safehaus.penrose.ldapbackend.*;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author Endi S. Dewata
  */
@@ -30,8 +33,8 @@ public class SearchHandler implements MessageHandler {
 
         try {
             int messageId = request.getMessageId();
-            DN baseDn = handler.backend.createDn(request.getBase().toString());
-            Filter filter = handler.backend.createFilter(FilterTool.convert(request.getFilter()));
+            DN baseDn = DNTool.createDn(handler.backend, request.getBase());
+            Filter filter = FilterTool.createFilter(handler.backend, request.getFilter());
 
             Long connectionId = handler.getConnectionId(ioSession);
             Connection connection = handler.getConnection(connectionId);
@@ -54,9 +57,12 @@ public class SearchHandler implements MessageHandler {
 
             SearchResponse searchResponse = handler.backend.createSearchResponse();
 
+            // LdapDNs of the parent entries of the results
+            final Map<String,LdapDN> parents = new HashMap<String,LdapDN>();
+
             searchResponse.addListener(new SearchListener() {
                 public void add(SearchResult result) throws Exception {
-                    sendSearchResult(ioSession, request, result);
+                    sendSearchResult(ioSession, request, result, parents);
                 }
                 public void add(SearchReference reference) throws Exception {
                     sendSearchReference(ioSession, request, reference);
@@ -65,7 +71,15 @@ public class SearchHandler implements MessageHandler {
                 }
             });
 
-            connection.search(searchRequest, searchResponse);
+            // the results are written while the search is running, the search will
+            // wait if the client doesn't read them fast enough
+            handler.writeThrottle.begin(ioSession);
+
+            try {
+                connection.search(searchRequest, searchResponse);
+            } finally {
+                handler.writeThrottle.end(ioSession);
+            }
 /*
             while (searchResponse.hasNext()) {
                 org.safehaus.penrose.ldapbackend.SearchResult searchResult = (org.safehaus.penrose.ldapbackend.SearchResult)searchResponse.next();
@@ -95,16 +109,25 @@ public class SearchHandler implements MessageHandler {
             SearchRequest request,
             SearchResult result
     ) throws Exception {
+        sendSearchResult(ioSession, request, result, new HashMap<String,LdapDN>());
+    }
+
+    public void sendSearchResult(
+            IoSession ioSession,
+            SearchRequest request,
+            SearchResult result,
+            Map<String,LdapDN> parents
+    ) throws Exception {
 
         DN dn = result.getDn();
         Attributes attributes = result.getAttributes();
 
         SearchResponseEntry response = new SearchResponseEntryImpl(request.getMessageId());
-        response.setObjectName(new LdapDN(dn.toString()));
+        response.setObjectName(DNTool.createLdapDn(dn, parents));
         response.setAttributes(handler.createAttributes(attributes));
         handler.setControls(result, response);
 
-        ioSession.write(response);
+        handler.writeThrottle.write(ioSession, response);
     }
 
     public void sendSearchReference(
@@ -121,6 +144,6 @@ public class SearchHandler implements MessageHandler {
         SearchResponseReference response = new SearchResponseReferenceImpl(request.getMessageId());
         response.setReferral(referral);
 
-        ioSession.write(response);
+        handler.writeThrottle.write(ioSession, response);
     }
 }
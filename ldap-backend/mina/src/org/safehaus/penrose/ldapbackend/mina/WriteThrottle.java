@@ -0,0 +1,202 @@
+package org.safehaus.penrose.ldapbackend.mina;
+
+import org.apache.mina.common.IoFuture;
+import org.apache.mina.common.IoFutureListener;
+import org.apache.mina.common.IoSession;
+import org.apache.mina.common.WriteFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the outbound bytes queued for slow clients. Search results are written from
+ * the thread executing the search, so waiting here pauses the search until the client
+ * has read enough of the results.
+ *
+ * The per-connection limit applies to the bytes scheduled on the session. The global
+ * limit applies to the bytes scheduled on all sessions which are streaming results.
+ * A session without scheduled bytes may always write, so a slow client cannot block
+ * the other clients completely. A limit of 0 disables the check.
+ *
+ * A client which doesn't read any of its scheduled bytes within the maximum pause is
+ * closed and the search fails. Otherwise the search would occupy an executor thread
+ * forever, and since the events of a session are processed in order, an abandon or
+ * unbind from that client could never stop it. A maximum pause of 0 waits forever.
+ *
+ * The writers are resumed when a write has been completed. The messageSent() events
+ * of a session are delivered after the search that is waiting has finished, so they
+ * cannot be used for that.
+ *
+ * @author Endi S. Dewata
+ */
+public class WriteThrottle implements IoFutureListener {
+
+    public Logger log = LoggerFactory.getLogger(getClass());
+
+    // wait in steps in case the session is closed without completing the writes
+    public final static long WAIT_INTERVAL = 100; // ms
+
+    public final static long DEFAULT_MAX_PAUSE = 5 * 60 * 1000; // ms
+
+    private int maxConnectionBytes;
+    private long maxTotalBytes;
+    private long maxPause = DEFAULT_MAX_PAUSE;
+
+    private final Object lock = new Object();
+    private volatile int waiters;
+
+    // sessions streaming results and the number of their writers
+    private Map<IoSession,AtomicInteger> sessions = new ConcurrentHashMap<IoSession,AtomicInteger>();
+
+    public WriteThrottle(int maxConnectionBytes, long maxTotalBytes) {
+        this.maxConnectionBytes = maxConnectionBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public WriteThrottle(int maxConnectionBytes, long maxTotalBytes, long maxPause) {
+        this.maxConnectionBytes = maxConnectionBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxPause = maxPause;
+    }
+
+    public boolean isEnabled() {
+        return maxConnectionBytes > 0 || maxTotalBytes > 0;
+    }
+
+    /**
+     * Registers a session which is about to stream results.
+     */
+    public synchronized void begin(IoSession session) {
+        if (!isEnabled()) return;
+
+        AtomicInteger counter = sessions.get(session);
+        if (counter == null) {
+            counter = new AtomicInteger();
+            sessions.put(session, counter);
+        }
+        counter.incrementAndGet();
+    }
+
+    public void end(IoSession session) {
+        if (!isEnabled()) return;
+
+        synchronized (this) {
+            AtomicInteger counter = sessions.get(session);
+            if (counter != null && counter.decrementAndGet() <= 0) sessions.remove(session);
+        }
+
+        // the waiting sessions might be under the global limit now
+        signal();
+    }
+
+    /**
+     * Writes the message after the scheduled bytes are below the limits.
+     */
+    public WriteFuture write(IoSession session, Object message) throws Exception {
+
+        if (!isEnabled()) return session.write(message);
+
+        await(session);
+
+        WriteFuture future = session.write(message);
+        future.addListener(this);
+
+        return future;
+    }
+
+    public void await(IoSession session) throws Exception {
+
+        if (!isFull(session)) return;
+
+        if (log.isDebugEnabled()) log.debug("Pausing results: "+session.getScheduledWriteBytes()+" bytes scheduled.");
+
+        // the pause is extended whenever the client has read some of the bytes
+        int lastBytes = session.getScheduledWriteBytes();
+        long deadline = System.currentTimeMillis() + maxPause;
+
+        synchronized (lock) {
+            waiters++;
+            try {
+                while (isFull(session)) {
+                    if (!session.isConnected()) throw new Exception("Connection closed.");
+
+                    int bytes = session.getScheduledWriteBytes();
+                    long now = System.currentTimeMillis();
+
+                    if (bytes < lastBytes) {
+                        lastBytes = bytes;
+                        deadline = now + maxPause;
+
+                    } else if (maxPause > 0 && now >= deadline) {
+                        log.warn("Closing connection: no results read in "+maxPause+" ms, "+bytes+" bytes scheduled.");
+                        session.close();
+                        throw new Exception("Write timeout.");
+                    }
+
+                    lock.wait(WAIT_INTERVAL);
+                }
+            } finally {
+                waiters--;
+            }
+        }
+
+        if (log.isDebugEnabled()) log.debug("Resuming results.");
+    }
+
+    public boolean isFull(IoSession session) {
+
+        int bytes = session.getScheduledWriteBytes();
+        if (bytes == 0) return false;
+
+        if (maxConnectionBytes > 0 && bytes > maxConnectionBytes) return true;
+        if (maxTotalBytes > 0 && getTotalBytes() > maxTotalBytes) return true;
+
+        return false;
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (IoSession session : sessions.keySet()) {
+            total += session.getScheduledWriteBytes();
+        }
+        return total;
+    }
+
+    public void operationComplete(IoFuture future) {
+        signal();
+    }
+
+    public void signal() {
+        if (waiters == 0) return;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    public int getMaxConnectionBytes() {
+        return maxConnectionBytes;
+    }
+
+    public void setMaxConnectionBytes(int maxConnectionBytes) {
+        this.maxConnectionBytes = maxConnectionBytes;
+    }
+
+    public long getMaxPause() {
+        return maxPause;
+    }
+
+    public void setMaxPause(long maxPause) {
+        this.maxPause = maxPause;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+}
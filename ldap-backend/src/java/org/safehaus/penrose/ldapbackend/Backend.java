@@ -17,6 +17,9 @@
  */
 package org.safehaus.penrose.ldapbackend;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * @author Endi S. Dewata
  */
@@ -39,6 +42,21 @@ public interface Backend {
     public DN createDn(String dn) throws Exception;
     public RDN createRdn(String rdn) throws Exception;
     public Filter createFilter(String filter) throws Exception;
+
+    /**
+     * The following methods create the objects from their components, so the frontends
+     * can translate their own request objects without formatting and parsing strings.
+     * The RDNs are ordered from the leaf to the root like in the DN string.
+     */
+    public DN createDn(Collection<RDN> rdns) throws Exception;
+    public RDN createRdn(Map<String,Object> values) throws Exception;
+
+    public Filter createSimpleFilter(String attribute, String operator, Object value) throws Exception;
+    public Filter createPresentFilter(String attribute) throws Exception;
+    public Filter createSubstringFilter(String attribute, Object initial, Collection<Object> any, Object fin) throws Exception;
+    public Filter createAndFilter(Collection<Filter> filters) throws Exception;
+    public Filter createOrFilter(Collection<Filter> filters) throws Exception;
+    public Filter createNotFilter(Filter filter) throws Exception;
     
     public Attributes createAttributes() throws Exception;
     public Attribute createAttribute(String name) throws Exception;
@@ -8,4 +8,5 @@ import java.util.Collection;
 public interface DN {
     public RDN getRdn() throws Exception;
     public Collection<RDN> getRdns() throws Exception;
+    public DN getParentDn() throws Exception;
 }
@@ -23,15 +23,13 @@ import org.safehaus.penrose.session.Session;
 import org.safehaus.penrose.ldapbackend.ConnectRequest;
 import org.safehaus.penrose.PenroseConfig;
 import org.safehaus.penrose.control.Control;
-import org.safehaus.penrose.filter.FilterTool;
+import org.safehaus.penrose.filter.*;
 import org.safehaus.penrose.ldap.*;
 import org.safehaus.penrose.partition.PartitionManager;
 import org.safehaus.penrose.server.PenroseServer;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 import org.safehaus.penrose.ldapbackend.Connection;
 import org.safehaus.penrose.ldapbackend.DisconnectRequest;
@@ -141,6 +139,67 @@ public class PenroseBackend implements org.safehaus.penrose.ldapbackend.Backend
         return new PenroseFilter(FilterTool.parseFilter(filter));
     }
 
+    public org.safehaus.penrose.ldapbackend.DN createDn(Collection<org.safehaus.penrose.ldapbackend.RDN> rdns) throws Exception {
+        DNBuilder db = new DNBuilder();
+        for (org.safehaus.penrose.ldapbackend.RDN rdn : rdns) {
+            db.append(((PenroseRDN)rdn).getRdn());
+        }
+        return new PenroseDN(db.toDn());
+    }
+
+    public org.safehaus.penrose.ldapbackend.RDN createRdn(Map<String,Object> values) throws Exception {
+        return new PenroseRDN(new RDN(values));
+    }
+
+    public org.safehaus.penrose.ldapbackend.Filter createSimpleFilter(String attribute, String operator, Object value) throws Exception {
+        return new PenroseFilter(new SimpleFilter(attribute, operator, value));
+    }
+
+    public org.safehaus.penrose.ldapbackend.Filter createPresentFilter(String attribute) throws Exception {
+        return new PenroseFilter(new PresentFilter(attribute));
+    }
+
+    public org.safehaus.penrose.ldapbackend.Filter createSubstringFilter(String attribute, Object initial, Collection<Object> any, Object fin) throws Exception {
+
+        // same layout as the parser creates, e.g. (cn=a*b*c) -> [a, *, b, *, c]
+        Collection<Object> substrings = new ArrayList<Object>();
+        if (initial != null) substrings.add(initial);
+        substrings.add(SubstringFilter.STAR);
+
+        if (any != null) {
+            for (Object value : any) {
+                substrings.add(value);
+                substrings.add(SubstringFilter.STAR);
+            }
+        }
+
+        if (fin != null) substrings.add(fin);
+
+        return new PenroseFilter(new SubstringFilter(attribute, substrings));
+    }
+
+    public org.safehaus.penrose.ldapbackend.Filter createAndFilter(Collection<org.safehaus.penrose.ldapbackend.Filter> filters) throws Exception {
+        AndFilter andFilter = new AndFilter();
+        for (org.safehaus.penrose.ldapbackend.Filter filter : filters) {
+            Filter f = ((PenroseFilter)filter).getFilter();
+            if (f != null) andFilter.addFilter(f);
+        }
+        return new PenroseFilter(andFilter);
+    }
+
+    public org.safehaus.penrose.ldapbackend.Filter createOrFilter(Collection<org.safehaus.penrose.ldapbackend.Filter> filters) throws Exception {
+        OrFilter orFilter = new OrFilter();
+        for (org.safehaus.penrose.ldapbackend.Filter filter : filters) {
+            Filter f = ((PenroseFilter)filter).getFilter();
+            if (f != null) orFilter.addFilter(f);
+        }
+        return new PenroseFilter(orFilter);
+    }
+
+    public org.safehaus.penrose.ldapbackend.Filter createNotFilter(org.safehaus.penrose.ldapbackend.Filter filter) throws Exception {
+        return new PenroseFilter(new NotFilter(((PenroseFilter)filter).getFilter()));
+    }
+
     public org.safehaus.penrose.ldapbackend.Attributes createAttributes() throws Exception {
         return new PenroseAttributes(new Attributes());
     }
@@ -214,7 +273,7 @@ public class PenroseBackend implements org.safehaus.penrose.ldapbackend.Backend
     }
 
     public org.safehaus.penrose.ldapbackend.SearchResponse createSearchResponse() throws Exception {
-        return new PenroseSearchResponse(new SearchResponse());
+        return new PenroseSearchResponse(new RingBufferSearchResponse());
     }
 
     public org.safehaus.penrose.ldapbackend.UnbindRequest createUnbindRequest() throws Exception {
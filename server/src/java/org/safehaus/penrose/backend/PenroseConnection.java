@@ -355,7 +355,7 @@ public class PenroseConnection implements Connection {
         penroseRequest.setFilter(penroseFilter);
         penroseRequest.setScope(scope);
 
-        SearchResponse penroseResponse = new SearchResponse();
+        SearchResponse penroseResponse = new RingBufferSearchResponse();
 
         try {
             session.search(penroseRequest, penroseResponse);
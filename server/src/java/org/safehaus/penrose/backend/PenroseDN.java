@@ -19,7 +19,8 @@ public class PenroseDN implements org.safehaus.penrose.ldapbackend.DN {
     }
 
     public org.safehaus.penrose.ldapbackend.RDN getRdn() throws Exception {
-        return new PenroseRDN(dn.getRdn());
+        RDN rdn = dn.getRdn();
+        return rdn == null ? null : new PenroseRDN(rdn);
     }
 
     public Collection<org.safehaus.penrose.ldapbackend.RDN> getRdns() throws Exception {
@@ -30,6 +31,10 @@ public class PenroseDN implements org.safehaus.penrose.ldapbackend.DN {
         return rdns;
     }
 
+    public org.safehaus.penrose.ldapbackend.DN getParentDn() throws Exception {
+        return new PenroseDN(dn.getParentDn());
+    }
+
     public DN getDn() {
         return dn;
     }
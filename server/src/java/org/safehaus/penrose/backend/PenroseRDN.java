@@ -29,4 +29,8 @@ public class PenroseRDN implements org.safehaus.penrose.ldapbackend.RDN {
     public RDN getRdn() {
         return rdn;
     }
+
+    public String toString() {
+        return rdn == null ? "" : rdn.toString();
+    }
 }
@@ -0,0 +1,108 @@
+package org.safehaus.penrose.test.mina;
+
+import junit.framework.TestCase;
+import org.apache.directory.shared.ldap.name.LdapDN;
+import org.safehaus.penrose.backend.PenroseBackend;
+import org.safehaus.penrose.backend.PenroseDN;
+import org.safehaus.penrose.ldap.DN;
+import org.safehaus.penrose.ldap.RDN;
+import org.safehaus.penrose.ldapbackend.mina.DNTool;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class DNToolTest extends TestCase {
+
+    PenroseBackend backend;
+
+    public void setUp() throws Exception {
+        System.setProperty("penrose.home", System.getProperty("java.io.tmpdir"));
+        backend = new PenroseBackend();
+    }
+
+    public DN createDn(String dn) throws Exception {
+        return ((PenroseDN)DNTool.createDn(backend, new LdapDN(dn))).getDn();
+    }
+
+    public LdapDN roundTrip(String dn) throws Exception {
+        PenroseDN penroseDn = (PenroseDN)DNTool.createDn(backend, new LdapDN(dn));
+        return DNTool.createLdapDn(penroseDn, new HashMap<String,LdapDN>());
+    }
+
+    public void testEscapedValues() throws Exception {
+
+        String s = "cn=Smith\\, John,ou=Users\\+Groups,dc=Example,dc=com";
+
+        DN dn = createDn(s);
+        assertEquals("Smith, John", dn.getRdn().get("cn"));
+        assertEquals("Users+Groups", dn.getRdn(1).get("ou"));
+
+        assertEquals(new LdapDN(s), roundTrip(s));
+    }
+
+    public void testSpecialCharacters() throws Exception {
+
+        String s = "cn=\\ lead\\#\\\"\\<\\>\\;\\=\\\\trail\\ ,ou=\\#hash,dc=Example,dc=com";
+
+        DN dn = createDn(s);
+        assertEquals(" lead#\"<>;=\\trail ", dn.getRdn().get("cn"));
+        assertEquals("#hash", dn.getRdn(1).get("ou"));
+
+        LdapDN ldapDn = roundTrip(s);
+        assertEquals(new LdapDN(s), ldapDn);
+        assertEquals(" lead#\"<>;=\\trail ", ldapDn.getRdn().getValue());
+    }
+
+    public void testMultiValuedRdn() throws Exception {
+
+        String s = "cn=Smith\\, John+uid=jsmith,ou=Users,dc=Example,dc=com";
+
+        RDN rdn = createDn(s).getRdn();
+        assertEquals(2, rdn.getNames().size());
+        assertEquals("Smith, John", rdn.get("cn"));
+        assertEquals("jsmith", rdn.get("uid"));
+
+        LdapDN ldapDn = roundTrip(s);
+        assertEquals(new LdapDN(s), ldapDn);
+        assertEquals(2, ldapDn.getRdn().size());
+    }
+
+    public void testHexValues() throws Exception {
+
+        String s = "uid=#0403e9ff80,ou=#04024869,dc=Example,dc=com";
+
+        // shared-ldap decodes #hex values into byte arrays
+        DN dn = createDn(s);
+        Object value = dn.getRdn().get("uid");
+        assertTrue(value instanceof byte[]);
+        assertTrue(Arrays.equals(new byte[] { 0x04, 0x03, (byte)0xe9, (byte)0xff, (byte)0x80 }, (byte[])value));
+
+        assertEquals("uid=#0403e9ff80,ou=#04024869,dc=Example,dc=com", dn.toString());
+
+        LdapDN ldapDn = roundTrip(s);
+        assertEquals(new LdapDN(s), ldapDn);
+
+        value = ldapDn.getRdn().getValue();
+        assertTrue(value instanceof byte[]);
+        assertTrue(Arrays.equals(new byte[] { 0x04, 0x03, (byte)0xe9, (byte)0xff, (byte)0x80 }, (byte[])value));
+    }
+
+    public void testParentDns() throws Exception {
+
+        Map<String,LdapDN> parents = new HashMap<String,LdapDN>();
+
+        String s1 = "uid=#0403e9ff80,ou=Smith\\, John+uid=\\#1,dc=Example,dc=com";
+        String s2 = "uid=user2,ou=Smith\\, John+uid=\\#1,dc=Example,dc=com";
+
+        LdapDN dn1 = DNTool.createLdapDn(DNTool.createDn(backend, new LdapDN(s1)), parents);
+        LdapDN dn2 = DNTool.createLdapDn(DNTool.createDn(backend, new LdapDN(s2)), parents);
+
+        assertEquals(1, parents.size());
+        assertEquals(new LdapDN(s1), dn1);
+        assertEquals(new LdapDN(s2), dn2);
+    }
+}
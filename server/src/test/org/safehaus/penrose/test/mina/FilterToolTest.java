@@ -0,0 +1,108 @@
+package org.safehaus.penrose.test.mina;
+
+import junit.framework.TestCase;
+import org.apache.directory.shared.ldap.filter.*;
+import org.safehaus.penrose.backend.PenroseBackend;
+import org.safehaus.penrose.backend.PenroseFilter;
+import org.safehaus.penrose.filter.Filter;
+import org.safehaus.penrose.filter.SimpleFilter;
+import org.safehaus.penrose.filter.SubstringFilter;
+import org.safehaus.penrose.ldapbackend.mina.FilterTool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class FilterToolTest extends TestCase {
+
+    PenroseBackend backend;
+
+    public void setUp() throws Exception {
+        System.setProperty("penrose.home", System.getProperty("java.io.tmpdir"));
+        backend = new PenroseBackend();
+    }
+
+    public Filter createFilter(ExprNode node) throws Exception {
+        return ((PenroseFilter)FilterTool.createFilter(backend, node)).getFilter();
+    }
+
+    /**
+     * The filter string of the backend filter has to parse into the same filter.
+     */
+    public void assertRoundTrip(Filter filter) throws Exception {
+        assertEquals(filter, org.safehaus.penrose.filter.FilterTool.parseFilter(filter.toString()));
+    }
+
+    public void testEscapedValues() throws Exception {
+
+        // decoded values are not escaped
+        SimpleNode node = new SimpleNode("cn", "a*b(c)\\d", AbstractExprNode.EQUALITY);
+
+        SimpleFilter filter = (SimpleFilter)createFilter(node);
+        assertEquals("cn", filter.getAttribute());
+        assertEquals("=", filter.getOperator());
+        assertEquals("a*b(c)\\d", filter.getValue());
+
+        assertRoundTrip(filter);
+    }
+
+    public void testDnValues() throws Exception {
+
+        SimpleNode node = new SimpleNode("member", "cn=Smith\\, John+uid=jsmith,dc=Example,dc=com", AbstractExprNode.EQUALITY);
+
+        SimpleFilter filter = (SimpleFilter)createFilter(node);
+        assertEquals("cn=Smith\\, John+uid=jsmith,dc=Example,dc=com", filter.getValue());
+
+        assertRoundTrip(filter);
+    }
+
+    public void testBinaryValues() throws Exception {
+
+        byte[] bytes = new byte[] { 0x04, 0x03, (byte)0xe9, (byte)0xff, (byte)0x80 };
+        SimpleNode node = new SimpleNode("objectGUID", bytes, AbstractExprNode.EQUALITY);
+
+        SimpleFilter filter = (SimpleFilter)createFilter(node);
+        assertTrue(filter.getValue() instanceof byte[]);
+        assertTrue(Arrays.equals(bytes, (byte[])filter.getValue()));
+    }
+
+    public void testSubstrings() throws Exception {
+
+        ArrayList<String> any = new ArrayList<String>();
+        any.add("b*");
+        any.add("(c)");
+
+        SubstringNode node = new SubstringNode(any, "cn", "a\\", "d");
+
+        SubstringFilter filter = (SubstringFilter)createFilter(node);
+        assertEquals("cn", filter.getAttribute());
+        assertEquals(
+                Arrays.asList(new Object[] { "a\\", SubstringFilter.STAR, "b*", SubstringFilter.STAR, "(c)", SubstringFilter.STAR, "d" }),
+                new ArrayList<Object>(filter.getSubstrings())
+        );
+
+        assertRoundTrip(filter);
+    }
+
+    public void testBranches() throws Exception {
+
+        BranchNode not = new BranchNode(AbstractExprNode.NOT);
+        not.addNode(new SimpleNode("ou", "(x)", AbstractExprNode.EQUALITY));
+
+        BranchNode or = new BranchNode(AbstractExprNode.OR);
+        or.addNode(new PresenceNode("sn"));
+        or.addNode(new SimpleNode("uid", "x*", AbstractExprNode.GREATEREQ));
+
+        BranchNode and = new BranchNode(AbstractExprNode.AND);
+        and.addNode(new SimpleNode("cn", "a,b", AbstractExprNode.EQUALITY));
+        and.addNode(or);
+        and.addNode(not);
+
+        Filter filter = createFilter(and);
+        assertEquals("(&(cn=a,b)(|(sn=*)(uid>=x\\2a))(!(ou=\\28x\\29)))", filter.toString());
+
+        assertRoundTrip(filter);
+    }
+}
@@ -0,0 +1,148 @@
+package org.safehaus.penrose.test.mina;
+
+import junit.framework.TestCase;
+import org.apache.mina.common.IoSession;
+import org.safehaus.penrose.ldapbackend.mina.WriteThrottle;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * @author Endi S. Dewata
+ */
+public class WriteThrottleTest extends TestCase {
+
+    /**
+     * A session of a client which has stopped reading.
+     */
+    public static class StuckSession implements InvocationHandler {
+
+        volatile int scheduledWriteBytes;
+        volatile boolean closed;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if ("getScheduledWriteBytes".equals(name)) return scheduledWriteBytes;
+            if ("isConnected".equals(name)) return !closed;
+            if ("close".equals(name)) {
+                closed = true;
+                return null;
+            }
+            if ("hashCode".equals(name)) return System.identityHashCode(proxy);
+            if ("equals".equals(name)) return proxy == args[0];
+
+            throw new UnsupportedOperationException(name);
+        }
+
+        public IoSession createSession() {
+            return (IoSession)Proxy.newProxyInstance(
+                    IoSession.class.getClassLoader(),
+                    new Class[] { IoSession.class },
+                    this
+            );
+        }
+    }
+
+    public void testNonReadingSession() throws Exception {
+
+        StuckSession stuckSession = new StuckSession();
+        stuckSession.scheduledWriteBytes = 2000;
+        IoSession session = stuckSession.createSession();
+
+        WriteThrottle throttle = new WriteThrottle(1000, 0, 300);
+        throttle.begin(session);
+
+        long start = System.currentTimeMillis();
+
+        try {
+            throttle.await(session);
+            fail();
+
+        } catch (Exception e) {
+            assertEquals("Write timeout.", e.getMessage());
+
+        } finally {
+            throttle.end(session);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(stuckSession.closed);
+        assertTrue(elapsed >= 300);
+        assertTrue(elapsed < 5000);
+    }
+
+    public void testSlowSession() throws Exception {
+
+        final StuckSession slowSession = new StuckSession();
+        slowSession.scheduledWriteBytes = 2000;
+        IoSession session = slowSession.createSession();
+
+        final WriteThrottle throttle = new WriteThrottle(1000, 0, 300);
+        throttle.begin(session);
+
+        // the client keeps reading, but needs longer than the maximum pause
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    while (slowSession.scheduledWriteBytes > 0) {
+                        Thread.sleep(100);
+                        slowSession.scheduledWriteBytes -= 200;
+                        throttle.signal();
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+        reader.start();
+
+        try {
+            throttle.await(session);
+
+        } finally {
+            throttle.end(session);
+            reader.interrupt();
+        }
+
+        assertFalse(slowSession.closed);
+        assertTrue(slowSession.scheduledWriteBytes <= 1000);
+    }
+
+    public void testNoMaxPause() throws Exception {
+
+        final StuckSession stuckSession = new StuckSession();
+        stuckSession.scheduledWriteBytes = 2000;
+        IoSession session = stuckSession.createSession();
+
+        final WriteThrottle throttle = new WriteThrottle(1000, 0, 0);
+        throttle.begin(session);
+
+        // the throttle waits until the client disconnects
+        Thread closer = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                    stuckSession.closed = true;
+                    throttle.signal();
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+        closer.start();
+
+        try {
+            throttle.await(session);
+            fail();
+
+        } catch (Exception e) {
+            assertEquals("Connection closed.", e.getMessage());
+
+        } finally {
+            throttle.end(session);
+        }
+    }
+}
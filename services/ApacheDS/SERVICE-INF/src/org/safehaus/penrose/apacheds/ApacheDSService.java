@@ -44,6 +44,9 @@ import org.safehaus.penrose.ldapbackend.apacheds.LDAPBackendInterceptor;
  */
 public class ApacheDSService extends LDAPService {
 
+    public final static String NEGATIVE_CACHE_TTL      = "negativeCacheTtl";
+    public final static long DEFAULT_NEGATIVE_CACHE_TTL = 0; // ms, disabled
+
     public void init() throws Exception {
         super.init();
     
@@ -127,6 +130,9 @@ public class ApacheDSService extends LDAPService {
         LDAPBackendInterceptor interceptor = new LDAPBackendInterceptor();
         interceptor.setBackend(backend);
 
+        String s = getParameter(NEGATIVE_CACHE_TTL);
+        interceptor.setNegativeCacheTtl(s == null ? DEFAULT_NEGATIVE_CACHE_TTL : Long.parseLong(s));
+
         MutableInterceptorConfiguration interceptorConfig = new MutableInterceptorConfiguration();
         interceptorConfig.setName("penroseService");
         interceptorConfig.setInterceptor(interceptor);
@@ -29,10 +29,12 @@ import org.safehaus.penrose.management.partition.PartitionManagerService;
 import org.safehaus.penrose.management.schema.SchemaManagerService;
 import org.safehaus.penrose.management.service.ServiceManagerService;
 import org.safehaus.penrose.management.session.SessionManagerService;
+import org.safehaus.penrose.management.statistic.StatisticManagerService;
 import org.safehaus.penrose.partition.PartitionManager;
 import org.safehaus.penrose.schema.SchemaManager;
 import org.safehaus.penrose.server.PenroseServer;
 import org.safehaus.penrose.service.ServiceManager;
+import org.safehaus.penrose.statistic.StatisticManager;
 import org.safehaus.penrose.user.UserConfig;
 
 import javax.management.StandardMBean;
@@ -57,6 +59,7 @@ public class PenroseService extends StandardMBean implements PenroseServiceMBean
     protected ServiceManagerService serviceManagerService;
     protected SessionManagerService sessionManagerService;
     protected LogManagerService logManagerService;
+    protected StatisticManagerService statisticManagerService;
 
     public PenroseService(PenroseJMXService jmxService, PenroseServer penroseServer) throws Exception {
         super(PenroseServiceMBean.class);
@@ -95,10 +98,16 @@ public class PenroseService extends StandardMBean implements PenroseServiceMBean
 
         logManagerService = new LogManagerService(jmxService, logManager);
         logManagerService.init();
+
+        StatisticManager statisticManager = penrose.getStatisticManager();
+
+        statisticManagerService = new StatisticManagerService(jmxService, statisticManager);
+        statisticManagerService.init();
     }
 
     public void destroy() throws Exception {
 
+        statisticManagerService.destroy();
         logManagerService.destroy();
         sessionManagerService.destroy();
         serviceManagerService.destroy();
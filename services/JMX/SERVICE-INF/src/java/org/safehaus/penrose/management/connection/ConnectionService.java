@@ -68,6 +68,26 @@ public class ConnectionService extends BaseService implements ConnectionServiceM
         return connectionConfig.getAdapterName();
     }
 
+    public int getActiveCount() throws Exception {
+        Connection connection = getConnection();
+        return connection == null ? 0 : connection.getActiveCount();
+    }
+
+    public int getIdleCount() throws Exception {
+        Connection connection = getConnection();
+        return connection == null ? 0 : connection.getIdleCount();
+    }
+
+    public long getLeaseCount() throws Exception {
+        Connection connection = getConnection();
+        return connection == null ? 0 : connection.getLeaseCount();
+    }
+
+    public long getLeaseWaitTime() throws Exception {
+        Connection connection = getConnection();
+        return connection == null ? 0 : connection.getLeaseWaitTime();
+    }
+
     public void start() throws Exception {
 
         log.debug("Starting connection "+partitionName+"/"+connectionName+"...");
@@ -75,6 +75,9 @@ public class ModuleService extends BaseService implements ModuleServiceMBean {
     public void addModuleMapping(ModuleMapping moduleMapping) throws Exception {
         ModuleConfig moduleConfig = getModuleConfig();
         moduleConfig.addModuleMapping(moduleMapping);
+
+        Partition partition = getPartition();
+        if (partition != null) partition.getModuleManager().updateIndex();
         //PartitionConfig partitionConfig = getPartitionConfig();
         //ModuleConfigManager moduleConfigManager = partitionConfig.getModuleConfigManager();
         //moduleConfigManager.addModuleMapping(moduleMapping);
@@ -83,6 +86,9 @@ public class ModuleService extends BaseService implements ModuleServiceMBean {
     public void removeModuleMapping(ModuleMapping moduleMapping) throws Exception {
         ModuleConfig moduleConfig = getModuleConfig();
         moduleConfig.removeModuleMapping(moduleMapping);
+
+        Partition partition = getPartition();
+        if (partition != null) partition.getModuleManager().updateIndex();
         //PartitionConfig partitionConfig = getPartitionConfig();
         //ModuleConfigManager moduleConfigManager = partitionConfig.getModuleConfigManager();
         //moduleConfigManager.removeModuleMapping(moduleMapping);
@@ -0,0 +1,63 @@
+package org.safehaus.penrose.management.statistic;
+
+import org.safehaus.penrose.management.BaseService;
+import org.safehaus.penrose.management.PenroseJMXService;
+import org.safehaus.penrose.statistic.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Endi Sukma Dewata
+ */
+public class StatisticManagerService extends BaseService implements StatisticManagerServiceMBean {
+
+    StatisticManager statisticManager;
+
+    public StatisticManagerService(PenroseJMXService jmxService, StatisticManager statisticManager) {
+        this.jmxService = jmxService;
+        this.statisticManager = statisticManager;
+    }
+
+    public Object getObject() {
+        return statisticManager;
+    }
+
+    public String getObjectName() {
+        return StatisticManagerClient.getStringObjectName();
+    }
+
+    public Collection<String> getStatisticNames() throws Exception {
+        Collection<String> list = new ArrayList<String>();
+        list.addAll(statisticManager.getStatisticNames());
+        return list;
+    }
+
+    public Long getCounter(String name) throws Exception {
+        Statistic statistic = statisticManager.getStatistic(name);
+        if (statistic == null) return null;
+        return statistic.getCounter();
+    }
+
+    public Collection<String> getHistogramNames() throws Exception {
+        Collection<String> list = new ArrayList<String>();
+        list.addAll(statisticManager.getHistogramNames());
+        return list;
+    }
+
+    public Map<String,Long> getHistogram(String name) throws Exception {
+        Histogram histogram = statisticManager.getHistogram(name);
+        if (histogram == null) return null;
+        return new LinkedHashMap<String,Long>(histogram.getSummary());
+    }
+
+    public Long getStartTime() throws Exception {
+        return statisticManager.getStartTime();
+    }
+
+    public void reset() throws Exception {
+        statisticManager.reset();
+    }
+}
@@ -10,6 +10,7 @@ import org.safehaus.penrose.schema.attributeSyntax.AttributeSyntax;
 import org.safehaus.penrose.schema.attributeSyntax.AttributeSyntaxUtil;
 import org.safehaus.penrose.ldap.LDAPService;
 import org.safehaus.penrose.ldapbackend.mina.MinaHandler;
+import org.safehaus.penrose.ldapbackend.mina.WriteThrottle;
 import org.apache.mina.transport.socket.nio.SocketAcceptor;
 import org.apache.mina.transport.socket.nio.SocketAcceptorConfig;
 import org.apache.mina.transport.socket.nio.SocketSessionConfig;
@@ -28,6 +29,15 @@ import org.safehaus.penrose.ldapbackend.Backend;
  */
 public class MinaService extends LDAPService {
 
+    public final static String MAX_CONNECTION_WRITE_BYTES      = "maxConnectionWriteBytes";
+    public final static int DEFAULT_MAX_CONNECTION_WRITE_BYTES = 1024 * 1024; // 1 MB
+
+    public final static String MAX_WRITE_BYTES                 = "maxWriteBytes";
+    public final static long DEFAULT_MAX_WRITE_BYTES           = 64 * 1024 * 1024; // 64 MB
+
+    public final static String MAX_WRITE_PAUSE                 = "maxWritePause";
+    public final static long DEFAULT_MAX_WRITE_PAUSE           = WriteThrottle.DEFAULT_MAX_PAUSE; // ms
+
     SocketAcceptorConfig acceptorConfig;
     SocketAcceptor acceptor;
 
@@ -94,6 +104,17 @@ public class MinaService extends LDAPService {
         codecFactory = new MinaProtocolCodecFactory(env);
         handler = new MinaHandler(backend, codecFactory);
 
+        String s = getParameter(MAX_CONNECTION_WRITE_BYTES);
+        int maxConnectionWriteBytes = s == null ? DEFAULT_MAX_CONNECTION_WRITE_BYTES : Integer.parseInt(s);
+
+        s = getParameter(MAX_WRITE_BYTES);
+        long maxWriteBytes = s == null ? DEFAULT_MAX_WRITE_BYTES : Long.parseLong(s);
+
+        s = getParameter(MAX_WRITE_PAUSE);
+        long maxWritePause = s == null ? DEFAULT_MAX_WRITE_PAUSE : Long.parseLong(s);
+
+        handler.setWriteThrottle(new WriteThrottle(maxConnectionWriteBytes, maxWriteBytes, maxWritePause));
+
         threadPoolExecutor = new ThreadPoolExecutor(
                 maxThreads,
                 maxThreads,